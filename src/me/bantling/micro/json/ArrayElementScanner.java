@@ -0,0 +1,224 @@
+package me.bantling.micro.json;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/*
+ * Find the boundaries of the elements of a top level array in a seekable input, without lexing or parsing them, so
+ * that the elements can be parsed independently of each other, eg in parallel.
+ * 
+ * The scan only tracks strings - so that brackets, braces, and commas inside strings are ignored - and nesting depth.
+ * It does not validate anything inside an element, that is left to parsing the element. Since all structural
+ * characters are ASCII, and no byte of a multi byte UTF-8 sequence is ASCII, UTF-8 bytes are scanned without decoding,
+ * and are indexed a block at a time by a StructuralIndex so that only brackets, braces, and commas are examined one at
+ * a time.
+ * 
+ * The result is the offsets of the separators: the opening bracket, each comma between elements, and the closing
+ * bracket, so that element i lies between separators i and i + 1. An empty array has only the opening bracket.
+ * If the input is an object rather than an array, or the scan finds that it is not a valid array, the result is null,
+ * so that the input is parsed sequentially, which reports the same errors for an invalid array as any other input.
+ * An error inside an element is only found by parsing the element.
+ */
+final class ArrayElementScanner {
+	// Offsets of separators found so far
+	private long[] separators = new long[64];
+	private int count;
+	
+	// Depth 0 is before the array, 1 is inside the top level array
+	private int depth;
+	private boolean inString;
+	private boolean escaped;
+	
+	// True if anything other than whitespace occurs inside the array
+	private boolean content;
+	
+	// True if the input must be parsed sequentially, as it is an object or not a valid array, or the closing bracket
+	// has been found
+	private boolean sequential;
+	private boolean done;
+	
+	private ArrayElementScanner() {
+		//
+	}
+	
+	// Add a separator
+	private void add(final long offset) {
+		if (count == separators.length) {
+			separators = Arrays.copyOf(separators, count * 2);
+		}
+		separators[count++] = offset;
+	}
+	
+	// Accept the next char or byte at the given offset, returning false if the scan is finished
+	private boolean accept(
+		final int theChar,
+		final long offset
+	) {
+		if (inString) {
+			if (escaped) {
+				escaped = false;
+			} else if (theChar == '\\') {
+				escaped = true;
+			} else if (theChar == '"') {
+				inString = false;
+			}
+			
+			return true;
+		}
+		
+		inString = theChar == '"';
+		return structural(theChar, offset);
+	}
+	
+	// Accept a char or byte outside of a string, where a quote is the start of a string, returning false if the scan
+	// is finished
+	private boolean structural(
+		final int theChar,
+		final long offset
+	) {
+		switch (theChar) {
+			case ' ':
+			case '\n':
+			case '\r':
+			case '\t':
+				break;
+				
+			case '[':
+				if (depth++ == 0) {
+					add(offset);
+				} else {
+					content = true;
+				}
+				break;
+				
+			case '{':
+				if (depth++ == 0) {
+					sequential = true;
+					return false;
+				}
+				content = true;
+				break;
+				
+			case ']':
+			case '}':
+				// A closer before the array, or a brace that ends it
+				if ((depth == 0) || ((depth == 1) && (theChar != ']'))) {
+					sequential = true;
+					return false;
+				}
+				
+				if (--depth == 0) {
+					add(offset);
+					done = true;
+					return false;
+				}
+				break;
+				
+			case ',':
+				// A comma before the array
+				if (depth == 0) {
+					sequential = true;
+					return false;
+				}
+				
+				if (depth == 1) {
+					add(offset);
+				}
+				content = true;
+				break;
+				
+			default:
+				if (depth == 0) {
+					sequential = true;
+					return false;
+				}
+				
+				content = true;
+		}
+		
+		return true;
+	}
+	
+	// The separators found, after the scan has accepted all input or finished, or null if the input must be parsed
+	// sequentially, which includes an incomplete array
+	private long[] result() {
+		if (sequential || (! done)) {
+			return null;
+		}
+		
+		// An array with only whitespace has no elements
+		return Arrays.copyOf(separators, content ? count : 1);
+	}
+	
+	// Scan a slice of chars, where offsets are relative to the start of the array
+	static long[] scan(
+		final char[] chars,
+		final int offset,
+		final int length
+	) {
+		final ArrayElementScanner scanner = new ArrayElementScanner();
+		for (int i = offset, end = offset + length; (i < end) && scanner.accept(chars[i], i); i++) {
+			// accept does all the work
+		}
+		
+		return scanner.result();
+	}
+	
+	// Accept one or more tokens other than brackets, braces, and commas, found by a StructuralIndex, returning false if
+	// the scan is finished
+	private boolean tokens() {
+		if (depth == 0) {
+			sequential = true;
+			return false;
+		}
+		
+		content = true;
+		return true;
+	}
+	
+	// Scan the remaining bytes of a series of buffers, where offsets are relative to the position of the first buffer,
+	// and all buffers except the last have windowSize bytes remaining.
+	// The buffers are indexed a block at a time, and only the delimiters of each block are accepted one at a time. The
+	// tokens between them are only checked for, as the scan only needs to know if there are any.
+	static long[] scan(
+		final ByteBuffer[] windows,
+		final int windowSize
+	) {
+		final ArrayElementScanner scanner = new ArrayElementScanner();
+		final StructuralIndex index = new StructuralIndex();
+		scan:
+		for (int w = 0; w < windows.length; w++) {
+			final ByteBuffer window = windows[w];
+			final long base = (long)(w) * windowSize - window.position();
+			for (int i = window.position(), end = window.limit(); i < end;) {
+				final int length = index.index(window, i, end);
+				final long tokens = index.tokens();
+				long delimiters = index.delimiters();
+				
+				// Bits of the block up to and including the last delimiter accepted
+				long accepted = 0;
+				while (delimiters != 0) {
+					final long delimiter = delimiters & -delimiters;
+					if (((tokens & (delimiter - 1) & ~accepted) != 0) && (! scanner.tokens())) {
+						break scan;
+					}
+					
+					final int offset = i + Long.numberOfTrailingZeros(delimiter);
+					if (! scanner.structural(window.get(offset), base + offset)) {
+						break scan;
+					}
+					
+					accepted = delimiter | (delimiter - 1);
+					delimiters &= ~delimiter;
+				}
+				
+				if (((tokens & ~accepted) != 0) && (! scanner.tokens())) {
+					break scan;
+				}
+				i += length;
+			}
+		}
+		
+		return scanner.result();
+	}
+}
@@ -0,0 +1,162 @@
+package me.bantling.micro.json;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/*
+ * Spliterator of the elements of a top level array, whose boundaries have been found by ArrayElementScanner.
+ * 
+ * Splitting halves the range of element indexes, so that elements can be parsed in parallel. Each split has its own
+ * Parser, which is reset onto the slice of the input of each element in turn, so that its lexer, token text buffer,
+ * and window are allocated once per split rather than once per element.
+ * 
+ * If an element fails to parse, the whole input is validated by a sequential Parser, which reports the first error in
+ * document order, with its position in the input, whichever element another thread is parsing, and wherever the scan
+ * put the boundaries of the elements of an invalid array.
+ */
+final class ArrayElementSpliterator implements Spliterator<JSONValue> {
+	// Reset a parser onto input[start, end), and return it
+	@FunctionalInterface
+	interface Slicer {
+		Parser reset(Parser parser, long start, long end);
+	}
+	
+	// Input of a new parser, before it is reset onto an element
+	private static final char[] EMPTY = {};
+	
+	private final long[] separators;
+	private final Slicer slicer;
+	private final Supplier<Parser> sequential;
+	private int from;
+	private final int to;
+	
+	// Parser of the elements of this split, created on first use
+	private Parser parser;
+	
+	// Construct for all elements, with a supplier of a sequential parser of the whole input
+	ArrayElementSpliterator(
+		final long[] separators,
+		final Slicer slicer,
+		final Supplier<Parser> sequential
+	) {
+		this(separators, slicer, sequential, 0, separators.length - 1);
+	}
+	
+	// Construct for elements [from, to)
+	private ArrayElementSpliterator(
+		final long[] separators,
+		final Slicer slicer,
+		final Supplier<Parser> sequential,
+		final int from,
+		final int to
+	) {
+		this.separators = separators;
+		this.slicer = slicer;
+		this.sequential = sequential;
+		this.from = from;
+		this.to = to;
+	}
+	
+	// Slicer of chars
+	static Slicer of(
+		final char[] chars
+	) {
+		return (parser, start, end) -> parser.reset(chars, (int)(start), (int)(end - start));
+	}
+	
+	// Slicer of a series of windows, all of which except the last have windowSize bytes remaining
+	static Slicer of(
+		final ByteBuffer[] windows,
+		final int windowSize
+	) {
+		return (parser, start, end) -> {
+			final int first = (int)(start / windowSize);
+			final int last = (int)(Math.max(start, end - 1) / windowSize);
+			
+			// Most slices lie in a single window, which is lexed in place if it is on the heap, and otherwise is copied
+			// into the window of the parser's lexer
+			if (first == last) {
+				final ByteBuffer window = windows[first].duplicate();
+				final int base = window.position() - first * windowSize;
+				window.limit((int)(base + end)).position((int)(base + start));
+				return parser.reset(window);
+			}
+			
+			// A slice that straddles windows is lexed as a series of buffers, copied into the window of the parser's
+			// lexer
+			final List<ByteBuffer> slices = new ArrayList<>(last - first + 1);
+			for (int w = first; w <= last; w++) {
+				final ByteBuffer window = windows[w].duplicate();
+				final long base = window.position() - (long)(w) * windowSize;
+				window.limit((int)(base + Math.min(end, (long)(w + 1) * windowSize)));
+				window.position((int)(base + Math.max(start, (long)(w) * windowSize)));
+				slices.add(window);
+			}
+			
+			return parser.reset(slices.iterator());
+		};
+	}
+	
+	// Parse element i, which lies after separator i and before separator i + 1
+	private JSONValue parse(final int i) {
+		if (parser == null) {
+			parser = new Parser(EMPTY);
+		}
+		
+		try {
+			return slicer.reset(parser, separators[i] + 1, separators[i + 1]).parseElement(
+				i == 0 ? Parser.ARRAY_VALUE_OR_BRACKET : Parser.ARRAY_COMMA_VALUE,
+				Parser.ARRAY_COMMA_OR_BRACKET,
+				1
+			);
+		} catch (final RuntimeException e) {
+			// Report the first error in the input, which is at or before this one
+			sequential.get().validate();
+			throw e;
+		}
+	}
+	
+	@Override
+	public boolean tryAdvance(final Consumer<? super JSONValue> action) {
+		if (from < to) {
+			action.accept(parse(from++));
+			return true;
+		}
+		
+		return false;
+	}
+	
+	@Override
+	public void forEachRemaining(final Consumer<? super JSONValue> action) {
+		while (from < to) {
+			action.accept(parse(from++));
+		}
+	}
+	
+	@Override
+	public Spliterator<JSONValue> trySplit() {
+		if (to - from < 2) {
+			return null;
+		}
+		
+		final int mid = (from + to) >>> 1;
+		final Spliterator<JSONValue> prefix = new ArrayElementSpliterator(separators, slicer, sequential, from, mid);
+		from = mid;
+		
+		return prefix;
+	}
+	
+	@Override
+	public long estimateSize() {
+		return to - from;
+	}
+	
+	@Override
+	public int characteristics() {
+		return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+	}
+}
@@ -0,0 +1,157 @@
+package me.bantling.micro.json;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+
+import me.bantling.micro.function.Try;
+
+/*
+ * The source of bytes for BinaryJSON.decode.
+ * 
+ * Byte arrays and heap ByteBuffers are read in place. InputStreams and direct ByteBuffers are copied a block at a time
+ * into a byte[] window, which grows if a single string is larger than the window, so that every string can be decoded
+ * from one contiguous run of bytes. The window only grows when it is full, and at most doubles each time, so a corrupt
+ * length cannot allocate much more than the bytes that have actually arrived.
+ */
+final class BinaryInput {
+	// Number of bytes to copy from a stream or direct buffer at a time
+	static final int BUFFER_SIZE = 8192;
+	
+	// Underlying stream or direct buffer, both are null if the window is all the input there is
+	private final InputStream stream;
+	private final ByteBuffer source;
+	
+	// Window of bytes, index of next byte to read, and index after last byte in window
+	byte[] buffer;
+	int pos;
+	int limit;
+	
+	// Offset of the first byte of the window from the start of the input
+	private long base;
+	
+	// Construct from an array slice, which is read in place
+	BinaryInput(
+		final byte[] bytes,
+		final int offset,
+		final int length
+	) {
+		Objects.checkFromIndexSize(offset, length, bytes.length);
+		
+		this.stream = null;
+		this.source = null;
+		this.buffer = bytes;
+		this.pos = offset;
+		this.limit = offset + length;
+		this.base = -offset;
+	}
+	
+	// Construct from the remaining bytes of a buffer, without changing the buffer position
+	BinaryInput(
+		final ByteBuffer bytes
+	) {
+		this.stream = null;
+		
+		if (bytes.hasArray()) {
+			this.source = null;
+			this.buffer = bytes.array();
+			this.pos = bytes.arrayOffset() + bytes.position();
+			this.limit = pos + bytes.remaining();
+			this.base = -pos;
+		} else {
+			this.source = bytes.duplicate();
+			this.buffer = new byte[BUFFER_SIZE];
+		}
+	}
+	
+	// Construct from a stream
+	BinaryInput(
+		final InputStream stream
+	) {
+		this.stream = Objects.requireNonNull(stream, "stream");
+		this.source = null;
+		this.buffer = new byte[BUFFER_SIZE];
+	}
+	
+	// Copy more bytes from the stream or direct buffer into the window after limit.
+	// Return the number of bytes copied, which is less than 1 if there are no more.
+	private int copyMore() {
+		final int length = buffer.length - limit;
+		if (stream != null) {
+			return Try.getInt(() -> stream.read(buffer, limit, length));
+		}
+		
+		final int count = Math.min(length, source.remaining());
+		if (count == 0) {
+			return -1;
+		}
+		
+		source.get(buffer, limit, count);
+		return count;
+	}
+	
+	// Ensure at least count bytes are available after the cursor, refilling or growing the window if necessary.
+	// Dies if EOF occurs first.
+	void require(final int count) {
+		if (limit - pos >= count) {
+			return;
+		}
+		
+		if ((stream == null) && (source == null)) {
+			throw new RuntimeException(BinaryJSON.TRUNCATED);
+		}
+		
+		// Move unread bytes to the start of the window
+		System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+		limit -= pos;
+		base += pos;
+		pos = 0;
+		
+		while (limit < count) {
+			// Grow a full window towards count, but no more than double it ahead of the bytes that have arrived
+			if (limit == buffer.length) {
+				buffer = Arrays.copyOf(buffer, (int)(Math.min(count, buffer.length * 2L)));
+			}
+			
+			final int copied = copyMore();
+			if (copied <= 0) {
+				throw new RuntimeException(BinaryJSON.TRUNCATED);
+			}
+			limit += copied;
+		}
+	}
+	
+	// Read one unsigned byte
+	int readByte() {
+		if (pos == limit) {
+			require(1);
+		}
+		
+		return buffer[pos++] & 0xFF;
+	}
+	
+	// Read an unsigned varint of up to 64 bits, 7 bits per byte, least significant first
+	long readVarint() {
+		long result = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			final int theByte = readByte();
+			
+			// The tenth byte can only hold the top bit
+			if ((shift == 63) && (theByte > 1)) {
+				throw new RuntimeException(BinaryJSON.CORRUPT);
+			}
+			result |= (long)(theByte & 0x7F) << shift;
+			if (theByte < 0x80) {
+				return result;
+			}
+		}
+		
+		throw new RuntimeException(BinaryJSON.CORRUPT);
+	}
+	
+	// The number of bytes consumed from the start of the input
+	long offset() {
+		return base + pos;
+	}
+}
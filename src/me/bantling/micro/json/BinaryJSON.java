@@ -0,0 +1,599 @@
+package me.bantling.micro.json;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+
+/*
+ * A compact binary encoding of a JSONValue, for transport between services and for caches, that is much faster to
+ * decode than JSON text, as nothing has to be lexed and no numbers have to be parsed.
+ * 
+ * Each value starts with a header byte, as in CBOR: the top 3 bits are the type, and the low 5 bits are an argument of
+ * 0 to 30, or 31 if the argument is larger and the rest of it (minus 31) follows as a varint. The argument is:
+ * - SIMPLE: 0 for null, 1 for false, 2 for true, or 3 for a string with lone surrogates, followed by a varint length
+ * - POSITIVE: an integer
+ * - NEGATIVE: the magnitude of an integer, minus 1
+ * - DECIMAL: the flags and the fractional and exponent lengths of an inline JSONNumber, followed by a varint of its
+ *   digits, and a varint of its exponent if it has one
+ * - NUMBER_TEXT: the length of the ASCII text of any other JSONNumber, followed by the text
+ * - STRING: the length of the UTF-8 bytes of a string, followed by the bytes
+ * - ARRAY: the number of elements, followed by the elements
+ * - OBJECT: the number of keys, followed by each key and value
+ * 
+ * Keys are back referenced. Each key is a varint of 0 for a key not seen before, followed by the key as a string, or
+ * i + 1 for the i-th key seen before, so recurring keys are a single byte. Decoded keys that recur are the same String
+ * instance. Only the first MAX_KEYS distinct keys of a document are remembered, later ones are always written out.
+ * 
+ * Numbers decode to JSONNumbers that are equal to and have the same text as those encoded. Objects decode to compact
+ * insertion ordered maps, and arrays to ArrayLists, as Parser.withCompactTree builds them. Objects and arrays are
+ * encoded and decoded with a loop and a stack rather than by recursion, so there is no limit on nesting.
+ * 
+ * An encoding starts with a version byte, so that data cached in another format is rejected rather than misread.
+ */
+public final class BinaryJSON {
+	static final String TRUNCATED   = "Binary JSON ended before the value was complete";
+	static final String CORRUPT     = "Binary JSON is not correctly formatted";
+	static final String TRAILING    = "Binary JSON must contain only one value";
+	static final String VERSION_FMT = "Binary JSON version %d is not supported";
+	
+	// Version of the format
+	static final int VERSION = 1;
+	
+	// Types, in the top 3 bits of a header
+	static final int SIMPLE      = 0;
+	static final int POSITIVE    = 1;
+	static final int NEGATIVE    = 2;
+	static final int DECIMAL     = 3;
+	static final int NUMBER_TEXT = 4;
+	static final int STRING      = 5;
+	static final int ARRAY       = 6;
+	static final int OBJECT      = 7;
+	
+	// Arguments of SIMPLE
+	static final int NULL_ARGUMENT      = 0;
+	static final int FALSE_ARGUMENT     = 1;
+	static final int TRUE_ARGUMENT      = 2;
+	static final int SURROGATE_ARGUMENT = 3;
+	
+	// Argument in a header that means the rest of the argument follows as a varint
+	static final int VARINT_ARGUMENT = 31;
+	
+	// Number of bits of the fractional length in the argument of DECIMAL, which follow the flags of the JSONNumber
+	private static final int FRACTIONAL_LENGTH_BITS = 5;
+	
+	// Maximum number of distinct keys remembered per document
+	static final int MAX_KEYS = 1 << 16;
+	
+	// Maximum number of elements or keys space is reserved for up front, so a corrupt count cannot exhaust memory
+	private static final int MAX_RESERVED = 1 << 16;
+	
+	// Number of chars copied from a String at a time to encode it
+	private static final int CHUNK_SIZE = 1024;
+	
+	// Smallest code point that may be encoded in each number of UTF-8 bytes
+	private static final int[] MIN_CODE_POINTS = {0, 0, 0x80, 0x800, 0x10000};
+	
+	private BinaryJSON() {
+		//
+	}
+	
+	// ==== Encode
+	
+	// Encode a value to a new byte[]
+	public static byte[] encode(
+		final JSONValue value
+	) {
+		final ByteBuffer buffer = encode(value, ByteBuffer.allocate(256));
+		return Arrays.copyOf(buffer.array(), buffer.position());
+	}
+	
+	// Encode a value into a buffer from its position, replacing it with a larger one of the same kind if it fills up.
+	// Returns the buffer written to, positioned after the encoding.
+	public static ByteBuffer encode(
+		final JSONValue value,
+		final ByteBuffer buffer
+	) {
+		final Utf8WriterOutput output = new Utf8WriterOutput(buffer);
+		new Encoder(output).encode(value);
+		return output.byteBuffer();
+	}
+	
+	// Encode a value to a stream, which is flushed but not closed
+	public static void encode(
+		final JSONValue value,
+		final OutputStream stream
+	) {
+		final Utf8WriterOutput output = new Utf8WriterOutput(stream);
+		new Encoder(output).encode(value);
+		output.flush();
+	}
+	
+	// The state of one encoding
+	private static final class Encoder {
+		private final Utf8WriterOutput output;
+		
+		// Index of each distinct key written so far
+		private final Map<String, Integer> keys = new HashMap<>();
+		
+		// Scratch space for strings being encoded
+		private final char[] chars = new char[CHUNK_SIZE];
+		
+		Encoder(
+			final Utf8WriterOutput output
+		) {
+			this.output = output;
+		}
+		
+		// Write an unsigned varint, 7 bits per byte, least significant first
+		private void varint(final long value) {
+			long remaining = value;
+			while ((remaining & ~0x7FL) != 0) {
+				output.writeByte((int)(remaining & 0x7F) | 0x80);
+				remaining >>>= 7;
+			}
+			output.writeByte((int)(remaining));
+		}
+		
+		// Write a header of a type and an unsigned argument
+		private void header(final int type, final long argument) {
+			if ((argument >= 0) && (argument < VARINT_ARGUMENT)) {
+				output.writeByte((type << 5) | (int)(argument));
+			} else {
+				output.writeByte((type << 5) | VARINT_ARGUMENT);
+				varint(argument - VARINT_ARGUMENT);
+			}
+		}
+		
+		// Write a string as UTF-8, where a lone surrogate is encoded as if it were a char
+		private void string(final String str) {
+			// Count the bytes, and look for lone surrogates
+			final int length = str.length();
+			long bytes = 0;
+			boolean lone = false;
+			for (int i = 0; i < length; i++) {
+				final char c = str.charAt(i);
+				if (c < 0x80) {
+					bytes++;
+				} else if (c < 0x800) {
+					bytes += 2;
+				} else if (Character.isHighSurrogate(c) && (i + 1 < length) && Character.isLowSurrogate(str.charAt(i + 1))) {
+					bytes += 4;
+					i++;
+				} else {
+					bytes += 3;
+					lone |= Character.isSurrogate(c);
+				}
+			}
+			
+			if (lone) {
+				header(SIMPLE, SURROGATE_ARGUMENT);
+				varint(bytes);
+			} else {
+				header(STRING, bytes);
+			}
+			
+			for (int i = 0, count; i < length; i += count) {
+				count = Math.min(length - i, CHUNK_SIZE);
+				
+				// Do not split a surrogate pair across chunks
+				if ((i + count < length) && Character.isHighSurrogate(str.charAt(i + count - 1))) {
+					count--;
+				}
+				
+				str.getChars(i, i + count, chars, 0);
+				output.writeChars(chars, 0, count);
+			}
+		}
+		
+		// Write a key, or a reference to it if it has been written before
+		private void key(final String key) {
+			final Integer index = keys.get(key);
+			if (index != null) {
+				varint(index.intValue() + 1L);
+			} else {
+				varint(0);
+				if (keys.size() < MAX_KEYS) {
+					keys.put(key, Integer.valueOf(keys.size()));
+				}
+				string(key);
+			}
+		}
+		
+		// Write a number, in binary if it is inline. Negative zero is not an integer, as it has to keep its sign.
+		private void number(final JSONNumber number) {
+			if (number.isInlineInteger() && (number.isPositive() || (number.inlineDigits() > 0))) {
+				if (number.isPositive()) {
+					header(POSITIVE, number.inlineDigits());
+				} else {
+					header(NEGATIVE, number.inlineDigits() - 1);
+				}
+			} else if (number.isInline()) {
+				header(
+					DECIMAL,
+					number.inlineFlags() |
+					(number.inlineFractionalLength() << JSONNumber.FLAG_BITS) |
+					(number.inlineExponentLength() << (JSONNumber.FLAG_BITS + FRACTIONAL_LENGTH_BITS))
+				);
+				varint(number.inlineDigits());
+				if (number.inlineExponentLength() > 0) {
+					varint(number.inlineExponent());
+				}
+			} else {
+				final String text = number.toString();
+				header(NUMBER_TEXT, text.length());
+				output.write(text);
+			}
+		}
+		
+		// Write the version, then the value. Objects and arrays are walked with a stack of iterators.
+		void encode(final JSONValue value) {
+			output.writeByte(VERSION);
+			
+			Iterator<?>[] iterators = new Iterator<?>[16];
+			boolean[] objects = new boolean[16];
+			int top = 0;
+			JSONValue next = Objects.requireNonNull(value, "value");
+			
+			while (true) {
+				if (next != null) {
+					switch (next.getType()) {
+						case STRING:
+							string(next.asString());
+							break;
+						
+						case NUMBER:
+							number(next.asNumber());
+							break;
+						
+						case BOOLEAN:
+							header(SIMPLE, next.asBoolean() ? TRUE_ARGUMENT : FALSE_ARGUMENT);
+							break;
+						
+						case NULL:
+							header(SIMPLE, NULL_ARGUMENT);
+							break;
+						
+						default:
+							if (top == iterators.length) {
+								iterators = Arrays.copyOf(iterators, top * 2);
+								objects = Arrays.copyOf(objects, top * 2);
+							}
+							
+							if (next.isObject()) {
+								final Map<String, JSONValue> object = next.asObject();
+								header(OBJECT, object.size());
+								objects[top] = true;
+								iterators[top++] = object.entrySet().iterator();
+							} else {
+								header(ARRAY, next.asArray().size());
+								objects[top] = false;
+								iterators[top++] = next.asArray().iterator();
+							}
+					}
+					
+					next = null;
+				}
+				
+				if (top == 0) {
+					break;
+				}
+				
+				// Next key and value or element of the innermost object or array, or the end of it
+				final Iterator<?> iterator = iterators[top - 1];
+				if (! iterator.hasNext()) {
+					iterators[--top] = null;
+				} else if (objects[top - 1]) {
+					final Map.Entry<?, ?> entry = (Map.Entry<?, ?>)(iterator.next());
+					key((String)(entry.getKey()));
+					next = (JSONValue)(entry.getValue());
+				} else {
+					next = (JSONValue)(iterator.next());
+				}
+			}
+		}
+	}
+	
+	// ==== Decode
+	
+	// Decode a value that is the entire array
+	public static JSONValue decode(
+		final byte[] bytes
+	) {
+		return decode(bytes, 0, bytes.length);
+	}
+	
+	// Decode a value that is the entire slice of an array
+	public static JSONValue decode(
+		final byte[] bytes,
+		final int offset,
+		final int length
+	) {
+		final BinaryInput input = new BinaryInput(bytes, offset, length);
+		final JSONValue result = new Decoder(input).decode();
+		if (input.pos != input.limit) {
+			throw new RuntimeException(TRAILING);
+		}
+		
+		return result;
+	}
+	
+	// Decode a value from the position of a buffer, leaving the buffer positioned after it, so that a series of values
+	// can be decoded from one buffer
+	public static JSONValue decode(
+		final ByteBuffer buffer
+	) {
+		final BinaryInput input = new BinaryInput(buffer);
+		final JSONValue result = new Decoder(input).decode();
+		buffer.position(buffer.position() + (int)(input.offset()));
+		
+		return result;
+	}
+	
+	// Decode a value from a stream. The stream is read a block at a time, so bytes after the value may be consumed.
+	public static JSONValue decode(
+		final InputStream stream
+	) {
+		return new Decoder(new BinaryInput(stream)).decode();
+	}
+	
+	// The state of one decoding
+	private static final class Decoder {
+		private final BinaryInput input;
+		
+		// Decoder of strings without lone surrogates, that reports malformed UTF-8
+		private final CharsetDecoder utf8 = StandardCharsets.UTF_8.newDecoder()
+			.onMalformedInput(CodingErrorAction.REPORT)
+			.onUnmappableCharacter(CodingErrorAction.REPORT);
+		
+		// Distinct keys read so far
+		private String[] keys = new String[16];
+		private int keyCount;
+		
+		Decoder(
+			final BinaryInput input
+		) {
+			this.input = input;
+		}
+		
+		// Read the argument of a header, dying if it does not fit in a signed long, as no argument that is encoded does
+		private long argument(final int header) {
+			final int argument = header & VARINT_ARGUMENT;
+			if (argument < VARINT_ARGUMENT) {
+				return argument;
+			}
+			
+			final long rest = input.readVarint();
+			if ((rest < 0) || (rest > Long.MAX_VALUE - VARINT_ARGUMENT)) {
+				throw new RuntimeException(CORRUPT);
+			}
+			
+			return VARINT_ARGUMENT + rest;
+		}
+		
+		// Convert an argument to a length or count, dying if it is too large
+		private static int length(final long argument) {
+			if ((argument < 0) || (argument > Integer.MAX_VALUE)) {
+				throw new RuntimeException(CORRUPT);
+			}
+			
+			return (int)(argument);
+		}
+		
+		// Read a string of the given number of bytes, that contains lone surrogates if indicated.
+		// Dies if the bytes are not well formed UTF-8, rather than replacing them.
+		private String string(final int length, final boolean lone) {
+			input.require(length);
+			final String result;
+			if (lone) {
+				result = decodeSurrogates(input.buffer, input.pos, input.pos + length);
+			} else {
+				try {
+					result = utf8.decode(ByteBuffer.wrap(input.buffer, input.pos, length)).toString();
+				} catch (final CharacterCodingException e) {
+					throw new RuntimeException(CORRUPT, e);
+				}
+			}
+			input.pos += length;
+			
+			return result;
+		}
+		
+		// Decode UTF-8 that may contain lone surrogates encoded as if they were chars, which String would replace
+		private static String decodeSurrogates(final byte[] bytes, final int start, final int end) {
+			final char[] chars = new char[end - start];
+			int count = 0;
+			for (int i = start; i < end;) {
+				// A lead byte cannot be a continuation byte, and must lead at most 4 bytes
+				final int lead = bytes[i] & 0xFF;
+				if (((lead >= 0x80) && (lead < 0xC0)) || (lead >= 0xF8)) {
+					throw new RuntimeException(CORRUPT);
+				}
+				
+				final int length = lead < 0x80 ? 1 : lead < 0xE0 ? 2 : lead < 0xF0 ? 3 : 4;
+				if (i + length > end) {
+					throw new RuntimeException(CORRUPT);
+				}
+				
+				int codePoint = length == 1 ? lead : lead & (0x7F >> length);
+				for (int j = i + 1; j < i + length; j++) {
+					if ((bytes[j] & 0xC0) != 0x80) {
+						throw new RuntimeException(CORRUPT);
+					}
+					codePoint = (codePoint << 6) | (bytes[j] & 0x3F);
+				}
+				i += length;
+				
+				// Overlong encodings and code points past the last are not well formed
+				if ((codePoint < MIN_CODE_POINTS[length]) || (codePoint > Character.MAX_CODE_POINT)) {
+					throw new RuntimeException(CORRUPT);
+				}
+				count += Character.toChars(codePoint, chars, count);
+			}
+			
+			return new String(chars, 0, count);
+		}
+		
+		// Read a key, or look up a reference to one read before
+		private String key() {
+			final long reference = input.readVarint();
+			if (reference != 0) {
+				if ((reference < 0) || (reference > keyCount)) {
+					throw new RuntimeException(CORRUPT);
+				}
+				
+				return keys[(int)(reference - 1)];
+			}
+			
+			final int header = input.readByte();
+			final String result;
+			if ((header >>> 5) == STRING) {
+				result = string(length(argument(header)), false);
+			} else if (header == ((SIMPLE << 5) | SURROGATE_ARGUMENT)) {
+				result = string(length(input.readVarint()), true);
+			} else {
+				throw new RuntimeException(CORRUPT);
+			}
+			
+			if (keyCount < MAX_KEYS) {
+				if (keyCount == keys.length) {
+					keys = Arrays.copyOf(keys, keyCount * 2);
+				}
+				keys[keyCount++] = result;
+			}
+			
+			return result;
+		}
+		
+		// Read an inline number
+		private JSONNumber decimal(final long argument) {
+			final int flags = (int)(argument & ((1 << JSONNumber.FLAG_BITS) - 1));
+			final int fractionalLength = (int)((argument >>> JSONNumber.FLAG_BITS) & ((1 << FRACTIONAL_LENGTH_BITS) - 1));
+			final long exponentLength = argument >>> (JSONNumber.FLAG_BITS + FRACTIONAL_LENGTH_BITS);
+			final long digits = input.readVarint();
+			final long exponent = exponentLength == 0 ? 0 : input.readVarint();
+			
+			final JSONNumber result = (exponentLength > JSONNumber.INLINE_EXPONENT_DIGITS) || (exponent > Integer.MAX_VALUE) ?
+				null :
+				JSONNumber.ofInline(flags, digits, fractionalLength, (int)(exponent), (int)(exponentLength));
+			if (result == null) {
+				throw new RuntimeException(CORRUPT);
+			}
+			
+			return result;
+		}
+		
+		// Read the version, then the value. Objects and arrays are built with a stack of the ones being built.
+		JSONValue decode() {
+			final int version = input.readByte();
+			if (version != VERSION) {
+				throw new RuntimeException(String.format(VERSION_FMT, Integer.valueOf(version)));
+			}
+			
+			// Objects and arrays being built, and the number of values each still needs
+			JSONValue[] containers = new JSONValue[16];
+			int[] remaining = new int[16];
+			int depth = 0;
+			JSONValue result = null;
+			
+			do {
+				final JSONValue container = depth == 0 ? null : containers[depth - 1];
+				final String key = (container != null) && container.isObject() ? key() : null;
+				
+				final int header = input.readByte();
+				final long argument = argument(header);
+				int count = 0;
+				final JSONValue value;
+				
+				switch (header >>> 5) {
+					case SIMPLE:
+						if (argument == NULL_ARGUMENT) {
+							value = JSONValue.NULL_VALUE;
+						} else if (argument == FALSE_ARGUMENT) {
+							value = JSONValue.FALSE_VALUE;
+						} else if (argument == TRUE_ARGUMENT) {
+							value = JSONValue.TRUE_VALUE;
+						} else if (argument == SURROGATE_ARGUMENT) {
+							value = JSONValue.of(string(length(input.readVarint()), true));
+						} else {
+							throw new RuntimeException(CORRUPT);
+						}
+						break;
+					
+					case POSITIVE:
+						value = JSONValue.of(JSONNumber.of(argument));
+						break;
+					
+					case NEGATIVE:
+						value = JSONValue.of(JSONNumber.of(-argument - 1));
+						break;
+					
+					case DECIMAL:
+						value = JSONValue.of(decimal(argument));
+						break;
+					
+					case NUMBER_TEXT: {
+						final int length = length(argument);
+						input.require(length);
+						final String text = new String(input.buffer, input.pos, length, StandardCharsets.ISO_8859_1);
+						input.pos += length;
+						value = JSONValue.of(JSONNumber.ofIntLongFloatDoubleBigDecimal(text));
+						break;
+					}
+					
+					case STRING:
+						value = JSONValue.of(string(length(argument), false));
+						break;
+					
+					case ARRAY:
+						count = length(argument);
+						value = JSONValue.of(new ArrayList<>(Math.min(count, MAX_RESERVED)));
+						break;
+					
+					// Must be OBJECT
+					default:
+						count = length(argument);
+						value = JSONValue.of(new FlatObjectMap(Math.min(count, MAX_RESERVED)));
+				}
+				
+				// Add the value to the enclosing object or array
+				if (container == null) {
+					result = value;
+				} else {
+					if (key != null) {
+						container.asObject().put(key, value);
+					} else {
+						container.asArray().add(value);
+					}
+					remaining[depth - 1]--;
+				}
+				
+				// Start a new level for a non-empty object or array
+				if (count > 0) {
+					if (depth == containers.length) {
+						containers = Arrays.copyOf(containers, depth * 2);
+						remaining = Arrays.copyOf(remaining, depth * 2);
+					}
+					containers[depth] = value;
+					remaining[depth++] = count;
+				}
+				
+				// Close the levels that are complete
+				while ((depth > 0) && (remaining[depth - 1] == 0)) {
+					containers[--depth] = null;
+				}
+			} while (depth > 0);
+			
+			return result;
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package me.bantling.micro.json;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Supplier;
+
+import me.bantling.micro.function.Try;
+
+/*
+ * Split a series of UTF-8 buffers into lines, without decoding them.
+ * 
+ * A newline byte never occurs inside a multi byte UTF-8 sequence, so a line is everything up to the next newline byte.
+ * Each line is a slice of a buffer, except for a line that straddles buffers, which is copied. So the buffers must not
+ * be modified or reused while any line is in use. A line that straddles buffers is accumulated in an array that is kept
+ * across lines, and doubles in size as needed, then copied out, so a long line is copied a number of times proportional
+ * to its length.
+ */
+final class ByteLines implements Supplier<ByteBuffer> {
+	// Size of each chunk read from a stream
+	static final int CHUNK_SIZE = 65536;
+	
+	private final Iterator<ByteBuffer> buffers;
+	private ByteBuffer buffer;
+	
+	// Start of a line that straddles buffers, allocated on first use
+	private byte[] partial;
+	private int partialLength;
+	
+	// Construct
+	ByteLines(
+		final Iterator<ByteBuffer> buffers
+	) {
+		this.buffers = buffers;
+	}
+	
+	// Construct from a stream, which is read a chunk at a time into a new array for each chunk
+	static ByteLines of(
+		final InputStream stream
+	) {
+		return new ByteLines(new Iterator<ByteBuffer>() {
+			private byte[] chunk;
+			
+			@Override
+			public boolean hasNext() {
+				if (chunk == null) {
+					chunk = Try.get(() -> stream.readNBytes(CHUNK_SIZE));
+				}
+				
+				return chunk.length > 0;
+			}
+			
+			@Override
+			public ByteBuffer next() {
+				if (! hasNext()) {
+					throw new NoSuchElementException();
+				}
+				
+				final ByteBuffer result = ByteBuffer.wrap(chunk);
+				chunk = null;
+				
+				return result;
+			}
+		});
+	}
+	
+	// Append the remaining bytes of a line to the partial line
+	private void append(final ByteBuffer line) {
+		final int count = line.remaining();
+		if (partial == null) {
+			partial = new byte[Math.max(CHUNK_SIZE, count)];
+		} else if (partialLength + count > partial.length) {
+			partial = Arrays.copyOf(partial, Math.max(partial.length * 2, partialLength + count));
+		}
+		
+		line.get(partial, partialLength, count);
+		partialLength += count;
+	}
+	
+	// A copy of the partial line, which is then empty
+	private ByteBuffer takePartial() {
+		final ByteBuffer result = ByteBuffer.wrap(Arrays.copyOf(partial, partialLength));
+		partialLength = 0;
+		return result;
+	}
+	
+	// The next line, without the newline, or null if there are no more lines
+	@Override
+	public ByteBuffer get() {
+		while (true) {
+			if ((buffer == null) || (! buffer.hasRemaining())) {
+				if (! buffers.hasNext()) {
+					return partialLength > 0 ? takePartial() : null;
+				}
+				
+				buffer = buffers.next().duplicate();
+				continue;
+			}
+			
+			// Find the end of the line in this buffer
+			final int end = buffer.limit();
+			int i = buffer.position();
+			while ((i < end) && (buffer.get(i) != '\n')) {
+				i++;
+			}
+			
+			final ByteBuffer line = buffer.duplicate();
+			line.limit(i);
+			buffer.position(i < end ? i + 1 : end);
+			
+			// The usual case of a line that lies in one buffer
+			if ((partialLength == 0) && (i < end)) {
+				return line;
+			}
+			
+			// Accumulate a line that straddles buffers
+			append(line);
+			if (i < end) {
+				return takePartial();
+			}
+		}
+	}
+}
@@ -0,0 +1,143 @@
+package me.bantling.micro.json;
+
+import java.io.Reader;
+import java.util.Objects;
+
+import me.bantling.micro.function.Try;
+import me.bantling.micro.util.Unicode;
+
+/*
+ * A LexerInput that reads UTF-16 characters from a Reader a block at a time into a char[] window.
+ * A char[] can also be lexed in place, in which case the array is the window.
+ * 
+ * When the window is refilled, the last two characters are kept at the start of the window,
+ * so that unread can always back up over a surrogate pair that was split across two blocks.
+ */
+final class CharLexerInput extends LexerInput {
+	// Number of chars to read from the Reader at a time
+	static final int BUFFER_SIZE = 8192;
+	
+	// Number of chars kept from the end of the window when it is refilled
+	private static final int KEEP = 2;
+	
+	// Size of the window for a Reader
+	static final int WINDOW_SIZE = KEEP + BUFFER_SIZE;
+	
+	// Underlying Reader, null if the window is all the input there is
+	private final Reader reader;
+	
+	// Window of chars, index of next char to read, and index after last char read from reader
+	private final char[] buffer;
+	private int pos;
+	private int limit;
+	
+	// Offset of the first char of the window from the start of the input
+	private long base;
+	
+	// Number of chars in last code point read, so it can be unread
+	private int lastLength;
+	
+	// Construct
+	CharLexerInput(
+		final Reader reader
+	) {
+		this(reader, new char[WINDOW_SIZE]);
+	}
+	
+	// Construct with a window of WINDOW_SIZE chars, that can be reused once this input is no longer used
+	CharLexerInput(
+		final Reader reader,
+		final char[] window
+	) {
+		this.reader = Objects.requireNonNull(reader, "reader");
+		this.buffer = window;
+	}
+	
+	// Construct from an array slice, which is lexed in place
+	CharLexerInput(
+		final char[] chars,
+		final int offset,
+		final int length
+	) {
+		Objects.checkFromIndexSize(offset, length, chars.length);
+		
+		this.reader = null;
+		this.buffer = chars;
+		this.pos = offset;
+		this.limit = offset + length;
+		this.base = -offset;
+	}
+	
+	// Refill the window, keeping the last chars read.
+	// Return true if at least one more char is available.
+	private boolean fill() {
+		if (reader == null) {
+			return false;
+		}
+		
+		final int keep = Math.min(KEEP, limit);
+		System.arraycopy(buffer, limit - keep, buffer, 0, keep);
+		base += limit - keep;
+		pos = keep;
+		limit = keep;
+		
+		final int count = Try.getInt(() -> reader.read(buffer, keep, BUFFER_SIZE));
+		if (count > 0) {
+			limit += count;
+		}
+		
+		return count > 0;
+	}
+	
+	@Override
+	int read() {
+		if ((pos == limit) && (! fill())) {
+			return -1;
+		}
+		
+		final char theChar = buffer[pos++];
+		if (! Character.isHighSurrogate(theChar)) {
+			lastLength = 1;
+			return theChar;
+		}
+		
+		// The low surrogate may be in the next block
+		final int low = ((pos < limit) || fill()) ? buffer[pos++] : -1;
+		lastLength = 2;
+		return Unicode.toCodePoint(theChar, low, position);
+	}
+	
+	// Any chars other than a quote, backslash, control char, or surrogate are copied as is
+	@Override
+	int scanString(
+		final char[] dest,
+		final int offset
+	) {
+		final int end = Math.min(limit, pos + dest.length - offset);
+		int index = pos;
+		while (index < end) {
+			final char theChar = buffer[index];
+			if ((theChar < ' ') || (theChar == '"') || (theChar == '\\') || Character.isSurrogate(theChar)) {
+				break;
+			}
+			index++;
+		}
+		
+		final int count = index - pos;
+		System.arraycopy(buffer, pos, dest, offset, count);
+		pos = index;
+		lastLength = 0;
+		return count;
+	}
+	
+	@Override
+	void unread() {
+		pos -= lastLength;
+		lastLength = 0;
+	}
+	
+	@Override
+	long offset() {
+		return base + pos - lastLength;
+	}
+}
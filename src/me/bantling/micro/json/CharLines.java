@@ -0,0 +1,105 @@
+package me.bantling.micro.json;
+
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+import me.bantling.micro.function.Try;
+
+/*
+ * Split a Reader into lines, where a line ends at a newline only, the same as ByteLines, so that NDJSON has the same
+ * lines whether it is read as chars or bytes. BufferedReader.readLine is not used, as it also ends a line at a lone
+ * carriage return. A carriage return before a newline is dropped.
+ * 
+ * The reader is read a chunk at a time, and each line is copied into its own array, as lines are kept until they are
+ * parsed. A line that straddles chunks is first accumulated in a buffer that is kept across lines, and doubles in size
+ * as needed, so a long line is copied a number of times proportional to its length, not to the square of it.
+ */
+final class CharLines implements Supplier<char[]> {
+	// Size of each chunk read from the reader
+	static final int CHUNK_SIZE = 8192;
+	
+	private final Reader reader;
+	
+	// Chunk of chars, index of next char to split, and index after last char read
+	private final char[] chunk = new char[CHUNK_SIZE];
+	private int pos;
+	private int limit;
+	
+	// Start of a line that straddles chunks, allocated on first use
+	private char[] partial;
+	private int partialLength;
+	
+	// Construct
+	CharLines(
+		final Reader reader
+	) {
+		this.reader = reader;
+	}
+	
+	// A copy of chars[start, end), without a trailing carriage return
+	private static char[] line(
+		final char[] chars,
+		final int start,
+		final int end
+	) {
+		return Arrays.copyOfRange(chars, start, (end > start) && (chars[end - 1] == '\r') ? end - 1 : end);
+	}
+	
+	// Append chunk[pos, end) to the partial line
+	private void append(final int end) {
+		final int count = end - pos;
+		if (partial == null) {
+			partial = new char[Math.max(CHUNK_SIZE, count)];
+		} else if (partialLength + count > partial.length) {
+			partial = Arrays.copyOf(partial, Math.max(partial.length * 2, partialLength + count));
+		}
+		
+		System.arraycopy(chunk, pos, partial, partialLength, count);
+		partialLength += count;
+	}
+	
+	// The partial line, which is then empty
+	private char[] takePartial() {
+		final char[] result = line(partial, 0, partialLength);
+		partialLength = 0;
+		return result;
+	}
+	
+	// The next line, without the newline, or null if there are no more lines
+	@Override
+	public char[] get() {
+		while (true) {
+			if (pos == limit) {
+				final int count = Try.getInt(() -> reader.read(chunk, 0, CHUNK_SIZE));
+				if (count < 1) {
+					return partialLength > 0 ? takePartial() : null;
+				}
+				
+				pos = 0;
+				limit = count;
+			}
+			
+			// Find the end of the line in this chunk
+			int i = pos;
+			while ((i < limit) && (chunk[i] != '\n')) {
+				i++;
+			}
+			
+			// The usual case of a line that lies in one chunk
+			if ((partialLength == 0) && (i < limit)) {
+				final char[] result = line(chunk, pos, i);
+				pos = i + 1;
+				return result;
+			}
+			
+			// Accumulate a line that straddles chunks
+			append(i);
+			if (i < limit) {
+				pos = i + 1;
+				return takePartial();
+			}
+			pos = limit;
+		}
+	}
+}
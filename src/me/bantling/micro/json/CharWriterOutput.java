@@ -0,0 +1,96 @@
+package me.bantling.micro.json;
+
+import java.io.Writer;
+import java.util.Objects;
+
+import me.bantling.micro.function.Try;
+
+/*
+ * A WriterOutput that buffers UTF-16 characters in a char[], and writes them to a Writer a block at a time.
+ */
+final class CharWriterOutput extends WriterOutput {
+	// Number of chars to buffer before writing them to the Writer
+	static final int BUFFER_SIZE = 8192;
+	
+	// Underlying Writer
+	private final Writer writer;
+	
+	// Buffer of chars, and index of next char to write
+	private final char[] buffer = new char[BUFFER_SIZE];
+	private int pos;
+	
+	// Construct
+	CharWriterOutput(
+		final Writer writer
+	) {
+		this.writer = Objects.requireNonNull(writer, "writer");
+	}
+	
+	// Write the buffer to the Writer
+	private void drain() {
+		if (pos > 0) {
+			final int count = pos;
+			Try.to(() -> writer.write(buffer, 0, count));
+			pos = 0;
+		}
+	}
+	
+	@Override
+	void write(final char c) {
+		if (pos == BUFFER_SIZE) {
+			drain();
+		}
+		
+		buffer[pos++] = c;
+	}
+	
+	@Override
+	void write(final String ascii) {
+		final int length = ascii.length();
+		for (int i = 0, count; i < length; i += count) {
+			if (pos == BUFFER_SIZE) {
+				drain();
+			}
+			
+			count = Math.min(length - i, BUFFER_SIZE - pos);
+			ascii.getChars(i, i + count, buffer, pos);
+			pos += count;
+		}
+	}
+	
+	@Override
+	void write(final byte[] bytes) {
+		for (final byte b : bytes) {
+			if (pos == BUFFER_SIZE) {
+				drain();
+			}
+			
+			buffer[pos++] = (char)(b);
+		}
+	}
+	
+	@Override
+	void writeChars(final char[] chars, final int start, final int end) {
+		for (int i = start, count; i < end; i += count) {
+			if (pos == BUFFER_SIZE) {
+				drain();
+			}
+			
+			count = Math.min(end - i, BUFFER_SIZE - pos);
+			System.arraycopy(chars, i, buffer, pos, count);
+			pos += count;
+		}
+	}
+	
+	@Override
+	void flush() {
+		drain();
+		Try.to(writer::flush);
+	}
+	
+	@Override
+	void close() {
+		drain();
+		Try.to(writer::close);
+	}
+}
@@ -0,0 +1,172 @@
+package me.bantling.micro.json;
+
+import java.math.BigInteger;
+
+/*
+ * Convert a decimal number of the form mantissa * 10^exponent to the nearest double, without going through a String.
+ * 
+ * The lexer accumulates the mantissa and exponent as it scans the digits of a number, so this only has to do some
+ * arithmetic:
+ * - If the mantissa and power of ten are both exactly representable as doubles, a single multiply or divide is
+ *   correctly rounded (Clinger's fast path).
+ * - Otherwise, the Eisel-Lemire algorithm multiplies the mantissa by a 128-bit approximation of the power of ten, which
+ *   gives the correctly rounded result except in rare cases where the approximation is too close to a halfway point
+ *   to decide. Those cases are reported as NaN, and the caller falls back to BigDecimal.
+ * - Mantissas with more than 19 significant digits are truncated to 19. If the truncated mantissa and the truncated
+ *   mantissa + 1 round to the same double, that is the answer, otherwise the caller falls back to BigDecimal.
+ */
+final class DecimalToDouble {
+	// Maximum number of significant decimal digits that always fit in an unsigned 64-bit mantissa
+	static final int MAX_DIGITS = 19;
+	
+	// Range of exponents the table of powers of ten covers
+	private static final int MIN_EXPONENT = -348;
+	private static final int MAX_EXPONENT = 347;
+	
+	// Powers of ten that are exact doubles, for the fast path
+	private static final double[] EXACT_POWERS = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+	
+	// High and low 64 bits of each power of ten from MIN_EXPONENT to MAX_EXPONENT, normalized so the highest bit is set,
+	// and rounded down to 128 bits. Computed once rather than listing 1,392 hex literals.
+	private static final long[] POWERS_HIGH = new long[MAX_EXPONENT - MIN_EXPONENT + 1];
+	private static final long[] POWERS_LOW = new long[MAX_EXPONENT - MIN_EXPONENT + 1];
+	
+	static {
+		final BigInteger mask = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+		for (int exponent = MIN_EXPONENT; exponent <= MAX_EXPONENT; exponent++) {
+			final BigInteger power = BigInteger.TEN.pow(Math.abs(exponent));
+			BigInteger normalized;
+			if (exponent >= 0) {
+				final int shift = power.bitLength() - 128;
+				normalized = shift > 0 ? power.shiftRight(shift) : power.shiftLeft(-shift);
+			} else {
+				// floor(2^k / 10^-exponent), where k is chosen to produce exactly 128 bits
+				normalized = BigInteger.ONE.shiftLeft(power.bitLength() + 127).divide(power);
+			}
+			
+			POWERS_HIGH[exponent - MIN_EXPONENT] = normalized.shiftRight(64).longValue();
+			POWERS_LOW[exponent - MIN_EXPONENT] = normalized.and(mask).longValue();
+		}
+	}
+	
+	private DecimalToDouble() {
+		throw new RuntimeException();
+	}
+	
+	// Convert the unsigned mantissa * 10^exponent to the nearest double, or NaN if the caller has to fall back to a
+	// slower exact conversion.
+	// If truncated is true, the mantissa has MAX_DIGITS digits, and more non-zero digits followed it. The result is
+	// only known if rounding the mantissa and the mantissa + 1 give the same result.
+	static double toDouble(
+		final boolean negative,
+		final long mantissa,
+		final int exponent,
+		final boolean truncated
+	) {
+		final double result = toDouble(negative, mantissa, exponent);
+		return (! truncated) || (result == toDouble(negative, mantissa + 1, exponent)) ? result : Double.NaN;
+	}
+	
+	// Convert the unsigned mantissa * 10^exponent to the nearest double, or NaN if the caller has to fall back to a
+	// slower exact conversion.
+	static double toDouble(
+		final boolean negative,
+		final long mantissa,
+		final int exponent
+	) {
+		if (mantissa == 0) {
+			return negative ? -0.0 : 0.0;
+		}
+		
+		// Fast path
+		if ((mantissa >= 0) && (mantissa < (1L << 53)) && (exponent >= -22) && (exponent <= 22)) {
+			double result = mantissa;
+			result = exponent < 0 ? result / EXACT_POWERS[-exponent] : result * EXACT_POWERS[exponent];
+			return negative ? -result : result;
+		}
+		
+		// Out of range exponents: a mantissa of up to 19 digits cannot make these finite or nonzero
+		if (exponent > 308) {
+			return negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+		}
+		if (exponent < -(324 + MAX_DIGITS)) {
+			return negative ? -0.0 : 0.0;
+		}
+		if (exponent < MIN_EXPONENT) {
+			return Double.NaN;
+		}
+		
+		return eiselLemire(negative, mantissa, exponent);
+	}
+	
+	// The Eisel-Lemire algorithm, as described in "Number Parsing at a Gigabyte per Second" by Daniel Lemire
+	private static double eiselLemire(
+		final boolean negative,
+		final long mantissa,
+		final int exponent
+	) {
+		// Normalize mantissa so highest bit is set
+		final int leadingZeros = Long.numberOfLeadingZeros(mantissa);
+		final long normalized = mantissa << leadingZeros;
+		
+		// floor(log2(10^exponent)) + 64 + bias - leadingZeros
+		long binaryExponent = ((217706L * exponent) >> 16) + 64 + 1023 - leadingZeros;
+		
+		// Multiply by high 64 bits of power
+		final int index = exponent - MIN_EXPONENT;
+		long high = Math.multiplyHigh(normalized, POWERS_HIGH[index]) + correction(normalized, POWERS_HIGH[index]);
+		long low = normalized * POWERS_HIGH[index];
+		
+		// If the low bits are all ones, the truncated part of the power may carry into the result: use all 128 bits
+		if (((high & 0x1FF) == 0x1FF) && (Long.compareUnsigned(low + normalized, normalized) < 0)) {
+			final long high2 = Math.multiplyHigh(normalized, POWERS_LOW[index]) + correction(normalized, POWERS_LOW[index]);
+			final long low2 = normalized * POWERS_LOW[index];
+			long mergedHigh = high;
+			final long mergedLow = low + high2;
+			if (Long.compareUnsigned(mergedLow, low) < 0) {
+				mergedHigh++;
+			}
+			
+			if (((mergedHigh & 0x1FF) == 0x1FF) && (mergedLow + 1 == 0) && (Long.compareUnsigned(low2 + normalized, normalized) < 0)) {
+				return Double.NaN;
+			}
+			
+			high = mergedHigh;
+			low = mergedLow;
+		}
+		
+		// Shift to 54 bits
+		final long upperBit = high >>> 63;
+		long result = high >>> (upperBit + 9);
+		binaryExponent -= 1 ^ upperBit;
+		
+		// Halfway ambiguity
+		if ((low == 0) && ((high & 0x1FF) == 0) && ((result & 3) == 1)) {
+			return Double.NaN;
+		}
+		
+		// Round from 54 to 53 bits
+		result += result & 1;
+		result >>>= 1;
+		if ((result >>> 53) > 0) {
+			result >>>= 1;
+			binaryExponent++;
+		}
+		
+		// Subnormal, infinite, or NaN results are left to the fallback
+		if ((binaryExponent <= 0) || (binaryExponent >= 0x7FF)) {
+			return Double.NaN;
+		}
+		
+		final long bits = (binaryExponent << 52) | (result & 0x000FFFFFFFFFFFFFL) | (negative ? 0x8000000000000000L : 0);
+		return Double.longBitsToDouble(bits);
+	}
+	
+	// Math.multiplyHigh is signed, correct it to unsigned
+	private static long correction(final long x, final long y) {
+		return ((x >> 63) & y) + ((y >> 63) & x);
+	}
+}
@@ -0,0 +1,50 @@
+package me.bantling.micro.json;
+
+/*
+ * A bounded cache of object key names that have already been quoted, escaped, encoded as UTF-8, and followed by a
+ * colon, so that a JSONWriter writing UTF-8 can copy the bytes of a recurring key rather than escape and encode it
+ * every time. When many objects with the same shape are written, eg each response of a REST handler, every key is
+ * only encoded once.
+ * 
+ * Like KeyCache, the cache is a KeyTable, an open addressed table keyed by the String hash code of the key, that never
+ * grows.
+ * 
+ * A cache can be reused by any number of writers, including writers on different threads. Each slot holds an
+ * immutable entry, so lookups are not synchronized: concurrent writers may occasionally miss and encode a key again,
+ * but always get the bytes of the key they asked for.
+ */
+public final class EncodedKeyCache {
+	// Defaults for the no args constructor
+	public static final int DEFAULT_CAPACITY       = 1024;
+	public static final int DEFAULT_MAX_KEY_LENGTH = 64;
+	
+	// Table of keys, where the value of each key is its encoded bytes
+	private final KeyTable<byte[]> table;
+	
+	// Construct with default capacity and maximum key length
+	public EncodedKeyCache() {
+		this(DEFAULT_CAPACITY, DEFAULT_MAX_KEY_LENGTH);
+	}
+	
+	// Construct with the given capacity, rounded up to a power of two, and maximum key length
+	public EncodedKeyCache(
+		final int capacity,
+		final int maxKeyLength
+	) {
+		this.table = new KeyTable<>(capacity, maxKeyLength, JSONWriter::encodeKey);
+	}
+	
+	// The encoded bytes of a key, or null if the key is too long to cache
+	byte[] encoded(final String key) {
+		return table.get(key);
+	}
+	
+	// The encoded bytes of a key given as chars, or null if the key is too long to cache
+	byte[] encoded(
+		final char[] chars,
+		final int offset,
+		final int length
+	) {
+		return table.get(chars, offset, length);
+	}
+}
@@ -0,0 +1,231 @@
+package me.bantling.micro.json;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/*
+ * Insertion ordered map of object keys to values, that is much smaller than a LinkedHashMap.
+ * 
+ * Keys and values are kept in a pair of arrays in insertion order, so there is no object per entry. Most objects have
+ * few keys, which are found by a linear scan. Above HASH_THRESHOLD keys, an open addressed table of indexes into the
+ * arrays is added, so lookups stay constant time. As with LinkedHashMap, replacing the value of a key does not change
+ * its position.
+ */
+final class FlatObjectMap extends AbstractMap<String, JSONValue> {
+	// Number of keys above which keys are hashed
+	static final int HASH_THRESHOLD = 8;
+	
+	private String[] keys;
+	private JSONValue[] values;
+	private int size;
+	
+	// Index + 1 of the entry for each slot, 0 for an empty slot, or null if the keys are not hashed
+	private int[] table;
+	
+	// Construct
+	FlatObjectMap() {
+		this(4);
+	}
+	
+	// Construct with room for a number of keys
+	FlatObjectMap(final int capacity) {
+		keys = new String[capacity];
+		values = new JSONValue[capacity];
+	}
+	
+	// Spread the hash of a key over the slots of the table
+	private int slot(final Object key) {
+		final int h = Objects.hashCode(key);
+		return (h ^ (h >>> 16)) & (table.length - 1);
+	}
+	
+	// Index of a key, or -1 if it is not present
+	private int indexOf(final Object key) {
+		if (table == null) {
+			for (int i = 0; i < size; i++) {
+				if (Objects.equals(keys[i], key)) {
+					return i;
+				}
+			}
+			
+			return -1;
+		}
+		
+		for (int s = slot(key); table[s] != 0; s = (s + 1) & (table.length - 1)) {
+			final int i = table[s] - 1;
+			if (Objects.equals(keys[i], key)) {
+				return i;
+			}
+		}
+		
+		return -1;
+	}
+	
+	// Add an entry index to the table
+	private void hash(final int i) {
+		int s = slot(keys[i]);
+		while (table[s] != 0) {
+			s = (s + 1) & (table.length - 1);
+		}
+		table[s] = i + 1;
+	}
+	
+	// Rebuild the table, with at most half of the slots used, or drop it if there are too few keys
+	private void rehash() {
+		if (size <= HASH_THRESHOLD) {
+			table = null;
+			return;
+		}
+		
+		table = new int[Integer.highestOneBit(size * 4 - 1)];
+		for (int i = 0; i < size; i++) {
+			hash(i);
+		}
+	}
+	
+	// Remove the entry at an index
+	private void removeAt(final int i) {
+		System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+		System.arraycopy(values, i + 1, values, i, size - i - 1);
+		size--;
+		keys[size] = null;
+		values[size] = null;
+		
+		if (table != null) {
+			rehash();
+		}
+	}
+	
+	// Shrink the arrays to the number of entries
+	void trim() {
+		if (keys.length > size) {
+			keys = Arrays.copyOf(keys, size);
+			values = Arrays.copyOf(values, size);
+		}
+	}
+	
+	@Override
+	public int size() {
+		return size;
+	}
+	
+	@Override
+	public boolean containsKey(final Object key) {
+		return indexOf(key) >= 0;
+	}
+	
+	@Override
+	public JSONValue get(final Object key) {
+		final int i = indexOf(key);
+		return i >= 0 ? values[i] : null;
+	}
+	
+	@Override
+	public JSONValue put(final String key, final JSONValue value) {
+		final int i = indexOf(key);
+		if (i >= 0) {
+			final JSONValue old = values[i];
+			values[i] = value;
+			return old;
+		}
+		
+		if (size == keys.length) {
+			final int length = Math.max(4, size * 2);
+			keys = Arrays.copyOf(keys, length);
+			values = Arrays.copyOf(values, length);
+		}
+		
+		keys[size] = key;
+		values[size] = value;
+		size++;
+		
+		if ((table != null) && (size * 2 <= table.length)) {
+			hash(size - 1);
+		} else if (size > HASH_THRESHOLD) {
+			rehash();
+		}
+		
+		return null;
+	}
+	
+	@Override
+	public JSONValue remove(final Object key) {
+		final int i = indexOf(key);
+		if (i < 0) {
+			return null;
+		}
+		
+		final JSONValue old = values[i];
+		removeAt(i);
+		
+		return old;
+	}
+	
+	@Override
+	public void clear() {
+		Arrays.fill(keys, 0, size, null);
+		Arrays.fill(values, 0, size, null);
+		size = 0;
+		table = null;
+	}
+	
+	@Override
+	public Set<Map.Entry<String, JSONValue>> entrySet() {
+		return new AbstractSet<>() {
+			@Override
+			public int size() {
+				return size;
+			}
+			
+			@Override
+			public Iterator<Map.Entry<String, JSONValue>> iterator() {
+				return new Iterator<>() {
+					private int next;
+					private int last = -1;
+					
+					@Override
+					public boolean hasNext() {
+						return next < size;
+					}
+					
+					@Override
+					public Map.Entry<String, JSONValue> next() {
+						if (! hasNext()) {
+							throw new NoSuchElementException();
+						}
+						
+						last = next++;
+						final int i = last;
+						
+						return new AbstractMap.SimpleEntry<>(keys[i], values[i]) {
+							private static final long serialVersionUID = 1L;
+							
+							@Override
+							public JSONValue setValue(final JSONValue value) {
+								values[i] = value;
+								return super.setValue(value);
+							}
+						};
+					}
+					
+					@Override
+					public void remove() {
+						if (last < 0) {
+							throw new IllegalStateException();
+						}
+						
+						removeAt(last);
+						next = last;
+						last = -1;
+					}
+				};
+			}
+		};
+	}
+}
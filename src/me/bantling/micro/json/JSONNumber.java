@@ -3,25 +3,192 @@ package me.bantling.micro.json;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.Objects;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 // A JSON number, which can have any number of digits for the integer, fractional, and exponent parts.
 public final class JSONNumber {
-    // Floats, doubles, and bigdecimal vary in their representation as a string
-    // The fractional and exponent parts may not be present if they are 0
-    // If the fractional part is present, the exponent part may not be present if it is 0
-    // The exponent char may be e or E
-    // The sign after the exponent char may not be present
-    private static final Pattern INT_LONG_FLOAT_DOUBLE_BIGDECIMAL_REGEX =
-        Pattern.compile("^(-)?([0-9]+)(?:[.]([0-9]+)(?:[eE]([-+])?([0-9]+))?)?$");
-    
+	static final String NOT_A_NUMBER_FMT = "%s is not a correctly formatted JSON number";
+	
+	// Most numbers are stored inline as primitives: the integer and fractional digits as one unsigned long, and the
+	// exponent digits as an unsigned int. The lengths keep any leading zeros of the fractional and exponent parts, so
+	// the strings can be rebuilt exactly when they are asked for, and equals compares the same parts it always has.
+	// Only numbers with too many digits to store inline keep their parts as strings.
+	static final int INLINE_DIGITS = 18;
+	static final int INLINE_EXPONENT_DIGITS = 9;
+	
+	// Longest text of an inline number: sign, digits, decimal point, exponent char and sign, and exponent digits
+	static final int MAX_INLINE_CHARS = 1 + INLINE_DIGITS + 1 + 2 + INLINE_EXPONENT_DIGITS;
+	
+	// Powers of ten that split the inline digits into the integer and fractional parts
+	private static final long[] POWERS_OF_TEN = new long[INLINE_DIGITS + 1];
+	
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i <= INLINE_DIGITS; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+		}
+	}
+	
+	// Bits of flags
+	private static final int POSITIVE = 1;
+	private static final int POSITIVE_EXPONENT = 2;
+	private static final int UPPER_CASE_E = 4;
+	private static final int EXPONENT_SIGN = 8;
+	
+	// Number of bits used by flags
+	static final int FLAG_BITS = 4;
+	
+	private final byte flags;
+	private final byte fractionalLength;
+	private final byte exponentLength;
+	private final int exponent;
+	private final long digits;
+	
+	// The text, only if it cannot be rebuilt from the inline parts
 	private final String string;
-	private boolean positive;
-	private String integer;
-	private String fractional;
-	private boolean positiveExponent;
-	private String exponent;
+	
+	// The parts, only if they are too large to store inline
+	private final Digits big;
+	
+	// The parts of a number that is too large to store inline, with the value accumulated by the Lexer while scanning,
+	// if any, so conversions do not have to parse the strings again.
+	// The number is (unsigned) mantissa * 10^decimalExponent, where truncated indicates significant digits were dropped.
+	private static final class Digits {
+		// The text of a lexed number, that the parts are split from when they are first asked for
+		final String text;
+		final int integerLength;
+		final int fractionalLength;
+		final int exponentLength;
+		final boolean accumulated;
+		final long mantissa;
+		final int decimalExponent;
+		final boolean truncated;
+		
+		// Parts and conversions are computed when first asked for.
+		// They are immutable, so threads that race to compute one at worst compute it more than once.
+		private String integer;
+		private String fractional;
+		private String exponent;
+		private Long integerValue;
+		private Double doubleValue;
+		private BigDecimal bigDecimal;
+		
+		// Construct from parts
+		Digits(
+			final String integer,
+			final String fractional,
+			final String exponent
+		) {
+			this.text = null;
+			this.integerLength = integer.length();
+			this.fractionalLength = fractional.length();
+			this.exponentLength = exponent.length();
+			this.accumulated = false;
+			this.mantissa = 0;
+			this.decimalExponent = 0;
+			this.truncated = false;
+			this.integer = integer;
+			this.fractional = fractional;
+			this.exponent = exponent;
+		}
+		
+		// Construct from the text of a lexed number and the lengths of its parts, with the value accumulated by the Lexer
+		Digits(
+			final String text,
+			final int integerLength,
+			final int fractionalLength,
+			final int exponentLength,
+			final long mantissa,
+			final int decimalExponent,
+			final boolean truncated
+		) {
+			this.text = text;
+			this.integerLength = integerLength;
+			this.fractionalLength = fractionalLength;
+			this.exponentLength = exponentLength;
+			this.accumulated = true;
+			this.mantissa = mantissa;
+			this.decimalExponent = decimalExponent;
+			this.truncated = truncated;
+		}
+		
+		// Where the integer part starts in the text, after an optional minus sign
+		private int integerStart() {
+			return text.charAt(0) == '-' ? 1 : 0;
+		}
+		
+		String integer() {
+			String result = integer;
+			if (result == null) {
+				final int start = integerStart();
+				integer = result = text.substring(start, start + integerLength);
+			}
+			
+			return result;
+		}
+		
+		String fractional() {
+			String result = fractional;
+			if (result == null) {
+				// Skip the decimal point
+				final int start = integerStart() + integerLength + 1;
+				fractional = result = fractionalLength == 0 ? "" : text.substring(start, start + fractionalLength);
+			}
+			
+			return result;
+		}
+		
+		String exponent() {
+			String result = exponent;
+			if (result == null) {
+				// The exponent is always last
+				exponent = result = exponentLength == 0 ? "" : text.substring(text.length() - exponentLength);
+			}
+			
+			return result;
+		}
+		
+		// True if the accumulated mantissa is exactly the integer part, so it does not have to be parsed
+		boolean mantissaIsInteger() {
+			return accumulated && (! truncated) && (decimalExponent == 0) && (fractionalLength == 0) && (exponentLength == 0);
+		}
+		
+		// The integer part as a long
+		long integerValue() {
+			Long result = integerValue;
+			if (result == null) {
+				integerValue = result = Long.valueOf(
+					mantissaIsInteger() && (mantissa >= 0) ?
+						mantissa :
+						Long.parseLong(integer())
+				);
+			}
+			
+			return result.longValue();
+		}
+		
+		double doubleValue(final boolean negative, final String string) {
+			Double result = doubleValue;
+			if (result == null) {
+				double value =
+					accumulated ? DecimalToDouble.toDouble(negative, mantissa, decimalExponent, truncated) : Double.NaN;
+				if (Double.isNaN(value)) {
+					value = Double.parseDouble(string);
+				}
+				doubleValue = result = Double.valueOf(value);
+			}
+			
+			return result.doubleValue();
+		}
+		
+		BigDecimal bigDecimalValue(final String string) {
+			BigDecimal result = bigDecimal;
+			if (result == null) {
+				bigDecimal = result = new BigDecimal(string);
+			}
+			
+			return result;
+		}
+	}
 	
 	//====  Construct
 	
@@ -33,85 +200,252 @@ public final class JSONNumber {
 		final boolean positiveExponent,
 		final String exponent
 	) {
+		Objects.requireNonNull(string, "string");
+		Objects.requireNonNull(integer, "integer");
+		final String fractionalPart = fractional == null ? "" : fractional;
+		final String exponentPart = exponent == null ? "" : exponent;
+		
+		// Parts that are too long or are not all digits cannot be stored inline
+		long inlineDigits = -1;
+		long exponentDigits = -1;
+		if (fitsInline(
+			integer.length(),
+			integer.isEmpty() ? '0' : integer.charAt(0),
+			fractionalPart.length(),
+			exponentPart.length()
+		)) {
+			inlineDigits = digitsOf(fractionalPart, digitsOf(integer, 0));
+			exponentDigits = digitsOf(exponentPart, 0);
+		}
+		
+		if ((inlineDigits >= 0) && (exponentDigits >= 0)) {
+			this.flags = (byte)(
+				(positive ? POSITIVE : 0) |
+				(positiveExponent ? POSITIVE_EXPONENT : 0) |
+				(string.indexOf('E') >= 0 ? UPPER_CASE_E : 0) |
+				((! positiveExponent) || (string.indexOf('+') >= 0) ? EXPONENT_SIGN : 0)
+			);
+			this.fractionalLength = (byte)(fractionalPart.length());
+			this.exponentLength = (byte)(exponentPart.length());
+			this.exponent = (int)(exponentDigits);
+			this.digits = inlineDigits;
+			this.big = null;
+			
+			// Only keep the text if it is not what would be rebuilt from the parts
+			this.string = string.equals(inlineString()) ? null : string;
+		} else {
+			this.flags = (byte)((positive ? POSITIVE : 0) | (positiveExponent ? POSITIVE_EXPONENT : 0));
+			this.fractionalLength = 0;
+			this.exponentLength = 0;
+			this.exponent = 0;
+			this.digits = 0;
+			this.string = string;
+			this.big = new Digits(integer, fractionalPart, exponentPart);
+		}
+	}
+	
+	// Construct from the text of a lexed number that is too large to store inline, and the lengths of its parts.
+	// The parts are only split from the text if they are asked for.
+	JSONNumber(
+		final String string,
+		final boolean positive,
+		final int integerLength,
+		final int fractionalLength,
+		final boolean positiveExponent,
+		final int exponentLength,
+		final long mantissa,
+		final int decimalExponent,
+		final boolean truncated
+	) {
+		this.flags = (byte)((positive ? POSITIVE : 0) | (positiveExponent ? POSITIVE_EXPONENT : 0));
+		this.fractionalLength = 0;
+		this.exponentLength = 0;
+		this.exponent = 0;
+		this.digits = 0;
 		this.string = Objects.requireNonNull(string, "string");
-		this.positive = positive;
-		this.integer = Objects.requireNonNull(integer, "integer");
-		this.fractional = fractional == null ? "" : fractional;
-		this.positiveExponent = positiveExponent;
-		this.exponent = exponent == null ? "" : exponent;
+		this.big = new Digits(string, integerLength, fractionalLength, exponentLength, mantissa, decimalExponent, truncated);
+	}
+	
+	// Construct inline, from parts already checked with fitsInline
+	JSONNumber(
+		final boolean positive,
+		final long digits,
+		final int fractionalLength,
+		final boolean positiveExponent,
+		final int exponent,
+		final int exponentLength,
+		final boolean upperCaseE,
+		final boolean exponentSign
+	) {
+		this.flags = (byte)(
+			(positive ? POSITIVE : 0) |
+			(positiveExponent ? POSITIVE_EXPONENT : 0) |
+			(upperCaseE ? UPPER_CASE_E : 0) |
+			(exponentSign ? EXPONENT_SIGN : 0)
+		);
+		this.fractionalLength = (byte)(fractionalLength);
+		this.exponentLength = (byte)(exponentLength);
+		this.exponent = exponent;
+		this.digits = digits;
+		this.string = null;
+		this.big = null;
+	}
+	
+	// True if a number with parts of these lengths can be stored inline.
+	// The integer part cannot have leading zeroes, as they could not be rebuilt from the digits.
+	static boolean fitsInline(
+		final int integerLength,
+		final char firstIntegerDigit,
+		final int fractionalLength,
+		final int exponentLength
+	) {
+		return
+			(integerLength > 0) &&
+			((integerLength == 1) || (firstIntegerDigit != '0')) &&
+			((integerLength + fractionalLength) <= INLINE_DIGITS) &&
+			(exponentLength <= INLINE_EXPONENT_DIGITS);
+	}
+	
+	// Append the digits of str to the digits of value, or -1 if value is -1 or str has a non-digit.
+	// The caller ensures there are not too many digits to fit.
+	private static long digitsOf(final String str, final long value) {
+		return digitsOf(str, 0, str.length(), value);
+	}
+	
+	// Append the digits of str from start to end to the digits of value, or -1 if value is -1 or there is a non-digit.
+	// The caller ensures there are not too many digits to fit.
+	private static long digitsOf(final String str, final int start, final int end, final long value) {
+		long result = value;
+		for (int i = start; (i < end) && (result >= 0); i++) {
+			final char c = str.charAt(i);
+			result = (c >= '0') && (c <= '9') ? (result * 10) + (c - '0') : -1;
+		}
+		
+		return result;
+	}
+	
+	// The index of the first non-digit in str at or after start
+	private static int skipDigits(final String str, final int start) {
+		int i = start;
+		for (final int len = str.length(); (i < len) && (str.charAt(i) >= '0') && (str.charAt(i) <= '9'); i++) {
+			// Skip digit
+		}
+		
+		return i;
 	}
 	
+	// Floats, doubles, and bigdecimal vary in their representation as a string
+	// The fractional and exponent parts may not be present if they are 0
+	// The exponent char may be e or E
+	// The sign after the exponent char may not be present
+	// The string is scanned once, without a regex, and the digits are stored inline when they fit.
 	static JSONNumber ofIntLongFloatDoubleBigDecimal(final String str) {
-	    final Matcher m = INT_LONG_FLOAT_DOUBLE_BIGDECIMAL_REGEX.matcher(str);
-	    if (! m.matches()) {
-	        throw new IllegalArgumentException(str + " is not a correctly formatted JSON number");
-	    }
-
-	    // (-)?([0-9]+)(?:[.]([0-9]+)(?:[eE]([-+])?([0-9]+))?)?;
-	    final String positive = m.group(1);
-	    final String integer = m.group(2);
-	    final String fractional = m.group(3);
-	    final String positiveExponent = m.group(4);
-	    final String exponent = m.group(5);
-	    
-	    return new JSONNumber(
-            str,
-            positive == null,
-            integer,
-            fractional,
-            ((positiveExponent == null) || (positiveExponent.charAt(0) == '+')),
-            exponent
-        );
-	}
-    
-    public static JSONNumber of(final int i) {
-        return ofIntLongFloatDoubleBigDecimal(Integer.toString(i));
-    }
-    
-    public static JSONNumber of(final Integer i) {
-        return ofIntLongFloatDoubleBigDecimal(i.toString());
-    }
-    
-    public static JSONNumber of(final long l) {
-        return ofIntLongFloatDoubleBigDecimal(Long.toString(l));
-    }
-    
-    public static JSONNumber of(final Long l) {
-        return ofIntLongFloatDoubleBigDecimal(l.toString());
-    }
-    
-    public static JSONNumber of(final float f) {
-        return ofIntLongFloatDoubleBigDecimal(Float.valueOf(f).toString());
-    }
-    
-    public static JSONNumber of(final Float f) {
-        return ofIntLongFloatDoubleBigDecimal(f.toString());
-    }
-    
-    public static JSONNumber of(final double d) {
-        return ofIntLongFloatDoubleBigDecimal(Double.valueOf(d).toString());
-    }
-    
-    public static JSONNumber of(final Double d) {
-        return ofIntLongFloatDoubleBigDecimal(d.toString());
-    }
-
-    public static JSONNumber of(final BigInteger b) {
-        final String str = b.toString();
-        String integer = str;
-
-        boolean positive = true;
-        if (integer.charAt(0) == '-') {
-            positive = false;
-            integer = integer.substring(1);
-        }
-        
-        return new JSONNumber(str, positive, integer, null, true, null);
-    }
-    
-    public static JSONNumber of(final BigDecimal b) {
-        return ofIntLongFloatDoubleBigDecimal(b.toString());
-    }
+		// -?[0-9]+(.[0-9]+)?([eE][-+]?[0-9]+)?
+		final int length = str.length();
+		final boolean positive = (length == 0) || (str.charAt(0) != '-');
+		final int integerStart = positive ? 0 : 1;
+		int i = skipDigits(str, integerStart);
+		final int integerEnd = i;
+		
+		// Each part that is present requires at least one digit
+		boolean valid = integerStart < integerEnd;
+		int fractionalStart = i;
+		int fractionalEnd = i;
+		if ((i < length) && (str.charAt(i) == '.')) {
+			fractionalStart = ++i;
+			fractionalEnd = i = skipDigits(str, i);
+			valid &= fractionalStart < fractionalEnd;
+		}
+		
+		boolean upperCaseE = false;
+		boolean exponentSign = false;
+		boolean positiveExponent = true;
+		int exponentStart = length;
+		int exponentEnd = length;
+		if ((i < length) && ((str.charAt(i) == 'e') || (str.charAt(i) == 'E'))) {
+			upperCaseE = str.charAt(i++) == 'E';
+			if ((i < length) && ((str.charAt(i) == '-') || (str.charAt(i) == '+'))) {
+				exponentSign = true;
+				positiveExponent = str.charAt(i++) == '+';
+			}
+			exponentStart = i;
+			exponentEnd = i = skipDigits(str, i);
+			valid &= exponentStart < exponentEnd;
+		}
+		
+		if ((! valid) || (i != length)) {
+			throw new IllegalArgumentException(String.format(NOT_A_NUMBER_FMT, str));
+		}
+		
+		final int integerLength = integerEnd - integerStart;
+		final int fractionalLength = fractionalEnd - fractionalStart;
+		final int exponentLength = exponentEnd - exponentStart;
+		if (fitsInline(integerLength, str.charAt(integerStart), fractionalLength, exponentLength)) {
+			return new JSONNumber(
+				positive,
+				digitsOf(str, fractionalStart, fractionalEnd, digitsOf(str, integerStart, integerEnd, 0)),
+				fractionalLength,
+				positiveExponent,
+				(int)(digitsOf(str, exponentStart, exponentEnd, 0)),
+				exponentLength,
+				upperCaseE,
+				exponentSign
+			);
+		}
+		
+		return new JSONNumber(
+			str,
+			positive,
+			str.substring(integerStart, integerEnd),
+			str.substring(fractionalStart, fractionalEnd),
+			positiveExponent,
+			str.substring(exponentStart, exponentEnd)
+		);
+	}
+	
+	public static JSONNumber of(final int i) {
+		return of((long)(i));
+	}
+	
+	public static JSONNumber of(final Integer i) {
+		return of(i.longValue());
+	}
+	
+	// Magnitudes with up to INLINE_DIGITS digits are stored directly, only larger ones need a string
+	public static JSONNumber of(final long l) {
+		return (l > -POWERS_OF_TEN[INLINE_DIGITS]) && (l < POWERS_OF_TEN[INLINE_DIGITS]) ?
+			new JSONNumber(l >= 0, Math.abs(l), 0, true, 0, 0, false, false) :
+			ofIntLongFloatDoubleBigDecimal(Long.toString(l));
+	}
+	
+	public static JSONNumber of(final Long l) {
+		return of(l.longValue());
+	}
+	
+	public static JSONNumber of(final float f) {
+		return ofIntLongFloatDoubleBigDecimal(Float.toString(f));
+	}
+	
+	public static JSONNumber of(final Float f) {
+		return ofIntLongFloatDoubleBigDecimal(f.toString());
+	}
+	
+	public static JSONNumber of(final double d) {
+		return ofIntLongFloatDoubleBigDecimal(Double.toString(d));
+	}
+	
+	public static JSONNumber of(final Double d) {
+		return ofIntLongFloatDoubleBigDecimal(d.toString());
+	}
+	
+	// A BigInteger of less than 60 bits is less than 10^18, so it fits inline
+	public static JSONNumber of(final BigInteger b) {
+		return b.bitLength() < 60 ? of(b.longValue()) : ofIntLongFloatDoubleBigDecimal(b.toString());
+	}
+	
+	public static JSONNumber of(final BigDecimal b) {
+		return ofIntLongFloatDoubleBigDecimal(b.toString());
+	}
 	
 	// ==== Object
 	
@@ -119,16 +453,16 @@ public final class JSONNumber {
 	public int hashCode() {
 		return
 			(31 * (31 * (31 * (31 * 
-			  Boolean.hashCode(positive))
-			+ integer.hashCode())
-			+ fractional.hashCode())
-			+ Boolean.hashCode(positiveExponent))
-			+ exponent.hashCode();
+			  Boolean.hashCode(isPositive()))
+			+ getInteger().hashCode())
+			+ getFractional().hashCode())
+			+ Boolean.hashCode(isPositiveExponent()))
+			+ getExponent().hashCode();
 	}
 	
 	@Override
 	public String toString() {
-		return string;
+		return string != null ? string : inlineString();
 	}
 	
 	@Override
@@ -136,86 +470,294 @@ public final class JSONNumber {
 		boolean equals = o == this;
 		if ((! equals) && (o instanceof JSONNumber)) {
 			final JSONNumber obj = (JSONNumber)(o);
-			equals =
-				(positive == obj.positive) &&
-				integer.equals(obj.integer) &&
-				fractional.equals(obj.fractional) &&
-				(positiveExponent == obj.positiveExponent) &&
-				exponent.equals(obj.exponent);
+			if ((big == null) && (obj.big == null)) {
+				equals =
+					((flags & (POSITIVE | POSITIVE_EXPONENT)) == (obj.flags & (POSITIVE | POSITIVE_EXPONENT))) &&
+					(digits == obj.digits) &&
+					(fractionalLength == obj.fractionalLength) &&
+					(exponent == obj.exponent) &&
+					(exponentLength == obj.exponentLength);
+			} else {
+				equals =
+					(isPositive() == obj.isPositive()) &&
+					getInteger().equals(obj.getInteger()) &&
+					getFractional().equals(obj.getFractional()) &&
+					(isPositiveExponent() == obj.isPositiveExponent()) &&
+					getExponent().equals(obj.getExponent());
+			}
 		}
 		
 		return equals;
 	}
 	
+	// Copy the text of an inline number into dest at offset, which must have room for MAX_INLINE_CHARS.
+	// Returns the offset after the text, or -1 if the number is not inline or was constructed from some other text.
+	int getChars(final char[] dest, final int offset) {
+		if ((big != null) || (string != null)) {
+			return -1;
+		}
+		
+		int end = offset;
+		if (! isPositive()) {
+			dest[end++] = '-';
+		}
+		end = putDigits(dest, end, integerDigits(), 1);
+		
+		if (fractionalLength > 0) {
+			dest[end++] = '.';
+			end = putDigits(dest, end, fractionalDigits(), fractionalLength);
+		}
+		
+		if (exponentLength > 0) {
+			dest[end++] = (flags & UPPER_CASE_E) != 0 ? 'E' : 'e';
+			if ((flags & EXPONENT_SIGN) != 0) {
+				dest[end++] = isPositiveExponent() ? '+' : '-';
+			}
+			end = putDigits(dest, end, exponent, exponentLength);
+		}
+		
+		return end;
+	}
+	
+	// Rebuild the text of an inline number
+	private String inlineString() {
+		final char[] chars = new char[MAX_INLINE_CHARS];
+		return new String(chars, 0, getChars(chars, 0));
+	}
+	
+	// Put the digits of an unsigned value into dest at offset, zero padded to at least minLength.
+	// Returns the offset after the digits.
+	static int putDigits(final char[] dest, final int offset, final long value, final int minLength) {
+		int length = 1;
+		for (long remaining = value / 10; remaining != 0; remaining /= 10) {
+			length++;
+		}
+		length = Math.max(length, minLength);
+		
+		long remaining = value;
+		for (int i = offset + length - 1; i >= offset; i--) {
+			dest[i] = (char)('0' + (remaining % 10));
+			remaining /= 10;
+		}
+		
+		return offset + length;
+	}
+	
+	private static String padded(final long value, final int length) {
+		final char[] chars = new char[INLINE_DIGITS];
+		return new String(chars, 0, putDigits(chars, 0, value, length));
+	}
+	
 	// ==== Conversions
 	
+	// The inline integer part
+	private long integerDigits() {
+		return digits / POWERS_OF_TEN[fractionalLength];
+	}
+	
+	// The inline fractional part
+	private long fractionalDigits() {
+		return digits % POWERS_OF_TEN[fractionalLength];
+	}
+	
+	// The inline number is (unsigned) digits * 10^decimalExponent()
+	private int decimalExponent() {
+		return (isPositiveExponent() ? exponent : -exponent) - fractionalLength;
+	}
+	
 	public int asInt() {
-		return Integer.parseInt(integer);
+		if (big == null) {
+			final long integer = integerDigits();
+			if (integer <= Integer.MAX_VALUE) {
+				return (int)(integer);
+			}
+		} else {
+			final long integer = big.integerValue();
+			if (integer <= Integer.MAX_VALUE) {
+				return (int)(integer);
+			}
+		}
+		
+		// Too large, let parseInt report it
+		return Integer.parseInt(getInteger());
 	}
 	
 	public int fractionalAsInt() {
+		if (big == null) {
+			final long fractional = fractionalDigits();
+			if (fractional <= Integer.MAX_VALUE) {
+				return (int)(fractional);
+			}
+		}
+		
+		final String fractional = getFractional();
 		return fractional.isEmpty() ? 0 : Integer.parseInt(fractional);
 	}
 	
 	public int exponentAsInt() {
-		return exponent.isEmpty() ? 0 : Integer.parseInt(exponent);
+		if (big == null) {
+			return exponent;
+		}
+		
+		return big.exponentLength == 0 ? 0 : Integer.parseInt(big.exponent());
 	}
 	
 	public long asLong() {
-		return Long.parseLong(integer);
+		if (big == null) {
+			return integerDigits();
+		}
+		
+		return big.integerValue();
 	}
 	
 	public long fractionalAsLong() {
-		return fractional.isEmpty() ? 0L : Long.parseLong(fractional);
+		if (big == null) {
+			return fractionalDigits();
+		}
+		
+		return big.fractionalLength == 0 ? 0L : Long.parseLong(big.fractional());
 	}
 	
 	public long exponentAsLong() {
-		return exponent.isEmpty() ? 0L : Long.parseLong(exponent);
+		if (big == null) {
+			return exponent;
+		}
+		
+		return big.exponentLength == 0 ? 0L : Long.parseLong(big.exponent());
 	}
 	
 	public BigInteger asBigInteger() {
-		return new BigInteger(integer);
+		return big == null ? BigInteger.valueOf(integerDigits()) : new BigInteger(big.integer());
 	}
 	
 	public BigInteger fractionalAsBigInteger() {
-		return fractional.isEmpty() ? BigInteger.ZERO : new BigInteger(fractional);
+		if (big == null) {
+			return BigInteger.valueOf(fractionalDigits());
+		}
+		
+		return big.fractionalLength == 0 ? BigInteger.ZERO : new BigInteger(big.fractional());
 	}
 	
 	public BigInteger exponentAsBigInteger() {
-		return exponent.isEmpty() ? BigInteger.ZERO : new BigInteger(exponent);
+		if (big == null) {
+			return BigInteger.valueOf(exponent);
+		}
+		
+		return big.exponentLength == 0 ? BigInteger.ZERO : new BigInteger(big.exponent());
 	}
 	
 	public float asFloat() {
-		return Float.parseFloat(string);
+		return Float.parseFloat(toString());
 	}
 	
 	public double asDouble() {
-		return Double.parseDouble(string);
+		if (big != null) {
+			return big.doubleValue(! isPositive(), string);
+		}
+		
+		final double result = DecimalToDouble.toDouble(! isPositive(), digits, decimalExponent(), false);
+		return Double.isNaN(result) ? Double.parseDouble(toString()) : result;
 	}
 	
 	public BigDecimal asBigDecimal() {
-		return new BigDecimal(string);
+		if (big == null) {
+			return BigDecimal
+				.valueOf(isPositive() ? digits : -digits, fractionalLength)
+				.scaleByPowerOfTen(isPositiveExponent() ? exponent : -exponent);
+		}
+		
+		return big.bigDecimalValue(string);
+	}
+	
+	// ==== Inline parts, for BinaryJSON
+	
+	// True if the number is stored inline, and its text is rebuilt from the inline parts
+	boolean isInline() {
+		return (big == null) && (string == null);
+	}
+	
+	// True if the number is inline and is only an integer part, so it is the same as JSONNumber.of(long)
+	boolean isInlineInteger() {
+		return isInline() && (fractionalLength == 0) && (exponentLength == 0) && ((flags & ~POSITIVE) == POSITIVE_EXPONENT);
+	}
+	
+	int inlineFlags() {
+		return flags;
+	}
+	
+	long inlineDigits() {
+		return digits;
+	}
+	
+	int inlineFractionalLength() {
+		return fractionalLength;
+	}
+	
+	int inlineExponent() {
+		return exponent;
+	}
+	
+	int inlineExponentLength() {
+		return exponentLength;
+	}
+	
+	// Construct inline from the parts returned by the inline accessors, or return null if they could not be inline
+	static JSONNumber ofInline(
+		final int flags,
+		final long digits,
+		final int fractionalLength,
+		final int exponent,
+		final int exponentLength
+	) {
+		if (
+			(flags >>> FLAG_BITS != 0) ||
+			(digits < 0) || (digits >= POWERS_OF_TEN[INLINE_DIGITS]) ||
+			(fractionalLength < 0) || (fractionalLength > INLINE_DIGITS) ||
+			(exponentLength < 0) || (exponentLength > INLINE_EXPONENT_DIGITS) ||
+			(exponent < 0) || ((exponentLength == 0) && (exponent != 0))
+		) {
+			return null;
+		}
+		
+		return new JSONNumber(
+			(flags & POSITIVE) != 0,
+			digits,
+			fractionalLength,
+			(flags & POSITIVE_EXPONENT) != 0,
+			exponent,
+			exponentLength,
+			(flags & UPPER_CASE_E) != 0,
+			(flags & EXPONENT_SIGN) != 0
+		);
 	}
 	
 	// Accessors
 
 	public boolean isPositive() {
-		return positive;
+		return (flags & POSITIVE) != 0;
 	}
 
 	public String getInteger() {
-		return integer;
+		return big == null ? Long.toString(integerDigits()) : big.integer();
 	}
 
 	public String getFractional() {
-		return fractional;
+		if (big == null) {
+			return fractionalLength == 0 ? "" : padded(fractionalDigits(), fractionalLength);
+		}
+		
+		return big.fractional();
 	}
 
 	public boolean isPositiveExponent() {
-		return positiveExponent;
+		return (flags & POSITIVE_EXPONENT) != 0;
 	}
 
 	public String getExponent() {
-		return exponent;
+		if (big == null) {
+			return exponentLength == 0 ? "" : padded(exponent, exponentLength);
+		}
+		
+		return big.exponent();
 	}
 }
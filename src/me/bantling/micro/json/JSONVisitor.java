@@ -0,0 +1,49 @@
+package me.bantling.micro.json;
+
+/*
+ * Visitor of the parts of a JSON document, in document order, as they are parsed (see Parser.visit).
+ * No JSONValue is built, so a visitor can build whatever data structures it needs directly.
+ * 
+ * Numbers are passed as primitives: an integer that fits in a long, other than negative zero, is passed to longValue,
+ * and any other number to numberValue, with the chars of its token, which by default passes the nearest double to
+ * doubleValue. A double loses digits beyond its precision, and is infinite or zero for an exponent beyond its range,
+ * so a visitor that must keep every number exactly, such as a JSONWriter copying a document, overrides numberValue to
+ * use the chars.
+ * 
+ * Keys and strings are passed as a range of a char[] that is only valid for the duration of the call, which by
+ * default is converted to a String. A visitor that can use the chars directly can override the char[] methods, so
+ * that no String is allocated.
+ */
+public interface JSONVisitor {
+	void startObject();
+	
+	void endObject();
+	
+	void startArray();
+	
+	void endArray();
+	
+	void key(String key);
+	
+	default void key(final char[] chars, final int offset, final int length) {
+		key(new String(chars, offset, length));
+	}
+	
+	void stringValue(String value);
+	
+	default void stringValue(final char[] chars, final int offset, final int length) {
+		stringValue(new String(chars, offset, length));
+	}
+	
+	void longValue(long value);
+	
+	void doubleValue(double value);
+	
+	default void numberValue(final char[] chars, final int offset, final int length, final double value) {
+		doubleValue(value);
+	}
+	
+	void booleanValue(boolean value);
+	
+	void nullValue();
+}
@@ -0,0 +1,584 @@
+package me.bantling.micro.json;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+
+/*
+ * Write JSON text to a Writer, or as UTF-8 to an OutputStream or a ByteBuffer that grows as needed.
+ * 
+ * A whole JSONValue can be written with value, or the writer can be driven one part at a time through the JSONVisitor
+ * methods, which only needs memory for the current nesting of objects and arrays. As it is a JSONVisitor, Parser.visit
+ * can copy a document directly to a JSONWriter, for example to reformat it, where numbers keep the text they had.
+ * 
+ * Strings are escaped with a lookup table of escapes for ASCII chars, and the runs of chars between escapes are copied
+ * as is. Lone surrogates are escaped as \\uXXXX, so that any Java string can be written. Numbers are formatted into a
+ * small char[] rather than a String.
+ * 
+ * When writing UTF-8, withKeyCache copies the pre-encoded bytes of recurring keys rather than encoding them again, and
+ * the literals true, false, and null are always copied from pre-encoded bytes. A writer for a ByteBuffer can be reset
+ * to write another document into another (or the same) buffer, so a REST handler can reuse one writer and buffer for
+ * every response.
+ * 
+ * Output is compact unless withIndent or withPrettyPrinting is used, which puts each key and element on its own line.
+ * Writing parts in an order that is not a valid JSON document throws an IllegalStateException.
+ */
+public final class JSONWriter implements JSONVisitor, Flushable, Closeable {
+	static final String KEY_NOT_EXPECTED   = "A key can only be written inside an object";
+	static final String KEY_EXPECTED       = "A value inside an object must be preceded by a key";
+	static final String VALUE_EXPECTED     = "A key must be followed by a value";
+	static final String NO_OBJECT_TO_END   = "There is no object to end";
+	static final String NO_ARRAY_TO_END    = "There is no array to end";
+	static final String DOCUMENT_COMPLETE  = "The document has already been written";
+	static final String NOT_A_BYTE_BUFFER  = "This writer does not write to a ByteBuffer";
+	static final String NOT_FINITE_FMT     = "%s cannot be written as a JSON number";
+	
+	// Indent used by withPrettyPrinting
+	static final String DEFAULT_INDENT = "  ";
+	
+	// Escapes for ASCII chars that cannot appear in a JSON string as is, null for chars that need no escape
+	private static final String[] ESCAPES = new String[128];
+	
+	static {
+		for (int c = 0; c < 0x20; c++) {
+			ESCAPES[c] = String.format("\\u%04x", Integer.valueOf(c));
+		}
+		
+		ESCAPES['"'] = "\\\"";
+		ESCAPES['\\'] = "\\\\";
+		ESCAPES['\b'] = "\\b";
+		ESCAPES['\f'] = "\\f";
+		ESCAPES['\n'] = "\\n";
+		ESCAPES['\r'] = "\\r";
+		ESCAPES['\t'] = "\\t";
+	}
+	
+	// Literals, pre-encoded
+	private static final byte[] TRUE_BYTES  = "true".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] FALSE_BYTES = "false".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] NULL_BYTES  = "null".getBytes(StandardCharsets.US_ASCII);
+	
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+	
+	// Powers of ten that are exact doubles, for formatting doubles
+	private static final double[] EXACT_POWERS = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+	
+	// Largest long that is exactly a double, and every smaller one is as well
+	private static final long MAX_EXACT_LONG = 1L << 53;
+	
+	// Number of chars copied from a String at a time to escape it
+	private static final int CHUNK_SIZE = 1024;
+	
+	// State of each level of nesting, where level 0 is the document
+	private static final byte DOCUMENT_EMPTY = 0;
+	private static final byte DOCUMENT_DONE  = 1;
+	private static final byte OBJECT_EMPTY   = 2;
+	private static final byte OBJECT_KEY     = 3;
+	private static final byte OBJECT_VALUE   = 4;
+	private static final byte ARRAY_EMPTY    = 5;
+	private static final byte ARRAY_ELEMENT  = 6;
+	
+	// Underlying output, and the same output if it writes UTF-8
+	private final WriterOutput output;
+	private final Utf8WriterOutput utf8;
+	
+	// Optional cache of encoded keys, only used when writing UTF-8
+	private EncodedKeyCache keyCache;
+	
+	// States of each level of nesting, and the current level
+	private byte[] states = new byte[16];
+	private int depth;
+	
+	// Indent for pretty printing, or null for compact output
+	private String indent;
+	
+	// Scratch space for numbers, and for strings being escaped
+	private final char[] chars = new char[CHUNK_SIZE];
+	
+	// Construct to write to a Writer
+	public JSONWriter(
+		final Writer writer
+	) {
+		this(new CharWriterOutput(writer));
+	}
+	
+	// Construct to write UTF-8 to an OutputStream
+	public JSONWriter(
+		final OutputStream stream
+	) {
+		this(new Utf8WriterOutput(stream));
+	}
+	
+	// Construct to write UTF-8 to a ByteBuffer from its position, replacing it with a larger one if it fills up.
+	// Use byteBuffer to get the result.
+	public JSONWriter(
+		final ByteBuffer buffer
+	) {
+		this(new Utf8WriterOutput(buffer));
+	}
+	
+	JSONWriter(
+		final WriterOutput output
+	) {
+		this.output = output;
+		this.utf8 = output instanceof Utf8WriterOutput ? (Utf8WriterOutput)(output) : null;
+	}
+	
+	// Quote, escape, and encode a key as UTF-8, followed by a colon
+	static byte[] encodeKey(final String key) {
+		// Each char encodes to at most six bytes, as an escape or half of a surrogate pair
+		final JSONWriter writer = new JSONWriter(ByteBuffer.allocate((key.length() * 6) + 3));
+		writer.writeString(key);
+		writer.output.write(':');
+		
+		final ByteBuffer buffer = writer.byteBuffer();
+		return Arrays.copyOf(buffer.array(), buffer.position());
+	}
+	
+	// Pretty print with the given indent for each level of nesting, or write compact output if the indent is null
+	public JSONWriter withIndent(final String indent) {
+		this.indent = indent;
+		return this;
+	}
+	
+	// Pretty print with an indent of two spaces
+	public JSONWriter withPrettyPrinting() {
+		return withIndent(DEFAULT_INDENT);
+	}
+	
+	// Use a cache of encoded keys when writing UTF-8, and return this writer
+	public JSONWriter withKeyCache(final EncodedKeyCache keyCache) {
+		this.keyCache = keyCache;
+		return this;
+	}
+	
+	// Start writing a new document to a ByteBuffer from its position, keeping the settings and buffers of this writer.
+	// Use byteBuffer to get the result.
+	public JSONWriter reset(final ByteBuffer buffer) {
+		if ((utf8 == null) || (utf8.byteBuffer() == null)) {
+			throw new IllegalStateException(NOT_A_BYTE_BUFFER);
+		}
+		
+		utf8.reset(buffer);
+		depth = 0;
+		states[0] = DOCUMENT_EMPTY;
+		return this;
+	}
+	
+	// ==== Structure
+	
+	// Start a new line at the current level of nesting when pretty printing
+	private void newLine() {
+		if (indent != null) {
+			output.write('\n');
+			for (int i = 0; i < depth; i++) {
+				output.write(indent);
+			}
+		}
+	}
+	
+	// Check a value can be written at this point, and write whatever has to precede it
+	private void beforeValue() {
+		switch (states[depth]) {
+			case DOCUMENT_EMPTY:
+				states[depth] = DOCUMENT_DONE;
+				break;
+			
+			case DOCUMENT_DONE:
+				throw new IllegalStateException(DOCUMENT_COMPLETE);
+			
+			case OBJECT_VALUE:
+				states[depth] = OBJECT_KEY;
+				break;
+			
+			case ARRAY_EMPTY:
+				states[depth] = ARRAY_ELEMENT;
+				newLine();
+				break;
+			
+			case ARRAY_ELEMENT:
+				output.write(',');
+				newLine();
+				break;
+			
+			default:
+				throw new IllegalStateException(KEY_EXPECTED);
+		}
+	}
+	
+	// Start a new level of nesting
+	private void push(final byte state) {
+		if (++depth == states.length) {
+			final byte[] newStates = new byte[states.length * 2];
+			System.arraycopy(states, 0, newStates, 0, states.length);
+			states = newStates;
+		}
+		
+		states[depth] = state;
+	}
+	
+	// End the current level of nesting, that must be an object or array as indicated
+	private void pop(final boolean object) {
+		final byte state = states[depth];
+		if (state == OBJECT_VALUE) {
+			throw new IllegalStateException(VALUE_EXPECTED);
+		}
+		
+		final boolean open = object ?
+			(state == OBJECT_EMPTY) || (state == OBJECT_KEY) :
+			(state == ARRAY_EMPTY) || (state == ARRAY_ELEMENT);
+		if (! open) {
+			throw new IllegalStateException(object ? NO_OBJECT_TO_END : NO_ARRAY_TO_END);
+		}
+		
+		depth--;
+		if ((state == OBJECT_KEY) || (state == ARRAY_ELEMENT)) {
+			newLine();
+		}
+		output.write(object ? '}' : ']');
+	}
+	
+	@Override
+	public void startObject() {
+		beforeValue();
+		output.write('{');
+		push(OBJECT_EMPTY);
+	}
+	
+	@Override
+	public void endObject() {
+		pop(true);
+	}
+	
+	@Override
+	public void startArray() {
+		beforeValue();
+		output.write('[');
+		push(ARRAY_EMPTY);
+	}
+	
+	@Override
+	public void endArray() {
+		pop(false);
+	}
+	
+	// Check a key can be written at this point, and write whatever has to precede it
+	private void beforeKey() {
+		switch (states[depth]) {
+			case OBJECT_EMPTY:
+				newLine();
+				break;
+			
+			case OBJECT_KEY:
+				output.write(',');
+				newLine();
+				break;
+			
+			case OBJECT_VALUE:
+				throw new IllegalStateException(VALUE_EXPECTED);
+			
+			default:
+				throw new IllegalStateException(KEY_NOT_EXPECTED);
+		}
+		
+		states[depth] = OBJECT_VALUE;
+	}
+	
+	// Write the colon after a key
+	private void afterKey() {
+		output.write(':');
+		if (indent != null) {
+			output.write(' ');
+		}
+	}
+	
+	// Write the encoded bytes of a key, which include the colon
+	private void writeEncodedKey(final byte[] encoded) {
+		utf8.write(encoded);
+		if (indent != null) {
+			output.write(' ');
+		}
+	}
+	
+	@Override
+	public void key(final String key) {
+		beforeKey();
+		
+		final byte[] encoded = (keyCache != null) && (utf8 != null) ? keyCache.encoded(key) : null;
+		if (encoded != null) {
+			writeEncodedKey(encoded);
+		} else {
+			writeString(key);
+			afterKey();
+		}
+	}
+	
+	@Override
+	public void key(final char[] key, final int offset, final int length) {
+		beforeKey();
+		
+		final byte[] encoded = (keyCache != null) && (utf8 != null) ? keyCache.encoded(key, offset, length) : null;
+		if (encoded != null) {
+			writeEncodedKey(encoded);
+		} else {
+			writeString(key, offset, length);
+			afterKey();
+		}
+	}
+	
+	// ==== Values
+	
+	@Override
+	public void stringValue(final String value) {
+		beforeValue();
+		writeString(value);
+	}
+	
+	@Override
+	public void stringValue(final char[] value, final int offset, final int length) {
+		beforeValue();
+		writeString(value, offset, length);
+	}
+	
+	@Override
+	public void longValue(final long value) {
+		beforeValue();
+		if (value == Long.MIN_VALUE) {
+			// Cannot be negated
+			output.write(Long.toString(value));
+		} else {
+			int offset = 0;
+			if (value < 0) {
+				chars[offset++] = '-';
+			}
+			output.writeChars(chars, 0, JSONNumber.putDigits(chars, offset, Math.abs(value), 1));
+		}
+	}
+	
+	// Write a finite double. A double that is an integer of up to 53 bits divided by a power of ten of up to 22 is
+	// written directly, using the fewest fractional digits that give back the same double, which covers typical
+	// decimal values such as prices and ratios. Any other double is written as Double.toString does.
+	@Override
+	public void doubleValue(final double value) {
+		if (! Double.isFinite(value)) {
+			throw new IllegalArgumentException(String.format(NOT_FINITE_FMT, Double.valueOf(value)));
+		}
+		
+		beforeValue();
+		final double abs = Math.abs(value);
+		for (int scale = 1; (scale < EXACT_POWERS.length) && (abs * EXACT_POWERS[scale] < MAX_EXACT_LONG); scale++) {
+			// Dividing an exact long by an exact power of ten is correctly rounded, so if the result is the double, then
+			// the digits of the long with scale fractional digits read back as the same double. As smaller scales have
+			// already been tried, there is no shorter text with a decimal point.
+			final long scaled = Math.round(abs * EXACT_POWERS[scale]);
+			if (scaled / EXACT_POWERS[scale] == abs) {
+				final long power = (long)(EXACT_POWERS[scale]);
+				int offset = 0;
+				if (Double.doubleToRawLongBits(value) < 0) {
+					chars[offset++] = '-';
+				}
+				offset = JSONNumber.putDigits(chars, offset, scaled / power, 1);
+				chars[offset++] = '.';
+				offset = JSONNumber.putDigits(chars, offset, scaled % power, scale);
+				output.writeChars(chars, 0, offset);
+				return;
+			}
+		}
+		
+		output.write(Double.toString(value));
+	}
+	
+	@Override
+	public void booleanValue(final boolean value) {
+		beforeValue();
+		output.write(value ? TRUE_BYTES : FALSE_BYTES);
+	}
+	
+	@Override
+	public void nullValue() {
+		beforeValue();
+		output.write(NULL_BYTES);
+	}
+	
+	// Write a number that is not a long with the chars of its token, so that a copied document keeps every digit, and
+	// numbers beyond the range of a double
+	@Override
+	public void numberValue(final char[] chars, final int offset, final int length, final double value) {
+		beforeValue();
+		output.writeChars(chars, offset, offset + length);
+	}
+	
+	// Write a number with the same text it has
+	public void numberValue(final JSONNumber value) {
+		beforeValue();
+		final int length = value.getChars(chars, 0);
+		if (length < 0) {
+			output.write(value.toString());
+		} else {
+			output.writeChars(chars, 0, length);
+		}
+	}
+	
+	/*
+	 * Write a whole JSONValue.
+	 * 
+	 * Objects and arrays are walked with a loop and a stack of iterators rather than by recursion, so there is no limit
+	 * on nesting other than memory.
+	 */
+	public void value(final JSONValue value) {
+		Iterator<?>[] iterators = new Iterator<?>[16];
+		int top = 0;
+		JSONValue next = Objects.requireNonNull(value, "value");
+		
+		while (true) {
+			if (next != null) {
+				switch (next.getType()) {
+					case STRING:
+						stringValue(next.asString());
+						break;
+					
+					case NUMBER:
+						numberValue(next.asNumber());
+						break;
+					
+					case BOOLEAN:
+						booleanValue(next.asBoolean());
+						break;
+					
+					case NULL:
+						nullValue();
+						break;
+					
+					default:
+						if (top == iterators.length) {
+							final Iterator<?>[] newIterators = new Iterator<?>[top * 2];
+							System.arraycopy(iterators, 0, newIterators, 0, top);
+							iterators = newIterators;
+						}
+						
+						if (next.isObject()) {
+							startObject();
+							iterators[top++] = next.asObject().entrySet().iterator();
+						} else {
+							startArray();
+							iterators[top++] = next.asArray().iterator();
+						}
+				}
+				
+				next = null;
+			}
+			
+			if (top == 0) {
+				break;
+			}
+			
+			// Next key and value or element of the innermost object or array, or the end of it
+			final Iterator<?> iterator = iterators[top - 1];
+			final boolean object = (states[depth] != ARRAY_EMPTY) && (states[depth] != ARRAY_ELEMENT);
+			if (! iterator.hasNext()) {
+				iterators[--top] = null;
+				pop(object);
+			} else if (object) {
+				final Map.Entry<?, ?> entry = (Map.Entry<?, ?>)(iterator.next());
+				key((String)(entry.getKey()));
+				next = (JSONValue)(entry.getValue());
+			} else {
+				next = (JSONValue)(iterator.next());
+			}
+		}
+	}
+	
+	// ==== Strings
+	
+	// Write a quoted and escaped string, a chunk at a time
+	private void writeString(final String str) {
+		output.write('"');
+		
+		final int length = str.length();
+		for (int i = 0, count; i < length; i += count) {
+			count = Math.min(length - i, CHUNK_SIZE);
+			
+			// Do not split a surrogate pair across chunks
+			if ((i + count < length) && Character.isHighSurrogate(str.charAt(i + count - 1))) {
+				count--;
+			}
+			
+			str.getChars(i, i + count, chars, 0);
+			escape(chars, 0, count);
+		}
+		
+		output.write('"');
+	}
+	
+	// Write a quoted and escaped string
+	private void writeString(final char[] str, final int offset, final int length) {
+		output.write('"');
+		escape(str, offset, offset + length);
+		output.write('"');
+	}
+	
+	// Write chars from start to end, escaping as necessary, and copying runs of chars that need no escape as is
+	private void escape(final char[] str, final int start, final int end) {
+		int run = start;
+		for (int i = start; i < end; i++) {
+			final char c = str[i];
+			if (c < 0x80) {
+				final String escape = ESCAPES[c];
+				if (escape != null) {
+					output.writeChars(str, run, i);
+					output.write(escape);
+					run = i + 1;
+				}
+			} else if (Character.isSurrogate(c)) {
+				if (Character.isHighSurrogate(c) && (i + 1 < end) && Character.isLowSurrogate(str[i + 1])) {
+					// Valid pair
+					i++;
+				} else {
+					output.writeChars(str, run, i);
+					output.write('\\');
+					output.write('u');
+					output.write(HEX_DIGITS[c >> 12]);
+					output.write(HEX_DIGITS[(c >> 8) & 0xF]);
+					output.write(HEX_DIGITS[(c >> 4) & 0xF]);
+					output.write(HEX_DIGITS[c & 0xF]);
+					run = i + 1;
+				}
+			}
+		}
+		
+		output.writeChars(str, run, end);
+	}
+	
+	// ==== Output
+	
+	// The ByteBuffer written to, positioned after the output.
+	// It is a larger copy of the buffer given to the constructor if that one filled up.
+	public ByteBuffer byteBuffer() {
+		final ByteBuffer result = utf8 == null ? null : utf8.byteBuffer();
+		if (result == null) {
+			throw new IllegalStateException(NOT_A_BYTE_BUFFER);
+		}
+		
+		return result;
+	}
+	
+	@Override
+	public void flush() {
+		output.flush();
+	}
+	
+	@Override
+	public void close() {
+		output.close();
+	}
+}
@@ -0,0 +1,51 @@
+package me.bantling.micro.json;
+
+import java.util.function.Function;
+
+/*
+ * A bounded cache of object key names, so that a Parser returns the same String instance every time it sees the same
+ * key, rather than allocating a new String for each occurrence. When many objects with the same shape are parsed and
+ * retained, eg each element of a large top level array, all of their maps share the same key instances.
+ * 
+ * The cache is a KeyTable, an open addressed table keyed by the String hash code of the key chars, that is looked up
+ * without allocating anything and never grows, so hostile input with many distinct keys can only cause cache misses,
+ * not unbounded memory use.
+ * 
+ * A cache can be reused by any number of parsers, including parsers on different threads. Lookups are not
+ * synchronized, so concurrent parsers may occasionally miss and allocate a duplicate String, but always return a
+ * String with the correct chars.
+ */
+public final class KeyCache {
+	// Defaults for the no args constructor
+	public static final int DEFAULT_CAPACITY       = 1024;
+	public static final int DEFAULT_MAX_KEY_LENGTH = 64;
+	
+	static final String CAPACITY_MUST_BE_POSITIVE       = "The capacity must be positive";
+	static final String MAX_KEY_LENGTH_MUST_BE_POSITIVE = "The maximum key length must be positive";
+	
+	// Table of keys, where each key is its own value
+	private final KeyTable<String> table;
+	
+	// Construct with default capacity and maximum key length
+	public KeyCache() {
+		this(DEFAULT_CAPACITY, DEFAULT_MAX_KEY_LENGTH);
+	}
+	
+	// Construct with the given capacity, rounded up to a power of two, and maximum key length
+	public KeyCache(
+		final int capacity,
+		final int maxKeyLength
+	) {
+		this.table = new KeyTable<>(capacity, maxKeyLength, Function.identity());
+	}
+	
+	// Return a String with the given chars, which is the same instance as last time if the chars are cached
+	public String intern(
+		final char[] chars,
+		final int offset,
+		final int length
+	) {
+		final String key = table.get(chars, offset, length);
+		return key != null ? key : new String(chars, offset, length);
+	}
+}
@@ -0,0 +1,157 @@
+package me.bantling.micro.json;
+
+import java.util.function.Function;
+
+/*
+ * The bounded table of keys shared by KeyCache and EncodedKeyCache, that maps a key to a value derived from it once.
+ * 
+ * The table is open addressed, keyed by the String hash code of the key, and can be looked up with a String or with
+ * chars, without allocating anything unless the key is new. It never grows:
+ * - keys longer than the maximum key length are never cached
+ * - a key that cannot be placed within a few slots of its hash replaces the key in its first slot
+ * so hostile input with many distinct keys can only cause cache misses, not unbounded memory use.
+ * 
+ * Each slot holds an immutable entry, so lookups are not synchronized: concurrent lookups may occasionally miss and
+ * derive a value again, but always get the value of the key they asked for.
+ */
+final class KeyTable<V> {
+	// Number of slots to try before replacing
+	private static final int MAX_PROBES = 4;
+	
+	// A key, its hash code, and its value
+	private static final class Entry<V> {
+		final String key;
+		final int hash;
+		final V value;
+		
+		Entry(
+			final String key,
+			final int hash,
+			final V value
+		) {
+			this.key = key;
+			this.hash = hash;
+			this.value = value;
+		}
+	}
+	
+	// Entries, where an entry is null if the slot is empty
+	private final Entry<V>[] entries;
+	private final int mask;
+	private final int maxKeyLength;
+	
+	// Derives the value of a new key
+	private final Function<String, V> valueOf;
+	
+	// Construct with the given capacity, rounded up to a power of two, maximum key length, and value of a key
+	@SuppressWarnings("unchecked")
+	KeyTable(
+		final int capacity,
+		final int maxKeyLength,
+		final Function<String, V> valueOf
+	) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException(KeyCache.CAPACITY_MUST_BE_POSITIVE);
+		}
+		
+		if (maxKeyLength < 1) {
+			throw new IllegalArgumentException(KeyCache.MAX_KEY_LENGTH_MUST_BE_POSITIVE);
+		}
+		
+		final int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+		this.entries = (Entry<V>[])(new Entry<?>[size]);
+		this.mask = size - 1;
+		this.maxKeyLength = maxKeyLength;
+		this.valueOf = valueOf;
+	}
+	
+	// True if the key has the given chars
+	private static boolean matches(
+		final String key,
+		final char[] chars,
+		final int offset,
+		final int length
+	) {
+		if (key.length() != length) {
+			return false;
+		}
+		
+		for (int i = 0; i < length; i++) {
+			if (key.charAt(i) != chars[offset + i]) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	// The value of a key, or null if the key is too long to cache
+	V get(final String key) {
+		return key.length() > maxKeyLength ? null : get(key.hashCode(), key, null, 0, key.length());
+	}
+	
+	// The value of a key given as chars, or null if the key is too long to cache
+	V get(
+		final char[] chars,
+		final int offset,
+		final int length
+	) {
+		if (length > maxKeyLength) {
+			return null;
+		}
+		
+		// Same hash as String.hashCode
+		int hash = 0;
+		for (int i = offset; i < offset + length; i++) {
+			hash = (31 * hash) + chars[i];
+		}
+		
+		return get(hash, null, chars, offset, length);
+	}
+	
+	// The value of a key that is either a String, or if that is null, chars
+	private V get(
+		final int hash,
+		final String key,
+		final char[] chars,
+		final int offset,
+		final int length
+	) {
+		// Spread the hash so that similar keys use different slots
+		final int first = (hash ^ (hash >>> 16)) & mask;
+		
+		// Look for the key in the next few slots, stopping at the first empty slot
+		int index = first;
+		for (int probe = 0; probe < MAX_PROBES; probe++, index = (index + 1) & mask) {
+			final Entry<V> entry = entries[index];
+			if (entry == null) {
+				return add(index, hash, key, chars, offset, length);
+			}
+			
+			if (
+				(entry.key == key) ||
+				((entry.hash == hash) && (key != null ? entry.key.equals(key) : matches(entry.key, chars, offset, length)))
+			) {
+				return entry.value;
+			}
+		}
+		
+		// No empty slot nearby, replace the key in the first slot
+		return add(first, hash, key, chars, offset, length);
+	}
+	
+	// Add a new key to a slot
+	private V add(
+		final int index,
+		final int hash,
+		final String key,
+		final char[] chars,
+		final int offset,
+		final int length
+	) {
+		final String newKey = key != null ? key : new String(chars, offset, length);
+		final V value = valueOf.apply(newKey);
+		entries[index] = new Entry<>(newKey, hash, value);
+		return value;
+	}
+}
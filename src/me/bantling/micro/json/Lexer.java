@@ -1,7 +1,11 @@
 package me.bantling.micro.json;
 
-import java.io.PushbackReader;
+import java.io.InputStream;
 import java.io.Reader;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Optional;
 import java.util.Spliterators;
@@ -11,18 +15,26 @@ import java.util.stream.StreamSupport;
 import me.bantling.micro.util.Unicode;
 
 /*
- * Lex the next JSON token from a Reader.
+ * Lex the next JSON token from a Reader, or from UTF-8 bytes in an array, ByteBuffer, InputStream, or mapped file.
+ * UTF-8 bytes are decoded directly by the lexer (see Utf8LexerInput), rather than by wrapping them in a Reader.
  * 
  * Since a Reader is, in general, not rereadable, Lexer is also an Iterator and Iterable, and offers a stream method.
- * Lexer itself is not reusable - while the underlying stream can be reset, Lexer cannot, and it wraps the reader with
- * a PushBackReader that can back up twice, since a Unicode code point can be up to two UTF-16 characters.
+ * Lexer reads a reader or stream a block at a time into an internal window (see CharLexerInput and Utf8LexerInput), so
+ * it may read ahead of the last token lexed, and cannot go back to an earlier position of the same input. Instead, a
+ * Lexer can be reset onto a new input, which keeps its token text buffer and windows, so lexing many small documents
+ * does not allocate them for each document.
  * 
- * The user must only use one of the lex/Iterator/Iterable/Stream paradigms, or the lexer may give unexpected results:
+ * The user must only use one of the cursor/lex/Iterator/Iterable/Stream paradigms, or the lexer may give unexpected
+ * results:
+ * - Loop using nextToken() until null is returned, examining each token with the cursor accessors
  * - Loop using lex() until an empty Optional is returned
  * - Loop using hasNext()/next() until hasNext() returns false
  * - Loop using a generic for loop (equivalent to using hasNext()/next())
  * - Loop using a stream
  * 
+ * The cursor does not allocate anything per token - the text of the current token is kept in a char[] that is reused
+ * for every token. The other paradigms are built on the cursor, and allocate a LexerToken per string or number.
+ * 
  * Iterating the lexer allows iterating legal tokens regardless of whether the sequence makes any sense or not.
  * See Parser for iterating legal tokens only in a legal order.
  */
@@ -31,6 +43,7 @@ public final class Lexer implements Iterator<LexerToken>, Iterable<LexerToken> {
 	static final String NO_ASCII_CONTROL                = "Strings cannot contain ASCII control characters";
 	static final String INCOMPLETE_BACKSLASH_ESCAPE     = "Unexpected EOF: incomplete backslash escape";
 	static final String INCOMPLETE_UNICODE_ESCAPE       = "Unexpected EOF: incomplete unicode escape";
+	static final String INCOMPLETE_CONTAINER            = "Unexpected EOF: incomplete object or array";
 	static final String INVALID_UNICODE_ESCAPE_FMT      = "Invalid unicode escape: \\u%s";
     static final String INVALID_HIGH_SURROGATE_ONLY_FMT = "Invalid unicode escape: \\u%s is a valid UTF-16 high surrogate, but it must be followed by another \\u escape this is a valid UTF-16 low surrogate";
     static final String INVALID_SURROGATE_ESCAPE_FMT    = "Invalid unicode escape: \\u%s is a valid UTF-16 high surrogate, but \\u%s is not a valid UTF-16 low surrogate";
@@ -44,25 +57,70 @@ public final class Lexer implements Iterator<LexerToken>, Iterable<LexerToken> {
 	static final String BOOLEAN_SPELLED_TRUE_OR_FALSE   = "A boolean value must be spelled true or false in lower case";
 	static final String NULL_SPELLING                   = "A null value must be spelled null in lower case";
 	static final String INVALID_CHARACTER_FMT           = "Invalid JSON input: character %s at position %s";
+	static final String INVALID_UTF8_FMT                = "Invalid UTF-8 input: malformed byte sequence at position %s";
+	
+	static final String NO_TOKEN                        = "There is no current token";
+	static final String NOT_AN_OPENER                   = "The current token is not an opening brace or bracket";
+	static final String NOT_A_LONG_FMT                  = "%s is not a number that fits in a long";
+	static final String NOT_A_DOUBLE_FMT                = "%s is not a number";
+	
+	// Largest absolute value a number exponent accumulates to, anything larger is equivalent
+	private static final int MAX_EXPONENT = 100_000_000;
+	
+	// Initial size of token text buffer, it doubles as needed
+	private static final int INITIAL_TOKEN_SIZE = 64;
 	
-	// Underlying Reader
-	private final PushbackReader reader;
+	// Underlying input
+	private LexerInput input;
+	
+	// Windows for a Reader, and for a stream or direct buffer, allocated on first use and kept across resets
+	private char[] charWindow;
+	private byte[] byteWindow;
 	
 	// Current 1-based line and character position within input - make available to parser
 	private boolean skipLF;
 	int currentLine = 1;
 	int currentPos = 0;
 	
+	// Current token of cursor: type, offset, and text
+	private LexerToken.Type type;
+	private long start;
+	private char[] chars = new char[INITIAL_TOKEN_SIZE];
+	private int length;
+	
+	// Current NUMBER token: signs, and ranges of token text for integer, fractional, and exponent (empty if end is 0)
+	private boolean positive;
+	private int integerStart;
+	private int integerEnd;
+	private int fractionalStart;
+	private int fractionalEnd;
+	private boolean positiveExponent;
+	private int exponentStart;
+	private int exponentEnd;
+	
+	// Current NUMBER token value accumulated while scanning: the number is (unsigned) mantissa * 10^decimalExponent,
+	// where mantissa has the first MAX_DIGITS significant digits, and truncated is true if any non-zero digits after
+	// them were dropped.
+	private long mantissa;
+	private int significantDigits;
+	private int decimalExponent;
+	private boolean truncated;
+	
+	// Code points of last \\u escape
+	private final int[] hex = new int[4];
+	
 	// Last token iterated
 	Optional<LexerToken> token;
 	boolean searched;
 	
-	// Get next code point from reader
+	// Describe current position for error messages
+	private String position() {
+		return String.format("%d:%d", Integer.valueOf(currentLine), Integer.valueOf(currentPos));
+	}
+	
+	// Get next code point from input
 	private int nextCodePoint() {
-		final int codePoint = Unicode.nextCodePoint(
-			reader,
-			() -> String.format("%d:%d", Integer.valueOf(currentLine), Integer.valueOf(currentPos))
-		);
+		final int codePoint = input.read();
 		if (codePoint >= 0) {
 			if (codePoint == '\r') {
 				skipLF = true;
@@ -83,9 +141,9 @@ public final class Lexer implements Iterator<LexerToken>, Iterable<LexerToken> {
 		return codePoint;
 	}
 	
-	// Unread a code point
-	private void unreadCodePoint(final int codePoint) {
-		Unicode.unreadCodePoint(reader, codePoint);
+	// Unread the last code point read
+	private void unreadCodePoint() {
+		input.unread();
 		currentPos--;
 	}
 	
@@ -93,17 +151,139 @@ public final class Lexer implements Iterator<LexerToken>, Iterable<LexerToken> {
 	public Lexer(
 		final Reader reader
 	) {
-		// Must be able to push back two bytes
-		this.reader = new PushbackReader(reader, 2);
+		reset(reader);
+	}
+	
+	// Construct from chars, which are lexed in place
+	public Lexer(
+		final char[] chars
+	) {
+		reset(chars);
+	}
+	
+	// Construct from a slice of chars, which are lexed in place
+	public Lexer(
+		final char[] chars,
+		final int offset,
+		final int length
+	) {
+		reset(chars, offset, length);
+	}
+	
+	// Construct from UTF-8 bytes, which are lexed in place
+	public Lexer(
+		final byte[] bytes
+	) {
+		reset(bytes);
+	}
+	
+	// Construct from a slice of UTF-8 bytes, which are lexed in place
+	public Lexer(
+		final byte[] bytes,
+		final int offset,
+		final int length
+	) {
+		reset(bytes, offset, length);
+	}
+	
+	// Construct from the remaining UTF-8 bytes of a buffer.
+	// The buffer position is not changed, and the buffer must not be modified while lexing.
+	public Lexer(
+		final ByteBuffer bytes
+	) {
+		reset(bytes);
+	}
+	
+	// Construct from a stream of UTF-8 bytes
+	public Lexer(
+		final InputStream stream
+	) {
+		reset(stream);
+	}
+	
+	// Construct from a UTF-8 file, which is memory mapped rather than read, in windows of up to 1GB.
+	// This avoids copying the file into a Reader and decoding it, which matters for multi gigabyte files.
+	public static Lexer ofMappedFile(
+		final Path path
+	) {
+		return new Lexer(new Utf8LexerInput(new MappedWindows(path)));
+	}
+	
+	// Construct from any input
+	Lexer(
+		final LexerInput input
+	) {
+		reset(input);
+	}
+	
+	// Append a char to the token text, growing the buffer as necessary
+	private void append(final char theChar) {
+		if (length == chars.length) {
+			chars = Arrays.copyOf(chars, chars.length * 2);
+		}
+		chars[length++] = theChar;
+	}
+	
+	// Append a code point to the token text as one or two chars
+	private void appendCodePoint(final int codePoint) {
+		if (Character.isBmpCodePoint(codePoint)) {
+			append((char)(codePoint));
+		} else {
+			append(Character.highSurrogate(codePoint));
+			append(Character.lowSurrogate(codePoint));
+		}
+	}
+	
+	// Read the 4 hex digits of a \\u escape, returning the UTF-16 char they describe
+	private char lexUnicodeEscape() {
+		int value = 0;
+		boolean valid = true;
+		for (int i = 0; i < 4; i++) {
+			final int theChar = nextCodePoint();
+			if (theChar < 0) {
+				throw new RuntimeException(INCOMPLETE_UNICODE_ESCAPE);
+			}
+			hex[i] = theChar;
+			
+			final int digit = theChar < 128 ? Character.digit(theChar, 16) : -1;
+			valid &= digit >= 0;
+			value = (value << 4) | digit;
+		}
+		
+		if (! valid) {
+			throw new RuntimeException(String.format(INVALID_UNICODE_ESCAPE_FMT, hexString()));
+		}
+		
+		return (char)(value);
+	}
+	
+	// The 4 code points of the last \\u escape read, for error messages
+	private String hexString() {
+		return new String(hex, 0, 4);
+	}
+	
+	// Copy a run of string content that needs no examination straight from the input window.
+	// Return the next code point, which does need examination.
+	private int scanString() {
+		for (;;) {
+			final int copied = input.scanString(chars, length);
+			length += copied;
+			currentPos += copied;
+			
+			if (length < chars.length) {
+				return nextCodePoint();
+			}
+			
+			chars = Arrays.copyOf(chars, chars.length * 2);
+		}
 	}
 	
 	// Lex a string, which contains everything between a pait of double quotes.
 	// We have to interpret some escape sequences.
-	private LexerToken lexString() {
-		final StringBuilder sb = new StringBuilder();
-		
+	// Most strings are mostly plain chars, that are copied in bulk by scanString, only the rest go one by one.
+	private LexerToken.Type lexString() {
 		// Initial " already swallowed, collect all before next "
-		for (int theChar = nextCodePoint(); theChar != '"'; theChar = nextCodePoint()) {
+		for (int theChar = scanString(); theChar != '"'; theChar = scanString()) {
 			if (theChar < 0) {
 				throw new RuntimeException(INCOMPLETE_STRING);
 			}
@@ -122,92 +302,58 @@ public final class Lexer implements Iterator<LexerToken>, Iterable<LexerToken> {
 				
 				switch (theChar) {
 					case '"':
-						sb.appendCodePoint(theChar);
+						append('"');
 						break;
 						
 					case '\\':
-						sb.appendCodePoint(theChar);
+						append('\\');
 						break;
 						
 					case '/':
-						sb.appendCodePoint(theChar);
+						append('/');
 						break;
 						
 					case 'b':
-						sb.append('\b');
+						append('\b');
 						break;
 						
 					case 'f':
-						sb.append('\f');
+						append('\f');
 						break;
 						
 					case 'n':
-						sb.append('\n');
+						append('\n');
 						break;
 						
 					case 'r':
-						sb.append('\r');
+						append('\r');
 						break;
 						
 					case 't':
-						sb.append('\t');
+						append('\t');
 						break;
 						
 					case 'u': {
 						// u must be followed by 4 hex digits
 					    // This escape may be a high surrogate
-						final StringBuilder high = new StringBuilder();
-						for (int i = 1; i <= 4; i++) {
-							theChar = nextCodePoint();
-							if (theChar < 0) {
-								throw new RuntimeException(INCOMPLETE_UNICODE_ESCAPE);
-							}
-							high.appendCodePoint(theChar);
-						}
-						
-						char highChar;
-						try {
-						    highChar = (char)(Integer.parseUnsignedInt(high.toString(), 16));
-						} catch (@SuppressWarnings("unused") final NumberFormatException e) {
-							throw new RuntimeException(String.format(INVALID_UNICODE_ESCAPE_FMT, high.toString()));
-						}
-						
-						sb.append(highChar);
+						final char highChar = lexUnicodeEscape();
+						append(highChar);
 						
 						// A high surrogate escape must be followed by a low surrogate escape
 						if (Character.isHighSurrogate(highChar)) {
+							final String high = hexString();
+							
 						    // Expect another \\uXXXX sequence
-						    theChar = nextCodePoint();
-						    if (theChar != '\\') {
-	                            throw new RuntimeException(String.format(INVALID_HIGH_SURROGATE_ONLY_FMT, high.toString()));
+						    if ((nextCodePoint() != '\\') || (nextCodePoint() != 'u')) {
+	                            throw new RuntimeException(String.format(INVALID_HIGH_SURROGATE_ONLY_FMT, high));
 						    }
-
-                            theChar = nextCodePoint();
-                            if (theChar != 'u') {
-                                throw new RuntimeException(String.format(INVALID_HIGH_SURROGATE_ONLY_FMT, high.toString()));
-                            }
 						    
-                            final StringBuilder low = new StringBuilder();
-	                        for (int i = 1; i <= 4; i++) {
-	                            theChar = nextCodePoint();
-	                            if (theChar < 0) {
-	                                throw new RuntimeException(INCOMPLETE_UNICODE_ESCAPE);
-	                            }
-	                            low.appendCodePoint(theChar);
-	                        }
-	                        
-	                        char lowChar;
-	                        try {
-	                            lowChar = (char)(Integer.parseUnsignedInt(low.toString(), 16));
-	                        } catch (@SuppressWarnings("unused") final NumberFormatException e) {
-	                            throw new RuntimeException(String.format(INVALID_UNICODE_ESCAPE_FMT, low.toString()));
-	                        }
-	                        
-	                        if (!Character.isLowSurrogate(lowChar)) {
-                                throw new RuntimeException(String.format(INVALID_SURROGATE_ESCAPE_FMT, high.toString(), low.toString()));
+						    final char lowChar = lexUnicodeEscape();
+	                        if (! Character.isLowSurrogate(lowChar)) {
+                                throw new RuntimeException(String.format(INVALID_SURROGATE_ESCAPE_FMT, high, hexString()));
 	                        }
 	                        
-	                        sb.append(lowChar);
+	                        append(lowChar);
 						}
 						
 						break;
@@ -217,26 +363,27 @@ public final class Lexer implements Iterator<LexerToken>, Iterable<LexerToken> {
 						throw new RuntimeException(String.format(INVALID_BACKSLASH_ESCAPE_FMT, Character.toString(theChar)));
 				}
 			} else {
-				sb.append(Character.toChars(theChar));
+				appendCodePoint(theChar);
 			}
 		}
 		
 		// Closing " swalled by for loop
-		return new LexerToken(LexerToken.Type.STRING, sb.toString());
+		return LexerToken.Type.STRING;
 	}
 	
 	// Lex a number, that is described by the following regex:
 	// -?[0-9]+(.[0-9]+([eE][-+]?[0-9]+)?)?
-	private LexerToken lexNumber(final int firstChar) {
-		final StringBuilder sb = new StringBuilder();
-		boolean positive = true;
-		final StringBuilder integer = new StringBuilder();
-		final StringBuilder fractional = new StringBuilder();
-		boolean positiveExponent = true;
-		final StringBuilder exponent = new StringBuilder();
+	// The whole number is the token text, the parts are recorded as ranges of the token text.
+	private LexerToken.Type lexNumber(final int firstChar) {
+		positive = true;
+		positiveExponent = true;
+		fractionalStart = fractionalEnd = exponentStart = exponentEnd = 0;
+		mantissa = 0;
+		significantDigits = decimalExponent = 0;
+		truncated = false;
 		
 		// Append first char, which is either a minus or digit
-		sb.append((char)(firstChar));
+		append((char)(firstChar));
 		
 		// If first char is -, there must be at least one digit for integer
 		int theChar;
@@ -251,18 +398,21 @@ public final class Lexer implements Iterator<LexerToken>, Iterable<LexerToken> {
 			if ((theChar < '0') || (theChar > '9')) {
 				throw new RuntimeException(MINUS_SIGN_REQUIRES_DIGIT);
 			}
-			sb.append((char)(theChar));
-			integer.append((char)(theChar));
+			integerStart = 1;
+			append((char)(theChar));
+			accumulate(theChar, false);
 		} else {
-			// first char must be a digit, add it to integer
-			integer.append((char)(firstChar));
+			// first char must be a digit, it is the start of integer
+			integerStart = 0;
+			accumulate(firstChar, false);
 		}
 
 		// Have minus and first digit. Consume more digits.
 		for (theChar = nextCodePoint(); ((theChar >= '0') && (theChar <= '9')); theChar = nextCodePoint()) {
-			sb.append((char)(theChar));
-			integer.append((char)(theChar));
+			append((char)(theChar));
+			accumulate(theChar, false);
 		}
+		integerEnd = length;
 		
 		// We read an unused non-digit char that may not be part of this token
 		// Next block either:
@@ -274,21 +424,23 @@ public final class Lexer implements Iterator<LexerToken>, Iterable<LexerToken> {
 		if (theChar >= 0) {
 			// Have minus integer. May be followed by dot fractional.
 			if (theChar == '.') {
-				sb.append('.');
+				append('.');
 				
 				// At least one digit is required
 				theChar = nextCodePoint();
 				if ((theChar < '0') || (theChar > '9')) {
 					throw new RuntimeException(DECIMAL_POINT_REQUIRES_DIGIT);
 				}
-				sb.append((char)(theChar));
-				fractional.append((char)(theChar));
+				fractionalStart = length;
+				append((char)(theChar));
+				accumulate(theChar, true);
 				
 				// Consume more digits
 				for (theChar = nextCodePoint(); ((theChar >= '0') && (theChar <= '9')); theChar = nextCodePoint()) {
-					sb.append((char)(theChar));
-					fractional.append((char)(theChar));
+					append((char)(theChar));
+					accumulate(theChar, true);
 				}
+				fractionalEnd = length;
 			}
 		}
 		
@@ -299,12 +451,12 @@ public final class Lexer implements Iterator<LexerToken>, Iterable<LexerToken> {
 		if (theChar >= 0) {
 			// Have minus integer dot fractional. May be followed by exponent.
 			if ((theChar == 'e') || (theChar == 'E')) {
-				sb.append((char)(theChar));
+				append((char)(theChar));
 				
 				// May be followed by - or +
 				theChar = nextCodePoint();
 				if ((theChar == '-') || (theChar == '+')) {
-					sb.append((char)(theChar));
+					append((char)(theChar));
 					positiveExponent = theChar == '+';
 					
 					theChar = nextCodePoint();
@@ -314,41 +466,58 @@ public final class Lexer implements Iterator<LexerToken>, Iterable<LexerToken> {
 				if ((theChar < '0') || (theChar > '9')) {
 					throw new RuntimeException(EXPONENT_REQUIRES_DIGIT);
 				}
-				sb.append((char)(theChar));
-				exponent.append((char)(theChar));
+				exponentStart = length;
+				append((char)(theChar));
+				int exponentValue = theChar - '0';
 				
-				// Consume more digits
+				// Consume more digits.
+				// The exponent saturates, as any exponent this large is already zero or infinity.
 				for (theChar = nextCodePoint(); ((theChar >= '0') && (theChar <= '9')); theChar = nextCodePoint()) {
-					sb.append((char)(theChar));
-					exponent.append((char)(theChar));
+					append((char)(theChar));
+					if (exponentValue < MAX_EXPONENT) {
+						exponentValue = (exponentValue * 10) + (theChar - '0');
+					}
 				}
+				exponentEnd = length;
+				decimalExponent += positiveExponent ? exponentValue : -exponentValue;
 			}
 		}
 		
 		// Unread unused char (unless it is EOF), it is first char of next token
 		if (theChar >= 0) {
-			unreadCodePoint(theChar);
+			unreadCodePoint();
 		}
 		
-		// Construct with number properties
-		return new LexerToken(
-			sb.toString(),
-			positive,
-			integer.toString(),
-			fractional.toString(),
-			positiveExponent,
-			exponent.toString()
-		);
+		return LexerToken.Type.NUMBER;
 	}
 	
-	private LexerToken lexBoolean(final int firstChar) {
+	// Accumulate a digit of the integer or fractional part of a number into the mantissa and decimal exponent
+	private void accumulate(final int digit, final boolean fractional) {
+		if (significantDigits < DecimalToDouble.MAX_DIGITS) {
+			mantissa = (mantissa * 10) + (digit - '0');
+			if (mantissa != 0) {
+				// Leading zeros are not significant
+				significantDigits++;
+			}
+			if (fractional) {
+				decimalExponent--;
+			}
+		} else {
+			truncated |= digit != '0';
+			if (! fractional) {
+				decimalExponent++;
+			}
+		}
+	}
+	
+	private LexerToken.Type lexBoolean(final int firstChar) {
 		// First char is t or f
-		LexerToken result = null;
+		LexerToken.Type result = null;
 		if (firstChar == 't') {
 			if (nextCodePoint() == 'r') {
 				if (nextCodePoint() == 'u') {
 					if (nextCodePoint() == 'e') {
-						result = LexerToken.TRUE_TOKEN;
+						result = LexerToken.Type.TRUE;
 					}
 				}
 			}
@@ -357,7 +526,7 @@ public final class Lexer implements Iterator<LexerToken>, Iterable<LexerToken> {
 				if (nextCodePoint() == 'l') {
 					if (nextCodePoint() == 's') {
 						if (nextCodePoint() == 'e') {
-							result = LexerToken.FALSE_TOKEN;
+							result = LexerToken.Type.FALSE;
 						}
 					}
 				}
@@ -371,13 +540,13 @@ public final class Lexer implements Iterator<LexerToken>, Iterable<LexerToken> {
 		return result;
 	}
 	
-	private LexerToken lexNull() {
+	private LexerToken.Type lexNull() {
 		// First char is n
-		LexerToken result = null;
+		LexerToken.Type result = null;
 		if (nextCodePoint() == 'u') {
 			if (nextCodePoint() == 'l') {
 				if (nextCodePoint() == 'l') {
-					result = LexerToken.NULL_TOKEN;
+					result = LexerToken.Type.NULL;
 				}
 			}
 		}
@@ -389,11 +558,18 @@ public final class Lexer implements Iterator<LexerToken>, Iterable<LexerToken> {
 		return result;
 	}
 	
-	// Lex next token.
-	// If there are no more tokens, an empty Optional is returned.
-	// Otherwise, a Optional containing the next token is returned.
-	public Optional<LexerToken> lex() {
-		LexerToken result = null;
+	// ==== Cursor
+	
+	/*
+	 * Lex next token without allocating anything, and return its type.
+	 * If there are no more tokens, null is returned.
+	 * 
+	 * The token is then described by tokenStart, tokenLength, copyChars, tokenString, longValue, and doubleValue,
+	 * until the next call to nextToken.
+	 */
+	public LexerToken.Type nextToken() {
+		LexerToken.Type result = null;
+		length = 0;
 
 		// Skip whitespace
 		int theChar = ' '; // guarantee while loop executes at least once
@@ -403,6 +579,8 @@ public final class Lexer implements Iterator<LexerToken>, Iterable<LexerToken> {
 		
 		// Do nothing if EOF, else parse next token
 		if (theChar >= 0) {
+			start = input.offset();
+			
 			if ((theChar >= '0') && (theChar <= '9')) {
 				result = lexNumber(theChar);
 			} else {
@@ -428,45 +606,460 @@ public final class Lexer implements Iterator<LexerToken>, Iterable<LexerToken> {
 						break;
 						
 					case ',':
-						result = LexerToken.COMMA_TOKEN;
+						result = LexerToken.Type.COMMA;
 						break;
 					
 					case '{':
-						result = LexerToken.OPEN_BRACE_TOKEN;
+						result = LexerToken.Type.OPEN_BRACE;
 						break;
 						
 					case ':':
-						result = LexerToken.COLON_TOKEN;
+						result = LexerToken.Type.COLON;
 						break;
 						
 					case '}':
-						result = LexerToken.CLOSE_BRACE_TOKEN;
+						result = LexerToken.Type.CLOSE_BRACE;
 						break;
 						
 					case '[':
-						result = LexerToken.OPEN_BRACKET_TOKEN;
+						result = LexerToken.Type.OPEN_BRACKET;
 						break;
 						
 					case ']':
-						result = LexerToken.CLOSE_BRACKET_TOKEN;
+						result = LexerToken.Type.CLOSE_BRACKET;
 						break;
 						
 					default: {
 						throw new RuntimeException(String.format(
 							Lexer.INVALID_CHARACTER_FMT,
 							Unicode.formatAsUnicodeEscapes(theChar),
-							String.format("%d:%d", Integer.valueOf(currentLine), Integer.valueOf(currentPos))
+							position()
 						));
 					}
 				}
 			}
 		}
+		
+		type = result;
+		return result;
+	}
+	
+	/*
+	 * Skip the rest of the object or array opened by the current token, up to and including the matching closing brace
+	 * or bracket, which becomes the current token. Only nesting depth and string boundaries are tracked, so the skipped
+	 * content is not lexed, and is not checked for errors other than EOF - this is much faster than lexing it.
+	 */
+	public LexerToken.Type skipContainer() {
+		if ((type != LexerToken.Type.OPEN_BRACE) && (type != LexerToken.Type.OPEN_BRACKET)) {
+			throw new IllegalStateException(NOT_AN_OPENER);
+		}
+		
+		length = 0;
+		int depth = 1;
+		do {
+			final int theChar = nextCodePoint();
+			switch (theChar) {
+				case -1:
+					throw new RuntimeException(INCOMPLETE_CONTAINER);
+					
+				case '"':
+					// Skip plain runs in bulk, and the rest one by one
+					for (int c = nextSkippedStringCodePoint(); c != '"'; c = nextSkippedStringCodePoint()) {
+						if (c < 0) {
+							throw new RuntimeException(INCOMPLETE_STRING);
+						}
+						
+						// The char after a backslash cannot end the string
+						if ((c == '\\') && (nextCodePoint() < 0)) {
+							throw new RuntimeException(INCOMPLETE_BACKSLASH_ESCAPE);
+						}
+					}
+					break;
+					
+				case '{':
+				case '[':
+					depth++;
+					break;
+					
+				case '}':
+				case ']':
+					if (--depth == 0) {
+						start = input.offset();
+						type = theChar == '}' ? LexerToken.Type.CLOSE_BRACE : LexerToken.Type.CLOSE_BRACKET;
+					}
+					break;
+					
+				default:
+					// Anything else is skipped
+			}
+		} while (depth > 0);
+		
+		return type;
+	}
+	
+	// Skip any run of plain string content, and return the next code point
+	private int nextSkippedStringCodePoint() {
+		for (int skipped; (skipped = input.scanString(chars, 0)) > 0;) {
+			currentPos += skipped;
+		}
+		
+		return nextCodePoint();
+	}
+	
+	// The 0-based offset of the first character of the current token (including the opening quote of a string) from
+	// the start of the input, in the units of the input: chars for a Reader, bytes for UTF-8 input.
+	public long tokenStart() {
+		return start;
+	}
+	
+	// The number of chars copyChars copies for the current token:
+	// - STRING: the decoded string contents, without quotes
+	// - NUMBER: the number exactly as it appears in the input
+	// - all others: the literal text of the token, eg true or {
+	public int tokenLength() {
+		return type == LexerToken.Type.STRING || type == LexerToken.Type.NUMBER ? length : fixedToken().token.length();
+	}
+	
+	// Copy the chars of the current token into the given array at the given offset, and return the number copied
+	public int copyChars(final char[] dest, final int offset) {
+		if (type == LexerToken.Type.STRING || type == LexerToken.Type.NUMBER) {
+			System.arraycopy(chars, 0, dest, offset, length);
+			return length;
+		}
+		
+		final String text = fixedToken().token;
+		text.getChars(0, text.length(), dest, offset);
+		return text.length();
+	}
+	
+	// Copy the chars of the current token into the start of the given array, and return the number copied
+	public int copyChars(final char[] dest) {
+		return copyChars(dest, 0);
+	}
+	
+	// The chars of the current token as a String, which is allocated except for fixed tokens like true and {
+	public String tokenString() {
+		return type == LexerToken.Type.STRING || type == LexerToken.Type.NUMBER ?
+			new String(chars, 0, length) :
+			fixedToken().token;
+	}
+	
+	// The current NUMBER token as a long.
+	// Dies if the number has a fractional part or exponent, or does not fit in a long.
+	public long longValue() {
+		if ((type != LexerToken.Type.NUMBER) || (fractionalEnd > 0) || (exponentEnd > 0)) {
+			throw new NumberFormatException(String.format(NOT_A_LONG_FMT, tokenString()));
+		}
+		
+		// Up to 18 digits always fit
+		if (significantDigits < DecimalToDouble.MAX_DIGITS) {
+			return positive ? mantissa : -mantissa;
+		}
+		
+		// Accumulate negatively, since the magnitude of Long.MIN_VALUE is one larger than Long.MAX_VALUE
+		long result = 0;
+		for (int i = integerStart; i < integerEnd; i++) {
+			final int digit = chars[i] - '0';
+			if ((result < Long.MIN_VALUE / 10) || (result * 10 < Long.MIN_VALUE + digit)) {
+				throw new NumberFormatException(String.format(NOT_A_LONG_FMT, tokenString()));
+			}
+			result = result * 10 - digit;
+		}
+		
+		if (positive) {
+			if (result == Long.MIN_VALUE) {
+				throw new NumberFormatException(String.format(NOT_A_LONG_FMT, tokenString()));
+			}
+			result = -result;
+		}
+		
+		return result;
+	}
+	
+	// The current NUMBER token as the nearest double
+	public double doubleValue() {
+		if (type != LexerToken.Type.NUMBER) {
+			throw new NumberFormatException(String.format(NOT_A_DOUBLE_FMT, tokenString()));
+		}
+		
+		final double result = DecimalToDouble.toDouble(! positive, mantissa, decimalExponent, truncated);
+		return Double.isNaN(result) ? new BigDecimal(chars, 0, length).doubleValue() : result;
+	}
+	
+	// The current NUMBER token as a JSONNumber.
+	// Most numbers are small enough to store inline, where the accumulated mantissa is exactly the digits.
+	// Larger numbers retain the token text and the accumulated value, so they can convert to a long or double without
+	// parsing strings, and only split the text into parts if they are asked for.
+	JSONNumber jsonNumber() {
+		final int fractionalLength = fractionalEnd - fractionalStart;
+		final int exponentLength = exponentEnd - exponentStart;
+		if (JSONNumber.fitsInline(integerEnd - integerStart, chars[integerStart], fractionalLength, exponentLength)) {
+			int exponent = 0;
+			for (int i = exponentStart; i < exponentEnd; i++) {
+				exponent = (exponent * 10) + (chars[i] - '0');
+			}
+			
+			// The exponent char is followed by an optional sign
+			final boolean exponentSign =
+				(exponentLength > 0) && (chars[exponentStart - 1] != 'e') && (chars[exponentStart - 1] != 'E');
+			final boolean upperCaseE = (exponentLength > 0) && (chars[exponentStart - (exponentSign ? 2 : 1)] == 'E');
+			
+			return new JSONNumber(
+				positive,
+				mantissa,
+				fractionalLength,
+				positiveExponent,
+				exponent,
+				exponentLength,
+				upperCaseE,
+				exponentSign
+			);
+		}
+		
+		return new JSONNumber(
+			tokenString(),
+			positive,
+			integerEnd - integerStart,
+			fractionalLength,
+			positiveExponent,
+			exponentLength,
+			mantissa,
+			decimalExponent,
+			truncated
+		);
+	}
+	
+	// The singleton token for a type with fixed text
+	private LexerToken fixedToken() {
+		if (type == null) {
+			throw new IllegalStateException(NO_TOKEN);
+		}
+		
+		switch (type) {
+			case TRUE:
+				return LexerToken.TRUE_TOKEN;
+				
+			case FALSE:
+				return LexerToken.FALSE_TOKEN;
+				
+			case NULL:
+				return LexerToken.NULL_TOKEN;
+				
+			case COMMA:
+				return LexerToken.COMMA_TOKEN;
+				
+			case OPEN_BRACE:
+				return LexerToken.OPEN_BRACE_TOKEN;
+				
+			case COLON:
+				return LexerToken.COLON_TOKEN;
+				
+			case CLOSE_BRACE:
+				return LexerToken.CLOSE_BRACE_TOKEN;
+				
+			case OPEN_BRACKET:
+				return LexerToken.OPEN_BRACKET_TOKEN;
+				
+			case CLOSE_BRACKET:
+				return LexerToken.CLOSE_BRACKET_TOKEN;
+				
+			// STRING and NUMBER have no fixed text
+			default:
+				throw new IllegalStateException(NO_TOKEN);
+		}
+	}
+	
+	// The current STRING token as an object key, using the key cache if one is provided
+	String key(final KeyCache keyCache) {
+		return keyCache == null ? new String(chars, 0, length) : keyCache.intern(chars, 0, length);
+	}
+	
+	// The buffer holding the text of the current token, which is only valid until the next token is lexed
+	char[] tokenChars() {
+		return chars;
+	}
+	
+	// True if the current token is a NUMBER with no fractional part or exponent that fits in a long.
+	// A negative zero is not, as a long cannot keep its sign.
+	boolean isLong() {
+		if ((type != LexerToken.Type.NUMBER) || (fractionalEnd > 0) || (exponentEnd > 0)) {
+			return false;
+		}
+		
+		if ((! positive) && (mantissa == 0)) {
+			return false;
+		}
+		
+		// Up to 18 significant digits always fit, 20 or more never do, where leading zeroes are not significant
+		int first = integerStart;
+		while ((first < integerEnd - 1) && (chars[first] == '0')) {
+			first++;
+		}
+		
+		final int digits = integerEnd - first;
+		if (digits < DecimalToDouble.MAX_DIGITS) {
+			return true;
+		}
+		
+		if (digits > DecimalToDouble.MAX_DIGITS) {
+			return false;
+		}
+		
+		// 19 digits fit if they are not greater than the digits of the limit
+		final String limit = positive ? "9223372036854775807" : "9223372036854775808";
+		for (int i = 0; i < digits; i++) {
+			final char c = chars[first + i];
+			if (c != limit.charAt(i)) {
+				return c < limit.charAt(i);
+			}
+		}
+		
+		return true;
+	}
+	
+	// True if the text of the current STRING token is the given string, without allocating anything
+	boolean tokenEquals(final String str) {
+		if (length != str.length()) {
+			return false;
+		}
+		
+		for (int i = 0; i < length; i++) {
+			if (chars[i] != str.charAt(i)) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	// The current token as a LexerToken, or null if there is no current token
+	LexerToken currentToken() {
+		LexerToken result = null;
+		
+		if (type == LexerToken.Type.STRING) {
+			result = new LexerToken(LexerToken.Type.STRING, tokenString());
+		} else if (type == LexerToken.Type.NUMBER) {
+			result = new LexerToken(
+				tokenString(),
+				positive,
+				new String(chars, integerStart, integerEnd - integerStart),
+				new String(chars, fractionalStart, fractionalEnd - fractionalStart),
+				positiveExponent,
+				new String(chars, exponentStart, exponentEnd - exponentStart)
+			);
+		} else if (type != null) {
+			result = fixedToken();
+		}
+		
+		return result;
+	}
+	
+	// Lex next token.
+	// If there are no more tokens, an empty Optional is returned.
+	// Otherwise, a Optional containing the next token is returned.
+	public Optional<LexerToken> lex() {
+		nextToken();
 	
 		// Save token in case iteration used
-		token = Optional.ofNullable(result);
+		token = Optional.ofNullable(currentToken());
 		return token;
 	}
 	
+	// ==== Reset
+	
+	// Start lexing a new input, keeping the buffers of this lexer, and return this lexer
+	Lexer reset(
+		final LexerInput input
+	) {
+		this.input = input;
+		input.position = this::position;
+		
+		skipLF = false;
+		currentLine = 1;
+		currentPos = 0;
+		type = null;
+		start = 0;
+		length = 0;
+		token = null;
+		searched = false;
+		
+		return this;
+	}
+	
+	// Reset to read a Reader, into the kept char[] window
+	public Lexer reset(
+		final Reader reader
+	) {
+		if (charWindow == null) {
+			charWindow = new char[CharLexerInput.WINDOW_SIZE];
+		}
+		
+		return reset(new CharLexerInput(reader, charWindow));
+	}
+	
+	// Reset to lex chars in place
+	public Lexer reset(
+		final char[] chars
+	) {
+		return reset(chars, 0, chars.length);
+	}
+	
+	// Reset to lex a slice of chars in place
+	public Lexer reset(
+		final char[] chars,
+		final int offset,
+		final int length
+	) {
+		return reset(new CharLexerInput(chars, offset, length));
+	}
+	
+	// Reset to lex UTF-8 bytes in place
+	public Lexer reset(
+		final byte[] bytes
+	) {
+		return reset(bytes, 0, bytes.length);
+	}
+	
+	// Reset to lex a slice of UTF-8 bytes in place
+	public Lexer reset(
+		final byte[] bytes,
+		final int offset,
+		final int length
+	) {
+		return reset(new Utf8LexerInput(bytes, offset, length));
+	}
+	
+	// Reset to lex the remaining UTF-8 bytes of a buffer, where a direct buffer is copied into the kept byte[] window.
+	// The buffer position is not changed, and the buffer must not be modified while lexing.
+	public Lexer reset(
+		final ByteBuffer bytes
+	) {
+		return reset(new Utf8LexerInput(bytes, bytes.hasArray() ? null : byteWindow()));
+	}
+	
+	// Reset to read a stream of UTF-8 bytes, into the kept byte[] window
+	public Lexer reset(
+		final InputStream stream
+	) {
+		return reset(new Utf8LexerInput(stream, byteWindow()));
+	}
+	
+	// Reset to lex the remaining UTF-8 bytes of a series of buffers as one input, copied into the kept byte[] window
+	Lexer reset(
+		final Iterator<ByteBuffer> sources
+	) {
+		return reset(new Utf8LexerInput(sources, byteWindow()));
+	}
+	
+	// The byte[] window, allocated on first use
+	private byte[] byteWindow() {
+		if (byteWindow == null) {
+			byteWindow = new byte[Utf8LexerInput.WINDOW_SIZE];
+		}
+		
+		return byteWindow;
+	}
+	
 	// ==== Iterator
 	
 	@Override
@@ -0,0 +1,33 @@
+package me.bantling.micro.json;
+
+import java.util.function.Supplier;
+
+/*
+ * The source of code points for a Lexer.
+ * 
+ * Implementations keep an internal window of the input, so that the Lexer can read a code point at a time with only
+ * some index arithmetic, and back up by moving a cursor rather than pushing characters back into a Reader.
+ * 
+ * The position supplier is provided by the Lexer, and is only called to describe where an error occurred.
+ */
+abstract class LexerInput {
+	// Describes the current position of the Lexer for error messages
+	Supplier<String> position;
+	
+	// Read the next code point, or -1 if EOF.
+	abstract int read();
+	
+	// Copy a run of string content from the window into dest at offset, stopping before the first code point that
+	// has to be examined by read: a quote, backslash, control char, or anything that is not a single UTF-16 char.
+	// Stops at the end of the window or dest. Returns the number of chars copied, which is also the number of
+	// code points copied. Nothing can be unread afterwards.
+	abstract int scanString(char[] dest, int offset);
+	
+	// Back up over the code point last returned by read, which must not have been EOF.
+	// Only one code point can be unread between reads.
+	abstract void unread();
+	
+	// The 0-based offset from the start of the input of the code point last returned by read, or of the next code
+	// point if the last one was unread. The offset is in the units of the input (chars or bytes).
+	abstract long offset();
+}
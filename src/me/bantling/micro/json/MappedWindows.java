@@ -0,0 +1,70 @@
+package me.bantling.micro.json;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import me.bantling.micro.function.Try;
+
+/*
+ * Iterate a file as a series of read only memory mapped windows.
+ * 
+ * A single mapping cannot exceed 2GB, so larger files are mapped one window at a time, as each window is needed.
+ * The file is only open while a window is being mapped - a mapping remains valid after its channel is closed, and is
+ * released when the buffer is garbage collected.
+ */
+final class MappedWindows implements Iterator<ByteBuffer> {
+	// Size of each window, except the last which may be smaller
+	static final int WINDOW_SIZE = 1 << 30;
+	
+	private final Path path;
+	private final long size;
+	private final int windowSize;
+	private long offset;
+	
+	// Construct
+	MappedWindows(
+		final Path path
+	) {
+		this(path, WINDOW_SIZE);
+	}
+	
+	// Construct with a specific window size
+	MappedWindows(
+		final Path path,
+		final int windowSize
+	) {
+		this.path = path;
+		this.size = Try.getLong(() -> {
+			try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+				return channel.size();
+			}
+		});
+		this.windowSize = windowSize;
+	}
+	
+	@Override
+	public boolean hasNext() {
+		return offset < size;
+	}
+	
+	@Override
+	public ByteBuffer next() {
+		if (! hasNext()) {
+			throw new NoSuchElementException();
+		}
+		
+		final long length = Math.min(windowSize, size - offset);
+		final ByteBuffer window = Try.get(() -> {
+			try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+				return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+			}
+		});
+		offset += length;
+		
+		return window;
+	}
+}
@@ -0,0 +1,111 @@
+package me.bantling.micro.json;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/*
+ * Parse newline delimited JSON (NDJSON, also known as JSON Lines), where each line contains one JSON value of any type.
+ * 
+ * Each line is parsed independently, so an error on one line is reported as an invalid NDJSONLine, and the remaining
+ * lines are still parsed. Blank lines are skipped, but still counted for line numbers.
+ * 
+ * The parallel variants read lines sequentially in batches, and parse the batches in parallel.
+ */
+public final class NDJSON {
+	static final String LINE_VALUE    = "An NDJSON line must contain a JSON value";
+	static final String LINE_TRAILING = "An NDJSON line must contain only one JSON value";
+	
+	private NDJSON() {
+		//
+	}
+	
+	// Stream the lines of a reader
+	public static Stream<NDJSONLine> stream(
+		final Reader reader
+	) {
+		return StreamSupport.stream(spliterator(reader), false);
+	}
+	
+	// Stream the lines of UTF-8 bytes
+	public static Stream<NDJSONLine> stream(
+		final byte[] bytes
+	) {
+		return StreamSupport.stream(spliterator(bytes), false);
+	}
+	
+	// Stream the lines of a UTF-8 stream
+	public static Stream<NDJSONLine> stream(
+		final InputStream stream
+	) {
+		return StreamSupport.stream(spliterator(stream), false);
+	}
+	
+	// Stream the lines of a UTF-8 file, which is memory mapped a window at a time
+	public static Stream<NDJSONLine> streamOfMappedFile(
+		final Path path
+	) {
+		return StreamSupport.stream(spliteratorOfMappedFile(path), false);
+	}
+	
+	// Stream the lines of a reader in parallel
+	public static Stream<NDJSONLine> parallelStream(
+		final Reader reader
+	) {
+		return StreamSupport.stream(spliterator(reader), true);
+	}
+	
+	// Stream the lines of UTF-8 bytes in parallel
+	public static Stream<NDJSONLine> parallelStream(
+		final byte[] bytes
+	) {
+		return StreamSupport.stream(spliterator(bytes), true);
+	}
+	
+	// Stream the lines of a UTF-8 stream in parallel
+	public static Stream<NDJSONLine> parallelStream(
+		final InputStream stream
+	) {
+		return StreamSupport.stream(spliterator(stream), true);
+	}
+	
+	// Stream the lines of a UTF-8 file in parallel, which is memory mapped a window at a time
+	public static Stream<NDJSONLine> parallelStreamOfMappedFile(
+		final Path path
+	) {
+		return StreamSupport.stream(spliteratorOfMappedFile(path), true);
+	}
+	
+	// Each line of a reader is copied into its own char[], which is lexed in place
+	private static NDJSONSpliterator<char[]> spliterator(
+		final Reader reader
+	) {
+		return new NDJSONSpliterator<>(new CharLines(reader), Parser::reset);
+	}
+	
+	// Each line of bytes is a slice of the array, which is lexed in place
+	private static NDJSONSpliterator<ByteBuffer> spliterator(
+		final byte[] bytes
+	) {
+		return new NDJSONSpliterator<>(new ByteLines(List.of(ByteBuffer.wrap(bytes)).iterator()), Parser::reset);
+	}
+	
+	// Each line of a stream is a slice of the chunk it was read into, which is lexed in place
+	private static NDJSONSpliterator<ByteBuffer> spliterator(
+		final InputStream stream
+	) {
+		return new NDJSONSpliterator<>(ByteLines.of(stream), Parser::reset);
+	}
+	
+	// Each line of a file is a slice of the direct buffer it is mapped in, which is copied into the window of the
+	// parser's lexer, that is reused for every line
+	private static NDJSONSpliterator<ByteBuffer> spliteratorOfMappedFile(
+		final Path path
+	) {
+		return new NDJSONSpliterator<>(new ByteLines(new MappedWindows(path)), Parser::reset);
+	}
+}
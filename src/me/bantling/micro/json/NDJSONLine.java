@@ -0,0 +1,55 @@
+package me.bantling.micro.json;
+
+import java.util.Optional;
+
+// The result of parsing one line of an NDJSON input: either the value on the line, or the error that occurred parsing it
+public final class NDJSONLine {
+	private final long number;
+	private final JSONValue value;
+	private final RuntimeException error;
+	
+	// Construct a valid line
+	NDJSONLine(
+		final long number,
+		final JSONValue value
+	) {
+		this.number = number;
+		this.value = value;
+		this.error = null;
+	}
+	
+	// Construct an invalid line
+	NDJSONLine(
+		final long number,
+		final RuntimeException error
+	) {
+		this.number = number;
+		this.value = null;
+		this.error = error;
+	}
+	
+	@Override
+	public String toString() {
+		return number + ": " + (error == null ? value : error.getMessage());
+	}
+	
+	// Line number, starting at 1
+	public long getNumber() {
+		return number;
+	}
+	
+	// True if the line was parsed successfully
+	public boolean isValid() {
+		return error == null;
+	}
+	
+	// The value of a valid line, or empty for an invalid line
+	public Optional<JSONValue> getValue() {
+		return Optional.ofNullable(value);
+	}
+	
+	// The error of an invalid line, or empty for a valid line
+	public Optional<RuntimeException> getError() {
+		return Optional.ofNullable(error);
+	}
+}
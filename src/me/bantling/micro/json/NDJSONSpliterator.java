@@ -0,0 +1,171 @@
+package me.bantling.micro.json;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/*
+ * Spliterator of the lines of an NDJSON input, where each line is parsed independently, and a line that fails to parse
+ * is reported as an invalid NDJSONLine without stopping the rest of the lines. Blank lines are skipped.
+ * 
+ * Lines are read sequentially, but splitting takes a batch of unparsed lines, which are then parsed by whichever
+ * thread processes the batch. Reading a line is much cheaper than parsing it, so parallel streams can use all cores.
+ * 
+ * This spliterator and each batch have their own Parser, which is reset onto each line in turn, so that its lexer,
+ * token text buffer, and window are allocated once rather than once per line.
+ */
+final class NDJSONSpliterator<T> implements Spliterator<NDJSONLine> {
+	// Number of lines in each batch
+	static final int BATCH_SIZE = 1024;
+	
+	// Reset a parser onto a line, and return it
+	@FunctionalInterface
+	interface Slicer<T> {
+		Parser reset(Parser parser, T line);
+	}
+	
+	// Input of a new parser, before it is reset onto a line
+	private static final char[] EMPTY = {};
+	
+	private final Supplier<T> lines;
+	private final Slicer<T> slicer;
+	private long number;
+	
+	// Parser of the lines read by this spliterator, created on first use
+	private Parser parser;
+	
+	// Construct from a supplier of lines that returns null after the last line, and a slicer to parse a line
+	NDJSONSpliterator(
+		final Supplier<T> lines,
+		final Slicer<T> slicer
+	) {
+		this.lines = lines;
+		this.slicer = slicer;
+	}
+	
+	// Reset a parser onto a line and parse it, returning null for a blank line
+	private NDJSONLine parse(
+		final Parser parser,
+		final long number,
+		final T line
+	) {
+		try {
+			final Parser lineParser = slicer.reset(parser, line);
+			return lineParser.atEnd() ?
+				null :
+				new NDJSONLine(number, lineParser.parseElement(NDJSON.LINE_VALUE, NDJSON.LINE_TRAILING, 0));
+		} catch (final RuntimeException e) {
+			return new NDJSONLine(number, e);
+		}
+	}
+	
+	@Override
+	public boolean tryAdvance(final Consumer<? super NDJSONLine> action) {
+		if (parser == null) {
+			parser = new Parser(EMPTY);
+		}
+		
+		for (T line; (line = lines.get()) != null;) {
+			final NDJSONLine result = parse(parser, ++number, line);
+			if (result != null) {
+				action.accept(result);
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	@Override
+	public Spliterator<NDJSONLine> trySplit() {
+		final Object[] batch = new Object[BATCH_SIZE];
+		int count = 0;
+		for (T line; (count < BATCH_SIZE) && ((line = lines.get()) != null);) {
+			batch[count++] = line;
+		}
+		
+		if (count == 0) {
+			return null;
+		}
+		
+		final Spliterator<NDJSONLine> result = new Batch(batch, number + 1, 0, count);
+		number += count;
+		
+		return result;
+	}
+	
+	@Override
+	public long estimateSize() {
+		return Long.MAX_VALUE;
+	}
+	
+	@Override
+	public int characteristics() {
+		return ORDERED | NONNULL | IMMUTABLE;
+	}
+	
+	// A batch of lines that have been read but not parsed, where batch[from] is line number first
+	private final class Batch implements Spliterator<NDJSONLine> {
+		private final Object[] batch;
+		private final long first;
+		private int from;
+		private final int to;
+		
+		// Parser of the lines of this batch, created on first use
+		private Parser parser;
+		
+		Batch(
+			final Object[] batch,
+			final long first,
+			final int from,
+			final int to
+		) {
+			this.batch = batch;
+			this.first = first;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		@SuppressWarnings("unchecked")
+		public boolean tryAdvance(final Consumer<? super NDJSONLine> action) {
+			if ((parser == null) && (from < to)) {
+				parser = new Parser(EMPTY);
+			}
+			
+			while (from < to) {
+				final int i = from++;
+				final NDJSONLine result = parse(parser, first + i, (T)(batch[i]));
+				if (result != null) {
+					action.accept(result);
+					return true;
+				}
+			}
+			
+			return false;
+		}
+		
+		@Override
+		public Spliterator<NDJSONLine> trySplit() {
+			if (to - from < 2) {
+				return null;
+			}
+			
+			final int mid = (from + to) >>> 1;
+			final Spliterator<NDJSONLine> prefix = new Batch(batch, first, from, mid);
+			from = mid;
+			
+			return prefix;
+		}
+		
+		@Override
+		public long estimateSize() {
+			return to - from;
+		}
+		
+		@Override
+		public int characteristics() {
+			return ORDERED | NONNULL | IMMUTABLE;
+		}
+	}
+}
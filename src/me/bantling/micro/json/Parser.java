@@ -1,29 +1,39 @@
 package me.bantling.micro.json;
 
+import java.io.InputStream;
 import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Spliterators;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
-// Parse a series of lexical tokens from a reader.
+// Parse a series of lexical tokens from a reader, or from UTF-8 bytes in an array, ByteBuffer, InputStream, or mapped file.
 // The parser ensures the tokens arrive in a correct order for a JSON document.
 // The result of the parse is a JSONValue that is either a document or an array.
+// A parser can be reset onto a new input, keeping its settings and the buffers of it and its lexer (see ParserPool).
 public class Parser implements Iterator<JSONValue>, Iterable<JSONValue> {
-	private static final String START_BRACE_OR_BRACKET    = "A JSON document must be begin with a curly brace or opening square bracket";
-	private static final String OBJECT_FIRST_KEY          = "A JSON object must a string key or closing brace after opening brace";
-	private static final String OBJECT_KEY_COLON          = "A JSON object key name must be followed by a colon";
-	private static final String OBJECT_KEY_COLON_VALUE    = "A JSON object key name and colon must be followed by a value";
-	private static final String OBJECT_VALUE_COMMA_BRACE  = "A JSON object value must be followed by a comma or closing brace";
-	private static final String OBJECT_COMMA_KEY          = "A JSON object cannot have a trailing comma after the last key value pair";
-	private static final String ARRAY_VALUE_OR_BRACKET    = "A JSON array opening square bracket must be followed by a value or closing square bracket";
-	private static final String ARRAY_COMMA_OR_BRACKET    = "A JSON array element must be followed by a comma or closing square bracket";
-	private static final String ARRAY_COMMA_VALUE         = "A JSON array cannot have a trailing comma after the last value";
+	static final String START_BRACE_OR_BRACKET    = "A JSON document must be begin with a curly brace or opening square bracket";
+	static final String OBJECT_FIRST_KEY          = "A JSON object must a string key or closing brace after opening brace";
+	static final String OBJECT_KEY_COLON          = "A JSON object key name must be followed by a colon";
+	static final String OBJECT_KEY_COLON_VALUE    = "A JSON object key name and colon must be followed by a value";
+	static final String OBJECT_VALUE_COMMA_BRACE  = "A JSON object value must be followed by a comma or closing brace";
+	static final String OBJECT_COMMA_KEY          = "A JSON object cannot have a trailing comma after the last key value pair";
+	static final String ARRAY_VALUE_OR_BRACKET    = "A JSON array opening square bracket must be followed by a value or closing square bracket";
+	static final String ARRAY_COMMA_OR_BRACKET    = "A JSON array element must be followed by a comma or closing square bracket";
+	static final String ARRAY_COMMA_VALUE         = "A JSON array cannot have a trailing comma after the last value";
+	static final String MAX_DEPTH_FMT             = "A JSON document cannot have objects and arrays nested more than %d deep";
+	static final String MAX_DEPTH_MUST_BE_POSITIVE = "The maximum depth must be positive";
 	
 	private enum State {
 		START,
@@ -34,30 +44,290 @@ public class Parser implements Iterator<JSONValue>, Iterable<JSONValue> {
 	// Underlying Lexer
 	private final Lexer lexer;
 	private State state;
-	private LexerToken token;
+	private LexerToken.Type token;
 	private Optional<JSONValue> value;
 	private boolean searched;
 	
+	// Optional cache of object keys
+	private KeyCache keyCache;
+	
+	// Maximum nesting of objects and arrays, where a top level object or array is 1
+	private int maxDepth = Integer.MAX_VALUE;
+	
+	// True to build objects and arrays as FlatObjectMap and ArrayList
+	private boolean compactTree;
+	
+	// Objects and arrays being built by parseAnyValue, and the key of the value being built for each object.
+	// They are kept for the next value, and grow as needed.
+	private JSONValue[] containers = new JSONValue[16];
+	private String[] keys = new String[16];
+	
+	// Bit i is set if level i + 1 of the value being walked is an object. It is kept for the next value.
+	private long[] objects = new long[1];
+	
+	// Builds the values that parseAnyValue returns, as the value is walked
+	private final TreeBuilder tree = new TreeBuilder();
+	
 	// Construct
 	public Parser(
 		final Reader reader
 	) {
-		this.lexer = new Lexer(reader);
+		this(new Lexer(reader));
+	}
+	
+	// Construct from chars
+	public Parser(
+		final char[] chars
+	) {
+		this(new Lexer(chars));
+	}
+	
+	// Construct from a slice of chars
+	public Parser(
+		final char[] chars,
+		final int offset,
+		final int length
+	) {
+		this(new Lexer(chars, offset, length));
+	}
+	
+	// Construct from UTF-8 bytes
+	public Parser(
+		final byte[] bytes
+	) {
+		this(new Lexer(bytes));
+	}
+	
+	// Construct from a slice of UTF-8 bytes
+	public Parser(
+		final byte[] bytes,
+		final int offset,
+		final int length
+	) {
+		this(new Lexer(bytes, offset, length));
+	}
+	
+	// Construct from the remaining UTF-8 bytes of a buffer, without changing the buffer position
+	public Parser(
+		final ByteBuffer bytes
+	) {
+		this(new Lexer(bytes));
+	}
+	
+	// Construct from a stream of UTF-8 bytes
+	public Parser(
+		final InputStream stream
+	) {
+		this(new Lexer(stream));
+	}
+	
+	// Construct from a UTF-8 file, which is memory mapped rather than read.
+	// A top level array is still streamed one element at a time, so files larger than the heap can be parsed.
+	public static Parser ofMappedFile(
+		final Path path
+	) {
+		return new Parser(Lexer.ofMappedFile(path));
+	}
+	
+	// Stream the elements of a top level array of chars in parallel, where each element is parsed independently.
+	// The array is first scanned for element boundaries, without being parsed. A top level object is one element.
+	// Errors are found as for stream: input that the scan finds is not a valid array is parsed sequentially, and if
+	// an element fails to parse, the input is validated sequentially to report the first error. Unlike stream, the
+	// elements before the error are not delivered, and an error thrown in a worker thread reaches the caller as a new
+	// exception created by the fork join framework, so the Parser error is either the exception or its cause.
+	public static Stream<JSONValue> parallelStream(
+		final char[] chars
+	) {
+		final long[] separators = ArrayElementScanner.scan(chars, 0, chars.length);
+		return separators == null ?
+			new Parser(chars).stream() :
+			StreamSupport.stream(
+				new ArrayElementSpliterator(separators, ArrayElementSpliterator.of(chars), () -> new Parser(chars)),
+				true
+			);
+	}
+	
+	// Stream the elements of a top level array of UTF-8 bytes in parallel, as for parallelStream(char[])
+	public static Stream<JSONValue> parallelStream(
+		final byte[] bytes
+	) {
+		return parallelStream(new ByteBuffer[] {ByteBuffer.wrap(bytes)}, Integer.MAX_VALUE, () -> new Parser(bytes));
+	}
+	
+	// Stream the elements of a top level array in a UTF-8 file in parallel, as for parallelStream(char[]).
+	// The whole file is mapped at once, so all elements are available for splitting.
+	public static Stream<JSONValue> parallelStreamOfMappedFile(
+		final Path path
+	) {
+		return parallelStreamOfMappedFile(path, MappedWindows.WINDOW_SIZE);
+	}
+	
+	// Stream the elements of a top level array in a UTF-8 file in parallel, using a specific window size
+	static Stream<JSONValue> parallelStreamOfMappedFile(
+		final Path path,
+		final int windowSize
+	) {
+		final List<ByteBuffer> windows = new LinkedList<>();
+		new MappedWindows(path, windowSize).forEachRemaining(windows::add);
+		
+		return parallelStream(
+			windows.toArray(new ByteBuffer[windows.size()]),
+			windowSize,
+			// Duplicates, so that the positions of the windows are not moved while other threads slice them
+			() -> new Parser(new Lexer(new Utf8LexerInput(windows.stream().map(ByteBuffer::duplicate).iterator())))
+		);
+	}
+	
+	// Stream the elements of a top level array in a series of windows in parallel, where the sequential parser parses
+	// the whole input, for an object or an invalid array
+	private static Stream<JSONValue> parallelStream(
+		final ByteBuffer[] windows,
+		final int windowSize,
+		final Supplier<Parser> sequential
+	) {
+		final long[] separators = ArrayElementScanner.scan(windows, windowSize);
+		return separators == null ?
+			sequential.get().stream() :
+			StreamSupport.stream(
+				new ArrayElementSpliterator(separators, ArrayElementSpliterator.of(windows, windowSize), sequential),
+				true
+			);
+	}
+	
+	// Construct from any lexer
+	Parser(
+		final Lexer lexer
+	) {
+		this.lexer = lexer;
 		this.state = State.START;
 	}
 	
-	// Take a peek at next token, caching the value for return by expect.
-	// Once peek caches a token, all further calls to peek before the next call to expect will return the cached value.
+	// Use a cache of object keys, so that repeated keys are the same String instance, and return this parser.
+	// A null cache (the default) allocates a new String for every key.
+	public Parser withKeyCache(final KeyCache keyCache) {
+		this.keyCache = keyCache;
+		return this;
+	}
+	
+	/*
+	 * Build a compact tree, and return this parser. Objects are insertion ordered FlatObjectMaps, that keep keys and
+	 * values in arrays, rather than LinkedHashMaps. Arrays are ArrayLists, rather than LinkedLists, and both are
+	 * trimmed to size when they are complete. This uses much less heap for trees that are retained, such as configs.
+	 */
+	public Parser withCompactTree() {
+		this.compactTree = true;
+		return this;
+	}
+	
+	// Limit the nesting of objects and arrays, where a top level object or array is 1, and return this parser.
+	// A deeper document dies with an error, rather than using an unbounded amount of memory. The default is no limit.
+	public Parser withMaxDepth(final int maxDepth) {
+		if (maxDepth < 1) {
+			throw new IllegalArgumentException(MAX_DEPTH_MUST_BE_POSITIVE);
+		}
+		
+		this.maxDepth = maxDepth;
+		return this;
+	}
+	
+	// ==== Reset
+	
+	// Start parsing a new input with the lexer, keeping the settings and buffers of this parser, and return this parser.
+	// Anything left from the last input, such as a partly built value after an error, is dropped.
+	private Parser restart() {
+		state = State.START;
+		token = null;
+		value = null;
+		searched = false;
+		Arrays.fill(containers, null);
+		Arrays.fill(keys, null);
+		
+		return this;
+	}
+	
+	// Reset to read a Reader
+	public Parser reset(
+		final Reader reader
+	) {
+		lexer.reset(reader);
+		return restart();
+	}
+	
+	// Reset to parse chars
+	public Parser reset(
+		final char[] chars
+	) {
+		lexer.reset(chars);
+		return restart();
+	}
+	
+	// Reset to parse a slice of chars
+	public Parser reset(
+		final char[] chars,
+		final int offset,
+		final int length
+	) {
+		lexer.reset(chars, offset, length);
+		return restart();
+	}
+	
+	// Reset to parse UTF-8 bytes
+	public Parser reset(
+		final byte[] bytes
+	) {
+		lexer.reset(bytes);
+		return restart();
+	}
+	
+	// Reset to parse a slice of UTF-8 bytes
+	public Parser reset(
+		final byte[] bytes,
+		final int offset,
+		final int length
+	) {
+		lexer.reset(bytes, offset, length);
+		return restart();
+	}
+	
+	// Reset to parse the remaining UTF-8 bytes of a buffer, without changing the buffer position
+	public Parser reset(
+		final ByteBuffer bytes
+	) {
+		lexer.reset(bytes);
+		return restart();
+	}
+	
+	// Reset to read a stream of UTF-8 bytes
+	public Parser reset(
+		final InputStream stream
+	) {
+		lexer.reset(stream);
+		return restart();
+	}
+	
+	// Reset to parse the remaining UTF-8 bytes of a series of buffers as one input
+	Parser reset(
+		final Iterator<ByteBuffer> sources
+	) {
+		lexer.reset(sources);
+		return restart();
+	}
+	
+	// ==== Parse
+	
+	// Take a peek at next token type, caching the type for return by expect.
+	// Once peek caches a type, all further calls to peek before the next call to expect will return the cached value.
 	// Only expect will clear the cached value.
 	// If the caller does not the value retained, then caller has to nullify token field.
+	// The lexer cursor is not moved until the cached type is cleared, so the lexer describes the peeked token.
 	private LexerToken.Type peek() {
-		token = token != null ? token : lexer.next();
-		return token.type;
+		token = token != null ? token : lexer.nextToken();
+		return token;
 	}
 	
-	// unread puts a token returned by expect into the cache for next cal to expect
-	private void unread(final LexerToken t) {
-		token = t;
+	// unread puts the type of the lexer's current token into the cache for next call to expect
+	void unread(final LexerToken.Type type) {
+		token = type;
 	}
 	
 	// Clear nullifies cached token
@@ -65,164 +335,492 @@ public class Parser implements Iterator<JSONValue>, Iterable<JSONValue> {
 		token = null;
 	}
 	
+	// The bit of a token type in a set of token types
+	private static int bit(final LexerToken.Type type) {
+		return 1 << type.ordinal();
+	}
+	
+	// Sets of token types
+	private static final int CONTAINER_TYPES = bit(LexerToken.Type.OPEN_BRACE) | bit(LexerToken.Type.OPEN_BRACKET);
+	private static final int COMMA_OR_BRACKET = bit(LexerToken.Type.COMMA) | bit(LexerToken.Type.CLOSE_BRACKET);
+	
 	/*
-	 * Expect one of the token types given to occur next in the lexer.
+	 * Expect one of the set of token types given to occur next in the lexer, and return the type.
 	 * If no matching token type is found, the error is thrown.
-	 * If peek is true, the returned token is retained for the next call to expect, without invoking the lexer.
+	 * The lexer describes the returned token until the next call to expect or peek.
 	 */
-	private LexerToken expect(
+	private LexerToken.Type expect(
 		final String error,
-		final LexerToken.Type... expectedTypes
+		final int expectedTypes
 	) {
-		// Return peeked token from last call, or lex the next one
-		final LexerToken result = token != null ? token : lexer.next();
-		// nullify retained token so previous peek is not infinite
-		token = null;
+		// Return peeked type from last call, or lex the next one, and nullify it so previous peek is not infinite
+		final LexerToken.Type result = nextType();
 		
-		// See if the type matches any expected type
-		for (LexerToken.Type expectedType : expectedTypes) {
-			if (result.type == expectedType) {
-				return result;
-			}
+		// Die if the type is not expected
+		if ((result == null) || ((expectedTypes & bit(result)) == 0)) {
+			throw new RuntimeException(error);
 		}
 		
-		// Die if no expected token type is found
-		throw new RuntimeException(error);
+		return result;
 	}
 	
-	// parseAnyValue parses any value
-	private JSONValue parseAnyValue(
-		final String error
+	// Die if a level of nesting is deeper than the maximum
+	static void checkDepth(
+		final int depth,
+		final int maxDepth
 	) {
-		final LexerToken firstToken = expect(
-			error,
-			LexerToken.Type.OPEN_BRACE,
-			LexerToken.Type.OPEN_BRACKET,
-			LexerToken.Type.STRING,
-			LexerToken.Type.NUMBER,
-			LexerToken.Type.TRUE,
-			LexerToken.Type.FALSE,
-			LexerToken.Type.NULL
-		);
+		if (depth > maxDepth) {
+			throw new RuntimeException(String.format(MAX_DEPTH_FMT, maxDepth));
+		}
+	}
+	
+	// Complete an object or array, trimming a compact one to size
+	private JSONValue close(
+		final JSONValue container
+	) {
+		if (compactTree) {
+			if (container.isObject()) {
+				((FlatObjectMap)(container.asObject())).trim();
+			} else {
+				((ArrayList<JSONValue>)(container.asArray())).trimToSize();
+			}
+		}
 		
-		switch (firstToken.type) {
-			case OPEN_BRACE:
-				unread(firstToken);
-				return parseObject();
-				
-			case OPEN_BRACKET:
-				unread(firstToken);
-				return parseArray();
+		return container;
+	}
+	
+	/*
+	 * Builds a tree of JSONValues as a value is walked, using the stack of containers and keys of the parser.
+	 * 
+	 * The walker passes each number as the JSONNumber of the lexer's token (see visitScalar), which keeps its text,
+	 * rather than as a long or double.
+	 */
+	private final class TreeBuilder implements JSONVisitor {
+		// Number of objects and arrays being built
+		private int depth;
+		
+		// The value that has been built
+		private JSONValue result;
+		
+		// Start building a new value
+		void start() {
+			depth = 0;
+			result = null;
+		}
+		
+		// The value that has been built
+		JSONValue result() {
+			return result;
+		}
+		
+		// Add a value to the enclosing object or array, or make it the result if there is none
+		void add(final JSONValue value) {
+			if (depth == 0) {
+				result = value;
+				return;
+			}
 			
+			final JSONValue container = containers[depth - 1];
+			if (container.isObject()) {
+				container.asObject().put(keys[depth - 1], value);
+			} else {
+				container.asArray().add(value);
+			}
+		}
+		
+		// Start building an object or array
+		private void open(final JSONValue container) {
+			if (depth == containers.length) {
+				containers = Arrays.copyOf(containers, depth * 2);
+				keys = Arrays.copyOf(keys, depth * 2);
+			}
+			
+			containers[depth++] = container;
+		}
+		
+		// Complete the innermost object or array, clearing its level so a parser that is kept does not retain it
+		private void close() {
+			final JSONValue container = containers[--depth];
+			containers[depth] = null;
+			keys[depth] = null;
+			add(Parser.this.close(container));
+		}
+		
+		@Override
+		public void startObject() {
+			// Retain original key order in case it matters to the consumer
+			open(JSONValue.of(compactTree ? new FlatObjectMap() : new LinkedHashMap<>()));
+		}
+		
+		@Override
+		public void endObject() {
+			close();
+		}
+		
+		@Override
+		public void startArray() {
+			open(JSONValue.of(compactTree ? new ArrayList<>() : new LinkedList<>()));
+		}
+		
+		@Override
+		public void endArray() {
+			close();
+		}
+		
+		@Override
+		public void key(final String key) {
+			keys[depth - 1] = key;
+		}
+		
+		@Override
+		public void key(final char[] chars, final int offset, final int length) {
+			keys[depth - 1] = keyCache == null ? new String(chars, offset, length) : keyCache.intern(chars, offset, length);
+		}
+		
+		@Override
+		public void stringValue(final String value) {
+			add(JSONValue.of(value));
+		}
+		
+		@Override
+		public void longValue(final long value) {
+			add(JSONValue.of(JSONNumber.of(value)));
+		}
+		
+		@Override
+		public void doubleValue(final double value) {
+			add(JSONValue.of(JSONNumber.of(value)));
+		}
+		
+		@Override
+		public void booleanValue(final boolean value) {
+			add(JSONValue.of(value));
+		}
+		
+		@Override
+		public void nullValue() {
+			add(JSONValue.ofNull());
+		}
+	}
+	
+	/*
+	 * parseAnyValue parses any value, where the error is thrown if there is no value, and outerDepth is the number of
+	 * objects and arrays that enclose it. The value is walked by the same walker as validate, visit, and tape, building
+	 * a tree as it goes, so all of them throw the same errors.
+	 */
+	JSONValue parseAnyValue(
+		final String error,
+		final int outerDepth
+	) {
+		tree.start();
+		walk(tree, error, outerDepth);
+		return tree.result();
+	}
+	
+	// Parse a single value of any type that is the entire input of the lexer, such as an array element sliced by
+	// ArrayElementSpliterator, or an NDJSON line, where outerDepth is the number of arrays that enclose the value.
+	// The error is reported if there is no value, and the trailing error if anything follows the value.
+	JSONValue parseElement(
+		final String error,
+		final String trailingError,
+		final int outerDepth
+	) {
+		final JSONValue result = parseAnyValue(error, outerDepth);
+		if (peek() != null) {
+			throw new RuntimeException(trailingError);
+		}
+		
+		return result;
+	}
+	
+	// True if the lexer has no more tokens
+	boolean atEnd() {
+		return peek() == null;
+	}
+	
+	// Consume the next token type, which is the peeked type if there is one
+	LexerToken.Type nextType() {
+		final LexerToken.Type result = token != null ? token : lexer.nextToken();
+		token = null;
+		return result;
+	}
+	
+	/*
+	 * Check that the document is valid, without building any values, throwing the same errors that parse would throw.
+	 * Must be called instead of parse, and consumes the whole document, including all elements of a top level array.
+	 * 
+	 * Only the lexer cursor is used, so nothing is allocated per token or value. The only memory used, other than
+	 * the lexer's, is a stack of one bit per level of nesting, that records whether each level is an object or array.
+	 */
+	public void validate() {
+		walk(null);
+	}
+	
+	/*
+	 * Visit the whole document, calling the visitor for each part of it in document order, and throwing the same
+	 * errors that parse would throw. Must be called instead of parse.
+	 * 
+	 * The document is walked with a loop and a stack of one bit per level of nesting, rather than by recursion, so
+	 * there is no limit on nesting other than memory.
+	 */
+	public void visit(
+		final JSONVisitor visitor
+	) {
+		walk(Objects.requireNonNull(visitor, "visitor"));
+	}
+	
+	// Call the visitor for a scalar value, that is the current token of the lexer
+	private void visitScalar(
+		final JSONVisitor visitor,
+		final LexerToken.Type type
+	) {
+		switch (type) {
 			case STRING:
-				return JSONValue.of(firstToken.token);
-				
+				visitor.stringValue(lexer.tokenChars(), 0, lexer.tokenLength());
+				break;
+			
 			case NUMBER:
-				return JSONValue.of(
-					new JSONNumber(
-						firstToken.token,
-						firstToken.positive,
-						firstToken.integer,
-						firstToken.fractional,
-						firstToken.positiveExponent,
-						firstToken.exponent
-					)
-				);
-				
+				if (visitor == tree) {
+					// Even if the number was peeked, nothing has been lexed since, so it is still the lexer's current token
+					tree.add(JSONValue.of(lexer.jsonNumber()));
+				} else if (lexer.isLong()) {
+					visitor.longValue(lexer.longValue());
+				} else {
+					visitor.numberValue(lexer.tokenChars(), 0, lexer.tokenLength(), lexer.doubleValue());
+				}
+				break;
+			
 			case TRUE:
 			case FALSE:
-				return JSONValue.of(firstToken.type == LexerToken.Type.TRUE);
+				visitor.booleanValue(type == LexerToken.Type.TRUE);
+				break;
 			
 			// Must be NULL
 			default:
-				return JSONValue.ofNull();
+				visitor.nullValue();
 		}
 	}
 	
-	// Parse an object 
-	private JSONValue parseObject() {
-		// Consume brace we know exists
-		expect(null, LexerToken.Type.OPEN_BRACE);
+	// Walk the whole document, calling the visitor if it is not null
+	private void walk(
+		final JSONVisitor visitor
+	) {
+		final LexerToken.Type type = peek();
+		if ((type != LexerToken.Type.OPEN_BRACE) && (type != LexerToken.Type.OPEN_BRACKET)) {
+			throw new RuntimeException(START_BRACE_OR_BRACKET);
+		}
+		
+		walk(visitor, START_BRACE_OR_BRACKET, 0);
+		
+		state = State.STOP;
+		value = Optional.empty();
+	}
+	
+	/*
+	 * Walk one value, calling the visitor if it is not null, where the error is thrown if the next token is not a value,
+	 * and outerDepth is the number of objects and arrays that enclose the value. The error may be null if the next token
+	 * is known to be a value.
+	 * 
+	 * This is the only place the grammar of objects and arrays is checked, and their depth is limited. The value is
+	 * walked with a loop and a stack of one bit per level of nesting, rather than by recursion, so there is no limit on
+	 * nesting other than memory and the maximum depth.
+	 */
+	private void walk(
+		final JSONVisitor visitor,
+		final String error,
+		final int outerDepth
+	) {
+		long[] objects = this.objects;
+		int depth = 0;
 		
-		// Create map for object, retain original key order in case it matters to the consumer
-		final Map<String, JSONValue> objectMap = new LinkedHashMap<>();
+		// True if the next token must be a value, and the error to throw if it is not
+		boolean valueNext = true;
+		String valueError = error;
 		
-		// Check if closing brace is next, if so, we're done - empty object
-		if (peek() == LexerToken.Type.CLOSE_BRACE) {
-			// Consume brace
-			clear();
-		} else {
-			// Get first key
-			final String firstKey = expect(OBJECT_FIRST_KEY, LexerToken.Type.STRING).token;
+		// True if the last token is an opening brace or bracket
+		boolean opened = false;
+		
+		LexerToken.Type type = nextType();
+		
+		do {
+			if (valueNext) {
+				if (type == null) {
+					throw new RuntimeException(valueError);
+				}
+				
+				switch (type) {
+					case OPEN_BRACE:
+					case OPEN_BRACKET:
+						opened = true;
+						break;
+					
+					case STRING:
+					case NUMBER:
+					case TRUE:
+					case FALSE:
+					case NULL:
+						opened = false;
+						if (visitor != null) {
+							visitScalar(visitor, type);
+						}
+						break;
+					
+					default:
+						throw new RuntimeException(valueError);
+				}
+				valueNext = false;
+			}
 			
-			// Consume required colon
-			expect(OBJECT_KEY_COLON, LexerToken.Type.COLON);
+			if (opened) {
+				// Push the new level
+				checkDepth(outerDepth + depth + 1, maxDepth);
+				if ((depth >>> 6) == objects.length) {
+					objects = this.objects = Arrays.copyOf(objects, objects.length * 2);
+				}
+				
+				if (type == LexerToken.Type.OPEN_BRACE) {
+					objects[depth >>> 6] |= 1L << depth;
+					if (visitor != null) {
+						visitor.startObject();
+					}
+				} else {
+					objects[depth >>> 6] &= ~(1L << depth);
+					if (visitor != null) {
+						visitor.startArray();
+					}
+				}
+				depth++;
+			} else if (depth == 0) {
+				// A scalar that is not inside an object or array
+				break;
+			}
 			
-			// Consume required value and map it
-			objectMap.put(firstKey, parseAnyValue(OBJECT_KEY_COLON_VALUE));
+			final boolean object = (objects[(depth - 1) >>> 6] & (1L << (depth - 1))) != 0;
+			type = nextType();
 			
-			// Consume zero or more additional key/value pairs
-			while (
-				expect(
-					OBJECT_VALUE_COMMA_BRACE,
-					LexerToken.Type.COMMA,
-					LexerToken.Type.CLOSE_BRACE
-				).type == LexerToken.Type.COMMA
-			) {
-				final String nextKey = expect(OBJECT_COMMA_KEY, LexerToken.Type.STRING).token;
-				
-				// Consume required colon
-				expect(OBJECT_KEY_COLON, LexerToken.Type.COLON);
-				
-				// Consume required value and map it
-				objectMap.put(nextKey, parseAnyValue(OBJECT_KEY_COLON_VALUE));
+			if (object) {
+				if (opened && (type == LexerToken.Type.CLOSE_BRACE)) {
+					// Empty object
+					depth--;
+					if (visitor != null) {
+						visitor.endObject();
+					}
+				} else if (opened || (type == LexerToken.Type.COMMA)) {
+					// Key, colon, value
+					if (! opened) {
+						type = nextType();
+					}
+					
+					if (type != LexerToken.Type.STRING) {
+						throw new RuntimeException(opened ? OBJECT_FIRST_KEY : OBJECT_COMMA_KEY);
+					}
+					
+					if (visitor != null) {
+						visitor.key(lexer.tokenChars(), 0, lexer.tokenLength());
+					}
+					
+					if (nextType() != LexerToken.Type.COLON) {
+						throw new RuntimeException(OBJECT_KEY_COLON);
+					}
+					
+					type = nextType();
+					valueNext = true;
+					valueError = OBJECT_KEY_COLON_VALUE;
+				} else if (type == LexerToken.Type.CLOSE_BRACE) {
+					depth--;
+					if (visitor != null) {
+						visitor.endObject();
+					}
+				} else {
+					throw new RuntimeException(OBJECT_VALUE_COMMA_BRACE);
+				}
+			} else {
+				if (opened && (type == LexerToken.Type.CLOSE_BRACKET)) {
+					// Empty array
+					depth--;
+					if (visitor != null) {
+						visitor.endArray();
+					}
+				} else if (opened) {
+					valueNext = true;
+					valueError = ARRAY_VALUE_OR_BRACKET;
+				} else if (type == LexerToken.Type.COMMA) {
+					type = nextType();
+					valueNext = true;
+					valueError = ARRAY_COMMA_VALUE;
+				} else if (type == LexerToken.Type.CLOSE_BRACKET) {
+					depth--;
+					if (visitor != null) {
+						visitor.endArray();
+					}
+				} else {
+					throw new RuntimeException(ARRAY_COMMA_OR_BRACKET);
+				}
 			}
-		}
-		
-		return JSONValue.of(objectMap);
+			
+			// A closed level is the same as a value of the enclosing level
+			opened = false;
+		} while ((depth > 0) || valueNext);
 	}
 	
-	private JSONValue parseArray() {
-		// Consume bracket, we don't need it
-		expect(null, LexerToken.Type.OPEN_BRACKET);
-		
-		// Create list for object
-		final List<JSONValue> arrayList = new LinkedList<>();
-		
-		// Cannot be closing bracket next, as parse method already checks empty arrays
-		// Get first value
-		arrayList.add(parseAnyValue(ARRAY_VALUE_OR_BRACKET));
-		
-		// Add any number of additional values preceded by commas
-		while (
-			expect(
-				ARRAY_COMMA_OR_BRACKET,
-				LexerToken.Type.COMMA,
-				LexerToken.Type.CLOSE_BRACKET
-			).type == LexerToken.Type.COMMA
-		) {
-			arrayList.add(parseAnyValue(ARRAY_COMMA_VALUE));
-		}
+	/*
+	 * Parse the whole document into a Tape, which is a pair of flat arrays rather than a tree of objects, throwing the
+	 * same errors that parse would throw. Must be called instead of parse. See Tape.
+	 */
+	public Tape tape() {
+		final TapeBuilder builder = new TapeBuilder();
+		walk(builder);
+		return builder.tape();
+	}
+	
+	// Parse only the values at the paths of a projection from the whole document, skipping everything else.
+	// Must be called instead of parse. See PathProjection.
+	public Map<String, JSONValue> project(
+		final PathProjection projection
+	) {
+		state = State.STOP;
+		value = Optional.empty();
 		
-		return JSONValue.of(arrayList);
+		return projection.project(new PullParser(lexer).withKeyCache(keyCache).withMaxDepth(maxDepth));
 	}
 	
 	// Top level parse method that starts parsing, or resumes where it left off
 	public Optional<JSONValue> parse() {
+		// Save value in case iteration used
+		value = Optional.ofNullable(parseOrSkip(false));
+		return value;
+	}
+	
+	/*
+	 * Skip the value that parse would return next, without building it, and return true if there was a value to skip.
+	 * A skipped object or array is not lexed, only its nesting depth and string boundaries are tracked, so any errors
+	 * inside it are not detected.
+	 */
+	public boolean skipValue() {
+		// If hasNext has already parsed the value, then just consume it
+		if (searched) {
+			searched = false;
+			return value.isPresent();
+		}
+		
+		value = Optional.empty();
+		return parseOrSkip(true) != null;
+	}
+	
+	// Parse or skip the next value. Returns null if there is no next value, and a skipped value is NULL_VALUE.
+	private JSONValue parseOrSkip(
+		final boolean skip
+	) {
 		JSONValue result;
 		
 		switch (state) {
 			case START:
-				final LexerToken firstToken = expect(
-					START_BRACE_OR_BRACKET,
-					LexerToken.Type.OPEN_BRACE,
-					LexerToken.Type.OPEN_BRACKET
-				);
+				final LexerToken.Type firstType = expect(START_BRACE_OR_BRACKET, CONTAINER_TYPES);
 				
-				switch (firstToken.type) {
+				switch (firstType) {
 					case OPEN_BRACE:
-						unread(firstToken);
-						result = parseObject();
+						unread(firstType);
+						result = anyValue(null, 0, skip);
 						state = State.STOP;
 						break;
 					
@@ -236,7 +834,7 @@ public class Parser implements Iterator<JSONValue>, Iterable<JSONValue> {
 							state = State.STOP;
 						} else {
 							// Get first value
-							result = parseAnyValue(ARRAY_VALUE_OR_BRACKET);
+							result = anyValue(ARRAY_VALUE_OR_BRACKET, 1, skip);
 							state = State.ARRAY_NEXT_ELEMENT;
 						}
 						break;
@@ -244,17 +842,13 @@ public class Parser implements Iterator<JSONValue>, Iterable<JSONValue> {
 				break;
 			
 			case ARRAY_NEXT_ELEMENT: {
-				if (expect(
-					ARRAY_COMMA_OR_BRACKET,
-					LexerToken.Type.COMMA,
-					LexerToken.Type.CLOSE_BRACKET
-				).type == LexerToken.Type.CLOSE_BRACKET) {
+				if (expect(ARRAY_COMMA_OR_BRACKET, COMMA_OR_BRACKET) == LexerToken.Type.CLOSE_BRACKET) {
 					// Check if closing bracket is next, if so, we're done - no values to return
 					result = null;
 					state = State.STOP;
 				} else {
 					// Get next value
-					result = parseAnyValue(ARRAY_COMMA_VALUE);
+					result = anyValue(ARRAY_COMMA_VALUE, 1, skip);
 				}
 				break;
 			}
@@ -264,9 +858,48 @@ public class Parser implements Iterator<JSONValue>, Iterable<JSONValue> {
 				result = null;
 		}
 		
-		// Save value in case iteration used
-		value = Optional.ofNullable(result);
-		return value;
+		return result;
+	}
+	
+	// Parse or skip any value, where a skipped value is NULL_VALUE
+	private JSONValue anyValue(
+		final String error,
+		final int outerDepth,
+		final boolean skip
+	) {
+		if (! skip) {
+			return parseAnyValue(error, outerDepth);
+		}
+		
+		skipAnyValue(error);
+		return JSONValue.NULL_VALUE;
+	}
+	
+	// Skip any value. An object or array is skipped by the lexer without lexing its contents.
+	void skipAnyValue(
+		final String error
+	) {
+		final LexerToken.Type type = nextType();
+		if (type == null) {
+			throw new RuntimeException(error);
+		}
+		
+		switch (type) {
+			case OPEN_BRACE:
+			case OPEN_BRACKET:
+				lexer.skipContainer();
+				break;
+			
+			case STRING:
+			case NUMBER:
+			case TRUE:
+			case FALSE:
+			case NULL:
+				break;
+			
+			default:
+				throw new RuntimeException(error);
+		}
 	}
 	
 	// ==== Iterator
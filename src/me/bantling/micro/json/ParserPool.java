@@ -0,0 +1,78 @@
+package me.bantling.micro.json;
+
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.function.UnaryOperator;
+
+/*
+ * A bounded pool of Parsers, so that request handlers can borrow a parser that already has its buffers, rather than
+ * allocate a parser, lexer, token text buffer, and input window for every small document:
+ *
+ *   Parser parser = pool.borrow().reset(body);
+ *   try {
+ *     ...
+ *   } finally {
+ *     pool.release(parser);
+ *   }
+ *
+ * Each parser is configured once, when the pool creates it, since a reset keeps the settings of a parser.
+ *
+ * A borrow never blocks: if the pool is empty, a new parser is created, and if the pool is full when a parser is
+ * released, the parser is dropped. So the capacity only bounds the number of idle parsers kept, not the number in use.
+ * A pool is not tied to a thread, so it works equally well with virtual threads, where a ThreadLocal would keep a
+ * parser per virtual thread. Where platform threads are long lived, ThreadLocal.withInitial of a parser is an
+ * alternative that needs no release, since any parser can be reset.
+ *
+ * A released parser is reset onto an empty input, so an idle parser does not keep the last document reachable.
+ */
+public final class ParserPool {
+	static final String CAPACITY_MUST_BE_POSITIVE = "The capacity must be positive";
+	
+	// Input of an idle parser
+	private static final char[] EMPTY = {};
+	
+	// Idle parsers
+	private final ArrayBlockingQueue<Parser> parsers;
+	
+	// Configures each new parser, eg with a key cache
+	private final UnaryOperator<Parser> configure;
+	
+	// Construct with the given capacity, where each parser has the default settings
+	public ParserPool(
+		final int capacity
+	) {
+		this(capacity, UnaryOperator.identity());
+	}
+	
+	// Construct with the given capacity, where each new parser is configured by a function that returns it, such as
+	// parser -> parser.withKeyCache(keyCache).withCompactTree()
+	public ParserPool(
+		final int capacity,
+		final UnaryOperator<Parser> configure
+	) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException(CAPACITY_MUST_BE_POSITIVE);
+		}
+		
+		this.parsers = new ArrayBlockingQueue<>(capacity);
+		this.configure = Objects.requireNonNull(configure, "configure");
+	}
+	
+	// Borrow an idle parser, or a new one if there are none, which must be reset onto an input before use
+	public Parser borrow() {
+		final Parser parser = parsers.poll();
+		return parser != null ? parser : configure.apply(new Parser(EMPTY));
+	}
+	
+	// Return a borrowed parser to the pool, which must not be used again by the borrower
+	public void release(
+		final Parser parser
+	) {
+		parsers.offer(parser.reset(EMPTY));
+	}
+	
+	// The number of idle parsers
+	public int size() {
+		return parsers.size();
+	}
+}
@@ -0,0 +1,313 @@
+package me.bantling.micro.json;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import me.bantling.micro.json.PullParser.Event;
+
+/*
+ * A set of paths to project a document onto, so that only the values at those paths are built, and everything else is
+ * skipped by the lexer without being lexed (see PullParser.skip).
+ *
+ * A path is either a JSON Pointer (RFC 6901) such as /user/id or /items/0/price, or a dotted path such as user.id or
+ * items.0.price. A segment of * matches any key or array index. An array index segment also matches the same key of
+ * an object, as in RFC 6901. The empty path is the whole document. If one path is a prefix of another, the value of
+ * the shorter path is built, which includes the value of the longer path.
+ *
+ * The paths are compiled once into a deterministic automaton with one state per distinct set of partially matched
+ * paths, so matching a key or index is a short scan of the keys a state can match, and keys that are matched by a
+ * literal segment are not allocated. A projection is immutable, so it can be reused for any number of documents, by
+ * any number of threads.
+ */
+public final class PathProjection {
+	static final String INVALID_POINTER_ESCAPE_FMT = "Invalid JSON Pointer %s: ~ must be followed by 0 or 1";
+	
+	// A path segment that matches anything
+	static final String WILDCARD = "*";
+	
+	// Paths as a tree of segments, that are compiled into states
+	private static final class Trie {
+		final Map<String, Trie> children = new LinkedHashMap<>();
+		Trie wildcard;
+		boolean accept;
+	}
+	
+	// A state of the automaton
+	private static final class State {
+		final boolean accept;
+		
+		// Literal segments, their values as array indexes (-1 if not an index), and the states they lead to
+		String[] keys = new String[0];
+		int[] indexes = new int[0];
+		State[] targets = new State[0];
+		
+		// State for anything that is not a literal segment, or null if nothing else matches
+		State other;
+		
+		State(final boolean accept) {
+			this.accept = accept;
+		}
+		
+		// Index of the literal segment that matches the current key of the parser, or -1 if none match
+		int matchKey(final PullParser parser) {
+			for (int i = 0; i < keys.length; i++) {
+				if (parser.keyEquals(keys[i])) {
+					return i;
+				}
+			}
+			
+			return -1;
+		}
+		
+		// Index of the literal segment that matches an array index, or -1 if none match
+		int matchIndex(final int index) {
+			for (int i = 0; i < indexes.length; i++) {
+				if (indexes[i] == index) {
+					return i;
+				}
+			}
+			
+			return -1;
+		}
+	}
+	
+	private final State root;
+	
+	// Construct
+	private PathProjection(
+		final State root
+	) {
+		this.root = root;
+	}
+	
+	// Compile paths
+	public static PathProjection of(
+		final String... paths
+	) {
+		final Trie trie = new Trie();
+		for (final String path : paths) {
+			Trie node = trie;
+			for (final String segment : segments(path)) {
+				if (WILDCARD.equals(segment)) {
+					node = node.wildcard != null ? node.wildcard : (node.wildcard = new Trie());
+				} else {
+					node = node.children.computeIfAbsent(segment, k -> new Trie());
+				}
+			}
+			
+			node.accept = true;
+		}
+		
+		final Set<Trie> start = new LinkedHashSet<>();
+		start.add(trie);
+		
+		return new PathProjection(compile(start, new HashMap<>()));
+	}
+	
+	// Split a path into segments
+	static List<String> segments(
+		final String path
+	) {
+		final List<String> result = new ArrayList<>();
+		if (path.isEmpty()) {
+			return result;
+		}
+		
+		if (path.charAt(0) != '/') {
+			result.addAll(Arrays.asList(path.split("\\.", -1)));
+			return result;
+		}
+		
+		for (final String segment : path.substring(1).split("/", -1)) {
+			final StringBuilder sb = new StringBuilder(segment.length());
+			for (int i = 0; i < segment.length(); i++) {
+				final char c = segment.charAt(i);
+				if (c == '~') {
+					final char next = ++i < segment.length() ? segment.charAt(i) : ' ';
+					if ((next != '0') && (next != '1')) {
+						throw new IllegalArgumentException(String.format(INVALID_POINTER_ESCAPE_FMT, path));
+					}
+					
+					sb.append(next == '0' ? '~' : '/');
+				} else {
+					sb.append(c);
+				}
+			}
+			
+			result.add(sb.toString());
+		}
+		
+		return result;
+	}
+	
+	// Compile the state for a set of trie nodes, reusing the state already compiled for the same set
+	private static State compile(
+		final Set<Trie> nodes,
+		final Map<Set<Trie>, State> compiled
+	) {
+		State state = compiled.get(nodes);
+		if (state != null) {
+			return state;
+		}
+		
+		state = new State(nodes.stream().anyMatch(n -> n.accept));
+		compiled.put(nodes, state);
+		
+		// An accepted value is built whole, so it has no transitions
+		if (state.accept) {
+			return state;
+		}
+		
+		// Anything matches the wildcards, and each literal also matches its children
+		final Set<Trie> wildcards = new LinkedHashSet<>();
+		final Set<String> keys = new LinkedHashSet<>();
+		for (final Trie node : nodes) {
+			if (node.wildcard != null) {
+				wildcards.add(node.wildcard);
+			}
+			keys.addAll(node.children.keySet());
+		}
+		
+		state.keys = keys.toArray(new String[keys.size()]);
+		state.indexes = new int[state.keys.length];
+		state.targets = new State[state.keys.length];
+		for (int i = 0; i < state.keys.length; i++) {
+			final Set<Trie> targets = new LinkedHashSet<>(wildcards);
+			for (final Trie node : nodes) {
+				final Trie child = node.children.get(state.keys[i]);
+				if (child != null) {
+					targets.add(child);
+				}
+			}
+			
+			state.indexes[i] = index(state.keys[i]);
+			state.targets[i] = compile(targets, compiled);
+		}
+		
+		state.other = wildcards.isEmpty() ? null : compile(wildcards, compiled);
+		
+		return state;
+	}
+	
+	// The value of a segment as an array index, or -1 if it is not an index, as defined by RFC 6901
+	private static int index(
+		final String segment
+	) {
+		if (segment.isEmpty() || (segment.length() > 9) || ((segment.charAt(0) == '0') && (segment.length() > 1))) {
+			return -1;
+		}
+		
+		int result = 0;
+		for (int i = 0; i < segment.length(); i++) {
+			final char c = segment.charAt(i);
+			if ((c < '0') || (c > '9')) {
+				return -1;
+			}
+			
+			result = result * 10 + (c - '0');
+		}
+		
+		return result;
+	}
+	
+	// Escape a segment of a JSON Pointer
+	private static String escape(
+		final String segment
+	) {
+		return segment.indexOf('~') < 0 && segment.indexOf('/') < 0 ?
+			segment :
+			segment.replace("~", "~0").replace("/", "~1");
+	}
+	
+	/*
+	 * Project a whole document onto the paths, returning a map of JSON Pointer to value for each value at one of the
+	 * paths, in document order. Each pointer is the actual location of its value, so a wildcard is replaced by the
+	 * key or index it matched.
+	 */
+	public Map<String, JSONValue> project(
+		final PullParser parser
+	) {
+		final Map<String, JSONValue> result = new LinkedHashMap<>();
+		
+		// Per level of nesting: the state, the key of an object (null for an array), and the next index of an array
+		State[] states = new State[16];
+		String[] keys = new String[16];
+		int[] indexes = new int[16];
+		
+		// The top level object or array
+		parser.next();
+		if (root.accept) {
+			result.put("", parser.value());
+			return result;
+		}
+		
+		int depth = 0;
+		states[0] = root;
+		
+		for (Event event; (event = parser.next()) != null;) {
+			if ((event == Event.END_OBJECT) || (event == Event.END_ARRAY)) {
+				depth--;
+				continue;
+			}
+			
+			// Match a key or array index
+			final State state = states[depth];
+			final State next;
+			if (event == Event.KEY) {
+				final int match = state.matchKey(parser);
+				next = match >= 0 ? state.targets[match] : state.other;
+				if (next == null) {
+					parser.skip();
+					continue;
+				}
+				
+				keys[depth] = match >= 0 ? state.keys[match] : parser.key();
+				event = parser.next();
+			} else {
+				final int match = state.matchIndex(indexes[depth]++);
+				next = match >= 0 ? state.targets[match] : state.other;
+				if (next == null) {
+					parser.skip();
+					continue;
+				}
+				
+				keys[depth] = null;
+			}
+			
+			if (next.accept) {
+				// Build the value
+				final StringBuilder pointer = new StringBuilder();
+				for (int i = 0; i <= depth; i++) {
+					pointer.append('/').append(keys[i] != null ? escape(keys[i]) : Integer.toString(indexes[i] - 1));
+				}
+				
+				result.put(pointer.toString(), parser.value());
+			} else if (event != Event.VALUE) {
+				// Descend into an object or array that may contain matches
+				if (++depth == states.length) {
+					states = Arrays.copyOf(states, depth * 2);
+					keys = Arrays.copyOf(keys, depth * 2);
+					indexes = Arrays.copyOf(indexes, depth * 2);
+				}
+				
+				states[depth] = next;
+				indexes[depth] = 0;
+			}
+		}
+		
+		return result;
+	}
+	
+	// Project a whole document read by a lexer onto the paths
+	public Map<String, JSONValue> project(
+		final Lexer lexer
+	) {
+		return project(new PullParser(lexer));
+	}
+}
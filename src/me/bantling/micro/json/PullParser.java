@@ -0,0 +1,327 @@
+package me.bantling.micro.json;
+
+import java.util.Arrays;
+
+/*
+ * Pull parser that returns a document as a series of events, so that the caller decides, value by value, whether to
+ * build a JSONValue or to skip it. A skipped object or array is not lexed, only its nesting depth and string
+ * boundaries are tracked (see Lexer.skipContainer), so any errors inside it are not detected.
+ * 
+ * The events follow the same grammar, and throw the same errors, as Parser. A typical loop over the objects of a top
+ * level array that only builds the value of one key is:
+ * 
+ *   PullParser p = new PullParser(new Lexer(bytes));
+ *   p.next();                                    // START_ARRAY
+ *   while (p.next() == Event.START_OBJECT) {
+ *     while (p.next() == Event.KEY) {
+ *       if (p.key().equals("id")) {
+ *         p.next();
+ *         JSONValue id = p.value();
+ *       } else {
+ *         p.skip();
+ *       }
+ *     }
+ *   }
+ * 
+ * The key and scalar value of the current event are only available until the next call to next or skip. Once a value
+ * has been skipped, or an object or array has been built by value, there is no current event until next is called.
+ */
+public final class PullParser {
+	// The events of a document
+	public enum Event {
+		START_OBJECT,
+		END_OBJECT,
+		START_ARRAY,
+		END_ARRAY,
+		KEY,
+		VALUE
+	}
+	
+	static final String NOT_A_KEY      = "The current event is not a key";
+	static final String NOT_A_VALUE    = "The current event is not a value, or the start of an object or array";
+	static final String NOT_SKIPPABLE  = "The current event is not a key, value, or the start of an object or array";
+	
+	private enum State {
+		START,
+		AFTER_OPEN,
+		AFTER_KEY,
+		AFTER_VALUE,
+		STOP
+	}
+	
+	// The underlying parser builds values, and provides the lexer
+	private final Parser parser;
+	private final Lexer lexer;
+	private KeyCache keyCache;
+	
+	private State state = State.START;
+	private Event event;
+	
+	// The token type that begins the value of the current event
+	private LexerToken.Type type;
+	
+	// Bit i is set if level i + 1 is an object
+	private long[] objects = new long[1];
+	private int depth;
+	
+	// Maximum nesting of objects and arrays, where a top level object or array is 1
+	private int maxDepth = Integer.MAX_VALUE;
+	
+	// Construct
+	public PullParser(
+		final Lexer lexer
+	) {
+		this.parser = new Parser(lexer);
+		this.lexer = lexer;
+	}
+	
+	// Use a cache of object keys, and return this parser (see Parser.withKeyCache)
+	public PullParser withKeyCache(final KeyCache keyCache) {
+		this.keyCache = keyCache;
+		parser.withKeyCache(keyCache);
+		return this;
+	}
+	
+	// Limit the nesting of objects and arrays, counted from the top level of the document, and return this parser
+	// (see Parser.withMaxDepth). Skipped objects and arrays are not lexed, so their nesting is not checked.
+	public PullParser withMaxDepth(final int maxDepth) {
+		parser.withMaxDepth(maxDepth);
+		this.maxDepth = maxDepth;
+		return this;
+	}
+	
+	// Push a level
+	private void push(final boolean object) {
+		Parser.checkDepth(depth + 1, maxDepth);
+		if ((depth >>> 6) == objects.length) {
+			objects = Arrays.copyOf(objects, objects.length * 2);
+		}
+		
+		if (object) {
+			objects[depth >>> 6] |= 1L << depth;
+		} else {
+			objects[depth >>> 6] &= ~(1L << depth);
+		}
+		depth++;
+	}
+	
+	// True if the current level is an object
+	private boolean inObject() {
+		return (objects[(depth - 1) >>> 6] & (1L << (depth - 1))) != 0;
+	}
+	
+	// Pop a level, after which the enclosing level has a value
+	private void pop() {
+		depth--;
+		state = depth == 0 ? State.STOP : State.AFTER_VALUE;
+	}
+	
+	// Begin a value of the given type, or die with the error if the type is not a value
+	private Event value(
+		final LexerToken.Type type,
+		final String error
+	) {
+		if (type == null) {
+			throw new RuntimeException(error);
+		}
+		
+		this.type = type;
+		switch (type) {
+			case OPEN_BRACE:
+				push(true);
+				state = State.AFTER_OPEN;
+				return Event.START_OBJECT;
+			
+			case OPEN_BRACKET:
+				push(false);
+				state = State.AFTER_OPEN;
+				return Event.START_ARRAY;
+			
+			case STRING:
+			case NUMBER:
+			case TRUE:
+			case FALSE:
+			case NULL:
+				state = State.AFTER_VALUE;
+				return Event.VALUE;
+			
+			default:
+				throw new RuntimeException(error);
+		}
+	}
+	
+	// Begin a key of the given type, or die with the error if the type is not a string
+	private Event key(
+		final LexerToken.Type type,
+		final String error
+	) {
+		if (type != LexerToken.Type.STRING) {
+			throw new RuntimeException(error);
+		}
+		
+		state = State.AFTER_KEY;
+		return Event.KEY;
+	}
+	
+	// Consume the colon after a key
+	private void colon() {
+		if (parser.nextType() != LexerToken.Type.COLON) {
+			throw new RuntimeException(Parser.OBJECT_KEY_COLON);
+		}
+	}
+	
+	// Return the next event, or null after the end of the document
+	public Event next() {
+		event = nextEvent();
+		return event;
+	}
+	
+	private Event nextEvent() {
+		switch (state) {
+			case START: {
+				final LexerToken.Type type = parser.nextType();
+				if ((type != LexerToken.Type.OPEN_BRACE) && (type != LexerToken.Type.OPEN_BRACKET)) {
+					throw new RuntimeException(Parser.START_BRACE_OR_BRACKET);
+				}
+				
+				return value(type, null);
+			}
+			
+			case AFTER_OPEN: {
+				final LexerToken.Type type = parser.nextType();
+				if (inObject()) {
+					if (type == LexerToken.Type.CLOSE_BRACE) {
+						pop();
+						return Event.END_OBJECT;
+					}
+					
+					return key(type, Parser.OBJECT_FIRST_KEY);
+				}
+				
+				if (type == LexerToken.Type.CLOSE_BRACKET) {
+					pop();
+					return Event.END_ARRAY;
+				}
+				
+				return value(type, Parser.ARRAY_VALUE_OR_BRACKET);
+			}
+			
+			case AFTER_KEY:
+				colon();
+				return value(parser.nextType(), Parser.OBJECT_KEY_COLON_VALUE);
+			
+			case AFTER_VALUE: {
+				final LexerToken.Type type = parser.nextType();
+				if (inObject()) {
+					if (type == LexerToken.Type.COMMA) {
+						return key(parser.nextType(), Parser.OBJECT_COMMA_KEY);
+					}
+					
+					if (type == LexerToken.Type.CLOSE_BRACE) {
+						pop();
+						return Event.END_OBJECT;
+					}
+					
+					throw new RuntimeException(Parser.OBJECT_VALUE_COMMA_BRACE);
+				}
+				
+				if (type == LexerToken.Type.COMMA) {
+					return value(parser.nextType(), Parser.ARRAY_COMMA_VALUE);
+				}
+				
+				if (type == LexerToken.Type.CLOSE_BRACKET) {
+					pop();
+					return Event.END_ARRAY;
+				}
+				
+				throw new RuntimeException(Parser.ARRAY_COMMA_OR_BRACKET);
+			}
+			
+			// Must be STOP
+			default:
+				return null;
+		}
+	}
+	
+	// The current event, or null if there is none
+	public Event event() {
+		return event;
+	}
+	
+	// The number of objects and arrays that enclose the current event, where the top level object or array is 1
+	public int depth() {
+		return depth;
+	}
+	
+	// The key of a KEY event
+	public String key() {
+		if (event != Event.KEY) {
+			throw new IllegalStateException(NOT_A_KEY);
+		}
+		
+		return lexer.key(keyCache);
+	}
+	
+	// True if the key of a KEY event is the given string, without allocating the key
+	boolean keyEquals(final String key) {
+		if (event != Event.KEY) {
+			throw new IllegalStateException(NOT_A_KEY);
+		}
+		
+		return lexer.tokenEquals(key);
+	}
+	
+	/*
+	 * The value of a VALUE event, or the whole object or array of a START_OBJECT or START_ARRAY event.
+	 * An object or array is consumed up to and including its end, so the next event is whatever follows it.
+	 */
+	public JSONValue value() {
+		if ((event != Event.VALUE) && (event != Event.START_OBJECT) && (event != Event.START_ARRAY)) {
+			throw new IllegalStateException(NOT_A_VALUE);
+		}
+		
+		// The lexer cursor is still on the first token of the value. An object or array is already counted in depth, and
+		// is counted again by the parser, so it is enclosed by one less level.
+		parser.unread(type);
+		final JSONValue result = parser.parseAnyValue(null, event == Event.VALUE ? depth : depth - 1);
+		
+		if (event != Event.VALUE) {
+			pop();
+			event = null;
+		}
+		
+		return result;
+	}
+	
+	/*
+	 * Skip the value of a KEY event, or the whole object or array of a START_OBJECT or START_ARRAY event, without
+	 * building or lexing it. A VALUE event has nothing more to skip. The next event is whatever follows the value.
+	 */
+	public void skip() {
+		if (event == null) {
+			throw new IllegalStateException(NOT_SKIPPABLE);
+		}
+		
+		switch (event) {
+			case KEY:
+				colon();
+				parser.skipAnyValue(Parser.OBJECT_KEY_COLON_VALUE);
+				state = State.AFTER_VALUE;
+				event = null;
+				break;
+			
+			case START_OBJECT:
+			case START_ARRAY:
+				lexer.skipContainer();
+				pop();
+				event = null;
+				break;
+			
+			case VALUE:
+				break;
+			
+			default:
+				throw new IllegalStateException(NOT_SKIPPABLE);
+		}
+	}
+}
@@ -0,0 +1,402 @@
+package me.bantling.micro.json;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/*
+ * Non blocking parser of UTF-8 input that is pushed to it a chunk at a time, as it arrives, rather than pulled from a
+ * Reader or InputStream, so that a selector based server or a virtual thread never waits on a slow client:
+ *
+ *   PushParser parser = new PushParser(value -> ...);
+ *   parser.feed(chunk);       // as each chunk arrives, any number of times
+ *   parser.endOfInput();      // dies if the document is incomplete
+ *
+ * The document is the same as for Parser: a top level object is one value, and a top level array is a value per
+ * element. Each value is passed to the consumer as soon as the chunk that completes it is fed, so the elements of a
+ * large array are consumed while the rest of it is still arriving.
+ *
+ * Fed bytes are indexed a block at a time by a StructuralIndex, which carries strings and escapes from one chunk to the
+ * next, and tracks nesting depth, to find where each value ends without lexing it. A chunk can end anywhere, even in
+ * the middle of a token or a UTF-8 sequence - the partial value is kept until it is complete, then parsed in place by
+ * a Parser over the kept bytes. Only the bytes of the value in progress are kept, so memory is bounded by the largest
+ * value rather than by the document.
+ *
+ * The errors are the same as Parser, reported by feed as soon as they are found, or by endOfInput for an incomplete
+ * document. Each element of a top level array is parsed together with the comma or bracket after it, so that a token
+ * at the end of an element is lexed knowing what follows it, and an element is passed to the consumer before an error
+ * in what follows it, as it is by Parser. Likewise a document that does not start with a brace or bracket is kept
+ * until its first token is complete, to report the lexer error for the token if there is one, and a value that ends
+ * inside a unicode escape is kept until the escape is complete, as the escape swallowed the quote that seemed to end
+ * its string, and the error shows the chars of the escape. Positions in errors are
+ * relative to the start of the value. Anything after the end of the document is ignored, as it is by Parser. A parser
+ * that has reported an error must not be used again.
+ */
+public final class PushParser {
+	static final String ENDED = "No more input can be fed after endOfInput";
+	
+	private enum State {
+		START,
+		TOKEN,
+		ESCAPE,
+		OBJECT,
+		ARRAY,
+		STOP
+	}
+	
+	// Initial size of the kept bytes, it doubles as needed
+	private static final int INITIAL_SIZE = 8192;
+	
+	// Consumer of each completed value
+	private final Consumer<JSONValue> values;
+	
+	// Options for each Parser
+	private KeyCache keyCache;
+	private boolean compactTree;
+	private int maxDepth = Integer.MAX_VALUE;
+	
+	private State state = State.START;
+	private boolean ended;
+	
+	// True if the next byte of a first token that is a string is escaped by a backslash
+	private boolean escaped;
+	
+	// Kept bytes [start, end), where start is the first byte of the value in progress, and [scanned, end) are not yet
+	// indexed. The wrapper is replaced when the bytes grow.
+	private byte[] bytes = new byte[INITIAL_SIZE];
+	private ByteBuffer wrapper = ByteBuffer.wrap(bytes);
+	private int start;
+	private int scanned;
+	private int end;
+	
+	private final StructuralIndex index = new StructuralIndex();
+	
+	// Parser of each value, reset onto the kept bytes of the next value, created on first use
+	private Parser parser;
+	
+	// Nesting depth, where the top level object or array is 1, and the number of elements of a top level array so far
+	private int depth;
+	private int elements;
+	
+	// Construct
+	public PushParser(
+		final Consumer<JSONValue> values
+	) {
+		this.values = Objects.requireNonNull(values, "values");
+	}
+	
+	// Use a cache of object keys, and return this parser (see Parser.withKeyCache)
+	public PushParser withKeyCache(final KeyCache keyCache) {
+		this.keyCache = keyCache;
+		return this;
+	}
+	
+	// Build a compact tree, and return this parser (see Parser.withCompactTree)
+	public PushParser withCompactTree() {
+		this.compactTree = true;
+		return this;
+	}
+	
+	// Limit the nesting of objects and arrays, and return this parser (see Parser.withMaxDepth)
+	public PushParser withMaxDepth(final int maxDepth) {
+		if (maxDepth < 1) {
+			throw new IllegalArgumentException(Parser.MAX_DEPTH_MUST_BE_POSITIVE);
+		}
+		
+		this.maxDepth = maxDepth;
+		return this;
+	}
+	
+	/*
+	 * Feed the remaining bytes of a chunk, passing each value they complete to the consumer. The chunk is consumed, so
+	 * its position becomes its limit, and the bytes are copied, so the chunk can be reused as soon as feed returns.
+	 */
+	public void feed(final ByteBuffer chunk) {
+		if (ended) {
+			throw new IllegalStateException(ENDED);
+		}
+		
+		// Nothing is kept after the end of the document
+		if (state == State.STOP) {
+			chunk.position(chunk.limit());
+			return;
+		}
+		
+		keep(chunk);
+		
+		while ((scanned < end) && (state != State.TOKEN) && (state != State.ESCAPE)) {
+			final int length = index.index(wrapper, scanned, end);
+			final long tokens = index.tokens();
+			long delimiters = index.delimiters();
+			
+			// The document must start with a brace or bracket, otherwise its first token is kept until it is complete
+			if ((state == State.START) && ((tokens & -tokens & ~delimiters) != 0)) {
+				state = State.TOKEN;
+				start = scanned = scanned + Long.numberOfTrailingZeros(tokens);
+				break;
+			}
+			
+			final int base = scanned;
+			scanned += length;
+			while (delimiters != 0) {
+				delimiter(base + Long.numberOfTrailingZeros(delimiters));
+				if (state == State.STOP) {
+					start = scanned = end;
+					return;
+				}
+				
+				if (state == State.ESCAPE) {
+					break;
+				}
+				
+				delimiters &= delimiters - 1;
+			}
+			
+			// Whitespace before the document is not kept
+			if (state == State.START) {
+				start = scanned;
+			}
+		}
+		
+		if (state == State.TOKEN) {
+			token();
+		}
+		
+		if (state == State.ESCAPE) {
+			escape();
+		}
+	}
+	
+	// Scan the first token of a document that does not start with a brace or bracket. Once the byte that ends the
+	// token has been fed, die with the error Parser reports, which is a lexer error if the token is not valid.
+	private void token() {
+		final boolean string = bytes[start] == '"';
+		for (; scanned < end; scanned++) {
+			final byte theByte = bytes[scanned];
+			final boolean last;
+			if (string) {
+				last = (scanned > start) && (! escaped) && (theByte == '"');
+				escaped = (! escaped) && (theByte == '\\');
+			} else {
+				last =
+					(theByte == ' ') || (theByte == '\n') || (theByte == '\r') || (theByte == '\t') ||
+					(theByte == '{') || (theByte == '}') || (theByte == '[') || (theByte == ']') ||
+					(theByte == ',') || (theByte == ':') || (theByte == '"');
+			}
+			
+			if (last) {
+				try {
+					parser(start, scanned + 1).parse();
+				} catch (final RuntimeException e) {
+					incompleteEscape(e);
+					return;
+				}
+				throw new RuntimeException(Parser.START_BRACE_OR_BRACKET);
+			}
+		}
+	}
+	
+	/*
+	 * Handle an error parsing a value that the index found the end of. A value can only end inside an incomplete
+	 * unicode escape if the escape swallowed the quote that the index took as the end of a string, so it is invalid,
+	 * but Parser reports the chars of the escape, which may not have been fed yet. So the value is kept until they
+	 * have. Any other error is the same as Parser's.
+	 */
+	private void incompleteEscape(final RuntimeException e) {
+		if (! Lexer.INCOMPLETE_UNICODE_ESCAPE.equals(e.getMessage())) {
+			throw e;
+		}
+		
+		state = State.ESCAPE;
+	}
+	
+	// Parse the kept value that ends inside a unicode escape again, with all bytes fed so far, along with the token
+	// after it, which is where the escape is if the value was consumed. Any error before the escape was reported by the
+	// first parse, so this dies with the error for the escape, unless it is still incomplete.
+	private void reparse() {
+		final Parser valueParser = parser(start, end);
+		valueParser.parseAnyValue(Parser.START_BRACE_OR_BRACKET, 0);
+		valueParser.nextType();
+	}
+	
+	// Reparse the kept value, and die unless the escape is still incomplete
+	private void escape() {
+		try {
+			reparse();
+		} catch (final RuntimeException e) {
+			if (! Lexer.INCOMPLETE_UNICODE_ESCAPE.equals(e.getMessage())) {
+				throw e;
+			}
+		}
+	}
+	
+	// Append the remaining bytes of a chunk to the kept bytes, moving the value in progress to the start first
+	private void keep(final ByteBuffer chunk) {
+		final int remaining = chunk.remaining();
+		if (end + remaining > bytes.length) {
+			final int kept = end - start;
+			if (kept + remaining > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, kept + remaining));
+				wrapper = ByteBuffer.wrap(bytes);
+			}
+			
+			System.arraycopy(bytes, start, bytes, 0, kept);
+			scanned -= start;
+			end = kept;
+			start = 0;
+		}
+		
+		chunk.get(bytes, end, remaining);
+		end += remaining;
+	}
+	
+	// Accept a brace, bracket, or comma outside of a string, at an index of the kept bytes
+	private void delimiter(final int i) {
+		final byte theByte = bytes[i];
+		
+		if (state == State.START) {
+			if (theByte == '{') {
+				state = State.OBJECT;
+				start = i;
+			} else if (theByte == '[') {
+				state = State.ARRAY;
+				start = i + 1;
+			} else {
+				throw new RuntimeException(Parser.START_BRACE_OR_BRACKET);
+			}
+			
+			depth = 1;
+			return;
+		}
+		
+		switch (theByte) {
+			case '{':
+			case '[':
+				depth++;
+				break;
+			
+			case '}':
+			case ']':
+				if (--depth == 0) {
+					try {
+						if (state == State.OBJECT) {
+							values.accept(parser(start, i + 1).parse().get());
+						} else {
+							lastElement(i);
+						}
+					} catch (final RuntimeException e) {
+						incompleteEscape(e);
+						return;
+					}
+					
+					state = State.STOP;
+				}
+				break;
+			
+			// Must be a comma, which only ends an element of a top level array
+			default:
+				if ((depth == 1) && (state == State.ARRAY)) {
+					try {
+						element(i);
+					} catch (final RuntimeException e) {
+						incompleteEscape(e);
+						return;
+					}
+					start = i + 1;
+				}
+		}
+	}
+	
+	// The parser reset onto the kept bytes [from, to)
+	private Parser parser(final int from, final int to) {
+		if (parser == null) {
+			parser = new Parser(bytes, from, to - from);
+		} else {
+			parser.reset(bytes, from, to - from);
+		}
+		
+		parser.withKeyCache(keyCache).withMaxDepth(maxDepth);
+		return compactTree ? parser.withCompactTree() : parser;
+	}
+	
+	// Parse the element of a top level array from start up to and including a separator, or up to the end of the
+	// input, and pass it to the consumer, then check that the separator is a comma or bracket that follows it. The
+	// errors are the same as Parser's.
+	private void element(final int separator) {
+		final Parser elementParser = parser(start, Math.min(separator + 1, end));
+		values.accept(
+			elementParser.parseAnyValue(elements++ == 0 ? Parser.ARRAY_VALUE_OR_BRACKET : Parser.ARRAY_COMMA_VALUE, 1)
+		);
+		
+		final LexerToken.Type type = elementParser.nextType();
+		if ((type != LexerToken.Type.COMMA) && (type != LexerToken.Type.CLOSE_BRACKET)) {
+			throw new RuntimeException(Parser.ARRAY_COMMA_OR_BRACKET);
+		}
+	}
+	
+	// True if the kept bytes from start up to an index are all whitespace
+	private boolean blank(final int to) {
+		for (int i = start; i < to; i++) {
+			final byte b = bytes[i];
+			if ((b != ' ') && (b != '\n') && (b != '\r') && (b != '\t')) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	// Handle the last element of a top level array, before the closing bracket or brace at an index, or the end of the
+	// input, where element dies unless it is a closing bracket
+	private void lastElement(final int i) {
+		if ((i < end) && (bytes[i] == ']') && (elements == 0) && blank(i)) {
+			// An empty array
+			return;
+		}
+		
+		element(i);
+	}
+	
+	/*
+	 * Signal that there is no more input, and die if the document is incomplete, with the error Parser would report.
+	 * An incomplete last element of a top level array is parsed first, as it is by Parser.
+	 */
+	public void endOfInput() {
+		if (ended) {
+			return;
+		}
+		ended = true;
+		
+		switch (state) {
+			case START:
+				throw new RuntimeException(Parser.START_BRACE_OR_BRACKET);
+			
+			case TOKEN:
+				// The parser reports an incomplete token, such as the end of a string
+				parser(start, end).parse();
+				throw new RuntimeException(Parser.START_BRACE_OR_BRACKET);
+			
+			case ESCAPE:
+				reparse();
+				throw new RuntimeException(Lexer.INCOMPLETE_UNICODE_ESCAPE);
+			
+			case OBJECT:
+				// The parser reports what is missing, such as a value or the end of a string
+				parser(start, end).parse();
+				throw new RuntimeException(Lexer.INCOMPLETE_CONTAINER);
+			
+			case ARRAY:
+				lastElement(end);
+				break;
+			
+			// Must be STOP
+			default:
+		}
+	}
+	
+	// True once the end of the document has been fed
+	public boolean isComplete() {
+		return state == State.STOP;
+	}
+}
@@ -0,0 +1,195 @@
+package me.bantling.micro.json;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/*
+ * First stage of scanning UTF-8 JSON, as in simdjson: classify the bytes 64 at a time into masks of one bit per byte,
+ * so that a later stage can jump from one structural byte to the next rather than examine every byte.
+ *
+ * Each block is read as eight longs, and each long is classified 8 bytes at a time with SWAR (SIMD within a register)
+ * arithmetic, into masks of quotes, backslashes, whitespace, and the delimiters {}[], - then the masks are combined
+ * without branching:
+ * - Quotes that are escaped by an odd number of backslashes are removed
+ * - A prefix XOR of the quotes gives the bytes inside strings, carried from one block to the next
+ * - Delimiters inside strings are removed
+ *
+ * The result for each block is the delimiters outside of strings, and the tokens: every byte outside of strings that
+ * is not whitespace, where a string is its opening quote. Colons are tokens rather than delimiters, since nothing
+ * that scans an index needs them yet.
+ *
+ * As in simdjson, a backslash escapes the byte after it wherever it is, which only differs from scanning a byte at a
+ * time for invalid JSON, where a backslash outside of a string precedes a quote.
+ *
+ * A block at the end of the input, that has fewer than 64 bytes, is copied and padded with spaces, so any length of
+ * input can be indexed. The arithmetic only uses long, so it works on any JVM. The carries make indexing resumable, so
+ * a series of buffers, such as the windows of a mapped file, can be indexed one after another as one input.
+ */
+final class StructuralIndex {
+	// Bytes per block
+	static final int BLOCK_SIZE = 64;
+	
+	// SWAR constants: each byte 0x01, and each byte 0x7F
+	private static final long ONES = 0x0101010101010101L;
+	private static final long LOW_SEVEN_BITS = 0x7F7F7F7F7F7F7F7FL;
+	
+	// Bytes to compare each long against. Brackets and braces differ only by 0x20, so they are compared with 0x20 set.
+	private static final long QUOTES = '"' * ONES;
+	private static final long BACKSLASHES = '\\' * ONES;
+	private static final long SPACES = ' ' * ONES;
+	private static final long TABS = '\t' * ONES;
+	private static final long NEWLINES = '\n' * ONES;
+	private static final long RETURNS = '\r' * ONES;
+	private static final long CASE_BITS = 0x20 * ONES;
+	private static final long OPENS = '{' * ONES;
+	private static final long CLOSES = '}' * ONES;
+	private static final long COMMAS = ',' * ONES;
+	
+	// Little endian longs from a byte[], so that byte i of a long is bit i of a mask
+	private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+	
+	// Carries from one block to the next: the next byte is escaped by a backslash, and the next byte is inside a string
+	private boolean escapedCarry;
+	private boolean inStringCarry;
+	
+	// Masks of the last block indexed
+	private long delimiters;
+	private long tokens;
+	
+	// Block copied from a direct buffer, or padded at the end of the input
+	private final byte[] copy = new byte[BLOCK_SIZE];
+	
+	// ==== SWAR
+	
+	// Read a little endian long from a byte[]
+	static long longAt(final byte[] bytes, final int index) {
+		return (long)(LONGS.get(bytes, index));
+	}
+	
+	// The high bit of each byte that is not 0, and garbage in the low bits.
+	// Adding 0x7F to the low 7 bits of a byte sets its high bit unless they are all 0, so no carry crosses a byte.
+	private static long nonZeroBytes(final long x) {
+		return ((x & LOW_SEVEN_BITS) + LOW_SEVEN_BITS) | x;
+	}
+	
+	// The high bit of each byte of word that is equal to the same byte of pattern, exactly
+	static long equalBytes(final long word, final long pattern) {
+		return ~(nonZeroBytes(word ^ pattern) | LOW_SEVEN_BITS);
+	}
+	
+	// Gather the high bit of each byte into 8 consecutive bits, so byte i becomes bit i
+	static long gather(final long highBits) {
+		return ((highBits >>> 7) * 0x0102040810204080L) >>> 56;
+	}
+	
+	// Each bit is the XOR of all bits up to and including it, which for a mask of quotes is the mask of the bytes
+	// from an opening quote up to but not including its closing quote
+	static long prefixXor(final long mask) {
+		long result = mask;
+		result ^= result << 1;
+		result ^= result << 2;
+		result ^= result << 4;
+		result ^= result << 8;
+		result ^= result << 16;
+		result ^= result << 32;
+		return result;
+	}
+	
+	// ==== Index
+	
+	// The bytes escaped by a backslash: those that follow an odd length run of backslashes, where bit 64 is returned
+	// in escapedCarry. Most blocks have no backslashes, so the backslashes are followed one escape at a time.
+	private long escaped(final long backslashes) {
+		long result = escapedCarry ? 1 : 0;
+		long remaining = backslashes & ~result;
+		escapedCarry = false;
+		while (remaining != 0) {
+			final long bit = Long.lowestOneBit(remaining);
+			result |= bit << 1;
+			escapedCarry = bit == Long.MIN_VALUE;
+			remaining &= ~(bit | (bit << 1));
+		}
+		
+		return result;
+	}
+	
+	// Classify the 64 bytes starting at index of bytes, where only the first length bytes are input
+	private void classify(final byte[] bytes, final int index, final int length) {
+		long quotes = 0;
+		long backslashes = 0;
+		long whitespace = 0;
+		long delims = 0;
+		for (int i = 0; i < BLOCK_SIZE; i += 8) {
+			final long word = longAt(bytes, index + i);
+			final long cased = word | CASE_BITS;
+			quotes |= gather(equalBytes(word, QUOTES)) << i;
+			backslashes |= gather(equalBytes(word, BACKSLASHES)) << i;
+			whitespace |= gather(~(
+				nonZeroBytes(word ^ SPACES) &
+				nonZeroBytes(word ^ NEWLINES) &
+				nonZeroBytes(word ^ TABS) &
+				nonZeroBytes(word ^ RETURNS) |
+				LOW_SEVEN_BITS
+			)) << i;
+			delims |= gather(~(
+				nonZeroBytes(cased ^ OPENS) &
+				nonZeroBytes(cased ^ CLOSES) &
+				nonZeroBytes(word ^ COMMAS) |
+				LOW_SEVEN_BITS
+			)) << i;
+		}
+		
+		// Unescaped quotes, then the bytes from an opening quote up to but not including its closing quote
+		if ((backslashes != 0) || escapedCarry) {
+			final long escaped = escaped(backslashes);
+			quotes &= ~escaped;
+			if (length < BLOCK_SIZE) {
+				escapedCarry = ((escaped >>> length) & 1) != 0;
+			}
+		}
+		final long inString = prefixXor(quotes) ^ (inStringCarry ? -1L : 0L);
+		inStringCarry = ((inString >>> (length - 1)) & 1) != 0;
+		
+		// Remove everything after the opening quote of a string up to and including its closing quote, and any padding
+		final long outside = ~(inString ^ quotes) & (length == BLOCK_SIZE ? -1L : (1L << length) - 1);
+		delimiters = delims & outside;
+		tokens = ~whitespace & outside;
+	}
+	
+	/*
+	 * Index the block of a buffer that starts at index and ends at end or after 64 bytes, whichever is first,
+	 * continuing from the blocks indexed before, and return the number of bytes indexed.
+	 * The buffer position is not changed.
+	 */
+	int index(final ByteBuffer buffer, final int index, final int end) {
+		final int length = Math.min(BLOCK_SIZE, end - index);
+		if ((length == BLOCK_SIZE) && buffer.hasArray()) {
+			classify(buffer.array(), buffer.arrayOffset() + index, length);
+		} else {
+			buffer.get(index, copy, 0, length);
+			Arrays.fill(copy, length, BLOCK_SIZE, (byte)(' '));
+			classify(copy, 0, length);
+		}
+		
+		return length;
+	}
+	
+	// The brackets, braces, and commas outside of strings in the last block indexed
+	long delimiters() {
+		return delimiters;
+	}
+	
+	// The bytes outside of strings that are not whitespace in the last block indexed, including delimiters, and where
+	// each string is its opening quote
+	long tokens() {
+		return tokens;
+	}
+	
+	// True if the input indexed so far ends inside a string
+	boolean inString() {
+		return inStringCarry;
+	}
+}
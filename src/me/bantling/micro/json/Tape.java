@@ -0,0 +1,413 @@
+package me.bantling.micro.json;
+
+import java.util.Arrays;
+
+/*
+ * A parsed document recorded as a flat tape, as in simdjson, rather than as a tree of JSONValues (see Parser.tape).
+ * 
+ * The whole document is one long[] of entries and one char[] arena of string contents, however many values it has, so
+ * parsing a large document creates almost no garbage. Each entry has a type in the top 8 bits and a payload below:
+ * - START_OBJECT / START_ARRAY: the number of keys or elements (saturating at MAX_COUNT) and the index after the end
+ * - END_OBJECT / END_ARRAY: the index of the start
+ * - STRING: the offset of the string in the arena, where two chars of length precede the chars of the string
+ * - LONG / DOUBLE: nothing, the value is the next entry, as raw bits for a double
+ * - NUMBER_TEXT: the offset of the text of a number in the arena, laid out as a string, and its value is the next
+ *   entry, as raw bits for a double
+ * - TRUE / FALSE / NULL: nothing
+ * The keys of an object are STRING entries, each followed by its value.
+ * 
+ * A value is identified by the index of its first entry, and navigated by index, so nothing is allocated to find a
+ * value however deep it is. The root is index 0. An object or array is iterated with first and next:
+ * 
+ *   for (int i = tape.first(array); i >= 0; i = tape.next(i)) { ... element at i ... }
+ *   for (int k = tape.first(object); k >= 0; k = tape.nextKey(k)) { ... key at k, value at k + 1 ... }
+ * 
+ * A TapeView is a reusable cursor over a tape, for navigating in the style of JSONValue.
+ * 
+ * Numbers are recorded as a long if they fit. Any other number keeps the text it was written with, along with its value
+ * as a double, so that a tape written out by visiting it with a JSONWriter has the same numbers as the document it was
+ * parsed from, while doubleValue does not parse the text. A number given to a TapeBuilder as a double alone, with no
+ * text, is recorded as a DOUBLE.
+ * 
+ * A tape is read only, so it can be shared by threads once it is built.
+ */
+public final class Tape {
+	static final String NOT_A_CONTAINER     = "Not an OBJECT or ARRAY value";
+	static final String NO_SUCH_KEY_FMT     = "The object has no key %s";
+	static final String NO_SUCH_ELEMENT_FMT = "The array has no element %d";
+	
+	// Entry types
+	static final int START_OBJECT = 1;
+	static final int END_OBJECT   = 2;
+	static final int START_ARRAY  = 3;
+	static final int END_ARRAY    = 4;
+	static final int STRING       = 5;
+	static final int LONG         = 6;
+	static final int DOUBLE       = 7;
+	static final int TRUE         = 8;
+	static final int FALSE        = 9;
+	static final int NULL         = 10;
+	static final int NUMBER_TEXT  = 11;
+	
+	// Layout of an entry, and of the payload of a start entry
+	static final int TYPE_SHIFT = 56;
+	static final long PAYLOAD_MASK = (1L << TYPE_SHIFT) - 1;
+	static final int COUNT_SHIFT = 32;
+	static final int MAX_COUNT = (1 << (TYPE_SHIFT - COUNT_SHIFT)) - 1;
+	
+	// Entries, and the number of them in use
+	private final long[] entries;
+	private final int size;
+	
+	// String contents
+	private final char[] arena;
+	
+	// Construct
+	Tape(
+		final long[] entries,
+		final int size,
+		final char[] arena
+	) {
+		this.entries = entries;
+		this.size = size;
+		this.arena = arena;
+	}
+	
+	// An entry of a type and payload
+	static long entry(final int type, final long payload) {
+		return ((long)(type) << TYPE_SHIFT) | payload;
+	}
+	
+	// The entry type at an index
+	private int entryType(final int index) {
+		return (int)(entries[index] >>> TYPE_SHIFT);
+	}
+	
+	// The payload at an index
+	private long payload(final int index) {
+		return entries[index] & PAYLOAD_MASK;
+	}
+	
+	// Die if the value at an index is not of an entry type
+	private void check(final int index, final int type, final String error) {
+		if (entryType(index) != type) {
+			throw new JSONValueException(error);
+		}
+	}
+	
+	// ==== Structure
+	
+	// The index of the root value
+	public int root() {
+		return 0;
+	}
+	
+	// The number of entries
+	public int entryCount() {
+		return size;
+	}
+	
+	// The type of the value at an index
+	public JSONValue.Type type(final int index) {
+		switch (entryType(index)) {
+			case START_OBJECT:
+				return JSONValue.Type.OBJECT;
+			
+			case START_ARRAY:
+				return JSONValue.Type.ARRAY;
+			
+			case STRING:
+				return JSONValue.Type.STRING;
+			
+			case LONG:
+			case DOUBLE:
+			case NUMBER_TEXT:
+				return JSONValue.Type.NUMBER;
+			
+			case TRUE:
+			case FALSE:
+				return JSONValue.Type.BOOLEAN;
+			
+			// Must be NULL
+			default:
+				return JSONValue.Type.NULL;
+		}
+	}
+	
+	// True if the value at an index is a number recorded as a long
+	public boolean isLong(final int index) {
+		return entryType(index) == LONG;
+	}
+	
+	// The index after the value at an index, which skips over all of an object or array
+	int after(final int index) {
+		switch (entryType(index)) {
+			case START_OBJECT:
+			case START_ARRAY:
+				return (int)(payload(index));
+			
+			case LONG:
+			case DOUBLE:
+			case NUMBER_TEXT:
+				return index + 2;
+			
+			default:
+				return index + 1;
+		}
+	}
+	
+	// The index of the first element of an array or key of an object, or -1 if it is empty
+	public int first(final int container) {
+		final int type = entryType(container);
+		if ((type != START_OBJECT) && (type != START_ARRAY)) {
+			throw new JSONValueException(NOT_A_CONTAINER);
+		}
+		
+		return after(container) == container + 2 ? -1 : container + 1;
+	}
+	
+	// The index of the element that follows the one at an index, or -1 if it is the last element
+	public int next(final int element) {
+		final int result = after(element);
+		final int type = entryType(result);
+		return (type == END_OBJECT) || (type == END_ARRAY) ? -1 : result;
+	}
+	
+	// The index of the key that follows the one at an index, or -1 if it is the last key
+	public int nextKey(final int key) {
+		return next(key + 1);
+	}
+	
+	// The number of keys of an object or elements of an array
+	public int size(final int container) {
+		final int type = entryType(container);
+		if ((type != START_OBJECT) && (type != START_ARRAY)) {
+			throw new JSONValueException(NOT_A_CONTAINER);
+		}
+		
+		int result = (int)(payload(container) >>> COUNT_SHIFT);
+		if (result == MAX_COUNT) {
+			// Too many to record, so count them
+			result = 0;
+			for (int i = first(container); i >= 0; i = type == START_OBJECT ? nextKey(i) : next(i)) {
+				result++;
+			}
+		}
+		
+		return result;
+	}
+	
+	// The index of the value of a key of an object, or -1 if there is no such key
+	public int get(final int object, final String key) {
+		check(object, START_OBJECT, JSONValue.NOT_AN_OBJECT);
+		
+		for (int k = first(object); k >= 0; k = nextKey(k)) {
+			if (stringEquals(k, key)) {
+				return k + 1;
+			}
+		}
+		
+		return -1;
+	}
+	
+	// The index of an element of an array, or -1 if there is no such element
+	public int get(final int array, final int element) {
+		check(array, START_ARRAY, JSONValue.NOT_AN_ARRAY);
+		
+		int i = element < 0 ? -1 : first(array);
+		for (int n = 0; (n < element) && (i >= 0); n++) {
+			i = next(i);
+		}
+		
+		return i;
+	}
+	
+	// ==== Scalars
+	
+	// Offset of the chars of a string in the arena
+	private int stringOffset(final int index) {
+		check(index, STRING, JSONValue.NOT_A_STRING);
+		return (int)(payload(index)) + 2;
+	}
+	
+	// The length of the chars in the arena at an offset
+	private int arenaLength(final int offset) {
+		return (arena[offset - 2] << 16) | arena[offset - 1];
+	}
+	
+	// The length of a string, or a key
+	public int stringLength(final int index) {
+		return arenaLength(stringOffset(index));
+	}
+	
+	// Copy the chars of a string, or a key, into dest at offset, and return the number of chars copied
+	public int copyChars(final int index, final char[] dest, final int offset) {
+		final int length = stringLength(index);
+		System.arraycopy(arena, stringOffset(index), dest, offset, length);
+		return length;
+	}
+	
+	// True if a string, or a key, has the same chars as str, which allocates nothing
+	public boolean stringEquals(final int index, final String str) {
+		final int length = stringLength(index);
+		if (length != str.length()) {
+			return false;
+		}
+		
+		final int offset = stringOffset(index);
+		for (int i = 0; i < length; i++) {
+			if (arena[offset + i] != str.charAt(i)) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	// A string, or a key, as a new String
+	public String string(final int index) {
+		return new String(arena, stringOffset(index), stringLength(index));
+	}
+	
+	// A number as a long. A double or text is converted by JSONNumber.asLong, so the integer part is kept and a number
+	// too large for a long dies with a NumberFormatException, as it does in a JSONValue tree.
+	public long longValue(final int index) {
+		return entryType(index) == LONG ? entries[index + 1] : numberValue(index).asLong();
+	}
+	
+	// A number as a double
+	public double doubleValue(final int index) {
+		switch (entryType(index)) {
+			case LONG:
+				return entries[index + 1];
+			
+			case DOUBLE:
+			case NUMBER_TEXT:
+				return Double.longBitsToDouble(entries[index + 1]);
+			
+			default:
+				throw new JSONValueException(JSONValue.NOT_A_NUMBER);
+		}
+	}
+	
+	// A number as a JSONNumber, which has the exact value of a number recorded as text
+	public JSONNumber numberValue(final int index) {
+		switch (entryType(index)) {
+			case LONG:
+				return JSONNumber.of(entries[index + 1]);
+			
+			case DOUBLE:
+				return JSONNumber.of(Double.longBitsToDouble(entries[index + 1]));
+			
+			case NUMBER_TEXT: {
+				final int offset = (int)(payload(index)) + 2;
+				final Lexer lexer = new Lexer(arena, offset, arenaLength(offset));
+				lexer.nextToken();
+				return lexer.jsonNumber();
+			}
+			
+			default:
+				throw new JSONValueException(JSONValue.NOT_A_NUMBER);
+		}
+	}
+	
+	public boolean booleanValue(final int index) {
+		final int type = entryType(index);
+		if ((type != TRUE) && (type != FALSE)) {
+			throw new JSONValueException(JSONValue.NOT_A_BOOLEAN);
+		}
+		
+		return type == TRUE;
+	}
+	
+	public boolean isNull(final int index) {
+		return entryType(index) == NULL;
+	}
+	
+	// A new view of the root
+	public TapeView view() {
+		return new TapeView(this);
+	}
+	
+	// ==== Visit
+	
+	/*
+	 * Call a visitor for the value at an index, and everything inside it, in document order. For example, a JSONWriter
+	 * writes the value as JSON text.
+	 *
+	 * The entries of the value are visited in a single pass, with a stack of one bit per level of nesting that records
+	 * whether each level is an object, so that keys can be told apart from string values.
+	 */
+	public void visit(final int index, final JSONVisitor visitor) {
+		long[] objects = new long[1];
+		int depth = 0;
+		boolean keyNext = false;
+		
+		for (int i = index, end = after(index); i < end; i++) {
+			switch (entryType(i)) {
+				case START_OBJECT:
+				case START_ARRAY:
+					if ((depth >>> 6) == objects.length) {
+						objects = Arrays.copyOf(objects, objects.length * 2);
+					}
+					
+					if (entryType(i) == START_OBJECT) {
+						objects[depth >>> 6] |= 1L << depth;
+						visitor.startObject();
+						keyNext = true;
+					} else {
+						objects[depth >>> 6] &= ~(1L << depth);
+						visitor.startArray();
+						keyNext = false;
+					}
+					depth++;
+					continue;
+				
+				case END_OBJECT:
+					depth--;
+					visitor.endObject();
+					break;
+				
+				case END_ARRAY:
+					depth--;
+					visitor.endArray();
+					break;
+				
+				case STRING:
+					if (keyNext) {
+						visitor.key(arena, stringOffset(i), stringLength(i));
+						keyNext = false;
+						continue;
+					}
+					visitor.stringValue(arena, stringOffset(i), stringLength(i));
+					break;
+				
+				case LONG:
+					visitor.longValue(entries[++i]);
+					break;
+				
+				case DOUBLE:
+					visitor.doubleValue(Double.longBitsToDouble(entries[++i]));
+					break;
+				
+				case NUMBER_TEXT: {
+					final int offset = (int)(payload(i)) + 2;
+					visitor.numberValue(arena, offset, arenaLength(offset), Double.longBitsToDouble(entries[++i]));
+					break;
+				}
+				
+				case TRUE:
+				case FALSE:
+					visitor.booleanValue(entryType(i) == TRUE);
+					break;
+				
+				// Must be NULL
+				default:
+					visitor.nullValue();
+			}
+			
+			// A value is complete, so a key is next if the enclosing level is an object
+			keyNext = (depth > 0) && ((objects[(depth - 1) >>> 6] & (1L << (depth - 1))) != 0);
+		}
+	}
+}
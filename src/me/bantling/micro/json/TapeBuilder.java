@@ -0,0 +1,156 @@
+package me.bantling.micro.json;
+
+import java.util.Arrays;
+
+/*
+ * A JSONVisitor that records a document as a Tape, for Parser.tape.
+ * 
+ * Entries and string contents are appended to arrays that double in size as needed, so a document of any size takes a
+ * few dozen allocations. The start entry of an object or array is written as a placeholder, and completed when the end
+ * is reached, using a stack of the indexes of the starts and the counts of their keys or elements.
+ */
+final class TapeBuilder implements JSONVisitor {
+	private long[] entries = new long[1024];
+	private int size;
+	
+	private char[] arena = new char[4096];
+	private int arenaSize;
+	
+	// Index of the start entry, and the number of keys or elements so far, of each open object or array
+	private int[] starts = new int[16];
+	private int[] counts = new int[16];
+	private int depth;
+	
+	// Append an entry
+	private void add(final long entry) {
+		if (size == entries.length) {
+			entries = Arrays.copyOf(entries, size * 2);
+		}
+		
+		entries[size++] = entry;
+	}
+	
+	// Count a value of the enclosing object or array, if any
+	private void count() {
+		if (depth > 0) {
+			counts[depth - 1]++;
+		}
+	}
+	
+	// Start an object or array
+	private void start(final int type) {
+		count();
+		if (depth == starts.length) {
+			starts = Arrays.copyOf(starts, depth * 2);
+			counts = Arrays.copyOf(counts, depth * 2);
+		}
+		
+		starts[depth] = size;
+		counts[depth++] = 0;
+		add(Tape.entry(type, 0));
+	}
+	
+	// End an object or array, and complete its start entry with its count and the index after its end
+	private void end(final int startType, final int endType) {
+		final int start = starts[--depth];
+		add(Tape.entry(endType, start));
+		entries[start] = Tape.entry(
+			startType,
+			((long)(Math.min(counts[depth], Tape.MAX_COUNT)) << Tape.COUNT_SHIFT) | size
+		);
+	}
+	
+	// Append a string or number text entry, with its chars preceded by their length in the arena
+	private void string(final int type, final char[] chars, final int offset, final int length) {
+		if (arenaSize + length + 2 > arena.length) {
+			arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaSize + length + 2));
+		}
+		
+		add(Tape.entry(type, arenaSize));
+		arena[arenaSize++] = (char)(length >>> 16);
+		arena[arenaSize++] = (char)(length);
+		System.arraycopy(chars, offset, arena, arenaSize, length);
+		arenaSize += length;
+	}
+	
+	// The completed tape
+	Tape tape() {
+		return new Tape(entries, size, arena);
+	}
+	
+	@Override
+	public void startObject() {
+		start(Tape.START_OBJECT);
+	}
+	
+	@Override
+	public void endObject() {
+		end(Tape.START_OBJECT, Tape.END_OBJECT);
+	}
+	
+	@Override
+	public void startArray() {
+		start(Tape.START_ARRAY);
+	}
+	
+	@Override
+	public void endArray() {
+		end(Tape.START_ARRAY, Tape.END_ARRAY);
+	}
+	
+	@Override
+	public void key(final String key) {
+		key(key.toCharArray(), 0, key.length());
+	}
+	
+	@Override
+	public void key(final char[] chars, final int offset, final int length) {
+		string(Tape.STRING, chars, offset, length);
+	}
+	
+	@Override
+	public void stringValue(final String value) {
+		stringValue(value.toCharArray(), 0, value.length());
+	}
+	
+	@Override
+	public void stringValue(final char[] chars, final int offset, final int length) {
+		count();
+		string(Tape.STRING, chars, offset, length);
+	}
+	
+	@Override
+	public void longValue(final long value) {
+		count();
+		add(Tape.entry(Tape.LONG, 0));
+		add(value);
+	}
+	
+	@Override
+	public void doubleValue(final double value) {
+		count();
+		add(Tape.entry(Tape.DOUBLE, 0));
+		add(Double.doubleToRawLongBits(value));
+	}
+	
+	// A number that is not a long keeps its text, so that it is visited with the text it was written with, followed by
+	// its value as a double
+	@Override
+	public void numberValue(final char[] chars, final int offset, final int length, final double value) {
+		count();
+		string(Tape.NUMBER_TEXT, chars, offset, length);
+		add(Double.doubleToRawLongBits(value));
+	}
+	
+	@Override
+	public void booleanValue(final boolean value) {
+		count();
+		add(Tape.entry(value ? Tape.TRUE : Tape.FALSE, 0));
+	}
+	
+	@Override
+	public void nullValue() {
+		count();
+		add(Tape.entry(Tape.NULL, 0));
+	}
+}
@@ -0,0 +1,141 @@
+package me.bantling.micro.json;
+
+import java.util.Objects;
+
+/*
+ * A reusable cursor over a Tape, that navigates in the style of JSONValue without allocating anything per value.
+ * 
+ * A view is positioned at one value, and field and element move it to a value inside that one, returning the view, so
+ * that a lookup chains: view.field("address").field("city").asString(). The index of a position can be saved and
+ * returned to with moveTo. A view is not thread safe, but any number of views can share a tape.
+ */
+public final class TapeView {
+	private final Tape tape;
+	private int index;
+	
+	// Construct at the root of a tape
+	TapeView(
+		final Tape tape
+	) {
+		this.tape = Objects.requireNonNull(tape, "tape");
+		this.index = tape.root();
+	}
+	
+	// ==== Position
+	
+	public Tape getTape() {
+		return tape;
+	}
+	
+	// The index of the current value
+	public int index() {
+		return index;
+	}
+	
+	// Move to the value at an index of the tape, and return this view
+	public TapeView moveTo(final int index) {
+		Objects.checkIndex(index, tape.entryCount());
+		this.index = index;
+		return this;
+	}
+	
+	// Move to the root, and return this view
+	public TapeView root() {
+		index = tape.root();
+		return this;
+	}
+	
+	// True if the current value is an object with the given key
+	public boolean hasField(final String key) {
+		return tape.get(index, key) >= 0;
+	}
+	
+	// Move to the value of a key of the current object, and return this view, or die if there is no such key
+	public TapeView field(final String key) {
+		final int result = tape.get(index, key);
+		if (result < 0) {
+			throw new JSONValueException(String.format(Tape.NO_SUCH_KEY_FMT, key));
+		}
+		
+		index = result;
+		return this;
+	}
+	
+	// Move to an element of the current array, and return this view, or die if there is no such element
+	public TapeView element(final int element) {
+		final int result = tape.get(index, element);
+		if (result < 0) {
+			throw new JSONValueException(String.format(Tape.NO_SUCH_ELEMENT_FMT, Integer.valueOf(element)));
+		}
+		
+		index = result;
+		return this;
+	}
+	
+	// ==== Tests
+	
+	public JSONValue.Type getType() {
+		return tape.type(index);
+	}
+	
+	public boolean isString() {
+		return getType() == JSONValue.Type.STRING;
+	}
+	
+	public boolean isNumber() {
+		return getType() == JSONValue.Type.NUMBER;
+	}
+	
+	public boolean isBoolean() {
+		return getType() == JSONValue.Type.BOOLEAN;
+	}
+	
+	public boolean isNull() {
+		return tape.isNull(index);
+	}
+	
+	public boolean isObject() {
+		return getType() == JSONValue.Type.OBJECT;
+	}
+	
+	public boolean isArray() {
+		return getType() == JSONValue.Type.ARRAY;
+	}
+	
+	// ==== Unwrappers
+	
+	public String asString() {
+		return tape.string(index);
+	}
+	
+	// True if the current value is a string with the same chars as str, which allocates nothing
+	public boolean stringEquals(final String str) {
+		return tape.stringEquals(index, str);
+	}
+	
+	public long asLong() {
+		return tape.longValue(index);
+	}
+	
+	public double asDouble() {
+		return tape.doubleValue(index);
+	}
+	
+	public JSONNumber asNumber() {
+		return tape.numberValue(index);
+	}
+	
+	public boolean asBoolean() {
+		return tape.booleanValue(index);
+	}
+	
+	// The number of keys of the current object or elements of the current array
+	public int size() {
+		return tape.size(index);
+	}
+	
+	// Call a visitor for the current value, and everything inside it
+	public void visit(final JSONVisitor visitor) {
+		tape.visit(index, visitor);
+	}
+}
@@ -0,0 +1,316 @@
+package me.bantling.micro.json;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Objects;
+
+import me.bantling.micro.function.Try;
+
+/*
+ * A LexerInput that decodes UTF-8 bytes itself, so that no Reader or CharsetDecoder is needed.
+ * 
+ * ASCII bytes - which includes all structural characters, numbers, and literals - are returned as is. Only multi byte
+ * sequences, which can only legally occur inside strings, are decoded, and they are validated as they are decoded:
+ * overlong encodings, encoded surrogates, code points above U+10FFFF, and truncated sequences are all rejected.
+ * 
+ * Byte arrays and heap ByteBuffers are lexed in place. InputStreams and direct ByteBuffers - including a series of
+ * memory mapped windows of a file - are copied a block at a time into a byte[] window. When the window is refilled,
+ * the last four bytes are kept at the start of the window, so that unread can always back up over a sequence that was
+ * split across two blocks or two buffers.
+ */
+final class Utf8LexerInput extends LexerInput {
+	// Number of bytes to copy from a stream or direct buffer at a time
+	static final int BUFFER_SIZE = 8192;
+	
+	// Number of bytes kept before the cursor when the window is refilled (longest UTF-8 sequence)
+	private static final int KEEP = 4;
+	
+	// Size of the window for a stream or direct buffers
+	static final int WINDOW_SIZE = KEEP + BUFFER_SIZE;
+	
+	// Underlying stream or direct buffers, both are null if the window is all the input there is.
+	// Direct buffers are copied from the current source until it is exhausted, then the next source is used.
+	private final InputStream stream;
+	private final Iterator<ByteBuffer> sources;
+	private ByteBuffer source;
+	
+	// Window of bytes, index of next byte to read, and index after last byte in window
+	private final byte[] buffer;
+	private int pos;
+	private int limit;
+	
+	// Offset of the first byte of the window from the start of the input
+	private long base;
+	
+	// Number of bytes in last code point read, so it can be unread
+	private int lastLength;
+	
+	// Construct from an array slice, which is lexed in place
+	Utf8LexerInput(
+		final byte[] bytes,
+		final int offset,
+		final int length
+	) {
+		Objects.checkFromIndexSize(offset, length, bytes.length);
+		
+		this.stream = null;
+		this.sources = null;
+		this.buffer = bytes;
+		this.pos = offset;
+		this.limit = offset + length;
+		this.base = -offset;
+	}
+	
+	// Construct from the remaining bytes of a buffer, without changing the buffer position
+	Utf8LexerInput(
+		final ByteBuffer bytes
+	) {
+		this(bytes, bytes.hasArray() ? null : new byte[WINDOW_SIZE]);
+	}
+	
+	// Construct from the remaining bytes of a buffer, where a direct buffer is copied into a window of WINDOW_SIZE bytes
+	// that can be reused once this input is no longer used, and a heap buffer needs no window
+	Utf8LexerInput(
+		final ByteBuffer bytes,
+		final byte[] window
+	) {
+		this.stream = null;
+		
+		if (bytes.hasArray()) {
+			this.sources = null;
+			this.buffer = bytes.array();
+			this.pos = bytes.arrayOffset() + bytes.position();
+			this.limit = pos + bytes.remaining();
+			this.base = -pos;
+		} else {
+			this.sources = Collections.singletonList(bytes.duplicate()).iterator();
+			this.buffer = window;
+		}
+	}
+	
+	// Construct from the remaining bytes of a series of buffers, which are treated as one contiguous input
+	Utf8LexerInput(
+		final Iterator<ByteBuffer> sources
+	) {
+		this(sources, new byte[WINDOW_SIZE]);
+	}
+	
+	// Construct from a series of buffers, with a window of WINDOW_SIZE bytes that can be reused once this input is no
+	// longer used
+	Utf8LexerInput(
+		final Iterator<ByteBuffer> sources,
+		final byte[] window
+	) {
+		this.stream = null;
+		this.sources = Objects.requireNonNull(sources, "sources");
+		this.buffer = window;
+	}
+	
+	// Construct from a stream
+	Utf8LexerInput(
+		final InputStream stream
+	) {
+		this(stream, new byte[WINDOW_SIZE]);
+	}
+	
+	// Construct from a stream, with a window of WINDOW_SIZE bytes that can be reused once this input is no longer used
+	Utf8LexerInput(
+		final InputStream stream,
+		final byte[] window
+	) {
+		this.stream = Objects.requireNonNull(stream, "stream");
+		this.sources = null;
+		this.buffer = window;
+	}
+	
+	// Copy more bytes from the stream or direct buffers into the window after limit.
+	// Return the number of bytes copied, which is less than 1 if there are no more.
+	private int copyMore() {
+		final int length = buffer.length - limit;
+		if (stream != null) {
+			return Try.getInt(() -> stream.read(buffer, limit, length));
+		}
+		
+		while (((source == null) || (! source.hasRemaining())) && sources.hasNext()) {
+			source = sources.next();
+		}
+		
+		if (source == null) {
+			return -1;
+		}
+		
+		final int count = Math.min(length, source.remaining());
+		source.get(buffer, limit, count);
+		return count;
+	}
+	
+	// Ensure at least count bytes are available after the cursor, refilling the window if necessary.
+	// Return false if EOF occurs first.
+	private boolean ensure(final int count) {
+		if (limit - pos >= count) {
+			return true;
+		}
+		
+		if ((stream == null) && (sources == null)) {
+			return false;
+		}
+		
+		// Keep up to KEEP bytes before the cursor, and any unread bytes after it
+		final int start = pos - Math.min(KEEP, pos);
+		System.arraycopy(buffer, start, buffer, 0, limit - start);
+		pos -= start;
+		limit -= start;
+		base += start;
+		
+		while (limit - pos < count) {
+			final int copied = copyMore();
+			if (copied <= 0) {
+				return false;
+			}
+			limit += copied;
+		}
+		
+		return true;
+	}
+	
+	// Die with the position of an invalid byte sequence
+	private RuntimeException invalid() {
+		return new RuntimeException(String.format(Lexer.INVALID_UTF8_FMT, position.get()));
+	}
+	
+	@Override
+	int read() {
+		if ((pos == limit) && (! ensure(1))) {
+			return -1;
+		}
+		
+		final int theByte = buffer[pos++];
+		if (theByte >= 0) {
+			lastLength = 1;
+			return theByte;
+		}
+		
+		return readSequence(theByte & 0xFF);
+	}
+	
+	// The length of a sequence that starts with the given lead byte, or 0 if it is not a valid lead byte
+	private static int sequenceLength(final int lead) {
+		if ((lead >= 0xC2) && (lead <= 0xDF)) {
+			return 2;
+		} else if ((lead >= 0xE0) && (lead <= 0xEF)) {
+			return 3;
+		} else if ((lead >= 0xF0) && (lead <= 0xF4)) {
+			return 4;
+		}
+		
+		return 0;
+	}
+	
+	// Decode a complete sequence of the given length that starts at the given index of the window.
+	// Return -1 if the sequence is invalid.
+	private int decode(
+		final int start,
+		final int length
+	) {
+		// The lead byte determines the initial bits, and the valid range of the second byte
+		final int lead = buffer[start] & 0xFF;
+		int codePoint = lead & (0x7F >> length);
+		int min = 0x80;
+		int max = 0xBF;
+		if (lead == 0xE0) {
+			// Overlong
+			min = 0xA0;
+		} else if (lead == 0xED) {
+			// Surrogate
+			max = 0x9F;
+		} else if (lead == 0xF0) {
+			// Overlong
+			min = 0x90;
+		} else if (lead == 0xF4) {
+			// Above U+10FFFF
+			max = 0x8F;
+		}
+		
+		for (int i = start + 1; i < start + length; i++) {
+			final int theByte = buffer[i] & 0xFF;
+			if ((theByte < min) || (theByte > max)) {
+				return -1;
+			}
+			
+			codePoint = (codePoint << 6) | (theByte & 0x3F);
+			min = 0x80;
+			max = 0xBF;
+		}
+		
+		return codePoint;
+	}
+	
+	// Decode a multi byte sequence whose lead byte has already been read
+	private int readSequence(final int lead) {
+		final int length = sequenceLength(lead);
+		if ((length == 0) || (! ensure(length - 1))) {
+			throw invalid();
+		}
+		
+		final int codePoint = decode(pos - 1, length);
+		if (codePoint < 0) {
+			throw invalid();
+		}
+		
+		pos += length - 1;
+		lastLength = length;
+		return codePoint;
+	}
+	
+	// ASCII string content is copied as is, and 2 and 3 byte sequences are decoded inline.
+	// Anything else, including a sequence that is split across windows or is invalid, is left for read.
+	@Override
+	int scanString(
+		final char[] dest,
+		final int offset
+	) {
+		int index = pos;
+		int destIndex = offset;
+		while ((index < limit) && (destIndex < dest.length)) {
+			final int theByte = buffer[index];
+			if (theByte >= 0) {
+				if ((theByte < ' ') || (theByte == '"') || (theByte == '\\')) {
+					break;
+				}
+				
+				dest[destIndex++] = (char)(theByte);
+				index++;
+			} else {
+				final int length = sequenceLength(theByte & 0xFF);
+				if ((length == 0) || (length == 4) || (index + length > limit)) {
+					break;
+				}
+				
+				final int codePoint = decode(index, length);
+				if (codePoint < 0) {
+					break;
+				}
+				
+				dest[destIndex++] = (char)(codePoint);
+				index += length;
+			}
+		}
+		
+		pos = index;
+		lastLength = 0;
+		return destIndex - offset;
+	}
+	
+	@Override
+	void unread() {
+		pos -= lastLength;
+		lastLength = 0;
+	}
+	
+	@Override
+	long offset() {
+		return base + pos - lastLength;
+	}
+}
@@ -0,0 +1,227 @@
+package me.bantling.micro.json;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+import me.bantling.micro.function.Try;
+
+/*
+ * A WriterOutput that encodes UTF-8 bytes itself, so that no OutputStreamWriter or CharsetEncoder is needed.
+ * 
+ * ASCII chars - which includes all structural characters, numbers, literals, and escapes - are copied as is, only
+ * other chars inside strings are encoded.
+ * 
+ * Output to an OutputStream is buffered in a byte[], and written to the stream a block at a time.
+ * Output to a ByteBuffer grows the buffer as needed, by replacing it with a larger one of the same kind. A heap buffer
+ * is written in place; a direct buffer is copied to from a byte[] a block at a time.
+ */
+final class Utf8WriterOutput extends WriterOutput {
+	// Number of bytes to buffer before writing them to a stream or direct buffer
+	static final int BUFFER_SIZE = 8192;
+	
+	// Longest UTF-8 sequence
+	private static final int MAX_SEQUENCE = 4;
+	
+	// Underlying stream, or target buffer. Exactly one of them is null.
+	private final OutputStream stream;
+	private ByteBuffer target;
+	
+	// True if the buffer is the array of the target
+	private boolean inPlace;
+	
+	// Window for a stream or direct target, kept when the output is reset
+	private byte[] window;
+	
+	// Buffer of bytes, index of next byte to write, and index after last byte that can be written
+	private byte[] buffer;
+	private int pos;
+	private int limit;
+	
+	// Construct for a stream
+	Utf8WriterOutput(
+		final OutputStream stream
+	) {
+		this.stream = Objects.requireNonNull(stream, "stream");
+		this.window = new byte[BUFFER_SIZE];
+		this.buffer = window;
+		this.limit = BUFFER_SIZE;
+	}
+	
+	// Construct for a buffer, writing from its position
+	Utf8WriterOutput(
+		final ByteBuffer target
+	) {
+		this.stream = null;
+		reset(target);
+	}
+	
+	// Start writing to another buffer from its position, as if newly constructed for it.
+	// Must not be called for a stream.
+	void reset(final ByteBuffer newTarget) {
+		target = Objects.requireNonNull(newTarget, "target");
+		inPlace = newTarget.hasArray();
+		if (inPlace) {
+			buffer = newTarget.array();
+			pos = newTarget.arrayOffset() + newTarget.position();
+			limit = newTarget.arrayOffset() + newTarget.limit();
+		} else {
+			if (window == null) {
+				window = new byte[BUFFER_SIZE];
+			}
+			buffer = window;
+			pos = 0;
+			limit = BUFFER_SIZE;
+		}
+	}
+	
+	// Make room for at least the given number of bytes, by writing the buffer out or growing the target
+	private void makeRoom(final int needed) {
+		if (stream != null) {
+			final int count = pos;
+			Try.to(() -> stream.write(buffer, 0, count));
+			pos = 0;
+		} else if (inPlace) {
+			target.position(pos - target.arrayOffset());
+			target = grow(target, needed);
+			buffer = target.array();
+			pos = target.arrayOffset() + target.position();
+			limit = target.arrayOffset() + target.limit();
+		} else {
+			drainToTarget();
+		}
+	}
+	
+	// Copy a buffer into a larger one of the same kind with room for at least needed more bytes.
+	// The bytes up to the position are copied, and the result is positioned after them.
+	private static ByteBuffer grow(final ByteBuffer buffer, final int needed) {
+		final int capacity = Math.max(buffer.capacity() * 2, buffer.position() + needed);
+		final ByteBuffer result = buffer.isDirect() ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+		buffer.flip();
+		result.put(buffer);
+		
+		return result;
+	}
+	
+	// Copy the byte[] window into a direct target, growing it if necessary
+	private void drainToTarget() {
+		if (target.remaining() < pos) {
+			target = grow(target, pos);
+		}
+		target.put(buffer, 0, pos);
+		pos = 0;
+	}
+	
+	@Override
+	void write(final char c) {
+		if (pos == limit) {
+			makeRoom(1);
+		}
+		
+		buffer[pos++] = (byte)(c);
+	}
+	
+	// Write any byte, such as part of a binary encoding
+	void writeByte(final int b) {
+		if (pos == limit) {
+			makeRoom(1);
+		}
+		
+		buffer[pos++] = (byte)(b);
+	}
+	
+	@Override
+	void write(final String ascii) {
+		for (int i = 0, length = ascii.length(); i < length; i++) {
+			if (pos == limit) {
+				makeRoom(1);
+			}
+			
+			buffer[pos++] = (byte)(ascii.charAt(i));
+		}
+	}
+	
+	@Override
+	void write(final byte[] bytes) {
+		for (int i = 0, count; i < bytes.length; i += count) {
+			if (pos == limit) {
+				makeRoom(1);
+			}
+			
+			count = Math.min(bytes.length - i, limit - pos);
+			System.arraycopy(bytes, i, buffer, pos, count);
+			pos += count;
+		}
+	}
+	
+	@Override
+	void writeChars(final char[] chars, final int start, final int end) {
+		int i = start;
+		while (i < end) {
+			// Copy ASCII chars while there is room
+			final int stop = i + Math.min(end - i, limit - pos);
+			char c;
+			while ((i < stop) && ((c = chars[i]) < 0x80)) {
+				buffer[pos++] = (byte)(c);
+				i++;
+			}
+			
+			if (i == end) {
+				break;
+			}
+			
+			// Encode one char, or surrogate pair, of any size. A lone surrogate is encoded as if it were a char.
+			if (limit - pos < MAX_SEQUENCE) {
+				makeRoom(MAX_SEQUENCE);
+			}
+			
+			c = chars[i++];
+			if (c < 0x80) {
+				buffer[pos++] = (byte)(c);
+			} else if (c < 0x800) {
+				buffer[pos++] = (byte)(0xC0 | (c >> 6));
+				buffer[pos++] = (byte)(0x80 | (c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && (i < end) && Character.isLowSurrogate(chars[i])) {
+				final int codePoint = Character.toCodePoint(c, chars[i++]);
+				buffer[pos++] = (byte)(0xF0 | (codePoint >> 18));
+				buffer[pos++] = (byte)(0x80 | ((codePoint >> 12) & 0x3F));
+				buffer[pos++] = (byte)(0x80 | ((codePoint >> 6) & 0x3F));
+				buffer[pos++] = (byte)(0x80 | (codePoint & 0x3F));
+			} else {
+				buffer[pos++] = (byte)(0xE0 | (c >> 12));
+				buffer[pos++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+				buffer[pos++] = (byte)(0x80 | (c & 0x3F));
+			}
+		}
+	}
+	
+	// The target buffer, positioned after the output.
+	// It is a different buffer than the one constructed with if it had to grow.
+	ByteBuffer byteBuffer() {
+		if (inPlace) {
+			target.position(pos - target.arrayOffset());
+		} else if (target != null) {
+			drainToTarget();
+		}
+		
+		return target;
+	}
+	
+	@Override
+	void flush() {
+		if (stream != null) {
+			makeRoom(0);
+			Try.to(stream::flush);
+		} else {
+			byteBuffer();
+		}
+	}
+	
+	@Override
+	void close() {
+		flush();
+		if (stream != null) {
+			Try.to(stream::close);
+		}
+	}
+}
@@ -0,0 +1,31 @@
+package me.bantling.micro.json;
+
+/*
+ * The destination of text for a JSONWriter.
+ * 
+ * Implementations keep an internal buffer, so that the JSONWriter can write a char at a time with only some index
+ * arithmetic, and the underlying Writer or stream is only called once the buffer is full.
+ * 
+ * The JSONWriter escapes strings itself, so the output only has to copy or encode the chars it is given.
+ */
+abstract class WriterOutput {
+	// Write an ASCII char
+	abstract void write(char c);
+	
+	// Write a string of ASCII chars, such as a literal or an escape
+	abstract void write(String ascii);
+	
+	// Write bytes that are already encoded, such as a literal.
+	// Only an output that writes UTF-8 can write bytes that are not ASCII.
+	abstract void write(byte[] bytes);
+	
+	// Write a run of chars from start to end that need no escaping.
+	// A surrogate pair is never split across two runs.
+	abstract void writeChars(char[] chars, int start, int end);
+	
+	// Write anything buffered to the underlying Writer or stream, and flush it
+	abstract void flush();
+	
+	// Flush, then close the underlying Writer or stream
+	abstract void close();
+}
@@ -34,23 +34,34 @@ public final class Unicode {
 			}
 			
 			if (Character.isHighSurrogate((char)(theChar))) {
-				int char2 = reader.read();
-				if (char2 < 0) {
-					throw new IOException(String.format(HIGH_SURROGATE_EOF, position.get()));
-				}
-				
-				if (! Character.isLowSurrogate((char)(char2))) {
-					throw new IOException(String.format(HIGH_SURROGATE_LOW_SURROGATE, position.get()));
-				}
-				
-				// isHighSurrogate(theChar) and isLowSurrogate(char2) implies isValidCodePoint(theChar, char2)
-				theChar = Character.toCodePoint((char)(theChar), (char)(char2));
+				theChar = toCodePoint((char)(theChar), reader.read(), position);
 			}
 
 			return theChar;
 		});
 	}
 	
+	// Given a high surrogate and the UTF-16 character that follows it (or -1 for EOF), combine them into a UTF-32 int value.
+	// If the following character is not a low surrogate, a RuntimeException wrapping an IOException is thrown,
+	// just as nextCodePoint does.
+	// This allows code that buffers UTF-16 characters itself to decode surrogate pairs without a Reader.
+	public static int toCodePoint(
+		final char high,
+		final int low,
+		final Supplier<String> position
+	) {
+		if (low < 0) {
+			throw Try.generateRuntimeException(new IOException(String.format(HIGH_SURROGATE_EOF, position.get())));
+		}
+		
+		if (! Character.isLowSurrogate((char)(low))) {
+			throw Try.generateRuntimeException(new IOException(String.format(HIGH_SURROGATE_LOW_SURROGATE, position.get())));
+		}
+		
+		// isHighSurrogate(high) and isLowSurrogate(low) implies isValidCodePoint(high, low)
+		return Character.toCodePoint(high, (char)(low));
+	}
+	
 	// Unread a code point, that may occupy one or two char values
 	public static void unreadCodePoint(
 		final PushbackReader reader,
@@ -0,0 +1,213 @@
+package me.bantling.micro.json;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * Simple throughput benchmarks, run as a main program rather than as tests:
+ * 
+ *   java -cp <classes> me.bantling.micro.json.Benchmark
+ * 
+ * Each case is warmed up, then run repeatedly for a fixed time, and reports MB/s of JSON input, or millions of
+ * operations per second.
+ * 
+ * Cases that build a tree allocate heavily, so with a small young generation they mostly measure the garbage collector.
+ * Give them room to compare parsing itself, for example with -Xmx3g -Xmn2g.
+ */
+public class Benchmark {
+	// Time to warm up and to measure each case
+	private static final long WARMUP_NANOS = TimeUnit.SECONDS.toNanos(2);
+	private static final long MEASURE_NANOS = TimeUnit.SECONDS.toNanos(5);
+	
+	// Prevent the JIT from eliminating results
+	private static volatile Object sink;
+	
+	// The regex JSONNumber factories used before the single scan, as a baseline
+	private static final Pattern NUMBER_REGEX = Pattern.compile("^(-)?([0-9]+)(?:[.]([0-9]+)(?:[eE]([-+])?([0-9]+))?)?$");
+	
+	static JSONNumber regexNumber(final String str) {
+		final Matcher m = NUMBER_REGEX.matcher(str);
+		if (! m.matches()) {
+			throw new IllegalArgumentException(str + " is not a correctly formatted JSON number");
+		}
+		
+		return new JSONNumber(
+			str,
+			m.group(1) == null,
+			m.group(2),
+			m.group(3),
+			(m.group(4) == null) || (m.group(4).charAt(0) == '+'),
+			m.group(5)
+		);
+	}
+	
+	// A document of a top level array of objects, with a mix of strings, numbers, nested objects and arrays
+	static byte[] document(final int elements) {
+		final StringBuilder sb = new StringBuilder("[");
+		for (int i = 0; i < elements; i++) {
+			sb.append(i == 0 ? "\n" : ",\n").
+				append("  {\"id\": ").append(i).
+				append(", \"name\": \"name ").append(i).append(" \\u00e9\\n\"").
+				append(", \"price\": ").append(i * 1.25).
+				append(", \"active\": ").append(i % 2 == 0).
+				append(", \"tags\": [\"a\", \"b\", null]").
+				append(", \"address\": {\"street\": \"").append(i).append(" Main St\", \"code\": \"A1B 2C3\"}}");
+		}
+		
+		return sb.append("\n]\n").toString().getBytes(StandardCharsets.UTF_8);
+	}
+	
+	// Run one case, and print its throughput in MB/s
+	static void run(
+		final String name,
+		final long bytes,
+		final Runnable task
+	) {
+		run(name, bytes, "MB/s", task);
+	}
+	
+	// Run one case, and print its throughput in millions of units per second
+	static void run(
+		final String name,
+		final long units,
+		final String unit,
+		final Runnable task
+	) {
+		for (final long end = System.nanoTime() + WARMUP_NANOS; System.nanoTime() < end;) {
+			task.run();
+		}
+		
+		long iterations = 0;
+		final long start = System.nanoTime();
+		long now;
+		do {
+			task.run();
+			iterations++;
+		} while ((now = System.nanoTime()) - start < MEASURE_NANOS);
+		
+		final double seconds = (now - start) / 1e9;
+		System.out.printf("%-30s %10.1f %s%n", name, (units * iterations) / seconds / 1e6, unit);
+	}
+	
+	public static void main(final String[] args) {
+		final byte[] doc = document(10_000);
+		
+		run("parse", doc.length, () -> {
+			final Parser parser = new Parser(doc);
+			while (parser.hasNext()) {
+				sink = parser.next();
+			}
+		});
+		
+		run("validate", doc.length, () -> new Parser(doc).validate());
+		
+		run("tape", doc.length, () -> sink = new Parser(doc).tape());
+		
+		// Finding the elements of a top level array for parallelStream, and the structural index it scans with
+		final ByteBuffer[] windows = {ByteBuffer.wrap(doc)};
+		run("scan elements", doc.length, () -> sink = ArrayElementScanner.scan(windows, doc.length));
+		
+		run("structural index", doc.length, () -> {
+			final StructuralIndex index = new StructuralIndex();
+			long delimiters = 0;
+			for (int i = 0; i < doc.length; i += index.index(windows[0], i, doc.length)) {
+				delimiters += Long.bitCount(index.delimiters());
+			}
+			sink = Long.valueOf(delimiters);
+		});
+		
+		// The same document pushed in chunks, as it would arrive from a network
+		final ByteBuffer chunk = ByteBuffer.allocate(8192);
+		run("push, 8KB chunks", doc.length, () -> {
+			final PushParser parser = new PushParser(value -> sink = value);
+			for (int i = 0; i < doc.length; i += chunk.capacity()) {
+				chunk.clear();
+				chunk.put(doc, i, Math.min(chunk.capacity(), doc.length - i)).flip();
+				parser.feed(chunk);
+			}
+			parser.endOfInput();
+		});
+		
+		// Many small documents from streams, as request bodies, with a new parser each, or a reset one from a pool
+		final byte[] small = document(1);
+		final ByteArrayInputStream body = new ByteArrayInputStream(small);
+		run("small documents, new", small.length, () -> {
+			body.reset();
+			sink = new Parser(body).next();
+		});
+		
+		final ParserPool pool = new ParserPool(1);
+		run("small documents, pool", small.length, () -> {
+			body.reset();
+			final Parser parser = pool.borrow();
+			sink = parser.reset(body).next();
+			pool.release(parser);
+		});
+		
+		final List<JSONValue> elements = new ArrayList<>();
+		new Parser(doc).forEach(elements::add);
+		final JSONValue tree = JSONValue.of(elements);
+		final ByteBuffer out = ByteBuffer.allocate(doc.length * 2);
+		run("write", doc.length, () -> {
+			out.clear();
+			final JSONWriter writer = new JSONWriter(out);
+			writer.value(tree);
+			sink = writer.byteBuffer();
+		});
+		
+		final JSONWriter reused = new JSONWriter(out).withKeyCache(new EncodedKeyCache());
+		run("write, reset, key cache", doc.length, () -> {
+			out.clear();
+			reused.reset(out).value(tree);
+			sink = reused.byteBuffer();
+		});
+		
+		// Binary encoding of the same tree, measured against the size of the JSON text so it compares to parse
+		final byte[] binary = BinaryJSON.encode(tree);
+		final ByteBuffer binaryOut = ByteBuffer.allocate(binary.length);
+		run("binary encode", doc.length, () -> {
+			binaryOut.clear();
+			sink = BinaryJSON.encode(tree, binaryOut);
+		});
+		
+		run("binary decode", doc.length, () -> sink = BinaryJSON.decode(binary));
+		
+		// JSONNumber factories, compared to the regex they used to go through
+		final long[] longs = new long[1_000];
+		final double[] doubles = new double[longs.length];
+		for (int i = 0; i < longs.length; i++) {
+			longs[i] = (i - 500) * 7_919L;
+			doubles[i] = (i - 500) * 1.25e-3;
+		}
+		
+		run("JSONNumber.of(long)", longs.length, "M numbers/s", () -> {
+			for (final long l : longs) {
+				sink = JSONNumber.of(l);
+			}
+		});
+		
+		run("regex long", longs.length, "M numbers/s", () -> {
+			for (final long l : longs) {
+				sink = regexNumber(Long.toString(l));
+			}
+		});
+		
+		run("JSONNumber.of(double)", doubles.length, "M numbers/s", () -> {
+			for (final double d : doubles) {
+				sink = JSONNumber.of(d);
+			}
+		});
+		
+		run("regex double", doubles.length, "M numbers/s", () -> {
+			for (final double d : doubles) {
+				sink = regexNumber(Double.toString(d));
+			}
+		});
+	}
+}
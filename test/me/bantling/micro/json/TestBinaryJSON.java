@@ -0,0 +1,239 @@
+package me.bantling.micro.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("static-method")
+public class TestBinaryJSON {
+	// Parse a document, where a top level array is the first element rather than the array
+	private static JSONValue parse(final String json) {
+		return new Parser(new StringReader(json)).parse().get();
+	}
+	
+	// Write a value as JSON text
+	private static String write(final JSONValue value) {
+		final StringWriter chars = new StringWriter();
+		try (final JSONWriter writer = new JSONWriter(chars)) {
+			writer.value(value);
+		}
+		
+		return chars.toString();
+	}
+	
+	// Encode and decode a value with all kinds of input and output, check they all give back the same value with the
+	// same text, and return the encoding
+	private static byte[] roundTrip(final JSONValue value) {
+		final byte[] encoded = BinaryJSON.encode(value);
+		final String text = write(value);
+		
+		final JSONValue decoded = BinaryJSON.decode(encoded);
+		assertEquals(value, decoded);
+		assertEquals(text, write(decoded));
+		
+		// Tiny buffers, so they have to grow, with a second value after the first
+		for (final ByteBuffer initial : new ByteBuffer[] {ByteBuffer.allocate(1), ByteBuffer.allocateDirect(1)}) {
+			final ByteBuffer buffer = BinaryJSON.encode(JSONValue.TRUE_VALUE, BinaryJSON.encode(value, initial));
+			buffer.flip();
+			assertEquals(text, write(BinaryJSON.decode(buffer)));
+			assertSame(JSONValue.TRUE_VALUE, BinaryJSON.decode(buffer));
+			assertFalse(buffer.hasRemaining());
+		}
+		
+		final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		BinaryJSON.encode(value, stream);
+		assertEquals(Arrays.toString(encoded), Arrays.toString(stream.toByteArray()));
+		assertEquals(text, write(BinaryJSON.decode(new ByteArrayInputStream(encoded))));
+		
+		return encoded;
+	}
+	
+	// Check decoding dies with the given error
+	private static void decodeDies(final byte[] encoded, final String error) {
+		try {
+			BinaryJSON.decode(encoded);
+			fail("Must die");
+		} catch (final RuntimeException e) {
+			assertEquals(error, e.getMessage());
+		}
+	}
+	
+	@Test
+	public void document() {
+		final String json = "{\"a\":1,\"b\":[true,false,null,\"x\\ny\",\"é€😀\"],\"c\":{},\"d\":[],\"e\":{\"f\":[[]]}}";
+		final byte[] encoded = roundTrip(parse(json));
+		
+		// Smaller than the text
+		assertFalse(encoded.length >= json.length());
+		
+		// Decoded objects and arrays are compact
+		final JSONValue decoded = BinaryJSON.decode(encoded);
+		assertEquals(FlatObjectMap.class, decoded.asObject().getClass());
+		assertEquals(ArrayList.class, decoded.asObject().get("b").asArray().getClass());
+		
+		// Scalars at the top level
+		roundTrip(JSONValue.of("s"));
+		roundTrip(JSONValue.of(""));
+		roundTrip(JSONValue.of(JSONNumber.of(1)));
+		assertSame(JSONValue.NULL_VALUE, BinaryJSON.decode(roundTrip(JSONValue.NULL_VALUE)));
+		assertSame(JSONValue.FALSE_VALUE, BinaryJSON.decode(roundTrip(JSONValue.FALSE_VALUE)));
+	}
+	
+	@Test
+	public void numbers() {
+		// Integers either side of the limit of a header argument, inline decimals, negative zero, and numbers kept as text
+		final JSONValue value = parse(
+			"{\"a\":[0,1,-1,30,31,-31,-32,127,128,-129,123456789012345678,-123456789012345678," +
+			"1.5,-0.001,1.50E+3,2e-7,1E9,0.000,-0,-0.0," +
+			"1234567890123456789,-98765432109876543210.5,1e1234567890]}"
+		);
+		roundTrip(value);
+		
+		// Integers are a header byte and a varint, not text
+		assertEquals(2, BinaryJSON.encode(JSONValue.of(JSONNumber.of(30))).length);
+		assertEquals(3, BinaryJSON.encode(JSONValue.of(JSONNumber.of(31))).length);
+		assertEquals(2, BinaryJSON.encode(JSONValue.of(JSONNumber.of(-31))).length);
+		
+		// Numbers keep their text
+		for (final JSONValue number : value.asObject().get("a").asArray()) {
+			final JSONValue decoded = BinaryJSON.decode(BinaryJSON.encode(number));
+			assertEquals(number.asNumber().toString(), decoded.asNumber().toString());
+		}
+	}
+	
+	@Test
+	public void strings() {
+		// Lone surrogates cannot be encoded as UTF-8, so they are encoded as if they were chars
+		final List<JSONValue> array = new ArrayList<>();
+		array.add(JSONValue.of("\ud800x\udc00"));
+		array.add(JSONValue.of("😀\ud83d"));
+		
+		final Map<String, JSONValue> object = new LinkedHashMap<>();
+		object.put("\udc00", JSONValue.of(array));
+		object.put("k\ud800", JSONValue.of("é"));
+		roundTrip(JSONValue.of(object));
+		
+		// A string larger than the window of a stream
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < BinaryInput.BUFFER_SIZE; i++) {
+			sb.append("aé😀");
+		}
+		roundTrip(JSONValue.of(sb.toString()));
+	}
+	
+	@Test
+	public void keys() {
+		// Recurring keys are referenced, and decode to the same instance
+		final JSONValue value = parse("{\"a\":[{\"name\":\"a\",\"id\":1},{\"name\":\"b\",\"id\":2},{\"id\":3,\"name\":\"c\"}]}");
+		final byte[] encoded = roundTrip(value);
+		
+		// Each later object is 6 bytes: a header, two key references, and values of one and two bytes
+		assertEquals(BinaryJSON.encode(parse("{\"a\":[{\"name\":\"a\",\"id\":1}]}")).length + 12, encoded.length);
+		
+		final List<JSONValue> decoded = BinaryJSON.decode(encoded).asObject().get("a").asArray();
+		final String name = decoded.get(0).asObject().keySet().iterator().next();
+		assertSame(name, decoded.get(2).asObject().keySet().toArray()[1]);
+		
+		// More distinct keys than are remembered, each used twice
+		final Map<String, JSONValue> object = new LinkedHashMap<>();
+		for (int i = 0; i < BinaryJSON.MAX_KEYS + 10; i++) {
+			final Map<String, JSONValue> inner = new LinkedHashMap<>();
+			inner.put("k" + i, JSONValue.of(JSONNumber.of(i)));
+			object.put("k" + i, JSONValue.of(inner));
+		}
+		roundTrip(JSONValue.of(object));
+	}
+	
+	@Test
+	public void nesting() {
+		// Deep nesting does not recurse. Compare as text, as equals does recurse.
+		JSONValue value = JSONValue.of(new ArrayList<>());
+		for (int i = 0; i < 100_000; i++) {
+			final Map<String, JSONValue> object = new LinkedHashMap<>();
+			object.put("a", JSONValue.of(new ArrayList<>(List.of(value))));
+			value = JSONValue.of(object);
+		}
+		
+		assertEquals(write(value), write(BinaryJSON.decode(BinaryJSON.encode(value))));
+	}
+	
+	@Test
+	public void errors() {
+		final byte[] encoded = BinaryJSON.encode(parse("{\"a\":[1,\"bc\"]}"));
+		
+		// Every prefix is truncated
+		for (int i = 0; i < encoded.length; i++) {
+			decodeDies(Arrays.copyOf(encoded, i), BinaryJSON.TRUNCATED);
+		}
+		
+		decodeDies(Arrays.copyOf(encoded, encoded.length + 1), BinaryJSON.TRAILING);
+		
+		final byte[] version = encoded.clone();
+		version[0] = 2;
+		decodeDies(version, String.format(BinaryJSON.VERSION_FMT, Integer.valueOf(2)));
+		
+		// An unknown simple value, and a reference to a key that has not been seen
+		decodeDies(new byte[] {BinaryJSON.VERSION, 4}, BinaryJSON.CORRUPT);
+		decodeDies(new byte[] {BinaryJSON.VERSION, (byte)((BinaryJSON.OBJECT << 5) | 1), 1, 0}, BinaryJSON.CORRUPT);
+		
+		// Positive integers whose varint overflows into the sign bit, or past 64 bits
+		final byte positive = (byte)((BinaryJSON.POSITIVE << 5) | BinaryJSON.VARINT_ARGUMENT);
+		final byte m = (byte)(0xFF);
+		decodeDies(new byte[] {BinaryJSON.VERSION, positive, m, m, m, m, m, m, m, m, 0x7F}, BinaryJSON.CORRUPT);
+		decodeDies(new byte[] {BinaryJSON.VERSION, positive, m, m, m, m, m, m, m, m, m, 1}, BinaryJSON.CORRUPT);
+		decodeDies(new byte[] {BinaryJSON.VERSION, positive, m, m, m, m, m, m, m, m, m, 2}, BinaryJSON.CORRUPT);
+		assertEquals(
+			Long.MAX_VALUE,
+			BinaryJSON.decode(BinaryJSON.encode(JSONValue.of(JSONNumber.of(Long.MAX_VALUE)))).asNumber().asLong()
+		);
+		
+		// Malformed UTF-8: a lead byte without its continuation, a stray continuation, and an overlong encoding
+		final byte string = (byte)((BinaryJSON.STRING << 5) | 2);
+		final byte surrogates = (byte)((BinaryJSON.SIMPLE << 5) | BinaryJSON.SURROGATE_ARGUMENT);
+		for (final byte[] utf8 : new byte[][] {{(byte)(0xC3), 0x28}, {(byte)(0x80), 0x41}, {(byte)(0xC0), (byte)(0x80)}}) {
+			decodeDies(new byte[] {BinaryJSON.VERSION, string, utf8[0], utf8[1]}, BinaryJSON.CORRUPT);
+			decodeDies(new byte[] {BinaryJSON.VERSION, surrogates, 2, utf8[0], utf8[1]}, BinaryJSON.CORRUPT);
+		}
+	}
+	
+	@Test
+	public void hugeLength() {
+		// A string length near the largest int must not allocate a window for it before its bytes arrive
+		final byte[] header = {
+			BinaryJSON.VERSION,
+			(byte)((BinaryJSON.STRING << 5) | BinaryJSON.VARINT_ARGUMENT),
+			(byte)(0xE0), (byte)(0xFF), (byte)(0xFF), (byte)(0xFF), 0x07,
+			'a', 'b', 'c'
+		};
+		
+		try {
+			BinaryJSON.decode(new ByteArrayInputStream(header));
+			fail("Must die");
+		} catch (final RuntimeException e) {
+			assertEquals(BinaryJSON.TRUNCATED, e.getMessage());
+		}
+		
+		final ByteBuffer direct = ByteBuffer.allocateDirect(header.length);
+		direct.put(header).flip();
+		try {
+			BinaryJSON.decode(direct);
+			fail("Must die");
+		} catch (final RuntimeException e) {
+			assertEquals(BinaryJSON.TRUNCATED, e.getMessage());
+		}
+	}
+}
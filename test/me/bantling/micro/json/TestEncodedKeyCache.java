@@ -0,0 +1,69 @@
+package me.bantling.micro.json;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("static-method")
+public class TestEncodedKeyCache {
+	private static byte[] bytes(final String str) {
+		return str.getBytes(StandardCharsets.UTF_8);
+	}
+	
+	@Test
+	public void encoded() {
+		final EncodedKeyCache cache = new EncodedKeyCache(4, 8);
+		
+		// Keys are quoted, escaped, encoded, and followed by a colon
+		final byte[] id = cache.encoded("id");
+		assertArrayEquals(bytes("\"id\":"), id);
+		assertArrayEquals(bytes("\"a\\\"é\\n\":"), cache.encoded("a\"é\n"));
+		
+		// The same bytes are returned for equal keys, given as a String or chars
+		assertSame(id, cache.encoded("id"));
+		assertSame(id, cache.encoded(new String("id")));
+		assertSame(id, cache.encoded("xidx".toCharArray(), 1, 2));
+		
+		// Keys that are too long are not cached
+		assertNull(cache.encoded("123456789"));
+		assertNull(cache.encoded("123456789".toCharArray(), 0, 9));
+		assertArrayEquals(bytes("\"12345678\":"), cache.encoded("12345678"));
+		
+		// A full cache replaces keys rather than growing
+		for (int i = 0; i < 100; i++) {
+			assertArrayEquals(bytes("\"k" + i + "\":"), cache.encoded("k" + i));
+			assertArrayEquals(bytes("\"c" + i + "\":"), cache.encoded(("c" + i).toCharArray(), 0, ("c" + i).length()));
+		}
+		assertArrayEquals(bytes("\"id\":"), cache.encoded("id"));
+		
+		final EncodedKeyCache one = new EncodedKeyCache(1, 1);
+		final byte[] a = one.encoded("a");
+		assertSame(a, one.encoded("a"));
+		assertArrayEquals(bytes("\"b\":"), one.encoded("b"));
+		assertNotSame(a, one.encoded("a"));
+	}
+	
+	@Test
+	public void construct() {
+		try {
+			new EncodedKeyCache(0, 1);
+			fail("Must die");
+		} catch (final IllegalArgumentException e) {
+			assertEquals(KeyCache.CAPACITY_MUST_BE_POSITIVE, e.getMessage());
+		}
+		
+		try {
+			new EncodedKeyCache(1, 0);
+			fail("Must die");
+		} catch (final IllegalArgumentException e) {
+			assertEquals(KeyCache.MAX_KEY_LENGTH_MUST_BE_POSITIVE, e.getMessage());
+		}
+	}
+}
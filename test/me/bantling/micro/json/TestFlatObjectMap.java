@@ -0,0 +1,104 @@
+package me.bantling.micro.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("static-method")
+public class TestFlatObjectMap {
+	// Check a flat map has the same contents in the same order as a LinkedHashMap
+	private static void check(final Map<String, JSONValue> expected, final FlatObjectMap actual) {
+		assertEquals(expected, actual);
+		assertEquals(actual, expected);
+		assertEquals(expected.hashCode(), actual.hashCode());
+		assertEquals(expected.toString(), actual.toString());
+		assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(actual.keySet()));
+		
+		for (final String key : expected.keySet()) {
+			assertTrue(actual.containsKey(key));
+			assertEquals(expected.get(key), actual.get(key));
+		}
+		assertFalse(actual.containsKey("missing"));
+		assertNull(actual.get("missing"));
+		assertNull(actual.get(null));
+	}
+	
+	@Test
+	public void map() {
+		final Map<String, JSONValue> expected = new LinkedHashMap<>();
+		final FlatObjectMap actual = new FlatObjectMap();
+		
+		// Grow past the hash threshold, checking each size
+		for (int i = 0; i < 100; i++) {
+			final String key = "k" + i;
+			final JSONValue value = JSONValue.of(key);
+			assertNull(actual.put(key, value));
+			expected.put(key, value);
+			check(expected, actual);
+		}
+		
+		// Replacing keeps the position
+		assertEquals(JSONValue.of("k5"), actual.put("k5", JSONValue.TRUE_VALUE));
+		expected.put("k5", JSONValue.TRUE_VALUE);
+		check(expected, actual);
+		
+		// Remove by key and by iterator, shrinking back below the threshold
+		assertEquals(JSONValue.of("k0"), actual.remove("k0"));
+		expected.remove("k0");
+		assertNull(actual.remove("k0"));
+		check(expected, actual);
+		
+		for (final Iterator<Map.Entry<String, JSONValue>> it = actual.entrySet().iterator(); it.hasNext();) {
+			final Map.Entry<String, JSONValue> e = it.next();
+			if (! e.getKey().endsWith("7")) {
+				it.remove();
+				expected.remove(e.getKey());
+			}
+		}
+		check(expected, actual);
+		assertEquals(10, actual.size());
+		
+		// Set values through entries, and trim
+		for (final Map.Entry<String, JSONValue> e : actual.entrySet()) {
+			e.setValue(JSONValue.NULL_VALUE);
+			expected.put(e.getKey(), JSONValue.NULL_VALUE);
+		}
+		actual.trim();
+		check(expected, actual);
+		
+		// Still usable after trimming and clearing
+		actual.put("a", JSONValue.TRUE_VALUE);
+		expected.put("a", JSONValue.TRUE_VALUE);
+		check(expected, actual);
+		
+		actual.clear();
+		expected.clear();
+		check(expected, actual);
+	}
+	
+	@Test
+	public void parse() {
+		final String test = "{ \"a\": [ 1, { \"b\": true, \"c\": [] }, \"x\" ], \"d\": {}, \"a\": null }";
+		final JSONValue expected = new Parser(new StringReader(test)).next();
+		final JSONValue actual = new Parser(new StringReader(test)).withCompactTree().next();
+		
+		assertEquals(expected, actual);
+		assertTrue(actual.asObject() instanceof FlatObjectMap);
+		assertEquals(List.of("a", "d"), new ArrayList<>(actual.asObject().keySet()));
+		
+		// Top level array elements
+		for (final JSONValue element : new Parser(new StringReader("[ [ 1, 2 ], { \"a\": [ 3 ] } ]")).withCompactTree()) {
+			assertTrue(element.isArray() ? element.asArray() instanceof ArrayList : element.asObject() instanceof FlatObjectMap);
+		}
+	}
+}
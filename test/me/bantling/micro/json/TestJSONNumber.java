@@ -2,6 +2,7 @@ package me.bantling.micro.json;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -123,4 +124,160 @@ public class TestJSONNumber {
             assertEquals("x is not a correctly formatted JSON number", t.getMessage());
         }
     }
+    
+    @Test
+    public void inline() {
+        // Lexed numbers are stored inline or as strings, and must behave the same as numbers constructed from strings
+        final Object[][] cases = {
+            { "0",                    true,  "0",                   "",    true,  ""           },
+            { "-0",                   false, "0",                   "",    true,  ""           },
+            { "1.50",                 true,  "1",                   "50",  true,  ""           },
+            { "-0.05E+3",             false, "0",                   "05",  true,  "3"          },
+            { "2e05",                 true,  "2",                   "",    true,  "05"         },
+            { "2.5e-007",             true,  "2",                   "5",   false, "007"        },
+            { "123456789012345678",   true,  "123456789012345678",  "",    true,  ""           },
+            { "1234567890.12345678",  true,  "1234567890",          "12345678", true, ""       },
+            { "1234567890123456789",  true,  "1234567890123456789", "",    true,  ""           },
+            { "-12345678901.2345678", false, "12345678901",         "2345678", true, ""        },
+            { "01",                   true,  "01",                  "",    true,  ""           },
+            { "1e1234567890",         true,  "1",                   "",    true,  "1234567890" },
+        };
+        
+        for (final Object[] theCase : cases) {
+            int index                      = 0;
+            final String str               = (String)(theCase[index++]);
+            final boolean positive         = ((Boolean)(theCase[index++])).booleanValue();
+            final String integer           = (String)(theCase[index++]);
+            final String fractional        = (String)(theCase[index++]);
+            final boolean positiveExponent = ((Boolean)(theCase[index++])).booleanValue();
+            final String exponent          = (String)(theCase[index++]);
+            
+            final Lexer lexer = new Lexer(str.toCharArray());
+            assertEquals(LexerToken.Type.NUMBER, lexer.nextToken());
+            final JSONNumber num = lexer.jsonNumber();
+            final JSONNumber expected = new JSONNumber(str, positive, integer, fractional, positiveExponent, exponent);
+            
+            assertEquals(str,              num.toString());
+            assertEquals(str,              expected.toString());
+            assertTrue(positive ==         num.isPositive());
+            assertEquals(integer,          num.getInteger());
+            assertEquals(fractional,       num.getFractional());
+            assertTrue(positiveExponent == num.isPositiveExponent());
+            assertEquals(exponent,         num.getExponent());
+            
+            assertEquals(expected, num);
+            assertEquals(num, expected);
+            assertEquals(expected.hashCode(), num.hashCode());
+            
+            assertEquals(Double.parseDouble(str), num.asDouble(), 0.0);
+            assertEquals(Float.parseFloat(str), num.asFloat(), 0.0f);
+            if (exponent.length() < 10) {
+                assertEquals(new BigDecimal(str), num.asBigDecimal());
+                assertEquals(new BigInteger(integer), num.asBigInteger());
+            }
+        }
+        
+        // Numbers that are equal in value but not in their parts are not equal
+        assertFalse(JSONNumber.of(new BigDecimal("1.5")).equals(JSONNumber.of(new BigDecimal("1.50"))));
+        assertFalse(JSONNumber.of(new BigDecimal("1.5E+3")).equals(JSONNumber.of(new BigDecimal("1500"))));
+        
+        // The integer part is the magnitude, and must fit
+        assertEquals(12, JSONNumber.of(-12.75).asInt());
+        assertEquals(75, JSONNumber.of(-12.75).fractionalAsInt());
+        assertEquals(12345678901L, JSONNumber.of(12345678901L).asLong());
+        try {
+            JSONNumber.of(12345678901L).asInt();
+            fail("Must die");
+        } catch (final NumberFormatException e) {
+            // Expected
+        }
+    }
+    
+    @Test
+    public void lazy() {
+        // Numbers too large to store inline only split their parts and convert when asked, then keep the result
+        {
+            final Lexer lexer = new Lexer("-12345678901234567890.5e-3".toCharArray());
+            lexer.nextToken();
+            final JSONNumber num = lexer.jsonNumber();
+            
+            final BigDecimal bigDecimal = num.asBigDecimal();
+            assertEquals(new BigDecimal("-12345678901234567890.5e-3"), bigDecimal);
+            assertSame(bigDecimal, num.asBigDecimal());
+            assertEquals(-12345678901234567.8905, num.asDouble(), 0.0);
+            assertEquals(-12345678901234567.8905, num.asDouble(), 0.0);
+            
+            assertEquals("12345678901234567890", num.getInteger());
+            assertSame(num.getInteger(), num.getInteger());
+            assertEquals("5", num.getFractional());
+            assertEquals("3", num.getExponent());
+            assertEquals(5, num.fractionalAsInt());
+            assertEquals(3, num.exponentAsInt());
+            
+            try {
+                num.asLong();
+                fail("Must die");
+            } catch (final NumberFormatException e) {
+                // Expected
+            }
+        }
+        
+        {
+            final Lexer lexer = new Lexer("1234567890123456789.5".toCharArray());
+            lexer.nextToken();
+            final JSONNumber num = lexer.jsonNumber();
+            
+            assertEquals(1234567890123456789L, num.asLong());
+            assertEquals(1234567890123456789L, num.asLong());
+            assertEquals(new BigInteger("1234567890123456789"), num.asBigInteger());
+            assertEquals(0L, num.exponentAsLong());
+            assertEquals(new JSONNumber("1234567890123456789.5", true, "1234567890123456789", "5", true, ""), num);
+        }
+    }
+    
+    @Test
+    public void factories() {
+        // Factories split the string form of each type with a single scan, or store integers directly
+        final Object[][] goodCases = {
+            { JSONNumber.of(0),                                  "0",                    true,  "0",                   "",   true,  ""    },
+            { JSONNumber.of(Integer.MIN_VALUE),                  "-2147483648",          false, "2147483648",          "",   true,  ""    },
+            { JSONNumber.of(999_999_999_999_999_999L),           "999999999999999999",   true,  "999999999999999999",  "",   true,  ""    },
+            { JSONNumber.of(-1_000_000_000_000_000_000L),        "-1000000000000000000", false, "1000000000000000000", "",   true,  ""    },
+            { JSONNumber.of(Long.MIN_VALUE),                     "-9223372036854775808", false, "9223372036854775808", "",   true,  ""    },
+            { JSONNumber.of(Long.valueOf(Long.MAX_VALUE)),       "9223372036854775807",  true,  "9223372036854775807", "",   true,  ""    },
+            { JSONNumber.of(BigInteger.ONE.shiftLeft(59)),       "576460752303423488",   true,  "576460752303423488",  "",   true,  ""    },
+            { JSONNumber.of(BigInteger.ONE.shiftLeft(60)),       "1152921504606846976",  true,  "1152921504606846976", "",   true,  ""    },
+            { JSONNumber.of(Double.MIN_VALUE),                   "4.9E-324",             true,  "4",                   "9",  false, "324" },
+            { JSONNumber.of(-1.5f),                              "-1.5",                 false, "1",                   "5",  true,  ""    },
+            { JSONNumber.of(new BigDecimal("1e11")),             "1E+11",                true,  "1",                   "",   true,  "11"  },
+        };
+        
+        for (final Object[] goodCase : goodCases) {
+            int index                      = 0;
+            final JSONNumber num           = (JSONNumber)(goodCase[index++]);
+            final String str               = (String)(goodCase[index++]);
+            final boolean positive         = ((Boolean)(goodCase[index++])).booleanValue();
+            final String integer           = (String)(goodCase[index++]);
+            final String fractional        = (String)(goodCase[index++]);
+            final boolean positiveExponent = ((Boolean)(goodCase[index++])).booleanValue();
+            final String exponent          = (String)(goodCase[index++]);
+            
+            assertEquals(str,              num.toString());
+            assertTrue(positive ==         num.isPositive());
+            assertEquals(integer,          num.getInteger());
+            assertEquals(fractional,       num.getFractional());
+            assertTrue(positiveExponent == num.isPositiveExponent());
+            assertEquals(exponent,         num.getExponent());
+            assertEquals(new JSONNumber(str, positive, integer, fractional, positiveExponent, exponent), num);
+        }
+        
+        for (final String badCase : new String[] {"", "-", "--1", "1.", ".5", "1e", "1e+", "1.5x", "NaN", "-Infinity"}) {
+            try {
+                JSONNumber.ofIntLongFloatDoubleBigDecimal(badCase);
+                fail("Must die");
+            } catch (final IllegalArgumentException e) {
+                assertEquals(String.format(JSONNumber.NOT_A_NUMBER_FMT, badCase), e.getMessage());
+            }
+        }
+    }
 }
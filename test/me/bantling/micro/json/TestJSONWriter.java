@@ -0,0 +1,275 @@
+package me.bantling.micro.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("static-method")
+public class TestJSONWriter {
+	// Shared by all tests, so keys are encoded by one test and reused by another
+	private static final EncodedKeyCache KEY_CACHE = new EncodedKeyCache();
+	
+	// Write with all kinds of output, check they all give the same result, and return it
+	private static String write(final String indent, final Consumer<JSONWriter> events) {
+		final StringWriter chars = new StringWriter();
+		try (final JSONWriter writer = new JSONWriter(chars).withIndent(indent)) {
+			events.accept(writer);
+		}
+		final String expected = chars.toString();
+		
+		final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		try (final JSONWriter writer = new JSONWriter(stream).withIndent(indent)) {
+			events.accept(writer);
+		}
+		assertEquals(expected, new String(stream.toByteArray(), StandardCharsets.UTF_8));
+		
+		// Tiny buffers, so they have to grow
+		for (final ByteBuffer initial : new ByteBuffer[] {ByteBuffer.allocate(1), ByteBuffer.allocateDirect(1)}) {
+			final JSONWriter writer = new JSONWriter(initial).withIndent(indent);
+			events.accept(writer);
+			final ByteBuffer buffer = writer.byteBuffer();
+			buffer.flip();
+			assertEquals(expected, StandardCharsets.UTF_8.decode(buffer).toString());
+		}
+		
+		// With a key cache, twice so that the second time the keys are cached
+		for (int i = 0; i < 2; i++) {
+			final ByteArrayOutputStream cached = new ByteArrayOutputStream();
+			try (final JSONWriter writer = new JSONWriter(cached).withIndent(indent).withKeyCache(KEY_CACHE)) {
+				events.accept(writer);
+			}
+			assertEquals(expected, new String(cached.toByteArray(), StandardCharsets.UTF_8));
+		}
+		
+		return expected;
+	}
+	
+	// Parse a document, where a top level array is the first element rather than the array
+	private static JSONValue parse(final String json) {
+		return new Parser(new StringReader(json)).parse().get();
+	}
+	
+	@Test
+	public void value() {
+		final String json = "{\"a\":1,\"b\":[true,false,null,\"x\\ny\"],\"c\":{},\"d\":[],\"e\":{\"f\":[[]]},\"g\":-1.50E+3}";
+		final JSONValue value = parse(json);
+		
+		assertEquals(json, write(null, w -> w.value(value)));
+		assertEquals(
+			"{\n" +
+			"  \"a\": 1,\n" +
+			"  \"b\": [\n" +
+			"    true,\n" +
+			"    false,\n" +
+			"    null,\n" +
+			"    \"x\\ny\"\n" +
+			"  ],\n" +
+			"  \"c\": {},\n" +
+			"  \"d\": [],\n" +
+			"  \"e\": {\n" +
+			"    \"f\": [\n" +
+			"      []\n" +
+			"    ]\n" +
+			"  },\n" +
+			"  \"g\": -1.50E+3\n" +
+			"}",
+			write(JSONWriter.DEFAULT_INDENT, w -> w.value(value))
+		);
+		
+		// Scalars and a value inside events
+		assertEquals("\"s\"", write(null, w -> w.value(JSONValue.of("s"))));
+		assertEquals("[1,{\"a\":true}]", write(null, w -> {
+			w.startArray();
+			w.value(JSONValue.of(JSONNumber.of(1)));
+			w.value(parse("{\"a\":true}"));
+			w.endArray();
+		}));
+		
+		// Deep nesting does not recurse
+		final StringBuilder deep = new StringBuilder();
+		for (int i = 0; i < 10_000; i++) {
+			deep.append('[');
+		}
+		for (int i = 0; i < 10_000; i++) {
+			deep.append(']');
+		}
+		final JSONValue deepValue = parse("{\"a\":" + deep + "}").asObject().get("a");
+		assertEquals(deep.toString(), write(null, w -> w.value(deepValue)));
+	}
+	
+	@Test
+	public void strings() {
+		assertEquals(
+			"[\"\\\"\\\\\\b\\f\\n\\r\\t\\u0001\\u001f/\u00e9\u20ac\ud83d\ude00\",\"\\ud800x\\udc00\"]",
+			write(null, w -> {
+				w.startArray();
+				w.stringValue("\"\\\b\f\n\r\t\u0001\u001f/\u00e9\u20ac\ud83d\ude00");
+				w.stringValue("\ud800x\udc00");
+				w.endArray();
+			})
+		);
+		
+		// Keys and char[] ranges
+		assertEquals("{\"k\\t\":\"b\"}", write(null, w -> {
+			w.startObject();
+			w.key("xk\ty".toCharArray(), 1, 2);
+			w.stringValue("abc".toCharArray(), 1, 1);
+			w.endObject();
+		}));
+		
+		// Long strings with a surrogate pair across every chunk boundary
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 5_000; i++) {
+			sb.append(i % 3 == 0 ? "\ud83d\ude00" : "a\"");
+		}
+		final String str = sb.toString();
+		assertEquals(JSONValue.of(str), parse("[" + write(null, w -> w.stringValue(str)) + "]"));
+	}
+	
+	@Test
+	public void numbers() {
+		final Object[][] cases = {
+			{ Long.valueOf(0),                "0"                    },
+			{ Long.valueOf(-5),               "-5"                   },
+			{ Long.valueOf(Long.MAX_VALUE),   "9223372036854775807"  },
+			{ Long.valueOf(Long.MIN_VALUE),   "-9223372036854775808" },
+			{ Double.valueOf(0.0),            "0.0"                  },
+			{ Double.valueOf(-0.0),           "-0.0"                 },
+			{ Double.valueOf(1.0),            "1.0"                  },
+			{ Double.valueOf(0.1),            "0.1"                  },
+			{ Double.valueOf(-19.99),         "-19.99"               },
+			{ Double.valueOf(123456.789),     "123456.789"           },
+			{ Double.valueOf(1.5e-7),         "0.00000015"           },
+			{ Double.valueOf(1e20),           "1.0E20"               },
+			{ Double.valueOf(Math.PI),        "3.141592653589793"    },
+			{ Double.valueOf(Double.MIN_VALUE), "4.9E-324"           },
+			{ JSONNumber.of(12),              "12"                   },
+			{ JSONNumber.of(new java.math.BigDecimal("-1.20E+5")), "-1.20E+5" },
+			{ JSONNumber.of(new java.math.BigInteger("123456789012345678901234567890")), "123456789012345678901234567890" },
+		};
+		
+		for (final Object[] theCase : cases) {
+			final Object number = theCase[0];
+			assertEquals(theCase[1], write(null, w -> {
+				if (number instanceof Long) {
+					w.longValue(((Long)(number)).longValue());
+				} else if (number instanceof Double) {
+					w.doubleValue(((Double)(number)).doubleValue());
+				} else {
+					w.numberValue((JSONNumber)(number));
+				}
+			}));
+		}
+		
+		// Doubles always read back the same
+		final Random random = new Random(1);
+		for (int i = 0; i < 10_000; i++) {
+			final double d = i % 2 == 0 ? random.nextInt(1_000_000) / 100.0 : Double.longBitsToDouble(random.nextLong());
+			if (Double.isFinite(d)) {
+				assertEquals(d, Double.parseDouble(write(null, w -> w.doubleValue(d))), 0.0);
+			}
+		}
+		
+		try {
+			write(null, w -> w.doubleValue(Double.NaN));
+			fail("Must die");
+		} catch (final IllegalArgumentException e) {
+			assertEquals(String.format(JSONWriter.NOT_FINITE_FMT, "NaN"), e.getMessage());
+		}
+	}
+	
+	@Test
+	public void badOrder() {
+		final Object[][] cases = {
+			{ (Consumer<JSONWriter>)(w -> w.key("a")),                                             JSONWriter.KEY_NOT_EXPECTED  },
+			{ (Consumer<JSONWriter>)(w -> { w.startArray(); w.key("a"); }),                        JSONWriter.KEY_NOT_EXPECTED  },
+			{ (Consumer<JSONWriter>)(w -> { w.startObject(); w.nullValue(); }),                    JSONWriter.KEY_EXPECTED      },
+			{ (Consumer<JSONWriter>)(w -> { w.startObject(); w.key("a"); w.key("b"); }),           JSONWriter.VALUE_EXPECTED    },
+			{ (Consumer<JSONWriter>)(w -> { w.startObject(); w.key("a"); w.endObject(); }),        JSONWriter.VALUE_EXPECTED    },
+			{ (Consumer<JSONWriter>)(w -> { w.startObject(); w.endArray(); }),                     JSONWriter.NO_ARRAY_TO_END   },
+			{ (Consumer<JSONWriter>)(w -> { w.startArray(); w.endObject(); }),                     JSONWriter.NO_OBJECT_TO_END  },
+			{ (Consumer<JSONWriter>)(w -> w.endArray()),                                           JSONWriter.NO_ARRAY_TO_END   },
+			{ (Consumer<JSONWriter>)(w -> { w.startArray(); w.endArray(); w.booleanValue(true); }), JSONWriter.DOCUMENT_COMPLETE },
+			{ (Consumer<JSONWriter>)(w -> w.byteBuffer()),                                         JSONWriter.NOT_A_BYTE_BUFFER },
+		};
+		
+		for (final Object[] theCase : cases) {
+			@SuppressWarnings("unchecked")
+			final Consumer<JSONWriter> events = (Consumer<JSONWriter>)(theCase[0]);
+			try {
+				events.accept(new JSONWriter(new StringWriter()));
+				fail("Must die");
+			} catch (final IllegalStateException e) {
+				assertEquals(theCase[1], e.getMessage());
+			}
+		}
+	}
+	
+	@Test
+	public void byteBuffer() {
+		// Existing content is kept, and a buffer that has room is written in place
+		final ByteBuffer roomy = ByteBuffer.allocate(64);
+		roomy.put((byte)('x'));
+		final JSONWriter writer = new JSONWriter(roomy);
+		writer.longValue(12);
+		assertSame(roomy, writer.byteBuffer());
+		assertEquals(3, roomy.position());
+		assertEquals("x12", new String(roomy.array(), 0, 3, StandardCharsets.UTF_8));
+		
+		final ByteBuffer small = ByteBuffer.allocateDirect(2);
+		small.put((byte)('x'));
+		final JSONWriter smallWriter = new JSONWriter(small);
+		smallWriter.stringValue("abc");
+		final ByteBuffer grown = smallWriter.byteBuffer();
+		assertNotSame(small, grown);
+		assertEquals(true, grown.isDirect());
+		grown.flip();
+		assertEquals("x\"abc\"", StandardCharsets.UTF_8.decode(grown).toString());
+		
+		// A reset writer writes a new document into the new buffer
+		final ByteBuffer next = ByteBuffer.allocate(1);
+		smallWriter.reset(next).withKeyCache(KEY_CACHE).startObject();
+		smallWriter.key("k");
+		smallWriter.nullValue();
+		smallWriter.endObject();
+		final ByteBuffer nextGrown = smallWriter.byteBuffer();
+		assertEquals("{\"k\":null}", new String(nextGrown.array(), 0, nextGrown.position(), StandardCharsets.UTF_8));
+		
+		try {
+			new JSONWriter(new ByteArrayOutputStream()).reset(next);
+			fail("Must die");
+		} catch (final IllegalStateException e) {
+			assertEquals(JSONWriter.NOT_A_BYTE_BUFFER, e.getMessage());
+		}
+	}
+	
+	@Test
+	public void visit() {
+		// Reformat a document by visiting it with a writer
+		final String json = "{ \"a\" : [ 1, 2.5, \"\\u00e9\" ],\n \"b\" : { } }";
+		final StringWriter out = new StringWriter();
+		final JSONWriter writer = new JSONWriter(out);
+		new Parser(new StringReader(json)).visit(writer);
+		writer.flush();
+		assertEquals("{\"a\":[1,2.5,\"\u00e9\"],\"b\":{}}", out.toString());
+		
+		// Numbers keep their text, even beyond the precision or range of a double
+		final String numbers = "[1e400,-1E-400,12345678901234567890123,0.1000000000000000000001,-2.50e+3]";
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final JSONWriter utf8 = new JSONWriter(bytes);
+		new Parser(new StringReader(numbers)).visit(utf8);
+		utf8.flush();
+		assertEquals(numbers, bytes.toString(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,82 @@
+package me.bantling.micro.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("static-method")
+public class TestKeyCache {
+	@Test
+	public void intern() {
+		final KeyCache cache = new KeyCache(4, 8);
+		final char[] chars = "xabcabcdefghiy".toCharArray();
+		
+		// Same chars are the same instance
+		final String abc = cache.intern(chars, 1, 3);
+		assertEquals("abc", abc);
+		assertTrue(abc == cache.intern("abc".toCharArray(), 0, 3));
+		assertTrue(abc == cache.intern(chars, 4, 3));
+		
+		// Different chars are different instances
+		final String ab = cache.intern(chars, 1, 2);
+		assertEquals("ab", ab);
+		assertTrue(ab == cache.intern(chars, 4, 2));
+		assertEquals("", cache.intern(chars, 0, 0));
+		
+		// Keys longer than the maximum are not cached
+		final String abcdefghi = cache.intern(chars, 4, 9);
+		assertEquals("abcdefghi", abcdefghi);
+		assertFalse(abcdefghi == cache.intern(chars, 4, 9));
+		
+		// Many keys cannot grow the cache, but the correct chars are always returned
+		for (int i = 0; i < 1000; i++) {
+			final char[] key = Integer.toString(i).toCharArray();
+			assertEquals(Integer.toString(i), cache.intern(key, 0, key.length));
+		}
+	}
+	
+	@Test
+	public void construct() {
+		try {
+			new KeyCache(0, 1);
+			fail("Must die");
+		} catch (final IllegalArgumentException e) {
+			assertEquals(KeyCache.CAPACITY_MUST_BE_POSITIVE, e.getMessage());
+		}
+		
+		try {
+			new KeyCache(1, 0);
+			fail("Must die");
+		} catch (final IllegalArgumentException e) {
+			assertEquals(KeyCache.MAX_KEY_LENGTH_MUST_BE_POSITIVE, e.getMessage());
+		}
+	}
+	
+	@Test
+	public void parse() {
+		final String test = "[{\"id\": 1, \"name\": \"a\"}, {\"id\": 2, \"name\": \"b\"}]";
+		
+		// Keys of each element are the same instances
+		{
+			final List<JSONValue> values = new Parser(new StringReader(test)).withKeyCache(new KeyCache()).stream().collect(Collectors.toList());
+			final Iterator<String> first = values.get(0).asObject().keySet().iterator();
+			final Iterator<String> second = values.get(1).asObject().keySet().iterator();
+			assertTrue(first.next() == second.next());
+			assertTrue(first.next() == second.next());
+		}
+		
+		// Without a cache, they are not
+		{
+			final List<JSONValue> values = new Parser(new StringReader(test)).stream().collect(Collectors.toList());
+			assertFalse(values.get(0).asObject().keySet().iterator().next() == values.get(1).asObject().keySet().iterator().next());
+		}
+	}
+}
@@ -1,14 +1,21 @@
 package me.bantling.micro.json;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 import org.junit.Assert;
 import org.junit.jupiter.api.Test;
@@ -380,6 +387,342 @@ public class TestLexer {
 		}
 	}
 	
+	@Test
+	public void lexCursor() {
+		final String test = "12 -34.5e6 \"d\\u00dfe\" true,{:}[]null -9223372036854775808 9223372036854775808";
+		final LexerToken.Type[] types = {
+			LexerToken.Type.NUMBER,
+			LexerToken.Type.NUMBER,
+			LexerToken.Type.STRING,
+			LexerToken.Type.TRUE,
+			LexerToken.Type.COMMA,
+			LexerToken.Type.OPEN_BRACE,
+			LexerToken.Type.COLON,
+			LexerToken.Type.CLOSE_BRACE,
+			LexerToken.Type.OPEN_BRACKET,
+			LexerToken.Type.CLOSE_BRACKET,
+			LexerToken.Type.NULL,
+			LexerToken.Type.NUMBER,
+			LexerToken.Type.NUMBER,
+		};
+		final long[] starts = {0, 3, 11, 22, 26, 27, 28, 29, 30, 31, 32, 37, 58};
+		final String[] texts = {"12", "-34.5e6", "dße", "true", ",", "{", ":", "}", "[", "]", "null", "-9223372036854775808", "9223372036854775808"};
+		
+		// Same offsets for chars and bytes, as the input is ASCII
+		for (final Lexer l : new Lexer[] {new Lexer(new StringReader(test)), new Lexer(test.getBytes(StandardCharsets.UTF_8))}) {
+			final char[] dest = new char[32];
+			for (int i = 0; i < types.length; i++) {
+				assertEquals(types[i], l.nextToken());
+				assertEquals(starts[i], l.tokenStart());
+				assertEquals(texts[i].length(), l.tokenLength());
+				assertEquals(texts[i].length(), l.copyChars(dest));
+				assertEquals(texts[i], new String(dest, 0, texts[i].length()));
+				assertEquals(texts[i], l.tokenString());
+			}
+			assertNull(l.nextToken());
+		}
+		
+		// Numeric values
+		final Lexer l = new Lexer(new StringReader(test));
+		l.nextToken();
+		assertEquals(12L, l.longValue());
+		assertEquals(12.0, l.doubleValue(), 0.0);
+		
+		l.nextToken();
+		assertEquals(-34.5e6, l.doubleValue(), 0.0);
+		try {
+			l.longValue();
+			fail("Must die");
+		} catch (final NumberFormatException e) {
+			assertEquals(String.format(Lexer.NOT_A_LONG_FMT, "-34.5e6"), e.getMessage());
+		}
+		
+		l.nextToken();
+		try {
+			l.doubleValue();
+			fail("Must die");
+		} catch (final NumberFormatException e) {
+			assertEquals(String.format(Lexer.NOT_A_DOUBLE_FMT, "dße"), e.getMessage());
+		}
+		
+		for (int i = 3; i < 11; i++) {
+			l.nextToken();
+		}
+		
+		l.nextToken();
+		assertEquals(Long.MIN_VALUE, l.longValue());
+		
+		l.nextToken();
+		try {
+			l.longValue();
+			fail("Must die");
+		} catch (final NumberFormatException e) {
+			assertEquals(String.format(Lexer.NOT_A_LONG_FMT, "9223372036854775808"), e.getMessage());
+		}
+		
+		// No current token
+		assertNull(l.nextToken());
+		try {
+			l.tokenLength();
+			fail("Must die");
+		} catch (final IllegalStateException e) {
+			assertEquals(Lexer.NO_TOKEN, e.getMessage());
+		}
+	}
+	
+	@Test
+	public void lexStringRuns() {
+		// Long runs of plain content mixed with escapes, multi byte sequences, and surrogate pairs, that are longer
+		// than both the token buffer and the input window
+		final StringBuilder content = new StringBuilder();
+		final StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 2000; i++) {
+			content.append("plain aß東 \\n𐐀\\u0041 ");
+			expected.append("plain aß東 \n𐐀A ");
+		}
+		
+		final String test = "\"" + content + "\"";
+		assertEquals(expected.toString(), new Lexer(new StringReader(test)).next().token);
+		assertEquals(expected.toString(), new Lexer(test.getBytes(StandardCharsets.UTF_8)).next().token);
+		assertEquals(expected.toString(), new Lexer(new ByteArrayInputStream(test.getBytes(StandardCharsets.UTF_8))).next().token);
+		
+		// Errors after a run still apply, with correct positions
+		try {
+			new Lexer(new StringReader("\"abc\u0001\"")).lex();
+			fail("Must die");
+		} catch (final RuntimeException e) {
+			assertEquals(Lexer.NO_ASCII_CONTROL, e.getMessage());
+		}
+		
+		try {
+			new Lexer(new byte[] {'"', 'a', 'b', (byte)(0xC3), (byte)(0x9F), (byte)(0xC0), (byte)(0x80), '"'}).lex();
+			fail("Must die");
+		} catch (final RuntimeException e) {
+			assertEquals(String.format(Lexer.INVALID_UTF8_FMT, "1:4"), e.getMessage());
+		}
+	}
+	
+	@Test
+	public void lexNumberValues() {
+		final String[] cases = {
+			"0",
+			"-0",
+			"-0.0e0",
+			"007",
+			"0.000123",
+			"123456789012345678",
+			"9223372036854775807",
+			"-9223372036854775808",
+			"12345678901234567890",
+			"0000000000000000000000123",
+			"-0000000009223372036854775808",
+			"0000000009223372036854775808",
+			"1.7976931348623157e308",
+			"1.7976931348623159e308",
+			"2.2250738585072011e-308",
+			"4.9e-324",
+			"2.4703282292062328e-324",
+			"9007199254740993",
+			"1e23",
+			"8.98846567431158e307",
+			"3.141592653589793238462643383279502884197",
+			"0.1000000000000000055511151231257827021181583404541015625",
+			"1e99999999999",
+			"-1e-99999999999",
+			"123456789012345678901234567890e99999999999",
+		};
+		
+		for (final String test : cases) {
+			final Lexer l = new Lexer(new StringReader(test));
+			assertEquals(LexerToken.Type.NUMBER, l.nextToken());
+			assertEquals(test, Double.doubleToLongBits(Double.parseDouble(test)), Double.doubleToLongBits(l.doubleValue()));
+			assertEquals(
+				test,
+				Double.doubleToLongBits(Double.parseDouble(test)),
+				Double.doubleToLongBits(new Parser(new StringReader("[" + test + "]")).next().asNumber().asDouble())
+			);
+			
+			if (test.matches("-?[0-9]+")) {
+				Long expected;
+				try {
+					expected = Long.valueOf(Long.parseLong(test));
+				} catch (@SuppressWarnings("unused") final NumberFormatException e) {
+					expected = null;
+				}
+				
+				assertEquals(test, (expected != null) && (! test.equals("-0")), l.isLong());
+				try {
+					assertEquals(test, expected, Long.valueOf(l.longValue()));
+				} catch (final NumberFormatException e) {
+					assertNull(expected);
+					assertEquals(String.format(Lexer.NOT_A_LONG_FMT, test), e.getMessage());
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void lexBlockBoundaries() {
+		// Place each token so it straddles the end of the first block read from the reader
+		final String[] cases = {
+			"\"a𐐀b\"",
+			"-12.34e+56",
+			"true",
+		};
+		final LexerToken[] results = {
+			new LexerToken(LexerToken.Type.STRING, "a𐐀b"),
+			new LexerToken("-12.34e+56", false, "12", "34", true, "56"),
+			LexerToken.TRUE_TOKEN,
+		};
+		
+		for (int i = 0; i < cases.length; i++) {
+			for (int offset = 1; offset < cases[i].length(); offset++) {
+				final StringBuilder sb = new StringBuilder();
+				for (int j = 0; j < CharLexerInput.BUFFER_SIZE - offset; j++) {
+					sb.append(' ');
+				}
+				sb.append(cases[i]).append(",");
+				
+				final Lexer l = new Lexer(new StringReader(sb.toString()));
+				assertEquals(Optional.of(results[i]), l.lex());
+				assertEquals(Optional.of(LexerToken.COMMA_TOKEN), l.lex());
+				assertEquals(Optional.empty(), l.lex());
+			}
+		}
+	}
+	
+	@Test
+	public void lexSkipContainer() {
+		// Skip nested containers and strings containing brackets, in chars and UTF-8
+		final String test = "[ { \"a\": [ \"]}\\\"[{\", \"東𐐀\", { \"b\": [] } ] } ] 1";
+		for (final Lexer lexer : new Lexer[] {new Lexer(test.toCharArray()), new Lexer(test.getBytes(StandardCharsets.UTF_8))}) {
+			assertEquals(LexerToken.Type.OPEN_BRACKET, lexer.nextToken());
+			assertEquals(LexerToken.Type.OPEN_BRACE, lexer.nextToken());
+			assertEquals(LexerToken.Type.CLOSE_BRACE, lexer.skipContainer());
+			assertEquals(LexerToken.Type.CLOSE_BRACKET, lexer.nextToken());
+			assertEquals(LexerToken.Type.NUMBER, lexer.nextToken());
+			assertNull(lexer.nextToken());
+		}
+		
+		// Only an opener can be skipped
+		try {
+			final Lexer lexer = new Lexer(new StringReader("1"));
+			lexer.nextToken();
+			lexer.skipContainer();
+			fail("Must die");
+		} catch (final IllegalStateException e) {
+			assertEquals(Lexer.NOT_AN_OPENER, e.getMessage());
+		}
+	}
+	
+	@Test
+	public void lexUtf8() {
+		{
+			final String[] goodCases = {
+				"{\"aß東𐐀\": [12.34, -5E-7, true, false, null]}",
+				"\"\\ud801\\udc00\" 1 ",
+			};
+			
+			for (final String test : goodCases) {
+				final List<LexerToken> expected = new Lexer(new StringReader(test)).stream().collect(Collectors.toList());
+				final byte[] bytes = test.getBytes(StandardCharsets.UTF_8);
+				final ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+				
+				assertEquals(expected, new Lexer(bytes).stream().collect(Collectors.toList()));
+				assertEquals(expected, new Lexer(ByteBuffer.wrap(bytes)).stream().collect(Collectors.toList()));
+				assertEquals(expected, new Lexer(direct).stream().collect(Collectors.toList()));
+				assertEquals(expected, new Lexer(new ByteArrayInputStream(bytes)).stream().collect(Collectors.toList()));
+				
+				// Buffer position is unchanged
+				assertEquals(0, direct.position());
+			}
+		}
+		
+		{
+			// Sequences that straddle the end of the first block read from a stream
+			final String test = "\"a𐐀b\"";
+			final byte[] testBytes = test.getBytes(StandardCharsets.UTF_8);
+			for (int offset = 1; offset < testBytes.length; offset++) {
+				final byte[] bytes = new byte[Utf8LexerInput.BUFFER_SIZE - offset + testBytes.length];
+				Arrays.fill(bytes, (byte)(' '));
+				System.arraycopy(testBytes, 0, bytes, Utf8LexerInput.BUFFER_SIZE - offset, testBytes.length);
+				
+				final Lexer l = new Lexer(new ByteArrayInputStream(bytes));
+				assertEquals(Optional.of(new LexerToken(LexerToken.Type.STRING, "a𐐀b")), l.lex());
+				assertEquals(Optional.empty(), l.lex());
+			}
+		}
+		
+		{
+			final byte[][] badCases = {
+				{'"', (byte)(0x80), '"'},                                 // continuation without lead
+				{'"', (byte)(0xC0), (byte)(0x80), '"'},                   // overlong 2 byte
+				{'"', (byte)(0xE0), (byte)(0x80), (byte)(0x80), '"'},     // overlong 3 byte
+				{'"', (byte)(0xED), (byte)(0xA0), (byte)(0x80), '"'},     // encoded surrogate
+				{'"', (byte)(0xF4), (byte)(0x90), (byte)(0x80), (byte)(0x80), '"'}, // above U+10FFFF
+				{'"', (byte)(0xE6), (byte)(0x9D)},                        // truncated
+				{'"', (byte)(0xE6), '"', '"'},                            // missing continuation
+			};
+			
+			for (final byte[] badCase : badCases) {
+				try {
+					new Lexer(badCase).lex();
+					Assert.fail("Bad UTF-8 cases must fail");
+				} catch (final RuntimeException e) {
+					assertEquals(String.format(Lexer.INVALID_UTF8_FMT, "1:1"), e.getMessage());
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void reset() {
+		final String json = "{\"a\": [1, -2.5e3, true, null], \"b\": \"é😀\"}";
+		final byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+		final ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+		final List<LexerToken> expected = new Lexer(new StringReader(json)).stream().collect(Collectors.toList());
+		
+		// Leave the lexer part way through a long string on the third line, that dies
+		final Lexer lexer = new Lexer(new StringReader("\n\n\"" + "x".repeat(1000)));
+		try {
+			lexer.lex();
+			fail("Must die");
+		} catch (final RuntimeException e) {
+			assertEquals(Lexer.INCOMPLETE_STRING, e.getMessage());
+		}
+		final char[] chars = lexer.tokenChars();
+		
+		// Each kind of input lexes from the start, with the token text buffer kept
+		for (final Runnable reset : new Runnable[] {
+			() -> lexer.reset(new StringReader(json)),
+			() -> lexer.reset(json.toCharArray()),
+			() -> lexer.reset(("[" + json + "]").toCharArray(), 1, json.length()),
+			() -> lexer.reset(bytes),
+			() -> lexer.reset(bytes, 0, bytes.length),
+			() -> lexer.reset(ByteBuffer.wrap(bytes)),
+			() -> lexer.reset(direct),
+			() -> lexer.reset(new ByteArrayInputStream(bytes))
+		}) {
+			reset.run();
+			assertEquals(expected, lexer.stream().collect(Collectors.toList()));
+			assertTrue(chars == lexer.tokenChars());
+		}
+		
+		// Positions start again at the first line
+		try {
+			lexer.reset(new StringReader("\n@")).lex();
+			fail("Must die");
+		} catch (final RuntimeException e) {
+			assertEquals(String.format(Lexer.INVALID_CHARACTER_FMT, Unicode.formatAsUnicodeEscapes('@'), "2:1"), e.getMessage());
+		}
+		try {
+			lexer.reset("@".getBytes(StandardCharsets.UTF_8)).lex();
+			fail("Must die");
+		} catch (final RuntimeException e) {
+			assertEquals(String.format(Lexer.INVALID_CHARACTER_FMT, Unicode.formatAsUnicodeEscapes('@'), "1:1"), e.getMessage());
+		}
+	}
+	
 	@Test
 	public void other() {
 	    {
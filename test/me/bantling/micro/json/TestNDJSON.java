@@ -0,0 +1,125 @@
+package me.bantling.micro.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("static-method")
+public class TestNDJSON {
+	// Parse NDJSON from all kinds of input, sequentially and in parallel, and check they all give the same result
+	private static List<NDJSONLine> parse(final String test) throws Throwable {
+		final byte[] bytes = test.getBytes(StandardCharsets.UTF_8);
+		final Function<Stream<NDJSONLine>, String> str = s -> s.map(NDJSONLine::toString).collect(Collectors.joining("\n"));
+		
+		final List<NDJSONLine> result = NDJSON.stream(new StringReader(test)).collect(Collectors.toList());
+		final String expected = str.apply(result.stream());
+		
+		assertEquals(expected, str.apply(NDJSON.stream(bytes)));
+		assertEquals(expected, str.apply(NDJSON.stream(new ByteArrayInputStream(bytes))));
+		assertEquals(expected, str.apply(NDJSON.parallelStream(new StringReader(test))));
+		assertEquals(expected, str.apply(NDJSON.parallelStream(bytes)));
+		assertEquals(expected, str.apply(NDJSON.parallelStream(new ByteArrayInputStream(bytes))));
+		
+		final Path path = Files.createTempFile("TestNDJSON", ".json");
+		try {
+			Files.write(path, bytes);
+			assertEquals(expected, str.apply(NDJSON.streamOfMappedFile(path)));
+			assertEquals(expected, str.apply(NDJSON.parallelStreamOfMappedFile(path)));
+		} finally {
+			Files.delete(path);
+		}
+		
+		return result;
+	}
+	
+	@Test
+	public void lines() throws Throwable {
+		final String[] values = {"{\"a\": [1, 2]}", "[]", "\"aß東𐐀\"", "-1.5e3", "true", "false", "null"};
+		final List<NDJSONLine> lines = parse(
+			String.join("\n", values) + "\n" +
+			"\n" +                  // blank line
+			"  \r\n" +              // whitespace line
+			"{\"a\": }\n" +         // bad line
+			"1 2\n" +               // trailing value
+			"}\n" +                 // not a value
+			"{\"b\": \"\\u00e9\"}\r\n" +
+			"[3]"                   // no newline at end
+		);
+		
+		assertEquals(12, lines.size());
+		for (int i = 0; i < values.length; i++) {
+			assertEquals(i + 1, lines.get(i).getNumber());
+			assertTrue(lines.get(i).isValid());
+			assertFalse(lines.get(i).getError().isPresent());
+			assertEquals(new Parser(new StringReader("[" + values[i] + "]")).next(), lines.get(i).getValue().get());
+		}
+		
+		final Object[][] badLines = {
+			{10L, Parser.class, "A JSON object key name and colon must be followed by a value"},
+			{11L, null, NDJSON.LINE_TRAILING},
+			{12L, null, NDJSON.LINE_VALUE}
+		};
+		for (int i = 0; i < badLines.length; i++) {
+			final NDJSONLine line = lines.get(values.length + i);
+			assertEquals(badLines[i][0], line.getNumber());
+			assertFalse(line.isValid());
+			assertFalse(line.getValue().isPresent());
+			assertEquals(badLines[i][2], line.getError().get().getMessage());
+		}
+		
+		assertEquals(13, lines.get(10).getNumber());
+		assertEquals("é", lines.get(10).getValue().get().asObject().get("b").asString());
+		assertEquals(14, lines.get(11).getNumber());
+		
+		// Nothing at all
+		assertEquals(0, parse("").size());
+		assertEquals(0, parse("\n\n").size());
+
+		// A lone carriage return does not end a line
+		final List<NDJSONLine> crLines = parse("1\r2\n3\r\n\r");
+		assertEquals(2, crLines.size());
+		assertEquals(NDJSON.LINE_TRAILING, crLines.get(0).getError().get().getMessage());
+		assertEquals(2, crLines.get(1).getNumber());
+		assertEquals(3, crLines.get(1).getValue().get().asNumber().asInt());
+	}
+	
+	@Test
+	public void manyLines() throws Throwable {
+		// Enough lines for several batches, and enough bytes for several stream chunks
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 1; i <= 10_000; i++) {
+			sb.append(i % 1000 == 0 ? "{\"i\": }" : "{\"i\": " + i + ", \"s\": \"東\"}").append('\n');
+		}
+		
+		final List<NDJSONLine> lines = parse(sb.toString());
+		assertEquals(10_000, lines.size());
+		for (int i = 1; i <= 10_000; i++) {
+			final NDJSONLine line = lines.get(i - 1);
+			assertEquals(i, line.getNumber());
+			assertEquals(i % 1000 != 0, line.isValid());
+			if (line.isValid()) {
+				assertEquals(i, line.getValue().get().asObject().get("i").asNumber().asInt());
+			}
+		}
+
+		// Lines that straddle several stream chunks
+		final String big = "\"" + "a".repeat(3 * ByteLines.CHUNK_SIZE) + "\"";
+		final List<NDJSONLine> bigLines = parse("1\n" + big + "\r\n" + big + "\n2");
+		assertEquals(4, bigLines.size());
+		assertEquals(3 * ByteLines.CHUNK_SIZE, bigLines.get(1).getValue().get().asString().length());
+		assertEquals(bigLines.get(1).getValue(), bigLines.get(2).getValue());
+		assertEquals(2, bigLines.get(3).getValue().get().asNumber().asInt());
+	}
+}
@@ -4,18 +4,25 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
 import java.io.Reader;
 import java.io.StringReader;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 import org.junit.jupiter.api.Test;
 
 import me.bantling.micro.util.Collections;
+import me.bantling.micro.util.Unicode;
 
 @SuppressWarnings("static-method")
 public class TestParser {
@@ -120,7 +127,8 @@ public class TestParser {
 				"[1]",
 				"[ 1, \"a\" ]",
 				"[ 1, { \"a\": 2 }, 3 ]",
-				"[[\"a\",\"b\"]]"
+				"[[\"a\",\"b\"]]",
+				"[[], {}]"
 			};
 			
 			final JSONValue[][] goodResults = {
@@ -146,6 +154,10 @@ public class TestParser {
                             JSONValue.of("b")
                         )
 	                )
+				},
+				new JSONValue[] {
+					JSONValue.of(List.of()),
+					JSONValue.of(Map.of())
 				}
 			};
 			
@@ -231,6 +243,454 @@ public class TestParser {
 		}
 	}
 	
+	@Test
+	public void parseUtf8() {
+		final String test = "[ 1, { \"aß東𐐀\": 2 }, 3 ]";
+		final List<JSONValue> expected = new Parser(new StringReader(test)).stream().collect(Collectors.toList());
+		final byte[] bytes = test.getBytes(StandardCharsets.UTF_8);
+		
+		assertEquals(expected, new Parser(bytes).stream().collect(Collectors.toList()));
+		assertEquals(expected, new Parser(ByteBuffer.wrap(bytes)).stream().collect(Collectors.toList()));
+		assertEquals(expected, new Parser(new ByteArrayInputStream(bytes)).stream().collect(Collectors.toList()));
+	}
+	
+	@Test
+	public void parseMappedFile() throws Throwable {
+		final String test = "[ 1, { \"aß東𐐀\": 2 }, 3 ]";
+		final List<JSONValue> expected = new Parser(new StringReader(test)).stream().collect(Collectors.toList());
+		
+		final Path path = Files.createTempFile("TestParser", ".json");
+		try {
+			Files.write(path, test.getBytes(StandardCharsets.UTF_8));
+			assertEquals(expected, Parser.ofMappedFile(path).stream().collect(Collectors.toList()));
+			
+			// Small windows, so that multi byte sequences straddle windows
+			for (int windowSize = 1; windowSize <= 4; windowSize++) {
+				assertEquals(
+					expected,
+					new Parser(new Lexer(new Utf8LexerInput(new MappedWindows(path, windowSize)))).stream().collect(Collectors.toList())
+				);
+			}
+			
+			// Empty file has no values
+			Files.write(path, new byte[0]);
+			assertFalse(Lexer.ofMappedFile(path).hasNext());
+		} finally {
+			Files.delete(path);
+		}
+	}
+	
+	@Test
+	public void parseParallel() throws Throwable {
+		final String[] goodCases = {
+			"[]",
+			" [ ] ",
+			"[1]",
+			"[ 1, \"a,]}\\\"[{\", { \"b\": [ 2, { \"c\": \"]\" } ] }, [ 3, [ 4 ] ], true, false, null, \"aß東𐐀\" ]",
+			"{ \"a\": [ 1, 2 ] }"
+		};
+		
+		final Path path = Files.createTempFile("TestParser", ".json");
+		try {
+			for (final String test : goodCases) {
+				final List<JSONValue> expected = new Parser(new StringReader(test)).stream().collect(Collectors.toList());
+				final byte[] bytes = test.getBytes(StandardCharsets.UTF_8);
+				
+				assertEquals(expected, Parser.parallelStream(test.toCharArray()).collect(Collectors.toList()));
+				assertEquals(expected, Parser.parallelStream(bytes).collect(Collectors.toList()));
+				
+				Files.write(path, bytes);
+				assertEquals(expected, Parser.parallelStreamOfMappedFile(path).collect(Collectors.toList()));
+				
+				// Small windows, so that elements and multi byte sequences straddle windows
+				for (int windowSize = 1; windowSize <= 4; windowSize++) {
+					assertEquals(expected, Parser.parallelStreamOfMappedFile(path, windowSize).collect(Collectors.toList()));
+				}
+			}
+		} finally {
+			Files.delete(path);
+		}
+		
+		// Many elements, so that the spliterator splits
+		{
+			final StringBuilder sb = new StringBuilder("[");
+			for (int i = 0; i < 10_000; i++) {
+				sb.append(i == 0 ? "" : ",").append("{\"i\":").append(i).append('}');
+			}
+			final String test = sb.append(']').toString();
+			
+			assertEquals(
+				new Parser(new StringReader(test)).stream().collect(Collectors.toList()),
+				Parser.parallelStream(test.getBytes(StandardCharsets.UTF_8)).collect(Collectors.toList())
+			);
+		}
+		
+		final String[][] badCases = {
+			{"",          Parser.START_BRACE_OR_BRACKET},
+			{"1",         Parser.START_BRACE_OR_BRACKET},
+			{"]",         Parser.START_BRACE_OR_BRACKET},
+			{" }",        Parser.START_BRACE_OR_BRACKET},
+			{"[",         Parser.ARRAY_VALUE_OR_BRACKET},
+			{"[1,",       Parser.ARRAY_COMMA_VALUE},
+			{"[1",        Parser.ARRAY_COMMA_OR_BRACKET},
+			{"[\"a",      Lexer.INCOMPLETE_STRING},
+			{"[1}",       Parser.ARRAY_COMMA_OR_BRACKET},
+			{"[,1]",      Parser.ARRAY_VALUE_OR_BRACKET},
+			{"[1,]",      Parser.ARRAY_COMMA_VALUE},
+			{"[1,,2]",    Parser.ARRAY_COMMA_VALUE},
+			{"[1 2]",     Parser.ARRAY_COMMA_OR_BRACKET},
+			
+			// The same errors as a sequential parse, for a bad first token, an invalid array, or a bad element
+			{"x",         String.format(Lexer.INVALID_CHARACTER_FMT, Unicode.formatAsUnicodeEscapes('x'), "1:1")},
+			{"ee",        String.format(Lexer.INVALID_CHARACTER_FMT, Unicode.formatAsUnicodeEscapes('e'), "1:1")},
+			{",[1]",      Parser.START_BRACE_OR_BRACKET},
+			{"[nul{l,true,null]", Lexer.NULL_SPELLING},
+			{"[\"a\u0001\"]",   Lexer.NO_ASCII_CONTROL},
+			{"[{\"a\":1},{\"b\"}]", Parser.OBJECT_KEY_COLON},
+			
+			// The first error in the document, even if a later element is parsed first
+			{"[1 2,tru]", Parser.ARRAY_COMMA_OR_BRACKET},
+			{"[1,tru,[2 3]]", Lexer.BOOLEAN_SPELLED_TRUE_OR_FALSE}
+		};
+		
+		for (final String[] badCase : badCases) {
+			try {
+				Parser.parallelStream(badCase[0].toCharArray()).collect(Collectors.toList());
+				assertTrue(false);
+			} catch (final RuntimeException e) {
+				// An exception thrown in another thread is rethrown wrapping the original
+				assertEquals(badCase[1], (e.getCause() == null ? e : e.getCause()).getMessage());
+			}
+			
+			try {
+				Parser.parallelStream(badCase[0].getBytes(StandardCharsets.UTF_8)).collect(Collectors.toList());
+				assertTrue(false);
+			} catch (final RuntimeException e) {
+				assertEquals(badCase[1], (e.getCause() == null ? e : e.getCause()).getMessage());
+			}
+			
+			try {
+				new Parser(new StringReader(badCase[0])).stream().collect(Collectors.toList());
+				assertTrue(false);
+			} catch (final RuntimeException e) {
+				assertEquals(badCase[1], e.getMessage());
+			}
+		}
+	}
+	
+	@Test
+	public void validate() throws Throwable {
+		final String[] goodCases = {
+			"{}",
+			"[]",
+			"[ 1, \"a\", true, false, null, -1.5e3 ]",
+			"{ \"a\": { \"b\": [ [], {}, [ { \"c\": 1 } ] ] }, \"d\": \"e\" } trailing",
+			new String(Benchmark.document(100), StandardCharsets.UTF_8)
+		};
+		
+		for (final String test : goodCases) {
+			new Parser(new StringReader(test)).validate();
+			new Parser(test.getBytes(StandardCharsets.UTF_8)).validate();
+		}
+		
+		// Nesting deeper than one word of the stack
+		{
+			final int depth = 1000;
+			final String test = "[".repeat(depth) + "{\"a\":1}" + "]".repeat(depth);
+			new Parser(new StringReader(test)).validate();
+		}
+		
+		final String[] badCases = {
+			"",
+			"1",
+			"[",
+			"[,",
+			"[1",
+			"[1,",
+			"[1,]",
+			"[1 2]",
+			"[1}",
+			"[[1}]",
+			"{",
+			"{1",
+			"{\"a\"",
+			"{\"a\" 1",
+			"{\"a\":",
+			"{\"a\":}",
+			"{\"a\":1",
+			"{\"a\":1,",
+			"{\"a\":1,}",
+			"{\"a\":1 2}",
+			"{\"a\":[1}}",
+			"[\"a",
+			"[tru]",
+			"[1.]"
+		};
+		
+		for (final String test : badCases) {
+			String expected = null;
+			try {
+				new Parser(new StringReader(test)).stream().collect(Collectors.toList());
+			} catch (final RuntimeException e) {
+				expected = e.getMessage();
+			}
+			assertTrue(expected != null);
+			
+			try {
+				new Parser(new StringReader(test)).validate();
+				assertTrue(false);
+			} catch (final RuntimeException e) {
+				assertEquals(expected, e.getMessage());
+			}
+		}
+	}
+	
+	@Test
+	public void skipValue() throws Throwable {
+		final String test = "[ 1, { \"a\": [ \"]}\\\"\", {}, [[]] ] }, [ \"[\" ], \"x\", true ]";
+		final List<JSONValue> all = new Parser(new StringReader(test)).stream().collect(Collectors.toList());
+		
+		// Skip every other element
+		{
+			final Parser p = new Parser(new StringReader(test));
+			for (int i = 0; i < all.size(); i++) {
+				if (i % 2 == 0) {
+					assertEquals(all.get(i), p.next());
+				} else {
+					assertTrue(p.skipValue());
+				}
+			}
+			assertFalse(p.skipValue());
+			assertFalse(p.hasNext());
+		}
+		
+		// Skip a value that hasNext already parsed
+		{
+			final Parser p = new Parser(new StringReader(test));
+			assertTrue(p.hasNext());
+			assertTrue(p.skipValue());
+			assertEquals(all.get(1), p.next());
+		}
+		
+		// Skip a top level object
+		{
+			final Parser p = new Parser(new StringReader("{ \"a\": { \"b\": [] } }"));
+			assertTrue(p.skipValue());
+			assertFalse(p.skipValue());
+		}
+		
+		// Skip an empty array
+		assertFalse(new Parser(new StringReader("[]")).skipValue());
+		
+		final String[][] badCases = {
+			{"1",              Parser.START_BRACE_OR_BRACKET},
+			{"[}",             Parser.ARRAY_VALUE_OR_BRACKET},
+			{"{",              Lexer.INCOMPLETE_CONTAINER},
+			{"[[1, {]",        Lexer.INCOMPLETE_CONTAINER},
+			{"[[\"]",          Lexer.INCOMPLETE_STRING},
+			{"[[\"\\",         Lexer.INCOMPLETE_BACKSLASH_ESCAPE}
+		};
+		
+		for (final String[] badCase : badCases) {
+			try {
+				new Parser(new StringReader(badCase[0])).skipValue();
+				assertTrue(false);
+			} catch (final RuntimeException e) {
+				assertEquals(badCase[1], e.getMessage());
+			}
+		}
+	}
+	
+	// Visitor that describes what it visits
+	private static class DescribingVisitor implements JSONVisitor {
+		final StringBuilder sb = new StringBuilder();
+		
+		@Override
+		public void startObject() {
+			sb.append("{ ");
+		}
+		
+		@Override
+		public void endObject() {
+			sb.append("} ");
+		}
+		
+		@Override
+		public void startArray() {
+			sb.append("[ ");
+		}
+		
+		@Override
+		public void endArray() {
+			sb.append("] ");
+		}
+		
+		@Override
+		public void key(final String key) {
+			sb.append("k:").append(key).append(' ');
+		}
+		
+		@Override
+		public void stringValue(final String value) {
+			sb.append("s:").append(value).append(' ');
+		}
+		
+		@Override
+		public void longValue(final long value) {
+			sb.append("l:").append(value).append(' ');
+		}
+		
+		@Override
+		public void doubleValue(final double value) {
+			sb.append("d:").append(value).append(' ');
+		}
+		
+		@Override
+		public void booleanValue(final boolean value) {
+			sb.append("b:").append(value).append(' ');
+		}
+		
+		@Override
+		public void nullValue() {
+			sb.append("null ");
+		}
+	}
+	
+	@Test
+	public void visit() throws Throwable {
+		{
+			final DescribingVisitor visitor = new DescribingVisitor();
+			new Parser(new StringReader(
+				"{ \"a\": [ 1, -2.5, 1e2, true, false, null, \"x\\ny\" ], \"b\": {}, \"c\": [], \"d\": { \"e\": [ {} ] } }"
+			)).visit(visitor);
+			
+			assertEquals(
+				"{ k:a [ l:1 d:-2.5 d:100.0 b:true b:false null s:x\ny ] k:b { } k:c [ ] k:d { k:e [ { } ] } } ",
+				visitor.sb.toString()
+			);
+		}
+		
+		// Numbers that fit in a long are longs, even with 19 digits
+		{
+			final DescribingVisitor visitor = new DescribingVisitor();
+			new Parser("[ 0, -0, 9223372036854775807, 9223372036854775808, -9223372036854775808, -9223372036854775809, 1.0 ]".getBytes(StandardCharsets.UTF_8)).visit(visitor);
+			assertEquals(
+				"[ l:0 d:-0.0 l:9223372036854775807 d:9.223372036854776E18 l:-9223372036854775808 d:-9.223372036854776E18 d:1.0 ] ",
+				visitor.sb.toString()
+			);
+		}
+		
+		// Deep nesting does not overflow the stack
+		{
+			final int depth = 100_000;
+			final int[] counts = new int[2];
+			new Parser(new StringReader("[".repeat(depth) + "]".repeat(depth))).visit(new DescribingVisitor() {
+				@Override
+				public void startArray() {
+					counts[0]++;
+				}
+				
+				@Override
+				public void endArray() {
+					counts[1]++;
+				}
+			});
+			
+			assertEquals(depth, counts[0]);
+			assertEquals(depth, counts[1]);
+		}
+		
+		// Errors are the same as parse
+		try {
+			new Parser(new StringReader("{ \"a\": [ 1, ] }")).visit(new DescribingVisitor());
+			assertTrue(false);
+		} catch (final RuntimeException e) {
+			assertEquals(Parser.ARRAY_COMMA_VALUE, e.getMessage());
+		}
+	}
+	
+	@Test
+	public void maxDepth() throws Throwable {
+		// Deep nesting does not overflow the stack
+		{
+			final int depth = 100_000;
+			final String test = "[" + "[{\"a\":".repeat(depth) + "1" + "}]".repeat(depth) + "]";
+			JSONValue value = new Parser(new StringReader(test)).next();
+			for (int i = 0; i < depth; i++) {
+				value = value.asArray().get(0).asObject().get("a");
+			}
+			assertEquals(1, value.asNumber().asInt());
+		}
+		
+		// The top level is 1, and each element of a top level array is 2
+		final String test = "[ 1, [ 2, { \"a\": [ 3 ] } ] ]";
+		assertEquals(2, new Parser(new StringReader(test)).withMaxDepth(4).stream().count());
+		new Parser(new StringReader(test)).withMaxDepth(4).validate();
+		
+		// Each case, and the maximum depth it reports
+		for (final Object[] testCase : new Object[][] {
+			{(Runnable)(() -> new Parser(new StringReader(test)).withMaxDepth(3).stream().count()), Integer.valueOf(3)},
+			{(Runnable)(() -> new Parser(new StringReader(test)).withMaxDepth(3).validate()), Integer.valueOf(3)},
+			{(Runnable)(() -> new Parser(new StringReader("{ \"a\": {} }")).withMaxDepth(1).next()), Integer.valueOf(1)}
+		}) {
+			try {
+				((Runnable)(testCase[0])).run();
+				assertTrue(false);
+			} catch (final RuntimeException e) {
+				assertEquals(String.format(Parser.MAX_DEPTH_FMT, testCase[1]), e.getMessage());
+			}
+		}
+		
+		try {
+			new Parser(new StringReader(test)).withMaxDepth(0);
+			assertTrue(false);
+		} catch (final IllegalArgumentException e) {
+			assertEquals(Parser.MAX_DEPTH_MUST_BE_POSITIVE, e.getMessage());
+		}
+	}
+	
+	@Test
+	public void reset() throws Throwable {
+		final String json = "[ {\"a\": [1, {\"b\": [[2]]}]}, \"c\", [] ]";
+		final byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+		final List<JSONValue> expected = new Parser(new StringReader(json)).stream().collect(Collectors.toList());
+		
+		// Leave the parser part way through a value that dies, and that is deeper than the initial containers
+		final Parser parser = new Parser(new StringReader("[ 1, " + "[".repeat(40))).withCompactTree();
+		assertEquals(1, parser.next().asNumber().asInt());
+		try {
+			parser.next();
+			assertTrue(false);
+		} catch (final RuntimeException e) {
+			assertEquals(Parser.ARRAY_VALUE_OR_BRACKET, e.getMessage());
+		}
+		
+		// Each kind of input parses from the start, keeping the settings
+		for (final Runnable reset : new Runnable[] {
+			() -> parser.reset(new StringReader(json)),
+			() -> parser.reset(json.toCharArray()),
+			() -> parser.reset(("{" + json + "}").toCharArray(), 1, json.length()),
+			() -> parser.reset(bytes),
+			() -> parser.reset(bytes, 0, bytes.length),
+			() -> parser.reset(ByteBuffer.allocateDirect(bytes.length).put(bytes).flip()),
+			() -> parser.reset(new ByteArrayInputStream(bytes))
+		}) {
+			reset.run();
+			final List<JSONValue> actual = parser.stream().collect(Collectors.toList());
+			assertEquals(expected, actual);
+			assertEquals(FlatObjectMap.class, actual.get(0).asObject().getClass());
+		}
+		
+		// A reset after the whole document, or part of it, was consumed by any of the parse methods
+		parser.reset(bytes).validate();
+		assertEquals(expected.get(0), parser.reset(bytes).parse().get());
+		assertTrue(parser.skipValue());
+		assertEquals(expected.get(2), parser.next());
+		assertEquals(expected.get(0), parser.reset(bytes).next());
+		final Tape tape = parser.reset(bytes).tape();
+		assertEquals(3, tape.size(tape.root()));
+	}
+	
 	@Test
 	public void peek() throws Throwable {
 	    final Method peek = Parser.class.getDeclaredMethod("peek");
@@ -243,20 +703,20 @@ public class TestParser {
 	
 	@Test
 	public void expect() throws Throwable {
-	    final Method expect = Parser.class.getDeclaredMethod("expect", String.class, LexerToken.Type[].class);
+	    final Method expect = Parser.class.getDeclaredMethod("expect", String.class, int.class);
 	    expect.setAccessible(true);
 	    
 	    final Parser p = new Parser(new StringReader("1 2 3"));
 	    final String error = "fooey";
 	    try {
-	        expect.invoke(p, error, new LexerToken.Type[0]);
+	        expect.invoke(p, error, 0);
 	    } catch (final InvocationTargetException e) {
 	        assertTrue(error == e.getCause().getMessage());
 	    }
 	    
 	    assertEquals(
-            new LexerToken("2", true, "2", "", true, ""),
-            expect.invoke(p, error, new LexerToken.Type[] {LexerToken.Type.NUMBER})
+            LexerToken.Type.NUMBER,
+            expect.invoke(p, error, 1 << LexerToken.Type.NUMBER.ordinal())
         );
 	}
 }
@@ -0,0 +1,65 @@
+package me.bantling.micro.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("static-method")
+public class TestParserPool {
+	@Test
+	public void borrowRelease() {
+		final KeyCache keyCache = new KeyCache();
+		final ParserPool pool = new ParserPool(2, parser -> parser.withKeyCache(keyCache).withCompactTree());
+		assertEquals(0, pool.size());
+		
+		// An empty pool creates configured parsers
+		final Parser first = pool.borrow();
+		final Parser second = pool.borrow();
+		assertFalse(first == second);
+		
+		final byte[] bytes = "[{\"a\": 1}, {\"a\": 2}]".getBytes(StandardCharsets.UTF_8);
+		final List<JSONValue> values = first.reset(bytes).stream().collect(Collectors.toList());
+		assertEquals(2, values.size());
+		assertEquals(FlatObjectMap.class, values.get(0).asObject().getClass());
+		assertTrue(values.get(0).asObject().keySet().iterator().next() == values.get(1).asObject().keySet().iterator().next());
+		
+		// Released parsers are borrowed again
+		pool.release(first);
+		pool.release(second);
+		assertEquals(2, pool.size());
+		
+		final Parser again = pool.borrow();
+		assertTrue((again == first) || (again == second));
+		assertEquals(values, again.reset(bytes).stream().collect(Collectors.toList()));
+		
+		// A full pool drops a released parser
+		pool.release(again);
+		pool.release(new Parser(bytes));
+		assertEquals(2, pool.size());
+		
+		// A parser that died is reset when released
+		final Parser died = pool.borrow();
+		try {
+			died.reset("[1,".getBytes(StandardCharsets.UTF_8)).stream().count();
+			fail("Must die");
+		} catch (final RuntimeException e) {
+			assertEquals(Parser.ARRAY_COMMA_VALUE, e.getMessage());
+		}
+		pool.release(died);
+		assertEquals(values, pool.borrow().reset(bytes).stream().collect(Collectors.toList()));
+		
+		try {
+			new ParserPool(0);
+			fail("Must die");
+		} catch (final IllegalArgumentException e) {
+			assertEquals(ParserPool.CAPACITY_MUST_BE_POSITIVE, e.getMessage());
+		}
+	}
+}
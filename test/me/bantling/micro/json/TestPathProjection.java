@@ -0,0 +1,106 @@
+package me.bantling.micro.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("static-method")
+public class TestPathProjection {
+	private static final String DOC =
+		"{" +
+		"  \"user\": {\"id\": 5, \"name\": \"a\", \"roles\": [\"x\", \"y\"]}," +
+		"  \"items\": [{\"price\": 1.5, \"qty\": 2}, {\"qty\": 3}, {\"price\": 2, \"tags\": {\"price\": 9}}]," +
+		"  \"a/b\": {\"c~d\": true}," +
+		"  \"0\": \"zero\"," +
+		"  \"skipped\": [[[{\"price\": \"]}\\\"\"}]]]" +
+		"}";
+	
+	// Describe the result of a projection as pointer=value pairs
+	private static String project(final String doc, final String... paths) {
+		final PathProjection projection = PathProjection.of(paths);
+		final String result = projection.project(new Lexer(new StringReader(doc))).entrySet().stream().
+			map(e -> e.getKey() + "=" + e.getValue().getInstance()).
+			collect(Collectors.joining(" "));
+		
+		// Same result from bytes, and via the parser
+		assertEquals(result, str(projection.project(new Lexer(doc.getBytes(StandardCharsets.UTF_8)))));
+		assertEquals(result, str(new Parser(new StringReader(doc)).project(projection)));
+		
+		return result;
+	}
+	
+	private static String str(final Map<String, JSONValue> values) {
+		return values.entrySet().stream().map(e -> e.getKey() + "=" + e.getValue().getInstance()).collect(Collectors.joining(" "));
+	}
+	
+	@Test
+	public void project() {
+		assertEquals("/user/id=5", project(DOC, "/user/id"));
+		assertEquals("/user/id=5", project(DOC, "user.id"));
+		assertEquals("/items/0/price=1.5 /items/2/price=2", project(DOC, "/items/*/price"));
+		assertEquals("/user/id=5 /items/0/price=1.5 /items/2/price=2", project(DOC, "/items/*/price", "/user/id", "/nothing/here"));
+		assertEquals("/items/1/qty=3", project(DOC, "/items/1/qty"));
+		assertEquals("/user/roles/1=y", project(DOC, "/user/roles/1"));
+		assertEquals("/a~1b/c~0d=true", project(DOC, "/a~1b/c~0d"));
+		assertEquals("/0=zero", project(DOC, "/0"));
+		assertEquals("/user/id=5 /user/name=a /user/roles=[JSONValue[type=STRING,instance=x], JSONValue[type=STRING,instance=y]]", project(DOC, "/user/id", "/user/*"));
+		assertEquals("", project(DOC, "/user/roles/01"));
+		assertEquals("", project(DOC));
+		
+		// A prefix includes its longer paths
+		assertEquals("/user={id=JSONValue[type=NUMBER,instance=5], name=JSONValue[type=STRING,instance=a], roles=JSONValue[type=ARRAY,instance=[JSONValue[type=STRING,instance=x], JSONValue[type=STRING,instance=y]]]}", project(DOC, "/user/id", "/user"));
+		
+		// Wildcards at several levels
+		assertEquals("/items/0/price=1.5 /items/2/price=2 /items/2/tags/price=9", project(DOC, "*.*.price", "*.*.*.price"));
+		
+		// The whole document
+		assertEquals(
+			new Parser(new StringReader(DOC)).next(),
+			PathProjection.of("").project(new Lexer(new StringReader(DOC))).get("")
+		);
+		
+		// A top level array
+		assertEquals("/1/a=2", project("[{\"a\": 1, \"b\": 2}, {\"a\": 2}]", "/1/a"));
+	}
+	
+	@Test
+	public void reuse() {
+		final PathProjection projection = PathProjection.of("/items/*/price");
+		final List<Integer> sums = List.of(1, 2, 3, 4).parallelStream().map(n -> {
+			final StringBuilder sb = new StringBuilder("{\"items\": [");
+			for (int i = 0; i < n * 1000; i++) {
+				sb.append(i == 0 ? "" : ",").append("{\"price\": 1}");
+			}
+			
+			return projection.project(new Lexer(new StringReader(sb.append("]}").toString()))).values().stream().
+				mapToInt(v -> v.asNumber().asInt()).sum();
+		}).collect(Collectors.toList());
+		
+		assertEquals(List.of(1000, 2000, 3000, 4000), sums);
+	}
+	
+	@Test
+	public void segments() {
+		assertEquals(List.of(), PathProjection.segments(""));
+		assertEquals(List.of(""), PathProjection.segments("/"));
+		assertEquals(List.of("a", "", "b"), PathProjection.segments("/a//b"));
+		assertEquals(List.of("a/b", "c~d"), PathProjection.segments("/a~1b/c~0d"));
+		assertEquals(List.of("a", "*", "b"), PathProjection.segments("a.*.b"));
+		
+		for (final String bad : new String[] {"/a~", "/a~2"}) {
+			try {
+				PathProjection.segments(bad);
+				fail("Must die");
+			} catch (final IllegalArgumentException e) {
+				assertEquals(String.format(PathProjection.INVALID_POINTER_ESCAPE_FMT, bad), e.getMessage());
+			}
+		}
+	}
+}
@@ -0,0 +1,254 @@
+package me.bantling.micro.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import me.bantling.micro.json.PullParser.Event;
+
+@SuppressWarnings("static-method")
+public class TestPullParser {
+	// Describe all events of a document as a string, building every scalar value
+	private static String events(final PullParser p) {
+		final StringBuilder sb = new StringBuilder();
+		for (Event e; (e = p.next()) != null;) {
+			sb.append(e).append(p.depth());
+			if (e == Event.KEY) {
+				sb.append('=').append(p.key());
+			} else if (e == Event.VALUE) {
+				sb.append('=').append(p.value().getInstance());
+			}
+			sb.append(' ');
+		}
+		
+		return sb.toString().trim();
+	}
+	
+	@Test
+	public void events() {
+		assertEquals(
+			"START_OBJECT1 KEY1=a VALUE1=1 KEY1=b START_ARRAY2 VALUE2=true START_OBJECT3 END_OBJECT2 START_ARRAY3 END_ARRAY2 VALUE2=null END_ARRAY1 KEY1=c VALUE1=d END_OBJECT0",
+			events(new PullParser(new Lexer(new StringReader("{\"a\": 1, \"b\": [true, {}, [], null], \"c\": \"d\"} trailing"))))
+		);
+		
+		assertEquals(
+			"START_ARRAY1 END_ARRAY0",
+			events(new PullParser(new Lexer("[]".getBytes(StandardCharsets.UTF_8))))
+		);
+		
+		// Nesting deeper than one word of the level stack
+		{
+			final PullParser p = new PullParser(new Lexer(new StringReader("[".repeat(100) + "]".repeat(100))));
+			for (int i = 1; i <= 100; i++) {
+				assertEquals(Event.START_ARRAY, p.next());
+				assertEquals(i, p.depth());
+			}
+			for (int i = 99; i >= 0; i--) {
+				assertEquals(Event.END_ARRAY, p.next());
+				assertEquals(i, p.depth());
+			}
+			assertNull(p.next());
+			assertNull(p.event());
+		}
+	}
+	
+	@Test
+	public void valueAndSkip() {
+		final String test = "[{\"id\": 1, \"big\": {\"a\": [1, \"]}\\\"\", {}]}, \"tags\": [\"x\"]}, {\"tags\": [], \"id\": 2}]";
+		
+		// Only build ids
+		{
+			final PullParser p = new PullParser(new Lexer(new StringReader(test)));
+			final List<Object> ids = new ArrayList<>();
+			
+			assertEquals(Event.START_ARRAY, p.next());
+			while (p.next() == Event.START_OBJECT) {
+				while (p.next() == Event.KEY) {
+					if (p.key().equals("id")) {
+						assertEquals(Event.VALUE, p.next());
+						ids.add(p.value().asNumber().asInt());
+					} else {
+						p.skip();
+						assertNull(p.event());
+					}
+				}
+				assertEquals(Event.END_OBJECT, p.event());
+			}
+			assertEquals(Event.END_ARRAY, p.event());
+			assertNull(p.next());
+			
+			assertEquals(List.of(1, 2), ids);
+		}
+		
+		// Build each element, which is the same as the parser
+		{
+			final PullParser p = new PullParser(new Lexer(new StringReader(test)));
+			final List<JSONValue> values = new ArrayList<>();
+			
+			p.next();
+			while (p.next() == Event.START_OBJECT) {
+				values.add(p.value());
+				assertNull(p.event());
+				assertEquals(1, p.depth());
+			}
+			
+			assertEquals(new Parser(new StringReader(test)).stream().collect(Collectors.toList()), values);
+		}
+		
+		// Skip whole elements, and a scalar
+		{
+			final PullParser p = new PullParser(new Lexer(new StringReader("[[1, [2]], 3, {\"a\": {}}, 4]")));
+			p.next();
+			p.next();
+			p.skip();
+			assertEquals(Event.VALUE, p.next());
+			p.skip();
+			assertEquals(Event.START_OBJECT, p.next());
+			p.skip();
+			assertEquals(Event.VALUE, p.next());
+			assertEquals(4, p.value().asNumber().asInt());
+			assertEquals(Event.END_ARRAY, p.next());
+			assertNull(p.next());
+		}
+		
+		// Wrong events
+		{
+			final PullParser p = new PullParser(new Lexer(new StringReader("{\"a\": 1}")));
+			try {
+				p.skip();
+				fail("Must die");
+			} catch (final IllegalStateException e) {
+				assertEquals(PullParser.NOT_SKIPPABLE, e.getMessage());
+			}
+			
+			p.next();
+			try {
+				p.key();
+				fail("Must die");
+			} catch (final IllegalStateException e) {
+				assertEquals(PullParser.NOT_A_KEY, e.getMessage());
+			}
+			
+			p.next();
+			try {
+				p.value();
+				fail("Must die");
+			} catch (final IllegalStateException e) {
+				assertEquals(PullParser.NOT_A_VALUE, e.getMessage());
+			}
+		}
+	}
+	
+	@Test
+	public void errors() {
+		final String[] badCases = {
+			"",
+			"1",
+			"[",
+			"[,",
+			"[1",
+			"[1,",
+			"[1,]",
+			"[1 2]",
+			"[1}",
+			"{",
+			"{1",
+			"{\"a\"",
+			"{\"a\" 1",
+			"{\"a\":",
+			"{\"a\":}",
+			"{\"a\":1",
+			"{\"a\":1,",
+			"{\"a\":1,}",
+			"{\"a\":1 2}",
+			"[\"a",
+			"[tru]"
+		};
+		
+		for (final String test : badCases) {
+			String expected = null;
+			try {
+				new Parser(new StringReader(test)).stream().collect(Collectors.toList());
+			} catch (final RuntimeException e) {
+				expected = e.getMessage();
+			}
+			assertTrue(expected != null);
+			
+			try {
+				events(new PullParser(new Lexer(new StringReader(test))));
+				fail("Must die");
+			} catch (final RuntimeException e) {
+				assertEquals(expected, e.getMessage());
+			}
+		}
+		
+		// A skipped container is only checked for EOF
+		try {
+			final PullParser p = new PullParser(new Lexer(new StringReader("[{\"a\": [1}")));
+			p.next();
+			p.next();
+			p.skip();
+			fail("Must die");
+		} catch (final RuntimeException e) {
+			assertEquals(Lexer.INCOMPLETE_CONTAINER, e.getMessage());
+		}
+	}
+	
+	@Test
+	public void maxDepth() {
+		final String maxDepth3 = String.format(Parser.MAX_DEPTH_FMT, 3);
+		
+		// Pulling events past the maximum depth
+		try {
+			final PullParser p = new PullParser(new Lexer(new StringReader("[[[[]]]]"))).withMaxDepth(3);
+			for (int i = 0; i < 3; i++) {
+				assertEquals(Event.START_ARRAY, p.next());
+			}
+			p.next();
+			fail("Must die");
+		} catch (final RuntimeException e) {
+			assertEquals(maxDepth3, e.getMessage());
+		}
+		
+		// Building a value pulled at depth 2, that is nested 2 more levels, counts from the top level
+		final String test = "[{\"a\": [[1]]}]";
+		{
+			final PullParser p = new PullParser(new Lexer(new StringReader(test))).withMaxDepth(4);
+			p.next();
+			assertEquals(Event.START_OBJECT, p.next());
+			assertEquals(Event.KEY, p.next());
+			assertEquals(Event.START_ARRAY, p.next());
+			assertEquals(3, p.depth());
+			assertEquals(1, p.value().asArray().get(0).asArray().get(0).asNumber().asInt());
+		}
+		
+		try {
+			final PullParser p = new PullParser(new Lexer(new StringReader(test))).withMaxDepth(3);
+			p.next();
+			p.next();
+			p.next();
+			assertEquals(Event.START_ARRAY, p.next());
+			p.value();
+			fail("Must die");
+		} catch (final RuntimeException e) {
+			assertEquals(maxDepth3, e.getMessage());
+		}
+		
+		// The same as the parser
+		try {
+			new Parser(new StringReader(test)).withMaxDepth(3).stream().count();
+			fail("Must die");
+		} catch (final RuntimeException e) {
+			assertEquals(maxDepth3, e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,200 @@
+package me.bantling.micro.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("static-method")
+public class TestPushParser {
+	// Push a document in chunks of a given size, in heap or direct buffers, and return the values
+	private static List<JSONValue> push(final String json, final int chunkSize, final boolean direct) {
+		final List<JSONValue> result = new ArrayList<>();
+		push(json, chunkSize, direct, result);
+		
+		return result;
+	}
+	
+	// Push a document in chunks of a given size, in heap or direct buffers, adding each value to a list as it completes
+	private static void push(
+		final String json,
+		final int chunkSize,
+		final boolean direct,
+		final List<JSONValue> result
+	) {
+		final PushParser parser = new PushParser(result::add);
+		final byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+		final ByteBuffer chunk = direct ? ByteBuffer.allocateDirect(chunkSize) : ByteBuffer.allocate(chunkSize);
+		for (int i = 0; i < bytes.length; i += chunkSize) {
+			chunk.clear();
+			chunk.put(bytes, i, Math.min(chunkSize, bytes.length - i)).flip();
+			parser.feed(chunk);
+			assertFalse(chunk.hasRemaining());
+		}
+		parser.endOfInput();
+	}
+	
+	@Test
+	public void values() {
+		final String[] goodCases = {
+			"[]",
+			" [ ] ",
+			"[1]",
+			"[ 1, \"a,]}\\\"[{\", { \"b\": [ 2, { \"c\": \"]\" } ] }, [ 3, [ 4 ] ], true, false, null, \"aß東𐐀\\\\\" ]",
+			"{ \"a\": [ 1, 2 ], \"b\\\\\": \"}\" }",
+			"\n{} trailing input is ignored"
+		};
+		
+		for (final String test : goodCases) {
+			final List<JSONValue> expected = new Parser(new StringReader(test)).stream().collect(Collectors.toList());
+			assertEquals(expected, push(test, test.length() * 4, false));
+			
+			// Small chunks, so that tokens and multi byte sequences straddle chunks
+			for (int chunkSize = 1; chunkSize <= 5; chunkSize++) {
+				assertEquals(expected, push(test, chunkSize, false));
+				assertEquals(expected, push(test, chunkSize, true));
+			}
+		}
+		
+		// More than the initial buffer, and elements larger than it
+		final StringBuilder sb = new StringBuilder("[");
+		for (int i = 0; i < 2_000; i++) {
+			sb.append(i == 0 ? "" : ",").
+				append("{\"i\":").append(i).
+				append(",\"s\":\"").append("x".repeat(i * 10)).append("\"}");
+		}
+		final String large = sb.append(']').toString();
+		final List<JSONValue> expected = new Parser(new StringReader(large)).stream().collect(Collectors.toList());
+		for (final int chunkSize : new int[] {1000, 4096, 100_000}) {
+			assertEquals(expected, push(large, chunkSize, false));
+		}
+	}
+	
+	@Test
+	public void incremental() {
+		// Each element is consumed as soon as it is complete
+		final List<JSONValue> result = new ArrayList<>();
+		final PushParser parser = new PushParser(result::add).withCompactTree();
+		
+		parser.feed(ByteBuffer.wrap("[{\"a\":".getBytes(StandardCharsets.UTF_8)));
+		assertEquals(0, result.size());
+		
+		parser.feed(ByteBuffer.wrap("1}, \"b".getBytes(StandardCharsets.UTF_8)));
+		assertEquals(1, result.size());
+		assertEquals(FlatObjectMap.class, result.get(0).asObject().getClass());
+		
+		parser.feed(ByteBuffer.wrap("c\"".getBytes(StandardCharsets.UTF_8)));
+		assertEquals(1, result.size());
+		assertFalse(parser.isComplete());
+		
+		parser.feed(ByteBuffer.wrap("]".getBytes(StandardCharsets.UTF_8)));
+		assertEquals(2, result.size());
+		assertEquals("bc", result.get(1).asString());
+		assertTrue(parser.isComplete());
+		
+		parser.endOfInput();
+		try {
+			parser.feed(ByteBuffer.allocate(1));
+			fail("Must die");
+		} catch (final IllegalStateException e) {
+			assertEquals(PushParser.ENDED, e.getMessage());
+		}
+	}
+	
+	@Test
+	public void errors() {
+		final String[][] badCases = {
+			{"",             Parser.START_BRACE_OR_BRACKET},
+			{"  ",           Parser.START_BRACE_OR_BRACKET},
+			{"1",            Parser.START_BRACE_OR_BRACKET},
+			{" ]",           Parser.START_BRACE_OR_BRACKET},
+			{"[",            Parser.ARRAY_VALUE_OR_BRACKET},
+			{"[1,",          Parser.ARRAY_COMMA_VALUE},
+			{"[1",           Parser.ARRAY_COMMA_OR_BRACKET},
+			{"[\"a",         Lexer.INCOMPLETE_STRING},
+			{"[1}",          Parser.ARRAY_COMMA_OR_BRACKET},
+			{"[,1]",         Parser.ARRAY_VALUE_OR_BRACKET},
+			{"[1,]",         Parser.ARRAY_COMMA_VALUE},
+			{"[1,,2]",       Parser.ARRAY_COMMA_VALUE},
+			{"[1 2]",        Parser.ARRAY_COMMA_OR_BRACKET},
+			{"[[1}]",        Parser.ARRAY_COMMA_OR_BRACKET},
+			{"{",            Parser.OBJECT_FIRST_KEY},
+			{"{\"a\":",      Parser.OBJECT_KEY_COLON_VALUE},
+			{"{\"a\":1",     Parser.OBJECT_VALUE_COMMA_BRACE},
+			{"{\"a\":1,}",   Parser.OBJECT_COMMA_KEY},
+			{"{\"a\":1]",    Parser.OBJECT_VALUE_COMMA_BRACE},
+			{"{\"a\":\"b",   Lexer.INCOMPLETE_STRING},
+			
+			// A first token that is not a brace or bracket is lexed first
+			{"nul",          Lexer.NULL_SPELLING},
+			{" tru ",        Lexer.BOOLEAN_SPELLED_TRUE_OR_FALSE},
+			{"\"abc",        Lexer.INCOMPLETE_STRING},
+			{"-.5",          Lexer.MINUS_SIGN_REQUIRES_DIGIT},
+			{"1e",           Lexer.EXPONENT_REQUIRES_DIGIT},
+			{"true",         Parser.START_BRACE_OR_BRACKET},
+			{"\"a\\\"b\" [", Parser.START_BRACE_OR_BRACKET},
+			{":",            Parser.START_BRACE_OR_BRACKET},
+			
+			// A token at the end of an element is lexed with what follows it
+			{"[-,1]",        Lexer.MINUS_SIGN_REQUIRES_DIGIT},
+			{"[1,-]",        Lexer.MINUS_SIGN_REQUIRES_DIGIT},
+			{"[-",           Lexer.INCOMPLETE_NEGATIVE_NUMBER},
+			{"[{\"a\":-}]",  Lexer.MINUS_SIGN_REQUIRES_DIGIT},
+			
+			// An element is consumed before an error in what follows it
+			{"[[\"\"],null true", Parser.ARRAY_COMMA_OR_BRACKET},
+			{"[1 -,",        Lexer.MINUS_SIGN_REQUIRES_DIGIT},
+			{"[1 tru",       Lexer.BOOLEAN_SPELLED_TRUE_OR_FALSE},
+			{"[1,nul ]",     Lexer.NULL_SPELLING},
+			
+			// A unicode escape that swallows the quote that seems to end its string is lexed with what follows it
+			{"[\"\\uf\",1]",    String.format(Lexer.INVALID_UNICODE_ESCAPE_FMT, "f\",1")},
+			{"[\"\\ur\",{}]",   String.format(Lexer.INVALID_UNICODE_ESCAPE_FMT, "r\",{")},
+			{"[1 \"\\u\",1]",   String.format(Lexer.INVALID_UNICODE_ESCAPE_FMT, "\",1]")},
+			{"{\"a\":\"\\u\"}  ", String.format(Lexer.INVALID_UNICODE_ESCAPE_FMT, "\"}  ")},
+			{"\"\\u\" 12",      String.format(Lexer.INVALID_UNICODE_ESCAPE_FMT, "\" 12")},
+			{"[\"\\u\"]",       Lexer.INCOMPLETE_UNICODE_ESCAPE}
+		};
+		
+		for (final String[] badCase : badCases) {
+			final List<JSONValue> expected = new ArrayList<>();
+			try {
+				new Parser(new StringReader(badCase[0])).stream().forEach(expected::add);
+				fail("Must die");
+			} catch (final RuntimeException e) {
+				assertEquals(badCase[0], badCase[1], e.getMessage());
+			}
+			
+			for (int chunkSize = 1; chunkSize <= 3; chunkSize++) {
+				final List<JSONValue> result = new ArrayList<>();
+				try {
+					push(badCase[0], chunkSize, false, result);
+					fail("Must die");
+				} catch (final RuntimeException e) {
+					assertEquals(badCase[0], badCase[1], e.getMessage());
+				}
+				assertEquals(badCase[0], expected, result);
+			}
+		}
+		
+		// Errors are found as soon as they are fed
+		final PushParser parser = new PushParser(value -> {
+			//
+		}).withMaxDepth(2);
+		try {
+			parser.feed(ByteBuffer.wrap("[[[1]],".getBytes(StandardCharsets.UTF_8)));
+			fail("Must die");
+		} catch (final RuntimeException e) {
+			assertEquals(String.format(Parser.MAX_DEPTH_FMT, Integer.valueOf(2)), e.getMessage());
+		}
+	}
+}
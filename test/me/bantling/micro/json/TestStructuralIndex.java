@@ -0,0 +1,118 @@
+package me.bantling.micro.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("static-method")
+public class TestStructuralIndex {
+	// The delimiters and tokens a byte at a time, as a string of one char per byte: d for a delimiter, t for another
+	// token, and a space for anything else. A backslash outside of a string escapes a quote, as for the index.
+	private static String expected(final byte[] bytes) {
+		final StringBuilder result = new StringBuilder();
+		boolean inString = false;
+		boolean escaped = false;
+		for (final byte b : bytes) {
+			if (inString) {
+				if (escaped) {
+					escaped = false;
+				} else if (b == '\\') {
+					escaped = true;
+				} else if (b == '"') {
+					inString = false;
+				}
+				result.append(' ');
+				continue;
+			}
+			
+			final boolean quoteEscaped = escaped;
+			escaped = (b == '\\') && ! escaped;
+			inString = (b == '"') && ! quoteEscaped;
+			result.append("{}[],".indexOf(b) >= 0 ? 'd' : " \t\n\r".indexOf(b) >= 0 ? ' ' : 't');
+		}
+		
+		return result.toString();
+	}
+	
+	// The delimiters and tokens from an index, of windows of a given size, that start after the start of a buffer
+	private static String actual(final byte[] bytes, final int windowSize, final boolean direct) {
+		final StringBuilder result = new StringBuilder();
+		final StructuralIndex index = new StructuralIndex();
+		for (int start = 0; start < bytes.length; start += windowSize) {
+			final int length = Math.min(windowSize, bytes.length - start);
+			final ByteBuffer window = direct ? ByteBuffer.allocateDirect(length + 1) : ByteBuffer.allocate(length + 1);
+			window.position(1);
+			window.put(bytes, start, length).flip().position(1);
+			
+			for (int i = 1, end = window.limit(); i < end;) {
+				final int blockLength = index.index(window, i, end);
+				for (int bit = 0; bit < blockLength; bit++) {
+					final boolean delimiter = ((index.delimiters() >>> bit) & 1) != 0;
+					final boolean token = ((index.tokens() >>> bit) & 1) != 0;
+					result.append(delimiter ? (token ? 'd' : '?') : token ? 't' : ' ');
+				}
+				i += blockLength;
+			}
+		}
+		
+		return result.toString();
+	}
+	
+	@Test
+	public void swar() {
+		// Every byte in every position of a word
+		for (int b = 0; b < 256; b++) {
+			for (int i = 0; i < 8; i++) {
+				final long word = (0x41L * 0x0101010101010101L & ~(0xFFL << (i * 8))) | ((long)(b) << (i * 8));
+				final long bit = 0x80L << (i * 8);
+				assertEquals(b == '"' ? bit : 0, StructuralIndex.equalBytes(word, '"' * 0x0101010101010101L));
+				assertEquals(1L << i, StructuralIndex.gather(bit));
+			}
+		}
+		
+		assertEquals(0b0111_0001_1110L, StructuralIndex.prefixXor(0b1001_0010_0010L));
+	}
+	
+	@Test
+	public void index() {
+		final String json = "{\"a\":[1, -2.5e3 ,true,null],\"b\\\"}\":\"x\\\\\",\"c\":{\"d\":\"[,]\"}, \"é\":\"😀\"}";
+		final byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+		for (int windowSize = 1; windowSize <= bytes.length; windowSize++) {
+			assertEquals(expected(bytes), actual(bytes, windowSize, false));
+		}
+		assertEquals(expected(bytes), actual(bytes, 7, true));
+		
+		// Random runs of backslashes, quotes, and every kind of byte, across many blocks and windows
+		final Random random = new Random(1);
+		final byte[] alphabet = "\\\\\\\"\"{}[]:, \n\t\r1aeé\u0001".getBytes(StandardCharsets.UTF_8);
+		final byte[] noise = new byte[5000];
+		for (int i = 0; i < noise.length; i++) {
+			noise[i] = alphabet[random.nextInt(alphabet.length)];
+		}
+		for (final int windowSize : new int[] {63, 64, 100, 128, 4096, noise.length}) {
+			assertEquals(expected(noise), actual(noise, windowSize, false));
+			assertEquals(expected(noise), actual(noise, windowSize, true));
+		}
+	}
+	
+	@Test
+	public void inString() {
+		final StructuralIndex index = new StructuralIndex();
+		final ByteBuffer first = ByteBuffer.wrap("[\"ab\\".getBytes(StandardCharsets.UTF_8));
+		assertEquals(5, index.index(first, 0, 5));
+		assertTrue(index.inString());
+		
+		// The escape and the string carry into the next buffer
+		final ByteBuffer second = ByteBuffer.wrap("\"c\\\\\",1]".getBytes(StandardCharsets.UTF_8));
+		assertEquals(8, index.index(second, 0, 8));
+		assertFalse(index.inString());
+		assertEquals(0b10100000L, index.delimiters());
+		assertEquals(0b11100000L, index.tokens());
+	}
+}
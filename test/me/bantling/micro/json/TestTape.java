@@ -0,0 +1,193 @@
+package me.bantling.micro.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("static-method")
+public class TestTape {
+	private static final String DOCUMENT =
+		"{\"id\":7,\"name\":\"n\\u00e9\",\"price\":1.25,\"tags\":[\"a\",\"b\",null],\"ok\":true," +
+		"\"no\":false,\"empty\":{},\"none\":[],\"address\":{\"city\":\"x\",\"code\":\"y\"}}";
+	
+	// Write a value of a tape as JSON text
+	private static String write(final Tape tape, final int index) {
+		final StringWriter chars = new StringWriter();
+		try (final JSONWriter writer = new JSONWriter(chars)) {
+			tape.visit(index, writer);
+		}
+		
+		return chars.toString();
+	}
+	
+	@Test
+	public void navigate() {
+		final Tape tape = new Parser(new StringReader(DOCUMENT)).tape();
+		final int root = tape.root();
+		assertEquals(JSONValue.Type.OBJECT, tape.type(root));
+		assertEquals(9, tape.size(root));
+		
+		assertTrue(tape.isLong(tape.get(root, "id")));
+		assertEquals(7L, tape.longValue(tape.get(root, "id")));
+		assertEquals("né", tape.string(tape.get(root, "name")));
+		assertFalse(tape.isLong(tape.get(root, "price")));
+		assertEquals(1.25, tape.doubleValue(tape.get(root, "price")), 0);
+		assertEquals(1L, tape.longValue(tape.get(root, "price")));
+		assertTrue(tape.booleanValue(tape.get(root, "ok")));
+		assertFalse(tape.booleanValue(tape.get(root, "no")));
+		assertEquals(-1, tape.get(root, "missing"));
+		
+		// Iterate an array
+		final int tags = tape.get(root, "tags");
+		assertEquals(3, tape.size(tags));
+		final StringBuilder sb = new StringBuilder();
+		for (int i = tape.first(tags); i >= 0; i = tape.next(i)) {
+			sb.append(tape.type(i)).append(' ');
+		}
+		assertEquals("STRING STRING NULL ", sb.toString());
+		assertTrue(tape.isNull(tape.get(tags, 2)));
+		assertEquals(-1, tape.get(tags, 3));
+		assertEquals(-1, tape.get(tags, -1));
+		
+		// Iterate an object
+		sb.setLength(0);
+		for (int k = tape.first(root); k >= 0; k = tape.nextKey(k)) {
+			sb.append(tape.string(k)).append('=').append(tape.type(k + 1)).append(' ');
+		}
+		assertEquals(
+			"id=NUMBER name=STRING price=NUMBER tags=ARRAY ok=BOOLEAN no=BOOLEAN empty=OBJECT none=ARRAY address=OBJECT ",
+			sb.toString()
+		);
+		
+		// Empty containers
+		assertEquals(-1, tape.first(tape.get(root, "empty")));
+		assertEquals(0, tape.size(tape.get(root, "none")));
+		
+		// Strings compare without allocating
+		final int city = tape.get(tape.get(root, "address"), "city");
+		assertTrue(tape.stringEquals(city, "x"));
+		assertFalse(tape.stringEquals(city, "xy"));
+		final char[] chars = new char[4];
+		assertEquals(1, tape.copyChars(city, chars, 2));
+		assertEquals('x', chars[2]);
+		
+		// Wrong types
+		try {
+			tape.string(tape.get(root, "id"));
+			fail("Must die");
+		} catch (final JSONValueException e) {
+			assertEquals(JSONValue.NOT_A_STRING, e.getMessage());
+		}
+		
+		try {
+			tape.first(city);
+			fail("Must die");
+		} catch (final JSONValueException e) {
+			assertEquals(Tape.NOT_A_CONTAINER, e.getMessage());
+		}
+	}
+	
+	@Test
+	public void view() {
+		final TapeView view = new Parser(DOCUMENT.getBytes(StandardCharsets.UTF_8)).tape().view();
+		
+		assertEquals("y", view.field("address").field("code").asString());
+		assertEquals("b", view.root().field("tags").element(1).asString());
+		assertTrue(view.stringEquals("b"));
+		
+		final int tags = view.root().field("tags").index();
+		assertTrue(view.element(2).isNull());
+		assertEquals(3, view.moveTo(tags).size());
+		assertTrue(view.root().hasField("ok"));
+		assertFalse(view.hasField("missing"));
+		assertEquals(7L, view.field("id").asLong());
+		
+		try {
+			view.root().field("missing");
+			fail("Must die");
+		} catch (final JSONValueException e) {
+			assertEquals(String.format(Tape.NO_SUCH_KEY_FMT, "missing"), e.getMessage());
+		}
+		
+		try {
+			view.root().field("tags").element(3);
+			fail("Must die");
+		} catch (final JSONValueException e) {
+			assertEquals(String.format(Tape.NO_SUCH_ELEMENT_FMT, Integer.valueOf(3)), e.getMessage());
+		}
+	}
+	
+	@Test
+	public void visit() {
+		final Tape tape = new Parser(new StringReader(DOCUMENT)).tape();
+		assertEquals(DOCUMENT.replace("\\u00e9", "é"), write(tape, tape.root()));
+		assertEquals("{\"city\":\"x\",\"code\":\"y\"}", write(tape, tape.get(tape.root(), "address")));
+		assertEquals("[\"a\",\"b\",null]", write(tape, tape.get(tape.root(), "tags")));
+		assertEquals("7", write(tape, tape.get(tape.root(), "id")));
+		
+		// Deep nesting, and a top level array
+		final StringBuilder deep = new StringBuilder();
+		for (int i = 0; i < 10_000; i++) {
+			deep.append("[{\"a\":");
+		}
+		deep.append("\"s\"");
+		for (int i = 0; i < 10_000; i++) {
+			deep.append("}]");
+		}
+		final Tape deepTape = new Parser(new StringReader(deep.toString())).tape();
+		assertEquals(deep.toString(), write(deepTape, deepTape.root()));
+		assertEquals(1, deepTape.size(deepTape.root()));
+		
+		// Numbers other than longs keep their text
+		final String numbers =
+			"[1e400,-1E-400,12345678901234567890123,-0,0.1000000000000000000001,-2.50e+3,0.0,-0.0,1.5,123456789012345," +
+			"1e23,47699.125e15,5e-324,1.00,1E+5]";
+		final Tape numberTape = new Parser(new StringReader(numbers)).tape();
+		assertEquals(numbers, write(numberTape, numberTape.root()));
+		
+		final int big = numberTape.get(numberTape.root(), 2);
+		assertEquals(JSONValue.Type.NUMBER, numberTape.type(big));
+		assertFalse(numberTape.isLong(big));
+		assertEquals(1.2345678901234568e22, numberTape.doubleValue(big), 0);
+		try {
+			numberTape.longValue(big);
+			fail("Must die");
+		} catch (final NumberFormatException e) {
+			//
+		}
+		
+		// Every other number is the same long as in a tree
+		final JSONValue[] tree = new Parser(new StringReader(numbers)).stream().toArray(JSONValue[]::new);
+		for (int i = 0; i < tree.length; i++) {
+			if (i != 2) {
+				assertEquals(tree[i].asNumber().asLong(), numberTape.longValue(numberTape.get(numberTape.root(), i)));
+			}
+		}
+		assertEquals(1L, numberTape.longValue(numberTape.get(numberTape.root(), 8)));
+		assertEquals(new JSONNumber("12345678901234567890123", true, "12345678901234567890123", "", true, ""), numberTape.numberValue(big));
+		assertEquals(Double.POSITIVE_INFINITY, numberTape.view().element(0).asDouble(), 0);
+		assertEquals("-0", numberTape.view().element(3).asNumber().toString());
+		assertEquals(3, numberTape.next(1));
+		assertEquals(1e23, numberTape.doubleValue(numberTape.get(numberTape.root(), 10)), 0);
+		assertEquals("47699.125e15", numberTape.view().element(11).asNumber().toString());
+		assertEquals(Double.MIN_VALUE, numberTape.view().element(12).asDouble(), 0);
+	}
+	
+	@Test
+	public void errors() {
+		// The same errors as parse
+		try {
+			new Parser(new StringReader("{\"a\":1,}")).tape();
+			fail("Must die");
+		} catch (final RuntimeException e) {
+			assertEquals(Parser.OBJECT_COMMA_KEY, e.getMessage());
+		}
+	}
+}